@@ -2,9 +2,12 @@ package io.gdcc.spi.export;
 
 import java.io.InputStream;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
 
 /**
  * Provides all the metadata Dataverse has about a given dataset that can then
@@ -24,6 +27,43 @@ public interface ExportDataProvider {
      */
     JsonObject getDatasetJson();
 
+    /**
+     * Writes the same metadata as {@link #getDatasetJson()} to the generator,
+     * as a single JSON object value.
+     * 
+     * @param generator - the generator to write to; it is neither flushed nor
+     *                  closed.
+     * @apiNote - a provider may write the metadata of the files one at a time,
+     *          rather than creating the whole JsonObject first, so Exporters
+     *          that only copy or transform this output should prefer this
+     *          method: their memory use then doesn't grow with the number of
+     *          files in the dataset. The order of the keys of the objects may
+     *          differ from that of {@link #getDatasetJson()}.
+     */
+    default void writeDatasetJson(JsonGenerator generator) {
+        generator.write(getDatasetJson());
+    }
+
+    /**
+     * @return - the same metadata as {@link #getDatasetJson()}, without the
+     *         "files" of the "datasetVersion".
+     * @apiNote - Exporters that only use the dataset level metadata, or that
+     *          get the metadata of the files from
+     *          {@link #getDatasetFileDetailsStream()}, should prefer this
+     *          method: a provider may then never need to build the metadata of
+     *          all the files at once.
+     */
+    default JsonObject getDatasetJsonWithoutFiles() {
+        JsonObject datasetJson = getDatasetJson();
+        JsonObject version = datasetJson.getJsonObject("datasetVersion");
+        if (version == null || !version.containsKey("files")) {
+            return datasetJson;
+        }
+        return Json.createObjectBuilder(datasetJson)
+                .add("datasetVersion", Json.createObjectBuilder(version).remove("files"))
+                .build();
+    }
+
     /**
      * 
      * @return - dataset metadata in the JSON-LD based OAI_ORE format used in
@@ -35,6 +75,18 @@ public interface ExportDataProvider {
      */
     JsonObject getDatasetORE();
 
+    /**
+     * Writes the same metadata as {@link #getDatasetORE()} to the generator, as
+     * a single JSON object value.
+     * 
+     * @param generator - the generator to write to; it is neither flushed nor
+     *                  closed.
+     * @apiNote - see {@link #writeDatasetJson(JsonGenerator)}.
+     */
+    default void writeDatasetORE(JsonGenerator generator) {
+        generator.write(getDatasetORE());
+    }
+
     /**
      * Dataverse is capable of extracting DDI-centric metadata from tabular
      * datafiles. This detailed metadata, which is only available for successfully
@@ -50,6 +102,19 @@ public interface ExportDataProvider {
      */
     JsonArray getDatasetFileDetails();
 
+    /**
+     * The entries of {@link #getDatasetFileDetails()}, one file at a time.
+     * 
+     * @return - a new Stream over all the files each time this method is called,
+     *         so the files can be gone through more than once.
+     * @apiNote - a provider may create each entry only as the stream reaches it,
+     *          so that an Exporter that doesn't keep the entries doesn't need
+     *          memory for the details of all the files at once.
+     */
+    default Stream<JsonObject> getDatasetFileDetailsStream() {
+        return getDatasetFileDetails().getValuesAs(JsonObject.class).stream();
+    }
+
     /**
      * 
      * @return - the subset of metadata conforming to the schema.org standard as
@@ -0,0 +1,49 @@
+#!/bin/sh
+# Times every page of an OAI-PMH ListRecords (or ListIdentifiers) harvest of
+# a set, following the resumption tokens until the set is exhausted.
+#
+# usage: oai-listrecords-benchmark.sh SERVER_URL SET [METADATA_PREFIX] [VERB]
+# e.g.:  oai-listrecords-benchmark.sh https://demo.dataverse.org bigset oai_dc
+
+SERVER_URL=$1
+SET=$2
+METADATA_PREFIX=${3:-oai_dc}
+VERB=${4:-ListRecords}
+
+if [ -z "${SERVER_URL}" ] || [ -z "${SET}" ]
+then
+    echo "usage: $0 SERVER_URL SET [METADATA_PREFIX] [VERB]"
+    exit 1
+fi
+
+TMPFILE=/tmp/oai-benchmark.$$.xml
+QUERY="verb=${VERB}&set=${SET}&metadataPrefix=${METADATA_PREFIX}"
+PAGE=0
+TOTAL_TIME=0
+
+echo "page,records,seconds"
+
+while [ -n "${QUERY}" ]
+do
+    PAGE=`expr ${PAGE} + 1`
+    TIME=`curl -s -o ${TMPFILE} -w '%{time_total}' "${SERVER_URL}/oai?${QUERY}"`
+    if [ $? -ne 0 ]
+    then
+        echo "Request failed: ${SERVER_URL}/oai?${QUERY}"
+        exit 1
+    fi
+    RECORDS=`grep -o '<header' ${TMPFILE} | wc -l | tr -d ' '`
+    echo "${PAGE},${RECORDS},${TIME}"
+    TOTAL_TIME=`echo "${TOTAL_TIME} + ${TIME}" | bc`
+
+    TOKEN=`sed -n 's/.*<resumptionToken[^>]*>\([^<]*\)<\/resumptionToken>.*/\1/p' ${TMPFILE}`
+    if [ -n "${TOKEN}" ]
+    then
+        QUERY="verb=${VERB}&resumptionToken=${TOKEN}"
+    else
+        QUERY=""
+    fi
+done
+
+rm -f ${TMPFILE}
+echo "${PAGE} pages in ${TOTAL_TIME} seconds, `echo "scale=3; ${TOTAL_TIME} / ${PAGE}" | bc` seconds per page"
@@ -19,6 +19,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.GetDatasetStorageSizeCommand
 import edu.harvard.iq.dataverse.export.ExportService;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
@@ -262,6 +263,26 @@ public class DatasetServiceBean implements java.io.Serializable {
         return typedQuery.getResultList();
     }
 
+    /**
+     * The next ids of a partition, for a reindex that is resumed from the
+     * last dataset it indexed.
+     *
+     * @param afterId only the datasets with a higher id are returned
+     * @param maxResults the maximum number of ids returned
+     * @see #findAllOrSubset(long, long, boolean)
+     */
+    public List<Long> findSubsetAfter(long numPartitions, long partitionId, boolean skipIndexed, long afterId, int maxResults) {
+        String skipClause = skipIndexed ? "AND o.indexTime is null " : "";
+        return em.createQuery("SELECT o.id FROM Dataset o WHERE MOD( o.id, :numPartitions) = :partitionId AND o.id > :afterId " +
+                skipClause +
+                "ORDER BY o.id", Long.class)
+                .setParameter("numPartitions", numPartitions)
+                .setParameter("partitionId", partitionId)
+                .setParameter("afterId", afterId)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
         /**
      * For docs, see the equivalent method on the DataverseServiceBean.
      * @param numPartitions
@@ -326,6 +347,69 @@ public class DatasetServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * Looks up where the datasets with the given global ids are stored, with
+     * two queries for all of them, rather than loading each dataset.
+     * @param globalIds the global ids of the datasets
+     * @return Detached datasets, by global id, with only the fields needed
+     * to open their {@link StorageIO} set: the id, the persistent identifier,
+     * the storage identifier and any alternative identifier designating the
+     * storage location. Datasets that are not found, or only by an alternative
+     * identifier, are left out.
+     */
+    public Map<String, Dataset> findStorageLocationsByGlobalIds(Collection<String> globalIds) {
+        Map<String, String> globalIdsByPid = new HashMap<>();
+        Set<String> identifiers = new HashSet<>();
+        for (String globalId : globalIds) {
+            try {
+                GlobalId gid = PidUtil.parseAsGlobalID(globalId);
+                globalIdsByPid.put(gid.getProtocol() + "|" + gid.getAuthority() + "|" + gid.getIdentifier(), globalId);
+                identifiers.add(gid.getIdentifier());
+            } catch (IllegalArgumentException iae) {
+                logger.fine("Invalid identifier: " + globalId);
+            }
+        }
+        Map<String, Dataset> datasets = new HashMap<>();
+        if (globalIdsByPid.isEmpty()) {
+            return datasets;
+        }
+        
+        List<Object[]> rows = em.createQuery("SELECT d.id, d.protocol, d.authority, d.identifier, d.storageIdentifier FROM Dataset d WHERE d.identifier IN :identifiers", Object[].class)
+                .setParameter("identifiers", identifiers)
+                .getResultList();
+        Map<Long, Dataset> datasetsById = new HashMap<>();
+        for (Object[] row : rows) {
+            String globalId = globalIdsByPid.get(row[1] + "|" + row[2] + "|" + row[3]);
+            if (globalId != null) {
+                Dataset dataset = new Dataset(true);
+                dataset.setId((Long) row[0]);
+                dataset.setProtocol((String) row[1]);
+                dataset.setAuthority((String) row[2]);
+                dataset.setIdentifier((String) row[3]);
+                dataset.setStorageIdentifier((String) row[4]);
+                datasets.put(globalId, dataset);
+                datasetsById.put(dataset.getId(), dataset);
+            }
+        }
+        
+        if (!datasetsById.isEmpty()) {
+            List<Object[]> designators = em.createQuery("SELECT a.dvObject.id, a.protocol, a.authority, a.identifier FROM AlternativePersistentIdentifier a WHERE a.storageLocationDesignator = true AND a.dvObject.id IN :ids", Object[].class)
+                    .setParameter("ids", datasetsById.keySet())
+                    .getResultList();
+            for (Object[] row : designators) {
+                Dataset dataset = datasetsById.get((Long) row[0]);
+                AlternativePersistentIdentifier altPid = new AlternativePersistentIdentifier();
+                altPid.setProtocol((String) row[1]);
+                altPid.setAuthority((String) row[2]);
+                altPid.setIdentifier((String) row[3]);
+                altPid.setStorageLocationDesignator(true);
+                altPid.setDvObject(dataset);
+                dataset.setAlternativePersistentIndentifiers(new HashSet<>(Set.of(altPid)));
+            }
+        }
+        return datasets;
+    }
+    
     /**
      * Instantiate dataset, and its components (DatasetVersions and FileMetadatas)
      * this method is used for object validation; if there are any invalid values
@@ -754,6 +754,10 @@ public final class DatasetVersionDifference {
         this.changedFileMetadata = changedFileMetadata;
     }
 
+    public List<FileMetadata> getChangedVariableMetadata() {
+        return changedVariableMetadata;
+    }
+
     public List<Object[]> getSummaryDataForNote() {
         return summaryDataForNote;
     }
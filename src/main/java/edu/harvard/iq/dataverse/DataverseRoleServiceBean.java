@@ -9,6 +9,7 @@ import edu.harvard.iq.dataverse.search.IndexAsync;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -46,8 +47,11 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     SolrIndexServiceBean solrIndexService;
     @EJB
     IndexAsync indexAsync;
+    @EJB
+    CacheFactoryBean cacheFactory;
 
     public DataverseRole save(DataverseRole aRole) {
+        cacheFactory.invalidatePermissions();
         if (aRole.getId() == null) {
             em.persist(aRole);
             /**
@@ -79,6 +83,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
         /**
          * @todo update permissionModificationTime here.
          */
+        cacheFactory.invalidatePermissions();
         if ( createIndex ) {
             indexAsync.indexRole(assignment);
         }
@@ -106,6 +111,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
         em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
             .setParameter("id", id)
             .executeUpdate();
+        cacheFactory.invalidatePermissions();
     }
 
     public List<DataverseRole> findByOwnerId(Long ownerId) {
@@ -142,6 +148,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
             em.refresh(role);
         }
         em.refresh(assignee);
+        cacheFactory.invalidatePermissions();
     }
 
     public void revoke(RoleAssignment ra) {
@@ -152,6 +159,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
         /**
          * @todo update permissionModificationTime here.
          */
+        cacheFactory.invalidatePermissions();
         indexAsync.indexRole(ra);
     }
 
@@ -170,6 +178,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 
             reindexSet.add(ra.getDefinitionPoint());
         }
+        cacheFactory.invalidatePermissions();
 
         indexAsync.indexRoles(reindexSet);
     }
@@ -0,0 +1,64 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * The number of downloads of a file or of a dataset on a day, i.e. the number
+ * of its guestbook responses that are not access requests. The downloads of
+ * the whole installation are counted under {@link #TOTAL}.
+ *
+ * The counts are kept up to date as the responses are saved (see
+ * {@link DownloadCountBuffer}), so that they don't have to be counted in the
+ * GuestbookResponse table, and can be rebuilt from it with
+ * {@link DownloadCountServiceBean#rebuild}. There is no foreign key to the
+ * DvObject table: the counts of deleted objects are simply no longer read.
+ */
+@Entity
+@Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"dvObjectId", "countDate"})})
+public class DownloadCount implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The {@link #getDvObjectId() dvObjectId} of the counts of all the
+     * downloads.
+     */
+    public static final long TOTAL = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long dvObjectId;
+
+    @Column(nullable = false)
+    private LocalDate countDate;
+
+    @Column(nullable = false)
+    private long downloadCount;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getDvObjectId() {
+        return dvObjectId;
+    }
+
+    public LocalDate getCountDate() {
+        return countDate;
+    }
+
+    public long getDownloadCount() {
+        return downloadCount;
+    }
+}
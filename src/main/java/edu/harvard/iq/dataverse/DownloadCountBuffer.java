@@ -0,0 +1,152 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Collects the downloads counted on this node and adds them to the
+ * {@link DownloadCount} rows in batches, once a minute, rather than updating
+ * the same few rows (the dataset's, and the total for the day) in the
+ * transaction of every download.
+ *
+ * The downloads not saved yet are included in the counts read on this node.
+ * They stay in the buffer until the transaction that saves them has
+ * committed, and are only then taken out of it. The downloads of a node that
+ * stops without being shut down are lost, until the counts are rebuilt from
+ * the guestbook responses.
+ */
+@Singleton
+public class DownloadCountBuffer {
+
+    private static final Logger logger = Logger.getLogger(DownloadCountBuffer.class.getCanonicalName());
+
+    /**
+     * The number of counts saved in a single statement.
+     */
+    static final int BATCH_SIZE = 500;
+
+    public record Key(long dvObjectId, LocalDate date) {
+    }
+
+    @EJB
+    DownloadCountServiceBean downloadCountService;
+
+    // the counts not saved yet, by object and day; the counts of an object are
+    // only changed within pending.compute() for that object
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<LocalDate, Long>> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Counts the download of a file, recorded by a guestbook response, for the
+     * file, its dataset and the total.
+     */
+    @Lock(READ)
+    public void add(GuestbookResponse guestbookResponse) {
+        Date responseTime = guestbookResponse.getResponseTime();
+        LocalDate date = (responseTime == null ? new Date() : responseTime).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        addPending(guestbookResponse.getDataFile().getId(), date, 1L);
+        addPending(guestbookResponse.getDataset().getId(), date, 1L);
+        addPending(DownloadCount.TOTAL, date, 1L);
+    }
+
+    private void addPending(long dvObjectId, LocalDate date, long count) {
+        pending.compute(dvObjectId, (id, counts) -> {
+            if (counts == null) {
+                counts = new ConcurrentHashMap<>();
+            }
+            // a count that drops to 0 is removed, and so are the counts of an
+            // object with none left
+            counts.merge(date, count, (old, added) -> old + added == 0 ? null : old + added);
+            return counts.isEmpty() ? null : counts;
+        });
+    }
+
+    /**
+     * @param before only count the downloads before this day; null to count
+     * them all
+     * @return the downloads of the object counted on this node that are not
+     * saved yet
+     */
+    @Lock(READ)
+    public long getPending(long dvObjectId, LocalDate before) {
+        Map<LocalDate, Long> counts = pending.get(dvObjectId);
+        if (counts == null) {
+            return 0;
+        }
+        long count = 0;
+        for (Map.Entry<LocalDate, Long> entry : counts.entrySet()) {
+            if (before == null || entry.getKey().isBefore(before)) {
+                count += entry.getValue();
+            }
+        }
+        return count;
+    }
+
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    @Lock(READ)
+    public void flushTimer() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Saves the pending counts. The counts of each batch are taken out of the
+     * buffer once the batch is saved; those of a batch that can't be saved
+     * stay in it, for the next attempt.
+     *
+     * @return the number of counts saved
+     */
+    int flush() {
+        // only one flush at a time, as the counts are taken out after they are saved
+        flushLock.lock();
+        try {
+            List<Map.Entry<Key, Long>> entries = new ArrayList<>();
+            pending.forEach((dvObjectId, counts) -> counts.forEach((date, count) ->
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(new Key(dvObjectId, date), count))));
+            if (entries.isEmpty()) {
+                return 0;
+            }
+
+            int saved = 0;
+            for (int start = 0; start < entries.size(); start += BATCH_SIZE) {
+                List<Map.Entry<Key, Long>> batch = entries.subList(start, Math.min(start + BATCH_SIZE, entries.size()));
+                try {
+                    downloadCountService.addDownloadCounts(batch);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to save " + (entries.size() - saved) + " download counts; will try again", e);
+                    break;
+                }
+                // Saved; downloads counted since the entries were read stay in
+                // the buffer, for the next flush.
+                for (Map.Entry<Key, Long> entry : batch) {
+                    addPending(entry.getKey().dvObjectId(), entry.getKey().date(), -entry.getValue());
+                }
+                saved += batch.size();
+            }
+            logger.fine("Saved " + saved + " download counts");
+            return saved;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
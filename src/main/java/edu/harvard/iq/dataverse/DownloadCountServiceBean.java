@@ -0,0 +1,159 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads and maintains the {@link DownloadCount} rows.
+ */
+@Stateless
+public class DownloadCountServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DownloadCountServiceBean.class.getCanonicalName());
+
+    // The responses are counted for the file, for the dataset, and in total,
+    // with a single scan of the responses: the file id is null in the rows
+    // of the dataset grouping set, and both are null in the total ones.
+    // (As in the counts before they were kept in their own table, responses
+    // without an event type are not counted; nor are those without a time.)
+    // A count saved by a node between the delete and the insert of a rebuild
+    // is replaced, since the responses it counts are counted again.
+    private static final String REBUILD_QUERY = "INSERT INTO downloadcount (dvobjectid, countdate, downloadcount) "
+            + "SELECT COALESCE(datafile_id, dataset_id, " + DownloadCount.TOTAL + "), countdate, COUNT(*) "
+            + "FROM (SELECT datafile_id, dataset_id, CAST(responsetime AS DATE) AS countdate "
+            + "FROM guestbookresponse WHERE eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "' AND responsetime IS NOT NULL";
+    private static final String REBUILD_GROUP_BY = ") r GROUP BY GROUPING SETS ((datafile_id, countdate), (dataset_id, countdate), (countdate))"
+            + " ON CONFLICT (dvobjectid, countdate) DO UPDATE SET downloadcount = EXCLUDED.downloadcount";
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    @EJB
+    DownloadCountBuffer downloadCountBuffer;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    /**
+     * @param dvObjectId the id of a file or a dataset, or
+     * {@link DownloadCount#TOTAL}
+     * @param before only count the downloads before this day; null to count
+     * them all
+     */
+    public long getDownloadCount(long dvObjectId, LocalDate before) {
+        Query query;
+        if (before == null) {
+            query = em.createNativeQuery("SELECT COALESCE(SUM(downloadcount), 0) FROM downloadcount WHERE dvobjectid = ?1");
+        } else {
+            query = em.createNativeQuery("SELECT COALESCE(SUM(downloadcount), 0) FROM downloadcount WHERE dvobjectid = ?1 AND countdate < ?2");
+            query.setParameter(2, Date.valueOf(before));
+        }
+        query.setParameter(1, dvObjectId);
+        return ((Number) query.getSingleResult()).longValue() + downloadCountBuffer.getPending(dvObjectId, before);
+    }
+
+    /**
+     * Adds the counts to the rows of their objects and days, creating the rows
+     * that don't exist yet.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void addDownloadCounts(List<Map.Entry<DownloadCountBuffer.Key, Long>> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO downloadcount (dvobjectid, countdate, downloadcount) VALUES ");
+        for (int i = 0; i < counts.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?").append(3 * i + 1).append(", ?").append(3 * i + 2).append(", ?").append(3 * i + 3).append(")");
+        }
+        sql.append(" ON CONFLICT (dvobjectid, countdate) DO UPDATE SET downloadcount = downloadcount.downloadcount + EXCLUDED.downloadcount");
+
+        Query query = em.createNativeQuery(sql.toString());
+        for (int i = 0; i < counts.size(); i++) {
+            Map.Entry<DownloadCountBuffer.Key, Long> count = counts.get(i);
+            query.setParameter(3 * i + 1, count.getKey().dvObjectId());
+            query.setParameter(3 * i + 2, Date.valueOf(count.getKey().date()));
+            query.setParameter(3 * i + 3, count.getValue());
+        }
+        query.executeUpdate();
+    }
+
+    /**
+     * Replaces the counts of the days in the range with the ones counted in
+     * the GuestbookResponse table.
+     *
+     * Downloads that are still waiting in the {@link DownloadCountBuffer} of a
+     * node are counted again when they are saved, so the counts of today may
+     * end up a little too high; those of the days before are exact.
+     *
+     * @param from the first day to rebuild; null to start with the first
+     * response
+     * @param to the last day to rebuild; null to end with the last response
+     * @return the number of counts created
+     */
+    public int rebuild(LocalDate from, LocalDate to) {
+        StringBuilder delete = new StringBuilder("DELETE FROM downloadcount WHERE TRUE");
+        StringBuilder insert = new StringBuilder(REBUILD_QUERY);
+        if (from != null) {
+            delete.append(" AND countdate >= ?1");
+            insert.append(" AND responsetime >= ?1");
+        }
+        if (to != null) {
+            delete.append(" AND countdate <= ?2");
+            insert.append(" AND responsetime < ?2");
+        }
+        insert.append(REBUILD_GROUP_BY);
+
+        Query deleteQuery = em.createNativeQuery(delete.toString());
+        Query insertQuery = em.createNativeQuery(insert.toString());
+        if (from != null) {
+            deleteQuery.setParameter(1, Date.valueOf(from));
+            insertQuery.setParameter(1, Timestamp.valueOf(from.atStartOfDay()));
+        }
+        if (to != null) {
+            deleteQuery.setParameter(2, Date.valueOf(to));
+            insertQuery.setParameter(2, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        }
+        int deleted = deleteQuery.executeUpdate();
+        int created = insertQuery.executeUpdate();
+        logger.info("Rebuilt the download counts from " + (from == null ? "the start" : from) + " to " + (to == null ? "today" : to)
+                + ": " + deleted + " counts replaced with " + created);
+        return created;
+    }
+
+    @Asynchronous
+    public void rebuildAsync(LocalDate from, LocalDate to) {
+        try {
+            rebuild(from, to);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to rebuild the download counts", e);
+        }
+    }
+
+    /**
+     * Rebuilds the counts of the day before, to correct those of the downloads
+     * whose transaction was rolled back, or that were lost on a node that
+     * stopped before saving them.
+     */
+    @Schedule(hour = "1", minute = "30", persistent = false)
+    public void reconcileTimer() {
+        if (systemConfig.isTimerServer()) {
+            LocalDate yesterday = LocalDate.now().minusDays(1);
+            rebuild(yesterday, yesterday);
+        }
+    }
+}
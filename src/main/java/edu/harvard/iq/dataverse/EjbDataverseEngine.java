@@ -345,8 +345,18 @@ public class EjbDataverseEngine {
             return;
         }
         
+        boolean permissionsChanged = false;
         for (Command commandLoop : called) {
            commandLoop.onSuccess(ctxt, r);
+           permissionsChanged |= PermissionServiceBean.isPermissionChangingCommand(commandLoop);
+        }
+        
+        // Discard the cached permission decisions, including any calculated
+        // while the command was running, from the state before the changes
+        // (again once the transaction is completed; see 
+        // CacheFactoryBean.invalidatePermissions()):
+        if (permissionsChanged) {
+            permissionService.invalidatePermissionCache();
         }
         
     }
@@ -35,7 +35,8 @@ import java.util.Comparator;
 @Table(indexes = {
         @Index(columnList = "guestbook_id"),
         @Index(columnList = "datafile_id"),
-        @Index(columnList = "dataset_id")
+        @Index(columnList = "dataset_id"),
+        @Index(columnList = "responsetime")
 })
 
 @NamedQueries(
@@ -0,0 +1,123 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import org.apache.commons.text.StringEscapeUtils;
+
+/**
+ * Writes guestbook responses as CSV, from two result sets that are read side
+ * by side: the responses, newest first, and the answers to the custom
+ * questions of the same responses, in the same order. Only the current row of
+ * each is held in memory, so the number of responses doesn't matter.
+ *
+ * The responses are expected in the columns of
+ * {@link GuestbookResponseServiceBean#streamResponsesAsCsv}'s query, and the
+ * answers as (guestbook response id, question, answer).
+ */
+class GuestbookResponseCsvWriter {
+
+    static final String HEADER = "Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n";
+    private static final String SEPARATOR = ",";
+    private static final String NEWLINE = "\n";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/d/yyyy");
+
+    private final Writer out;
+
+    GuestbookResponseCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the header and a line per response.
+     *
+     * @return the number of responses written
+     */
+    long write(ResultSet responses, ResultSet answers) throws SQLException, IOException {
+        out.write(HEADER);
+        long count = 0;
+        boolean moreAnswers = answers.next();
+        while (responses.next()) {
+            long responseId = responses.getLong(1);
+            writeResponse(responses);
+
+            // Answers of responses that weren't selected (e.g. without a
+            // file) come before the ones of the next selected response.
+            while (moreAnswers && answers.getLong(1) > responseId) {
+                moreAnswers = answers.next();
+            }
+            while (moreAnswers && answers.getLong(1) == responseId) {
+                out.write(SEPARATOR);
+                out.write(escape(answers.getString(2)));
+                out.write(SEPARATOR);
+                out.write(escape(answers.getString(3)));
+                moreAnswers = answers.next();
+            }
+            out.write(NEWLINE);
+            count++;
+        }
+        return count;
+    }
+
+    private void writeResponse(ResultSet response) throws SQLException, IOException {
+        // Guestbook name:
+        out.write(escape(response.getString(2)));
+        out.write(SEPARATOR);
+
+        // Dataset name:
+        out.write(escape(response.getString(18)));
+        out.write(SEPARATOR);
+
+        // Dataset persistent identifier:
+        out.write(formatPersistentIdentifier(response.getString(12), response.getString(13), response.getString(14)));
+        out.write(SEPARATOR);
+
+        Timestamp responseTime = response.getTimestamp(4);
+        out.write(responseTime == null ? "N/A" : DATE_FORMAT.format(responseTime.toLocalDateTime()));
+        out.write(SEPARATOR);
+
+        // type: (download, etc.)
+        out.write(escape(response.getString(5)));
+        out.write(SEPARATOR);
+
+        // file name:
+        out.write(escape(response.getString(6)));
+        out.write(SEPARATOR);
+
+        // file id (numeric):
+        long fileId = response.getLong(7);
+        if (!response.wasNull()) {
+            out.write(Long.toString(fileId));
+        }
+        out.write(SEPARATOR);
+
+        // persistent id of the file (if available):
+        out.write(formatPersistentIdentifier(response.getString(15), response.getString(16), response.getString(17)));
+        out.write(SEPARATOR);
+
+        // name, email, institution and position supplied in the guestbook response:
+        out.write(escape(response.getString(8)));
+        out.write(SEPARATOR);
+        out.write(escape(response.getString(9)));
+        out.write(SEPARATOR);
+        out.write(escape(response.getString(10)));
+        out.write(SEPARATOR);
+        out.write(escape(response.getString(11)));
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : StringEscapeUtils.escapeCsv(value);
+    }
+
+    static String formatPersistentIdentifier(String protocol, String authority, String identifier) {
+        // Note that the persistent id may be unavailable for this dvObject:
+        if (StringUtil.nonEmpty(protocol) && StringUtil.nonEmpty(authority) && StringUtil.nonEmpty(identifier)) {
+            return protocol + ":" + authority + "/" + identifier;
+        }
+        return "N/A";
+    }
+}
@@ -8,9 +8,17 @@ package edu.harvard.iq.dataverse;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.externaltools.ExternalTool;
-import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -21,6 +29,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -30,9 +40,8 @@ import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
-import jakarta.persistence.StoredProcedureQuery;
 import jakarta.persistence.TypedQuery;
-import org.apache.commons.text.StringEscapeUtils;
+import javax.sql.DataSource;
 /**
  *
  * @author skraffmiller
@@ -42,9 +51,6 @@ import org.apache.commons.text.StringEscapeUtils;
 public class GuestbookResponseServiceBean {
     private static final Logger logger = Logger.getLogger(GuestbookResponseServiceBean.class.getCanonicalName());
     
-    @EJB
-    DataverseServiceBean dataverseService;
-    
     // The query below is used for retrieving guestbook responses used to download 
     // the collected data, in CSV format, from the manage-guestbooks and 
     // guestbook-results pages. (for entire dataverses, and for the individual 
@@ -63,9 +69,15 @@ public class GuestbookResponseServiceBean {
                 + " and r.dataset_id = o.id "
                 + " and r.guestbook_id = g.id ";*/
     
-    private static final String BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV = "select r.id, g.name, o.id, r.responsetime, r.eventtype,"
+    // The dataset title is selected with each response, and the answers to 
+    // the custom questions are read with a query of their own, in the same order
+    // (see GuestbookResponseCsvWriter), so that neither has to be held in memory
+    // for the whole dataverse.
+    private static final String QUERY_STRING_FOR_DOWNLOAD_AS_CSV = "select r.id, g.name, o.id, r.responsetime, r.eventtype,"
                 + " m.label, r.dataFile_id, r.name, r.email, r.institution, r.position,"
-                + " o.protocol, o.authority, o.identifier, d.protocol, d.authority, d.identifier "
+                + " o.protocol, o.authority, o.identifier, d.protocol, d.authority, d.identifier,"
+                + " (select v.value from datasetfieldvalue v where v.datasetfield_id = (select id from datasetfield f where datasetfieldtype_id = 1 "
+                + " and datasetversion_id = (select max(id) from datasetversion where dataset_id = o.id)) limit 1) "
                 + "from guestbookresponse r, filemetadata m, dvobject o, guestbook g, dvobject d "
                 + "where "  
                 + "m.datasetversion_id = (select max(datasetversion_id) from filemetadata where datafile_id =r.datafile_id ) "
@@ -73,6 +85,15 @@ public class GuestbookResponseServiceBean {
                 + " and d.id = r.datafile_id "
                 + " and r.dataset_id = o.id "
                 + " and r.guestbook_id = g.id ";
+
+    private static final String QUERY_CUSTOM_QUESTION_ANSWERS_FOR_DOWNLOAD_AS_CSV = "select r.id, q.questionstring, a.response "
+                + "from customquestionresponse a, customquestion q, guestbookresponse r, dvobject o "
+                + "where q.id = a.customquestion_id "
+                + "and a.guestbookResponse_id = r.id "
+                + "and r.dataset_id = o.id ";
+
+    private static final int CSV_FETCH_SIZE = 5000;
+    private static final int CSV_BUFFER_SIZE = 256 * 1024;
     
     // And this query is used for retrieving guestbook responses for displaying 
     // on the guestbook-results.xhtml page (the info we show on the page is 
@@ -96,11 +117,18 @@ public class GuestbookResponseServiceBean {
                 + "and g.dataset_id = o.id ";
     
     
-    private static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MM/d/yyyy");
-    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    private DataSource dataSource;
+
+    @EJB
+    DownloadCountServiceBean downloadCountService;
+
+    @EJB
+    DownloadCountBuffer downloadCountBuffer;
+
     public List<GuestbookResponse> findAll() {
         return em.createQuery("select object(o) from GuestbookResponse as o order by o.responseTime desc", GuestbookResponse.class).getResultList();
     }
@@ -130,134 +158,79 @@ public class GuestbookResponseServiceBean {
        CSV format, both for individual guestbooks, and for entire dataverses
        (with guestbookId = null).
      */
-    private static final String SEPARATOR = ",";
-    private static final String NEWLINE = "\n";
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void streamResponsesByDataverseIdAndGuestbookId(OutputStream out, Long dataverseId, Long guestbookId) throws IOException {
-        
-        // Before we do anything else, create a map of all the custom question responses
-        // available for this dataverse (or, this individual guestbook within the
-        // dataverse; see the comment below, how it's saving us a metric f-ton
-        // of queries now) -- L.A. 
-        
-        Map<Integer, Object> customQandAs = mapCustomQuestionAnswersAsStrings(dataverseId, guestbookId);
-        Map<Integer, String> datasetTitles = mapDatasetTitles(dataverseId);
-                
-        List<Object[]> guestbookResults = getGuestbookResults( dataverseId,  guestbookId );
-        // the CSV header:
-        out.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-        for (Object[] result : guestbookResults) {
-            StringBuilder sb = convertGuestbookResponsesToCSV(customQandAs, datasetTitles, result);
-            out.write(sb.toString().getBytes());
-            out.flush();
-        }
+        streamResponsesAsCsv(out, dataverseId, guestbookId, null, null, false);
     }
-    
-    public List<Object[]> getGuestbookResults(Long dataverseId, Long guestbookId ){
-        
-        String queryString = BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV
-                + " and  o.owner_id = " 
-                + dataverseId.toString();
-        
+
+    /**
+     * Streams the guestbook responses of a dataverse, or of one of its
+     * guestbooks, as CSV, newest first. The responses and the answers to the
+     * custom questions are read through two database cursors side by side, a
+     * batch of rows at a time, and written as they are read, so the memory
+     * used doesn't depend on the number of responses.
+     *
+     * The method runs outside of the container transaction, on a connection of
+     * its own: the PostgreSQL driver only reads the results in batches when
+     * auto-commit is off.
+     *
+     * @param from the first day of the responses to include; null for no limit
+     * @param to the last day of the responses to include; null for no limit
+     * @param gzip whether to compress the CSV with gzip
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void streamResponsesAsCsv(OutputStream out, Long dataverseId, Long guestbookId, LocalDate from, LocalDate to, boolean gzip) throws IOException {
+        StringBuilder conditions = new StringBuilder(" and o.owner_id = ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(dataverseId);
         if (guestbookId != null) {
-            queryString+= (" and r.guestbook_id = " + guestbookId.toString());
-        }
-        
-        queryString += " ORDER by r.id DESC;";
-        logger.fine("stream responses query: " + queryString);
-        
-        return  em.createNativeQuery(queryString).getResultList();
-        
-    }
-    
-    public StringBuilder convertGuestbookResponsesToCSV ( Map<Integer, Object> customQandAs, Map<Integer, String> datasetTitles, Object[] result) throws IOException {
-
-            Integer guestbookResponseId = (Integer)result[0];
-            
-            StringBuilder sb = new StringBuilder();
-            
-            // Since we are formatting the output as comma-separated values, 
-            // we should go to the trouble of removing any commas from the 
-            // string fields, or the structure of the file will be broken. -- L.A.
-            
-            // Guestbook name: 
-            sb.append(StringEscapeUtils.escapeCsv((String)result[1]));
-            sb.append(SEPARATOR);
-
-            
-            // Dataset name: 
-            Integer datasetId = (Integer) result[2];
-            String datasetTitle = datasetTitles.get(datasetId);
-            sb.append(datasetTitle == null ? "" : StringEscapeUtils.escapeCsv(datasetTitle));
-            sb.append(SEPARATOR);
-            
-            // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[11], (String)result[12], (String)result[13]));
-            sb.append(SEPARATOR);
-            
-            if (result[3] != null) {
-                sb.append(DATE_FORMAT.format((Date) result[3]));
-            } else {
-                sb.append("N/A");
+            conditions.append(" and r.guestbook_id = ?");
+            parameters.add(guestbookId);
+        }
+        if (from != null) {
+            conditions.append(" and r.responsetime >= ?");
+            parameters.add(Timestamp.valueOf(from.atStartOfDay()));
+        }
+        if (to != null) {
+            conditions.append(" and r.responsetime < ?");
+            parameters.add(Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+        }
+        String responsesQuery = QUERY_STRING_FOR_DOWNLOAD_AS_CSV + conditions + " order by r.id desc";
+        String answersQuery = QUERY_CUSTOM_QUESTION_ANSWERS_FOR_DOWNLOAD_AS_CSV + conditions + " order by r.id desc, q.id";
+        logger.fine("stream responses query: " + responsesQuery);
+
+        OutputStream compressed = gzip ? new GZIPOutputStream(out, CSV_BUFFER_SIZE) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compressed, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement responses = prepareCsvQuery(connection, responsesQuery, parameters);
+                    PreparedStatement answers = prepareCsvQuery(connection, answersQuery, parameters);
+                    ResultSet responseRows = responses.executeQuery();
+                    ResultSet answerRows = answers.executeQuery()) {
+                long count = new GuestbookResponseCsvWriter(writer).write(responseRows, answerRows);
+                logger.fine("Streamed " + count + " guestbook responses for dataverse " + dataverseId);
+            } finally {
+                // only reads were made; end the transaction before the connection goes back to the pool
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
             }
-            sb.append(SEPARATOR);
-            
-            // type: (download, etc.)
-            sb.append(result[4]);
-            sb.append(SEPARATOR);
-
-            // file name: 
-            sb.append(StringEscapeUtils.escapeCsv((String)result[5]));
-            sb.append(SEPARATOR);
-
-            // file id (numeric):
-            sb.append(result[6] == null ? "" : result[6]);
-            sb.append(SEPARATOR);
-            
-            // persistent id of the file (if available):
-            // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[14], (String)result[15], (String)result[16]));
-            sb.append(SEPARATOR);
-            
-            // name supplied in the guestbook response: 
-            sb.append(result[7] == null ? "" : StringEscapeUtils.escapeCsv((String)result[7]));
-            sb.append(SEPARATOR);
-            
-            // email: 
-            sb.append(result[8] == null ? "" : StringEscapeUtils.escapeCsv((String)result[8]));           
-            sb.append(SEPARATOR);
-            
-            // institution:
-            sb.append(result[9] == null ? "" : StringEscapeUtils.escapeCsv((String)result[9]));
-            sb.append(SEPARATOR);
-            
-            // position: 
-            sb.append(result[10] == null ? "" : StringEscapeUtils.escapeCsv((String)result[10]));
-            
-            // Finally, custom questions and answers, if present:
-            
-            
-            if (customQandAs.containsKey(guestbookResponseId)) {
-                sb.append(customQandAs.get(guestbookResponseId)); 
-            } 
-
-            sb.append(NEWLINE);
-        return sb;
-        
+        } catch (SQLException e) {
+            throw new IOException("Failed to read the guestbook responses of dataverse " + dataverseId, e);
+        }
+        writer.flush();
+        if (gzip) {
+            ((GZIPOutputStream) compressed).finish();
+        }
     }
-    
-    
-    private String formatPersistentIdentifier(String protocol, String authority, String identifier) {
-        // Note that the persistent id may be unavailable for this dvObject:
-        if (StringUtil.nonEmpty(protocol) && StringUtil.nonEmpty(authority) && StringUtil.nonEmpty(identifier)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(protocol);
-            sb.append(":");
-            sb.append(authority);
-            sb.append("/");
-            sb.append(identifier);
-            return sb.toString();
-        } 
-        return "N/A";
+
+    private static PreparedStatement prepareCsvQuery(Connection connection, String query, List<Object> parameters) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(CSV_FETCH_SIZE);
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+        return statement;
     }
     
     /*
@@ -354,14 +327,10 @@ public class GuestbookResponseServiceBean {
        "normal" guestbook responses, retrieved from GuestbookResponse table. -- L.A. 
     */
     private Map<Integer, Object> mapCustomQuestionAnswersAsLists(Long dataverseId, Long guestbookId, Integer firstResponse, Integer lastResponse) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, false, firstResponse, lastResponse);
+        return selectCustomQuestionAnswers(dataverseId, guestbookId, firstResponse, lastResponse);
     }
     
-    public Map<Integer, Object> mapCustomQuestionAnswersAsStrings(Long dataverseId, Long guestbookId) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, true, null, null);
-    }
-    
-    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, boolean asString, Integer lastResponse, Integer firstResponse) {
+    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, Integer lastResponse, Integer firstResponse) {
         Map<Integer, Object> ret = new HashMap<>();
 
         int count = 0;
@@ -393,26 +362,14 @@ public class GuestbookResponseServiceBean {
             for (Object[] response : customResponses) {
                 Integer responseId = (Integer) response[2];
 
-                if (asString) {
-                    // as combined strings of comma-separated question and answer values
-                    //assuming the strings are only being created for writing out to csv which seems to be the case
-                    String qa = SEPARATOR + StringEscapeUtils.escapeCsv((String)response[0]) + SEPARATOR + (response[1] == null ? "" : StringEscapeUtils.escapeCsv((String)response[1]));                   
-                    if (ret.containsKey(responseId)) {
-                        ret.put(responseId, ret.get(responseId) + qa);
-                    } else {
-                        ret.put(responseId, qa);
-                    }
-                } else {
-                    // as a list of Object[]s - this is for display on the custom-responses page
-                    
-                    if (!ret.containsKey(responseId)) {
-                        ret.put(responseId, new ArrayList<>());
-                    }
-                    if(response[1] != null){
-                         response[1]=((String)response[1]).replaceAll("(\r\n|\n)", "<br />");
-                    }
-                    ((List) ret.get(responseId)).add(response);
+                // as a list of Object[]s - this is for display on the custom-responses page
+                if (!ret.containsKey(responseId)) {
+                    ret.put(responseId, new ArrayList<>());
+                }
+                if(response[1] != null){
+                     response[1]=((String)response[1]).replaceAll("(\r\n|\n)", "<br />");
                 }
+                ((List) ret.get(responseId)).add(response);
 
                 count++;
             }
@@ -902,6 +859,9 @@ public class GuestbookResponseServiceBean {
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void save(GuestbookResponse guestbookResponse) {
         em.persist(guestbookResponse);
+        if (guestbookResponse.getEventType() != null && !GuestbookResponse.ACCESS_REQUEST.equals(guestbookResponse.getEventType())) {
+            downloadCountBuffer.add(guestbookResponse);
+        }
     }
     
     
@@ -910,12 +870,15 @@ public class GuestbookResponseServiceBean {
      * is not of eventtype=='AccessRequest' is considered a download. This includes
      * actual 'Download's, downloads of 'Subset's, and use by 'Explore' tools and
      * previewers (where eventtype is the previewer name)
+     * The downloads are counted per file, dataset and day as the responses are 
+     * saved (see DownloadCountServiceBean), rather than with "SELECT COUNT()" 
+     * over the GuestbookResponse table, which was the slowest query on the 
+     * dataset and file pages of installations with a lot of download activity.
      */
         
     public Long getDownloadCountByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId + " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        return (Long) query.getSingleResult();
+        return dataFileId == null ? 0L : downloadCountService.getDownloadCount(dataFileId, null);
     }
     
     public Long getDownloadCountByDatasetId(Long datasetId) {
@@ -924,46 +887,11 @@ public class GuestbookResponseServiceBean {
     
     public Long getDownloadCountByDatasetId(Long datasetId, LocalDate date) {
         // dataset id is null, will return 0        
-        Query query;
-        if(date != null) {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }else {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId+ " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }
-        return (Long) query.getSingleResult();
+        return datasetId == null ? 0L : downloadCountService.getDownloadCount(datasetId, date);
     }    
 
     public Long getTotalDownloadCount() {
-        // dataset id is null, will return 0  
-        
-        // "SELECT COUNT(*)" is notoriously expensive in PostgresQL for large 
-        // tables. This makes this call fairly expensive for any installation 
-        // with a lot of download/access activity. (This "total download" metrics
-        // is always displayed when the homepage is loaded). 
-        // It is safe to say that no real life user will need this number to be
-        // precise down to the last few digits, and/or withing a second, 
-        // especially once that number is in the millions. The 
-        // solution implemented below relies on estimating the number. It is 
-        // very efficient, but also very PostgresQL specific - hence it is 
-        // defined as a custom database function. 
-        // An alternative solution would be to get the exact number every 
-        // hour or so, and cache it centrally for the rest of the application 
-        // somehow. -- L.A. 5.6
-        
-        
-        try {        
-            StoredProcedureQuery query = this.em.createNamedStoredProcedureQuery("GuestbookResponse.estimateGuestBookResponseTableSize");
-            query.execute();
-            Long totalCount = (Long) query.getOutputParameterValue(1);
-        
-            if (totalCount != null) {
-                return totalCount;
-            }
-        } catch (IllegalArgumentException iae) {
-            // Don't do anything, we'll fall back to using "SELECT COUNT()"
-        }
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o where eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"';");
-        return (Long) query.getSingleResult();
+        return downloadCountService.getDownloadCount(DownloadCount.TOTAL, null);
     }
     
     //End Metrics/download counts
@@ -973,24 +901,5 @@ public class GuestbookResponseServiceBean {
         query.setParameter("authenticatedUserId", user.getId());
         return query.getResultList();
     }
-        
-    public Map<Integer, String> mapDatasetTitles(Long dataverseId) {
-        Map<Integer, String> ret = new HashMap<>();
-
-        List<Object[]> titleResults = dataverseService.getDatasetTitlesWithinDataverse(dataverseId);
-
-        if (titleResults != null) {
-            for (Object[] titleObj : titleResults) {
-                Integer datasetId = (Integer) titleObj[1];
-                String datasetTitle = (String) titleObj[0];
-                
-                ret.put(datasetId, datasetTitle);
-
-            }
-        }
-
-        return ret;
-        
-    }
     
 }
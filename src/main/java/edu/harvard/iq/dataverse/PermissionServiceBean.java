@@ -13,11 +13,13 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import java.util.EnumSet;
+import java.util.function.Supplier;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.context.ContextNotActiveException;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import java.util.HashSet;
@@ -27,9 +29,27 @@ import jakarta.persistence.PersistenceContext;
 import static edu.harvard.iq.dataverse.engine.command.CommandHelper.CH;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
+import edu.harvard.iq.dataverse.engine.command.impl.AddRoleAssigneesToExplicitGroupCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.AssignRoleCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.CreateRoleCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.CuratePublishedDatasetVersionCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.DeaccessionDatasetVersionCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.DeleteExplicitGroupCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.DeleteRoleCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.MoveDatasetCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.MoveDataverseCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.PublishDatasetCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.RemoveRoleAssigneesFromExplicitGroupCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.RestrictFileCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.RevokeAllRolesCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.RevokeRoleCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.UpdateDatasetVersionCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.UpdateExplicitGroupCommand;
+import edu.harvard.iq.dataverse.engine.command.impl.UpdatePermissionRootCommand;
 import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
+import edu.harvard.iq.dataverse.util.cache.PermissionCacheUtil;
 import edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 
@@ -64,6 +84,29 @@ public class PermissionServiceBean {
                     .filter(Permission::requiresAuthenticatedUser)
                     .collect(Collectors.toList()));
 
+    /**
+     * Commands that change role assignments, group memberships, the
+     * permission hierarchy or which files are publicly downloadable; the
+     * cached permissions are discarded once they complete.
+     */
+    private static final Set<Class<? extends Command>> PERMISSION_CHANGING_COMMANDS = Set.of(
+            AssignRoleCommand.class,
+            RevokeRoleCommand.class,
+            RevokeAllRolesCommand.class,
+            CreateRoleCommand.class,
+            DeleteRoleCommand.class,
+            AddRoleAssigneesToExplicitGroupCommand.class,
+            RemoveRoleAssigneesFromExplicitGroupCommand.class,
+            UpdateExplicitGroupCommand.class,
+            DeleteExplicitGroupCommand.class,
+            UpdatePermissionRootCommand.class,
+            MoveDataverseCommand.class,
+            MoveDatasetCommand.class,
+            FinalizeDatasetPublicationCommand.class,
+            CuratePublishedDatasetVersionCommand.class,
+            DeaccessionDatasetVersionCommand.class,
+            RestrictFileCommand.class);
+
     @EJB
     BuiltinUserServiceBean userService;
 
@@ -100,6 +143,12 @@ public class PermissionServiceBean {
     @Inject
     DatasetVersionFilesServiceBean datasetVersionFilesServiceBean;
 
+    @EJB
+    CacheFactoryBean cacheFactory;
+
+    @Inject
+    RequestPermissionCache requestCache;
+
     /**
      * A request-level permission query (e.g includes IP ras).
      */
@@ -329,7 +378,7 @@ public class PermissionServiceBean {
             }
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
+        Set<RoleAssignee> ras = new HashSet<>(groupsFor(req, dvo));
         ras.add(user);
         return hasGroupPermissionsFor(ras, dvo, required);
     }
@@ -352,15 +401,13 @@ public class PermissionServiceBean {
             return true;
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
+        Set<RoleAssignee> ras = new HashSet<>(groupsFor(ra, dvo));
         ras.add(ra);
         return hasGroupPermissionsFor(ras, dvo, required);
     }
     
     private boolean hasGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> required) {
-        for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
-            required.removeAll(asmnt.getRole().permissions());
-        }
+        required.removeAll(rolePermissionsFor(ras, dvo));
         return required.isEmpty();
     }
 
@@ -380,7 +427,7 @@ public class PermissionServiceBean {
         Set<Permission> permissions = getInferredPermissions(dvo);
 
         // Add permissions gained from ras
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
+        Set<RoleAssignee> ras = new HashSet<>(groupsFor(req, dvo));
         ras.add(req.getUser());
         addGroupPermissionsFor(ras, dvo, permissions);
 
@@ -406,7 +453,7 @@ public class PermissionServiceBean {
 
         Set<Permission> permissions = getInferredPermissions(dvo);
 
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
+        Set<RoleAssignee> ras = new HashSet<>(groupsFor(ra, dvo));
         ras.add(ra);
         addGroupPermissionsFor(ras, dvo, permissions);
 
@@ -417,9 +464,77 @@ public class PermissionServiceBean {
     }
     
     private void addGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> permissions) {
-        for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
-            permissions.addAll(asmnt.getRole().permissions());
+        permissions.addAll(rolePermissionsFor(ras, dvo));
+    }
+
+    /**
+     * The permissions granted to {@code ras} over {@code dvo} by role
+     * assignments, memoized for the request and, if enabled, cached for the
+     * cluster; see {@link #invalidatePermissionCache()}.
+     */
+    private Set<Permission> rolePermissionsFor(Set<RoleAssignee> ras, DvObject dvo) {
+        Supplier<Set<Permission>> loader = () -> {
+            Set<Permission> permissions = EnumSet.noneOf(Permission.class);
+            for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
+                permissions.addAll(asmnt.getRole().permissions());
+            }
+            return permissions;
+        };
+        return cachedPermissions(PermissionCacheUtil.generateCacheKey("roles", dvo.getId(), ras), dvo, loader);
+    }
+
+    private Set<Permission> cachedPermissions(String key, DvObject dvo, Supplier<Set<Permission>> loader) {
+        if (dvo.getId() == null) {
+            return loader.get();
         }
+        try {
+            return requestCache.getPermissions(key, loader);
+        } catch (ContextNotActiveException e) {
+            // not in a request, e.g. in a thread started by the application
+            return loader.get();
+        }
+    }
+
+    private Set<Group> groupsFor(DataverseRequest req, DvObject dvo) {
+        if (dvo == null || dvo.getId() == null) {
+            return groupService.groupsFor(req, dvo);
+        }
+        String key = req.getUser().getIdentifier() + ":" + req.getSourceAddress() + ":" + dvo.getId();
+        try {
+            return requestCache.getGroups(key, () -> groupService.groupsFor(req, dvo));
+        } catch (ContextNotActiveException e) {
+            return groupService.groupsFor(req, dvo);
+        }
+    }
+
+    private Set<Group> groupsFor(RoleAssignee ra, DvObject dvo) {
+        if (dvo == null || dvo.getId() == null) {
+            return groupService.groupsFor(ra, dvo);
+        }
+        String key = ra.getIdentifier() + "::" + dvo.getId();
+        try {
+            return requestCache.getGroups(key, () -> groupService.groupsFor(ra, dvo));
+        } catch (ContextNotActiveException e) {
+            return groupService.groupsFor(ra, dvo);
+        }
+    }
+
+    /**
+     * Discards the cached permission decisions, on all the nodes, now and
+     * once the current transaction is completed. To be called whenever role
+     * assignments, group memberships, the permission hierarchy, or the
+     * released versions of the datasets change.
+     */
+    public void invalidatePermissionCache() {
+        cacheFactory.invalidatePermissions();
+    }
+
+    /**
+     * @return whether the permission cache must be invalidated once the
+     * command has completed
+     */
+    public static boolean isPermissionChangingCommand(Command<?> command) {
+        return PERMISSION_CHANGING_COMMANDS.contains(command.getClass());
     }
 
 
@@ -452,7 +567,11 @@ public class PermissionServiceBean {
             if (!df.isRestricted()) {
                 DatasetVersion releasedVersion = df.getOwner().getReleasedVersion();
                 if (releasedVersion != null) {
-                    return datasetVersionFilesServiceBean.isDataFilePresentInDatasetVersion(releasedVersion, df);
+                    // the contents of a released version only change when it is
+                    // curated or deaccessioned, which invalidates the cache
+                    String key = PermissionCacheUtil.generateCacheKey("downloadable:" + releasedVersion.getId(), df.getId(), null);
+                    return !cachedPermissions(key, df, () -> datasetVersionFilesServiceBean.isDataFilePresentInDatasetVersion(releasedVersion, df)
+                            ? EnumSet.of(Permission.DownloadFile) : EnumSet.noneOf(Permission.class)).isEmpty();
                 }
             }
         }
@@ -849,7 +968,7 @@ public class PermissionServiceBean {
         List<FileMetadata> fileMetadatas = datasetVersion.getFileMetadatas();
         for (FileMetadata fileMetadata : fileMetadatas) {
             DataFile dataFile = fileMetadata.getDataFile();
-            Set<RoleAssignee> roleAssignees = new HashSet<>(groupService.groupsFor(dataverseRequest, dataFile));
+            Set<RoleAssignee> roleAssignees = new HashSet<>(groupsFor(dataverseRequest, dataFile));
             roleAssignees.add(dataverseRequest.getUser());
             if (hasGroupPermissionsFor(roleAssignees, dataFile, EnumSet.of(Permission.DownloadFile))) {
                 return true;
@@ -0,0 +1,70 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
+import jakarta.ejb.EJB;
+import jakarta.enterprise.context.RequestScoped;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes the group memberships and permission decisions looked up by
+ * {@link PermissionServiceBean} for the duration of a request, in front of
+ * the optional cluster-wide cache in {@link CacheFactoryBean}. Everything
+ * memoized is discarded as soon as the permissions are invalidated on this
+ * node.
+ */
+@RequestScoped
+public class RequestPermissionCache {
+
+    @EJB
+    CacheFactoryBean cacheFactory;
+
+    private final Map<String, Set<Group>> groups = new HashMap<>();
+    private final Map<String, Set<Permission>> permissions = new HashMap<>();
+    private long invalidations = -1L;
+    private long epoch;
+
+    public Set<Group> getGroups(String key, Supplier<Set<Group>> loader) {
+        validate();
+        Set<Group> cached = groups.get(key);
+        if (cached == null) {
+            cached = loader.get();
+            groups.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * @return a copy of the permissions, memoized in the request, or cached
+     * in the cluster, or calculated by the loader
+     */
+    public Set<Permission> getPermissions(String key, Supplier<Set<Permission>> loader) {
+        validate();
+        Set<Permission> cached = permissions.get(key);
+        if (cached == null) {
+            cached = cacheFactory.getCachedPermissions(epoch, key);
+            if (cached == null) {
+                cached = EnumSet.noneOf(Permission.class);
+                cached.addAll(loader.get());
+                cacheFactory.cachePermissions(epoch, key, cached);
+            }
+            permissions.put(key, cached);
+        }
+        return EnumSet.copyOf(cached);
+    }
+
+    private void validate() {
+        long current = cacheFactory.getPermissionInvalidations();
+        if (current != invalidations) {
+            groups.clear();
+            permissions.clear();
+            invalidations = current;
+            epoch = cacheFactory.getPermissionEpoch();
+        }
+    }
+}
@@ -75,7 +75,9 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import java.io.InputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -165,6 +167,8 @@ public class Access extends AbstractApiBean {
         
     @EJB
     DataFileServiceBean dataFileService;
+    @Resource
+    ManagedExecutorService managedExecutor;
     @EJB 
     DatasetServiceBean datasetService; 
     @EJB
@@ -849,10 +853,14 @@ public class Access extends AbstractApiBean {
             public void write(OutputStream os) throws IOException,
                     WebApplicationException {
                 String fileIdParams[] = fileIds.split(",");
-                DataFileZipper zipper = null; 
+                List<DataFile> zipFiles = new ArrayList<>();
                 String fileManifest = "";
                 long sizeTotal = 0L;
                 
+                // All the requested files are looked up and checked for access 
+                // first, so that the files that are going to be zipped are known
+                // before any output is written, and can be opened ahead of time 
+                // by the zipper:
                 if (fileIdParams != null && fileIdParams.length > 0) {
                     logger.fine(fileIdParams.length + " tokens;");
                     for (int i = 0; i < fileIdParams.length; i++) {
@@ -878,79 +886,22 @@ public class Access extends AbstractApiBean {
                                         mdcLogService.logEntry(entry);
                                     }
                                     
-                                    if (zipper == null) {
-                                        // This is the first file we can serve - so we now know that we are going to be able 
-                                        // to produce some output.
-                                        zipper = new DataFileZipper(os);
-                                        zipper.setFileManifest(fileManifest);
-                                        response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
-                                        response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
-                                    }
-                                    
-                                    long size = 0L;
-                                    // is the original format requested, and is this a tabular datafile, with a preserved original?
-                                    if (getOriginal 
-                                            && file.isTabularData() 
-                                            && !StringUtil.isEmpty(file.getDataTable().getOriginalFileFormat())) {
-                                        //This size check is probably fairly inefficient as we have to get all the AccessObjects
-                                        //We do this again inside the zipper. I don't think there is a better solution
-                                        //without doing a large deal of rewriting or architecture redo.
-                                        //The previous size checks for non-original download is still quick.
-                                        //-MAD 4.9.2
-                                        // OK, here's the better solution: we now store the size of the original file in 
-                                        // the database (in DataTable), so we get it for free. 
-                                        // However, there may still be legacy datatables for which the size is not saved. 
-                                        // so the "inefficient" code is kept, below, as a fallback solution. 
-                                        // -- L.A., 4.10
-                                        
-                                        if (file.getDataTable().getOriginalFileSize() != null) {
-                                            size = file.getDataTable().getOriginalFileSize();
-                                        } else {
-                                            DataAccessRequest daReq = new DataAccessRequest();
-                                            StorageIO<DataFile> storageIO = DataAccess.getStorageIO(file, daReq);
-                                            storageIO.open();
-                                            size = storageIO.getAuxObjectSize(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
-
-                                            // save it permanently: 
-                                            file.getDataTable().setOriginalFileSize(size);
-                                            fileService.saveDataTable(file.getDataTable());
-                                        }
-                                        if (size == 0L){
-                                            throw new IOException("Invalid file size or accessObject when checking limits of zip file");
-                                        }
-                                    } else {
-                                        size = file.getFilesize();
-                                    }
-                                    if (sizeTotal + size < zipDownloadSizeLimit) {
-                                        sizeTotal += zipper.addFileToZipStream(file, getOriginal);
-                                    } else {
-                                        String fileName = file.getFileMetadata().getLabel();
-                                        String mimeType = file.getContentType();
-                                        
-                                        zipper.addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + zipDownloadSizeLimit + " bytes.\r\n");
-                                    }
+                                    zipFiles.add(file);
                                 } else { 
                                     boolean embargoed = FileUtil.isActivelyEmbargoed(file);
                                     boolean retentionExpired = FileUtil.isRetentionExpired(file);
                                     if (file.isRestricted() || embargoed || retentionExpired) {
-                                        if (zipper == null) {
-                                            fileManifest = fileManifest + file.getFileMetadata().getLabel() + " IS "
-                                                    + (embargoed ? "EMBARGOED" : retentionExpired ? "RETENTIONEXPIRED" : "RESTRICTED")
-                                                    + " AND CANNOT BE DOWNLOADED\r\n";
-                                        } else {
-                                            zipper.addToManifest(file.getFileMetadata().getLabel() + " IS "
-                                                    + (embargoed ? "EMBARGOED" : retentionExpired ? "RETENTIONEXPIRED" : "RESTRICTED")
-                                                    + " AND CANNOT BE DOWNLOADED\r\n");
-                                        }
+                                        fileManifest = fileManifest + file.getFileMetadata().getLabel() + " IS "
+                                                + (embargoed ? "EMBARGOED" : retentionExpired ? "RETENTIONEXPIRED" : "RESTRICTED")
+                                                + " AND CANNOT BE DOWNLOADED\r\n";
                                     } else {
                                         fileId = null;
                                     }
                                 }
                             
                             } if (null == fileId) {
-                                // As of now this errors out.
-                                // This is bad because the user ends up with a broken zip and manifest
-                                // This is good in that the zip ends early so the user does not wait for the results
+                                // Since no output has been written yet, the 
+                                // user gets a proper error instead of a broken zip.
                                 String errorMessage = "Datafile " + fileId + ": no such object available";
                                 throw new NotFoundException(errorMessage);
                             }
@@ -960,8 +911,8 @@ public class Access extends AbstractApiBean {
                     throw new BadRequestException();
                 }
 
-                if (zipper == null) {
-                    // If the DataFileZipper object is still NULL, it means that 
+                if (zipFiles.isEmpty()) {
+                    // If there are no files to zip, it means that 
                     // there were file ids supplied - but none of the corresponding 
                     // files were accessible for this user. 
                     // In which casew we don't bother generating any output, and 
@@ -969,6 +920,47 @@ public class Access extends AbstractApiBean {
                     throw new ForbiddenException();
                 }
 
+                // The size limit is applied before any of the files are 
+                // opened, so that only the files that are going to be zipped 
+                // are prefetched by the zipper:
+                long[] sizes = new long[zipFiles.size()];
+                boolean[] withinLimit = new boolean[zipFiles.size()];
+                List<DataFile> filesWithinLimit = new ArrayList<>();
+                long plannedSizeTotal = 0L;
+                for (int i = 0; i < zipFiles.size(); i++) {
+                    sizes[i] = getZipEntrySize(zipFiles.get(i), getOriginal);
+                    if (plannedSizeTotal + sizes[i] < zipDownloadSizeLimit) {
+                        plannedSizeTotal += sizes[i];
+                        withinLimit[i] = true;
+                        filesWithinLimit.add(zipFiles.get(i));
+                    }
+                }
+
+                DataFileZipper zipper = new DataFileZipper(os);
+                zipper.setFileManifest(fileManifest);
+                response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
+                response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
+                zipper.setPrefetchFiles(filesWithinLimit, getOriginal, managedExecutor);
+
+                try {
+                    for (int i = 0; i < zipFiles.size(); i++) {
+                        DataFile file = zipFiles.get(i);
+                        // checked again with the bytes actually written so 
+                        // far, which include the variable headers of the 
+                        // tabular files:
+                        if (withinLimit[i] && sizeTotal + sizes[i] < zipDownloadSizeLimit) {
+                            sizeTotal += zipper.addFileToZipStream(file, getOriginal);
+                        } else {
+                            String fileName = file.getFileMetadata().getLabel();
+                            String mimeType = file.getContentType();
+
+                            zipper.addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + zipDownloadSizeLimit + " bytes.\r\n");
+                        }
+                    }
+                } finally {
+                    zipper.cancelPrefetch();
+                }
+
                 // This will add the generated File Manifest to the zipped output, 
                 // then flush and close the stream:
                 zipper.finalizeZipStream();
@@ -980,6 +972,47 @@ public class Access extends AbstractApiBean {
         return Response.ok(stream).build();
     }
     
+    /**
+     * @return the size of the file, or of its saved original, as it is going 
+     * to be counted towards the size limit of a zipped download
+     */
+    private long getZipEntrySize(DataFile file, boolean getOriginal) throws IOException {
+        // is the original format requested, and is this a tabular datafile, with a preserved original?
+        if (getOriginal 
+                && file.isTabularData() 
+                && !StringUtil.isEmpty(file.getDataTable().getOriginalFileFormat())) {
+            //This size check is probably fairly inefficient as we have to get all the AccessObjects
+            //We do this again inside the zipper. I don't think there is a better solution
+            //without doing a large deal of rewriting or architecture redo.
+            //The previous size checks for non-original download is still quick.
+            //-MAD 4.9.2
+            // OK, here's the better solution: we now store the size of the original file in 
+            // the database (in DataTable), so we get it for free. 
+            // However, there may still be legacy datatables for which the size is not saved. 
+            // so the "inefficient" code is kept, below, as a fallback solution. 
+            // -- L.A., 4.10
+
+            long size;
+            if (file.getDataTable().getOriginalFileSize() != null) {
+                size = file.getDataTable().getOriginalFileSize();
+            } else {
+                DataAccessRequest daReq = new DataAccessRequest();
+                StorageIO<DataFile> storageIO = DataAccess.getStorageIO(file, daReq);
+                storageIO.open();
+                size = storageIO.getAuxObjectSize(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
+
+                // save it permanently: 
+                file.getDataTable().setOriginalFileSize(size);
+                fileService.saveDataTable(file.getDataTable());
+            }
+            if (size == 0L){
+                throw new IOException("Invalid file size or accessObject when checking limits of zip file");
+            }
+            return size;
+        }
+        return file.getFilesize();
+    }
+    
     /* 
      * Geting rid of the tempPreview API - it's always been a big, fat hack. 
      * the edit files page is now using the Base64 image strings in the preview 
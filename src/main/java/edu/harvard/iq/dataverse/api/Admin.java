@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DataverseSession;
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.DownloadCountServiceBean;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.api.auth.AuthRequired;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
@@ -65,6 +66,8 @@ import static edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder.jsonObjectB
 
 import java.io.InputStream;
 import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
@@ -104,6 +107,7 @@ import edu.harvard.iq.dataverse.userdata.UserListMaker;
 import edu.harvard.iq.dataverse.userdata.UserListResult;
 import edu.harvard.iq.dataverse.util.ArchiverUtil;
 import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.ChecksumCalculator;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.URLTokenUtil;
@@ -118,7 +122,12 @@ import static edu.harvard.iq.dataverse.util.json.JsonPrinter.rolesToJson;
 import static edu.harvard.iq.dataverse.util.json.JsonPrinter.toJsonArray;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import jakarta.inject.Inject;
 import jakarta.json.JsonArray;
 import jakarta.persistence.Query;
@@ -176,6 +185,8 @@ public class Admin extends AbstractApiBean {
     BannerMessageServiceBean bannerMessageService;
     @EJB
     TemplateServiceBean templateService;
+    @EJB
+    DownloadCountServiceBean downloadCountService;
 
     // Make the session available
     @Inject
@@ -1235,52 +1246,153 @@ public class Admin extends AbstractApiBean {
                 }
                 
                 os.write("{\"dataFiles\": [\n".getBytes());
-                
-                boolean wroteObject = false;
-                for (DataFile dataFile : dataset.getFiles()) {
-                    // Potentially, there's a godzillion datasets in this Dataverse. 
-                    // This is why we go through the list of ids here, and instantiate 
-                    // only one dataset at a time. 
-                    boolean success = false;
-                    boolean constraintViolationDetected = false;
-                     
-                    JsonObjectBuilder output = Json.createObjectBuilder();
-                    output.add("datafileId", dataFile.getId());
-                    output.add("storageIdentifier", dataFile.getStorageIdentifier());
 
-                    
-                    try {
-                        FileUtil.validateDataFileChecksum(dataFile);
-                        success = true;
-                    } catch (IOException ex) {
-                        output.add("status", "invalid");
-                        output.add("errorMessage", ex.getMessage());
-                    }
-                    
-                    if (success) {
-                        output.add("status", "valid");
-                    } 
-                    
-                    // write it out:
-                    
-                    if (wroteObject) {
-                        os.write(",\n".getBytes());
-                    }
+                // The files are validated on a pool of worker threads, and 
+                // the results are written out in the order of the files 
+                // in the dataset, as they become available:
+                int workers = Math.max(JvmSettings.CHECKSUM_VALIDATION_WORKERS.lookupOptional(Integer.class).orElse(4), 1);
+                long startTime = System.currentTimeMillis();
+                long bytesRead = 0;
+                int validFiles = 0;
+                int invalidFiles = 0;
+
+                // The files are opened here, on the request thread, and the 
+                // workers are only given the streams to read, so that they 
+                // don't touch the entities. No more than two files per worker 
+                // are open at a time, ahead of the one written out next.
+                List<DataFile> dataFiles = dataset.getFiles();
+                List<InputStream> streams = new ArrayList<>(Collections.nCopies(dataFiles.size(), null));
+                List<Future<ChecksumCalculator>> checksums = new ArrayList<>(Collections.nCopies(dataFiles.size(), null));
+                int opened = 0;
+
+                ExecutorService executor = Executors.newFixedThreadPool(workers);
+                try {
+                    boolean wroteObject = false;
+                    for (int i = 0; i < dataFiles.size(); i++) {
+                        while (opened < dataFiles.size() && opened < i + 2 * workers) {
+                            InputStream in = openForChecksumValidation(dataFiles.get(opened));
+                            if (in != null) {
+                                DataFile.ChecksumType checksumType = dataFiles.get(opened).getChecksumType();
+                                streams.set(opened, in);
+                                checksums.set(opened, executor.submit(() -> {
+                                    try (in) {
+                                        return new ChecksumCalculator(checksumType).update(in);
+                                    }
+                                }));
+                            }
+                            opened++;
+                        }
+                        JsonObject output = checkDataFileChecksum(dataFiles.get(i), checksums.get(i));
+                        streams.set(i, null);
+                        checksums.set(i, null);
+                        if ("valid".equals(output.getString("status"))) {
+                            validFiles++;
+                            bytesRead += output.getJsonNumber("bytesRead").longValue();
+                        } else {
+                            invalidFiles++;
+                        }
 
-                    os.write(output.build().toString().getBytes("UTF8"));
-                    
-                    if (!wroteObject) {
-                        wroteObject = true;
+                        // write it out:
+
+                        if (wroteObject) {
+                            os.write(",\n".getBytes());
+                        }
+
+                        os.write(output.toString().getBytes("UTF8"));
+                        os.flush();
+
+                        if (!wroteObject) {
+                            wroteObject = true;
+                        }
                     }
+                } finally {
+                    executor.shutdownNow();
+                    // the streams of the files that were not validated, if 
+                    // the output was interrupted:
+                    streams.forEach(IOUtils::closeQuietly);
                 }
-                
-                os.write("\n]\n}\n".getBytes());
+
+                long elapsedTime = Math.max(System.currentTimeMillis() - startTime, 1);
+                JsonObjectBuilder metrics = Json.createObjectBuilder()
+                        .add("workers", workers)
+                        .add("validFiles", validFiles)
+                        .add("invalidFiles", invalidFiles)
+                        .add("bytesRead", bytesRead)
+                        .add("elapsedMillis", elapsedTime)
+                        .add("bytesPerSecond", bytesRead * 1000 / elapsedTime);
+                os.write("\n],\n\"metrics\": ".getBytes());
+                os.write(metrics.build().toString().getBytes("UTF8"));
+                os.write("\n}\n".getBytes());
             }
             
         };
         return Response.ok(stream).build();
     }
 
+    /**
+     * Opens the file (the saved original, for an ingested tabular file), for
+     * its checksum to be calculated by a worker.
+     *
+     * @return null if the file can't be opened here; it is then validated by
+     * {@link #checkDataFileChecksum}, on the request thread
+     */
+    private static InputStream openForChecksumValidation(DataFile dataFile) {
+        if (dataFile.getChecksumType() == null) {
+            return null;
+        }
+        try {
+            return FileUtil.getOriginalFileInputStream(dataFile.getStorageIO(), dataFile.isTabularData());
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.FINE, "Failed to open datafile " + dataFile.getId() + " for validation", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Compares the checksum calculated by a worker with the one of the file.
+     * A file that couldn't be read by a worker, or whose checksum doesn't
+     * match, is validated again with
+     * {@link FileUtil#validateDataFileChecksum(DataFile)}, which retries the
+     * read, fixes the files that can be fixed, and reports the reason a file
+     * is invalid.
+     */
+    private static JsonObject checkDataFileChecksum(DataFile dataFile, Future<ChecksumCalculator> checksum) throws IOException {
+        JsonObjectBuilder output = Json.createObjectBuilder();
+        output.add("datafileId", dataFile.getId());
+        output.add("storageIdentifier", dataFile.getStorageIdentifier());
+
+        ChecksumCalculator calculator = null;
+        if (checksum != null) {
+            try {
+                calculator = checksum.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while validating the files", ie);
+            } catch (ExecutionException ee) {
+                logger.log(Level.FINE, "Failed to calculate the checksum of datafile " + dataFile.getId(), ee.getCause());
+            }
+        }
+
+        try {
+            long bytesRead;
+            if (calculator != null && calculator.getChecksum(dataFile.getChecksumType()).equals(dataFile.getChecksumValue())) {
+                bytesRead = calculator.getSize();
+            } else {
+                bytesRead = FileUtil.validateDataFileChecksum(dataFile);
+            }
+            output.add("status", "valid");
+            output.add("bytesRead", bytesRead);
+        } catch (IOException ex) {
+            output.add("status", "invalid");
+            output.add("errorMessage", ex.getMessage());
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed to validate the checksum of datafile " + dataFile.getId(), ex);
+            output.add("status", "invalid");
+            output.add("errorMessage", String.valueOf(ex.getMessage()));
+        }
+        return output.build();
+    }
+
 	@Path("assignments/assignees/{raIdtf: .*}")
 	@GET
 	public Response getAssignmentsFor(@PathParam("raIdtf") String raIdtf) {
@@ -1742,7 +1854,6 @@ public class Admin extends AbstractApiBean {
             if (rehashed.intValue() >= num)
                 break;
             InputStream in = null;
-            InputStream in2 = null;
             try {
                 if (df.isHarvested()) {
                     harvested++;
@@ -1764,24 +1875,13 @@ public class Admin extends AbstractApiBean {
                         }
                         if (in == null)
                             logger.warning("Cannot retrieve file.");
-                        String currentChecksum = FileUtil.calculateChecksum(in, df.getChecksumType());
+                        // calculate the current and the new hash with a single read of the file:
+                        ChecksumCalculator checksums = FileUtil.calculateChecksums(in, df.getChecksumType(), cType);
+                        String currentChecksum = checksums.getChecksum(df.getChecksumType());
                         if (currentChecksum.equals(df.getChecksumValue())) {
                             logger.fine("Current checksum for datafile: " + df.getFileMetadata().getLabel() + ", "
                                     + df.getIdentifier() + " is valid");
-                            // Need to reset so we don't get the same stream (StorageIO class inputstreams
-                            // are normally only used once)
-                            storage.setInputStream(null);
-                            storage.open(DataAccessOption.READ_ACCESS);
-                            if (!df.isTabularData()) {
-                                in2 = storage.getInputStream();
-                            } else {
-                                // if this is a tabular file, read the preserved original "auxiliary file"
-                                // instead:
-                                in2 = storage.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
-                            }
-                            if (in2 == null)
-                                logger.warning("Cannot retrieve file to calculate new checksum.");
-                            String newChecksum = FileUtil.calculateChecksum(in2, cType);
+                            String newChecksum = checksums.getChecksum(cType);
 
                             df.setChecksumType(cType);
                             df.setChecksumValue(newChecksum);
@@ -1807,7 +1907,6 @@ public class Admin extends AbstractApiBean {
 
             } finally {
                 IOUtils.closeQuietly(in);
-                IOUtils.closeQuietly(in2);
             }
         }
         logger.info("Final Results:");
@@ -2122,6 +2221,26 @@ public class Admin extends AbstractApiBean {
         return ok("metric cache " + name + " cleared.");
     }
 
+    /**
+     * Rebuilds the download counts from the guestbook responses, in the
+     * background, for all the days or for the days from and/or to the ones
+     * given (inclusive, as YYYY-MM-DD).
+     */
+    @POST
+    @Path("/downloadCounts/rebuild")
+    public Response rebuildDownloadCounts(@QueryParam("from") String fromDate, @QueryParam("to") String toDate) {
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = fromDate == null ? null : LocalDate.parse(fromDate);
+            to = toDate == null ? null : LocalDate.parse(toDate);
+        } catch (DateTimeParseException e) {
+            return error(Status.BAD_REQUEST, "The from and to dates must be in the YYYY-MM-DD format");
+        }
+        downloadCountService.rebuildAsync(from, to);
+        return ok("Rebuild of the download counts started; see the server log for the result.");
+    }
+
     @GET
 	@AuthRequired
     @Path("/dataverse/{alias}/addRoleAssignmentsToChildren")
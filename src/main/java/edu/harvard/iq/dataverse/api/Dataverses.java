@@ -66,6 +66,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.stream.Collectors;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.ws.rs.WebApplicationException;
@@ -1355,7 +1357,8 @@ public class Dataverses extends AbstractApiBean {
     @AuthRequired
     @Path("{identifier}/guestbookResponses/")
     public Response getGuestbookResponsesByDataverse(@Context ContainerRequestContext crc, @PathParam("identifier") String dvIdtf,
-            @QueryParam("guestbookId") Long gbId, @Context HttpServletResponse response) {
+            @QueryParam("guestbookId") Long gbId, @QueryParam("from") String fromDate, @QueryParam("to") String toDate,
+            @QueryParam("gzip") boolean gzip, @Context HttpServletResponse response) {
 
         Dataverse dv;
         try {
@@ -1373,23 +1376,28 @@ public class Dataverses extends AbstractApiBean {
             return wr.getResponse();
         }
 
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = fromDate == null ? null : LocalDate.parse(fromDate);
+            to = toDate == null ? null : LocalDate.parse(toDate);
+        } catch (DateTimeParseException e) {
+            return error(Status.BAD_REQUEST, "The from and to dates must be in the YYYY-MM-DD format");
+        }
+
         StreamingOutput stream = new StreamingOutput() {
 
             @Override
             public void write(OutputStream os) throws IOException,
                     WebApplicationException {
-
-                Map<Integer, Object> customQandAs = guestbookResponseService.mapCustomQuestionAnswersAsStrings(dv.getId(), gbId);
-                Map<Integer, String> datasetTitles = guestbookResponseService.mapDatasetTitles(dv.getId());
-
-                List<Object[]> guestbookResults = guestbookResponseService.getGuestbookResults(dv.getId(), gbId);
-                os.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-                for (Object[] result : guestbookResults) {
-                    StringBuilder sb = guestbookResponseService.convertGuestbookResponsesToCSV(customQandAs, datasetTitles, result);
-                    os.write(sb.toString().getBytes());
-                }
+                guestbookResponseService.streamResponsesAsCsv(os, dv.getId(), gbId, from, to, gzip);
             }
         };
+        if (gzip) {
+            return Response.ok(stream, "application/gzip")
+                    .header("Content-Disposition", "attachment; filename=\"" + dv.getAlias() + "_GuestbookResponses.csv.gz\"")
+                    .build();
+        }
         return Response.ok(stream).build();
     }
     
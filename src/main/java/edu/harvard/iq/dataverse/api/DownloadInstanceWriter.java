@@ -38,9 +38,11 @@ import java.io.FileInputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.inject.Inject;
@@ -68,6 +70,9 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
     GlobusServiceBean globusService;
 
     private static final Logger logger = Logger.getLogger(DownloadInstanceWriter.class.getCanonicalName());
+    // Limits the number of ranges (and thus the number of storage reads) 
+    // that a single request can ask for:
+    static final int MAX_RANGES = 100;
 
     @Override
     public boolean isWriteable(Class<?> clazz, Type type, Annotation[] annotation, MediaType mediaType) {
@@ -378,11 +383,11 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                                             numberOfLines++;
                                         }
                                         
-                                        tabularSubsetGenerator.subsetFile(storageIO.getInputStream(), 
+                                        tabularSubsetGenerator.subsetFile(storageIO, 
                                                 tempSubsetFile.getAbsolutePath(), 
                                                 variablePositionIndex, 
                                                 numberOfLines, 
-                                                "\t");
+                                                dataFile.getDataTable().getVarQuantity().intValue());
 
                                         if (tempSubsetFile.exists()) {
                                             FileInputStream subsetStream = new FileInputStream(tempSubsetFile);
@@ -450,8 +455,42 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                 } 
 
-                try (InputStream instream = storageIO.getInputStream()) {
-                    if (instream != null) {
+                // User may have requested one or more ranges of bytes.
+                // Ranges are only supported when the size of the content 
+                // stream is known (i.e., it's not a dynamically generated 
+                // stream). 
+                List<Range> ranges = new ArrayList<>();
+                String rangeHeader = null;
+                HttpHeaders headers = di.getRequestHttpHeaders();
+                if (headers != null) {
+                    rangeHeader = headers.getHeaderString("Range");
+                }
+                long contentSize = getContentSize(storageIO);
+
+                if (contentSize > 0) {
+                    try {
+                        ranges = getRanges(rangeHeader, contentSize);
+                    } catch (Exception ex) {
+                        logger.fine("Exception caught processing Range header: " + ex.getLocalizedMessage());
+                        throw new ClientErrorException("Error due to Range header: " + ex.getLocalizedMessage(), Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
+                    }
+                    if (ranges.size() > 1 && !storageIO.isRangeReadSupported()) {
+                        // This storage driver can only read forward through
+                        // the file, so the ranges are served in ascending order:
+                        ranges = coalesceRanges(ranges);
+                    }
+                } else if (rangeHeader != null) {
+                    // Content size unknown, must be a dynamically
+                    // generated stream, such as a subsetting request.
+                    // We do NOT want to support rangeHeader requests on such streams:
+                    throw new NotFoundException("Range headers are not supported on dynamically-generated content, such as tabular subsetting.");
+                }
+
+                // For range requests, only the requested bytes are read from 
+                // storage (see StorageIO.getRangeInputStream()), so the full 
+                // input stream is not opened at all: 
+                try (InputStream instream = ranges.isEmpty() ? storageIO.getInputStream() : null) {
+                    if (instream != null || !ranges.isEmpty()) {
                         // headers:
 
                         String fileName = storageIO.getFileName();
@@ -463,146 +502,81 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                         // a space to + so we change it back to a space (%20).
                         String finalFileName = URLEncoder.encode(fileName, "UTF-8").replaceAll("\\+", "%20");
                         httpHeaders.add("Content-disposition", "attachment; filename=\"" + finalFileName + "\"");
-                        httpHeaders.add("Content-Type", mimeType + "; name=\"" + finalFileName + "\"");
-
-                        long contentSize;
-                        
-                        // User may have requested a rangeHeader of bytes.
-                        // Ranges are only supported when the size of the content 
-                        // stream is known (i.e., it's not a dynamically generated 
-                        // stream. 
-                        List<Range> ranges = new ArrayList<>();
-                        String rangeHeader = null;
-                        HttpHeaders headers = di.getRequestHttpHeaders();
-                        if (headers != null) {
-                            rangeHeader = headers.getHeaderString("Range");
-                        }
-                        long offset = 0;
-                        long leftToRead = -1L; 
-                        // Moving the "left to read" var. here; - since we may need 
-                        // to start counting our rangeHeader bytes outside the main .write()
-                        // loop, if it's a tabular file with a header. 
-                        
-                        if ((contentSize = getContentSize(storageIO)) > 0) {
-                            try {
-                                ranges = getRanges(rangeHeader, contentSize);
-                            } catch (Exception ex) {
-                                logger.fine("Exception caught processing Range header: " + ex.getLocalizedMessage());
-                                throw new ClientErrorException("Error due to Range header: " + ex.getLocalizedMessage(), Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE);
-                            }
-                            
-                            if (ranges.isEmpty()) {
-                                logger.fine("Content size (retrieved from the AccessObject): " + contentSize);
-                                httpHeaders.add("Content-Length", contentSize);
-                            } else  {
-                                // For now we only support a single rangeHeader.
-                                long rangeContentSize = ranges.get(0).getLength();
-                                logger.fine("Content size (Range header in use): " + rangeContentSize);
-                                httpHeaders.add("Content-Length", rangeContentSize);
-                                
-                                offset = ranges.get(0).getStart();
-                                leftToRead = rangeContentSize;
-                                httpHeaders.add("Accept-Ranges", "bytes");
-                                httpHeaders.add("Content-Range", "bytes "+offset+"-"+(offset+rangeContentSize-1)+"/"+contentSize);
 
+                        String boundary = null;
+                        List<byte[]> partHeaders = null;
+
+                        if (ranges.size() > 1) {
+                            // multipart/byteranges response (RFC 9110, 14.6):
+                            boundary = UUID.randomUUID().toString().replace("-", "");
+                            partHeaders = new ArrayList<>(ranges.size());
+                            long multipartSize = 0;
+                            for (Range range : ranges) {
+                                byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                                        + "Content-Type: " + mimeType + "\r\n"
+                                        + "Content-Range: bytes " + range.getStart() + "-" + range.getEnd() + "/" + contentSize + "\r\n"
+                                        + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                                partHeaders.add(partHeader);
+                                multipartSize += partHeader.length + range.getLength();
                             }
+                            multipartSize += multipartTrailer(boundary).length;
+                            logger.fine("Content size (" + ranges.size() + " ranges requested): " + multipartSize);
+                            httpHeaders.add("Content-Type", "multipart/byteranges; boundary=" + boundary);
+                            httpHeaders.add("Content-Length", multipartSize);
+                            httpHeaders.add("Accept-Ranges", "bytes");
                         } else {
-                            // Content size unknown, must be a dynamically
-                            // generated stream, such as a subsetting request.
-                            // We do NOT want to support rangeHeader requests on such streams:
-                            if (rangeHeader != null) {
-                                throw new NotFoundException("Range headers are not supported on dynamically-generated content, such as tabular subsetting.");
+                            httpHeaders.add("Content-Type", mimeType + "; name=\"" + finalFileName + "\"");
+                            if (ranges.isEmpty()) {
+                                if (contentSize > 0) {
+                                    logger.fine("Content size (retrieved from the AccessObject): " + contentSize);
+                                    httpHeaders.add("Content-Length", contentSize);
+                                }
+                            } else {
+                                Range range = ranges.get(0);
+                                logger.fine("Content size (Range header in use): " + range.getLength());
+                                httpHeaders.add("Content-Length", range.getLength());
+                                httpHeaders.add("Accept-Ranges", "bytes");
+                                httpHeaders.add("Content-Range", "bytes " + range.getStart() + "-" + range.getEnd() + "/" + contentSize);
                             }
-                            
                         }
 
                         // (the httpHeaders map must be modified *before* writing any
                         // data in the output stream!)
-                        int bufsize;
-                        byte[] bffr = new byte[4 * 8192];
-
-                        // Before writing out any bytes from the input stream, write
-                        // any extra content, such as the variable header for the 
-                        // subsettable files: 
-                        if (storageIO.getVarHeader() != null) {
-                            logger.fine("storageIO.getVarHeader().getBytes().length: " + storageIO.getVarHeader().getBytes().length);
-                            if (storageIO.getVarHeader().getBytes().length > 0) {
-                                // If a rangeHeader is not being requested, let's call that the normal case.
-                                // Write the entire line of variable headers. Later, the rest of the file
-                                // will be written.
-                                if (ranges.isEmpty()) {
+
+                        if (ranges.isEmpty()) {
+                            // Before writing out any bytes from the input stream, write
+                            // any extra content, such as the variable header for the 
+                            // subsettable files: 
+                            if (storageIO.getVarHeader() != null) {
+                                logger.fine("storageIO.getVarHeader().getBytes().length: " + storageIO.getVarHeader().getBytes().length);
+                                if (storageIO.getVarHeader().getBytes().length > 0) {
                                     logger.fine("writing the entire variable header");
                                     outstream.write(storageIO.getVarHeader().getBytes());
-                                } else {
-                                    // Range requested. Since the output stream of a 
-                                    // tabular file is made up of the varHeader and the body of 
-                                    // the physical file, we should assume that the requested 
-                                    // rangeHeader may span any portion of the combined stream.
-                                    // Thus we may or may not have to write the header, or a 
-                                    // portion thereof. 
-                                    int headerLength = storageIO.getVarHeader().getBytes().length;
-                                    if (offset >= headerLength) {
-                                        // We can skip the entire header. 
-                                        // All we need to do is adjust the byte offset 
-                                        // in the physical file; the number of bytes
-                                        // left to write stays unchanged, since we haven't
-                                        // written anything.
-                                        logger.fine("Skipping the variable header completely.");
-                                        offset -= headerLength;
-                                    } else {
-                                        // We need to write some portion of the header; 
-                                        // Once we are done, we may or may not still have 
-                                        // some bytes left to write from the main physical file.
-                                        if (offset + leftToRead <= headerLength) {
-                                            // This is a more straightforward case - we just need to 
-                                            // write a portion of the header, and then we are done!
-                                            logger.fine("Writing this many bytes of the variable header line: " + leftToRead);
-                                            outstream.write(Arrays.copyOfRange(storageIO.getVarHeader().getBytes(), (int)offset, (int)offset + (int)leftToRead));
-                                            // set "left to read" to zero, indicating that we are done:
-                                            leftToRead = 0; 
-                                        } else {
-                                            // write the requested portion of the header:
-                                            logger.fine("Writing this many bytes of the variable header line: " + (headerLength - offset));
-                                            outstream.write(Arrays.copyOfRange(storageIO.getVarHeader().getBytes(), (int)offset, headerLength));
-                                            // and adjust the file offset and remaining number of bytes accordingly: 
-                                            leftToRead -= (headerLength - offset);
-                                            offset = 0;
-                                        }
-                                        
-                                    }
                                 }
                             }
-                        }
-
-                        // Dynamic streams, etc. Normal operation. No leftToRead.
-                        if (ranges.isEmpty()) {
+                            // Dynamic streams, etc. Normal operation.
                             logger.fine("Normal, non-range request of file id " + dataFile.getId());
+                            int bufsize;
+                            byte[] bffr = new byte[4 * 8192];
                             while ((bufsize = instream.read(bffr)) != -1) {
                                 outstream.write(bffr, 0, bufsize);
                             }
-                        } else if (leftToRead > 0) {
-                            // This is a rangeHeader request, and we still have bytes to read 
-                            // (for a tabular file, we may have already written enough
-                            // bytes from the variable header!)
-                            storageIO.setOffset(offset);
-                            // Thinking about it, we could just do instream.skip(offset) 
-                            // here... But I would like to have this offset functionality 
-                            // in StorageIO, for any future cases where we may not 
-                            // be able to do that on the stream directly (?) -- L.A.
-                            logger.fine("Range request of file id " + dataFile.getId());
-                            // Read a rangeHeader of bytes instead of the whole file. We'll count down as we write.
-                            // For now we only support a single rangeHeader.
-                            while ((bufsize = instream.read(bffr)) != -1) {
-                                if ((leftToRead -= bufsize) > 0) {
-                                    // Just do a normal write. Potentially lots to go. Don't break.
-                                    outstream.write(bffr, 0, bufsize);
-                                } else {
-                                    // Get those last bytes or bytes equal to bufsize. Last one. Then break.
-                                    outstream.write(bffr, 0, (int) leftToRead + bufsize);
-                                    break;
+                        } else {
+                            logger.fine("Range request of file id " + dataFile.getId() + " (" + ranges.size() + " ranges)");
+                            try {
+                                for (int i = 0; i < ranges.size(); i++) {
+                                    if (partHeaders != null) {
+                                        outstream.write(partHeaders.get(i));
+                                    }
+                                    writeRange(storageIO, ranges.get(i), outstream);
+                                }
+                                if (boundary != null) {
+                                    outstream.write(multipartTrailer(boundary));
                                 }
+                            } finally {
+                                // (if the driver had opened the main input stream)
+                                storageIO.closeInputStream();
                             }
-
                         }
 
                         logger.fine("di conversion param: " + di.getConversionParam() + ", value: " + di.getConversionParamValue());
@@ -744,7 +718,8 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
     }
 
     /**
-     * @param range "bytes 0-10" for example. Found in the "Range" HTTP header.
+     * @param range "bytes=0-10" or, for multiple ranges, "bytes=0-10,90-99" for
+     * example. Found in the "Range" HTTP header.
      * @param fileSize File size in bytes.
      * @throws RunTimeException on any problems processing the Range header.
      */
@@ -756,19 +731,15 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
         if (range != null) {
             logger.fine("Range header supplied: " + range);
 
-            // Technically this regex supports multiple ranges.
-            // Below we have a check to enforce a single range.
             if (!range.matches("^bytes=\\d*-\\d*(,\\d*-\\d*)*$")) {
                 throw new RuntimeException("The format is bytes=<range-start>-<range-end> where start and end are optional.");
             }
 
             // The 6 is to remove "bytes="
             String[] parts = range.substring(6).split(",");
-            if (parts.length > 1) {
-                // Only allow a single range.
-                throw new RuntimeException("Only one range is allowed.");
+            if (parts.length > MAX_RANGES) {
+                throw new RuntimeException("At most " + MAX_RANGES + " ranges are allowed.");
             }
-            // This loop is here in case we ever want to support multiple ranges.
             for (String part : parts) {
 
                 long start = getRangeStart(part);
@@ -797,6 +768,67 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
         return ranges;
     }
 
+    /**
+     * Sorts the ranges by their start, and merges the ones that overlap or
+     * are adjacent, so that they can be read in a single forward pass.
+     */
+    static List<Range> coalesceRanges(List<Range> ranges) {
+        List<Range> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(Range::getStart));
+        List<Range> coalesced = new ArrayList<>();
+        Range current = null;
+        for (Range range : sorted) {
+            if (current != null && range.getStart() <= current.getEnd() + 1) {
+                current = new Range(current.getStart(), Math.max(current.getEnd(), range.getEnd()));
+            } else {
+                if (current != null) {
+                    coalesced.add(current);
+                }
+                current = range;
+            }
+        }
+        if (current != null) {
+            coalesced.add(current);
+        }
+        return coalesced;
+    }
+
+    /**
+     * Writes one range of the content; i.e. the part of the variable header
+     * line of a tabular file (if any) that falls within the range, followed
+     * by the remaining bytes, read from the stored file.
+     */
+    private void writeRange(StorageIO<?> storageIO, Range range, OutputStream outstream) throws IOException {
+        long offset = range.getStart();
+        long leftToRead = range.getLength();
+
+        if (storageIO.getVarHeader() != null && storageIO.getVarHeader().getBytes().length > 0) {
+            byte[] varHeader = storageIO.getVarHeader().getBytes();
+            if (offset >= varHeader.length) {
+                // We can skip the entire header; all we need to do is adjust 
+                // the byte offset in the physical file.
+                logger.fine("Skipping the variable header completely.");
+                offset -= varHeader.length;
+            } else {
+                int headerBytes = (int) Math.min(varHeader.length - offset, leftToRead);
+                logger.fine("Writing this many bytes of the variable header line: " + headerBytes);
+                outstream.write(varHeader, (int) offset, headerBytes);
+                leftToRead -= headerBytes;
+                offset = 0;
+            }
+        }
+
+        if (leftToRead > 0) {
+            try (InputStream rangeStream = storageIO.getRangeInputStream(offset, leftToRead)) {
+                rangeStream.transferTo(outstream);
+            }
+        }
+    }
+
+    private static byte[] multipartTrailer(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
     /**
      * @return Return a positive long or -1 if start does not exist.
      */
@@ -31,6 +31,7 @@ import edu.harvard.iq.dataverse.search.IndexBatchServiceBean;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.IndexUtil;
+import edu.harvard.iq.dataverse.search.PartitionedReindexServiceBean;
 import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchFilesServiceBean;
@@ -58,6 +59,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
@@ -96,6 +98,8 @@ public class Index extends AbstractApiBean {
     DatasetFieldServiceBean datasetFieldService;
     @EJB
     SearchFilesServiceBean searchFilesService;
+    @EJB
+    PartitionedReindexServiceBean partitionedReindexService;
 
     public static String contentChanged = "contentChanged";
     public static String contentIndexed = "contentIndexed";
@@ -408,6 +412,63 @@ public class Index extends AbstractApiBean {
             return ok("Index Status Batch Job initiated, check log for job status.");
         }
     }
+
+    /**
+     * Reports the progress and throughput (Solr documents and datasets per
+     * second) of the dataset reindexing currently running, or of the last one
+     * that ran, started with "index all", "continue" or on a collection.
+     */
+    @GET
+    @Path("progress")
+    public Response indexProgress() {
+        JsonObjectBuilder progress = indexBatchService.getBatchIndexProgress();
+        if (progress == null) {
+            return error(Status.NOT_FOUND, "No datasets have been reindexed since the application was started.");
+        }
+        return ok(progress);
+    }
+
+    /**
+     * Starts a reindex of everything (or, with "skipIndexed", of what hasn't
+     * been indexed yet) in partitions that are indexed concurrently, on this
+     * node and on the other nodes of the cluster. The progress of each
+     * partition is saved, and an interrupted partition is resumed where it
+     * stopped.
+     */
+    @POST
+    @Path("partitions")
+    public Response startPartitionedReindex(@QueryParam("numPartitions") Integer numPartitions, @QueryParam("skipIndexed") boolean skipIndexed) {
+        int partitions = numPartitions != null ? numPartitions : 4;
+        if (partitions < 1) {
+            return error(Status.BAD_REQUEST, "numPartitions must be 1 or higher but was " + partitions);
+        }
+        if (partitionedReindexService.start(partitions, skipIndexed) == null) {
+            return error(Status.CONFLICT, "A partitioned reindex is already in progress. Cancel it first, or wait for it to finish.");
+        }
+        int started = partitionedReindexService.resumePartitions();
+        return ok(Json.createObjectBuilder()
+                .add("message", "Partitioned reindex started in " + partitions + " partitions, " + started + " of them on this node.")
+                .add("numPartitions", partitions)
+                .add("skipIndexed", skipIndexed));
+    }
+
+    @GET
+    @Path("partitions")
+    public Response getPartitionedReindexStatus() {
+        JsonObjectBuilder status = partitionedReindexService.getStatus();
+        if (status == null) {
+            return error(Status.NOT_FOUND, "No partitioned reindex has been started.");
+        }
+        return ok(status);
+    }
+
+    @DELETE
+    @Path("partitions")
+    public Response cancelPartitionedReindex() {
+        int cancelled = partitionedReindexService.cancel();
+        return ok(cancelled + " partition(s) cancelled. They will stop once they are done with the datasets they are indexing.");
+    }
+
      /**
      * Deletes "orphan" Solr documents (that don't match anything in the database).
      * @param sync - optional parameter, if set, then run the command 
@@ -0,0 +1,120 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable, in-memory index of the IP address ranges of all the IP groups,
+ * for finding the groups an address belongs to without querying the database.
+ * The ranges are sorted by their bottom address, along with the highest top
+ * address of all the ranges up to each one, so a lookup is a binary search
+ * followed by a scan over the ranges that may still contain the address.
+ *
+ * @see IpGroupsServiceBean#findAllIncludingIp(IpAddress)
+ */
+public class IpGroupIndex {
+
+    private final RangeIndex<IPv4Address> ipv4Index;
+    private final RangeIndex<IPv6Address> ipv6Index;
+
+    private IpGroupIndex(RangeIndex<IPv4Address> ipv4Index, RangeIndex<IPv6Address> ipv6Index) {
+        this.ipv4Index = ipv4Index;
+        this.ipv6Index = ipv6Index;
+    }
+
+    /**
+     * @param ranges the ranges to index; ranges with no (persisted) owner
+     * group are ignored.
+     */
+    public static IpGroupIndex build(Collection<? extends IpAddressRange> ranges) {
+        List<Entry<IPv4Address>> ipv4Entries = new ArrayList<>();
+        List<Entry<IPv6Address>> ipv6Entries = new ArrayList<>();
+        for (IpAddressRange range : ranges) {
+            if (range.getOwner() == null || range.getOwner().getId() == null) {
+                continue;
+            }
+            Long groupId = range.getOwner().getId();
+            if (range instanceof IPv4Range ipv4Range) {
+                ipv4Entries.add(new Entry<>(ipv4Range.getBottom(), ipv4Range.getTop(), groupId));
+            } else if (range instanceof IPv6Range ipv6Range) {
+                ipv6Entries.add(new Entry<>(ipv6Range.getBottom(), ipv6Range.getTop(), groupId));
+            }
+        }
+        return new IpGroupIndex(new RangeIndex<>(ipv4Entries), new RangeIndex<>(ipv6Entries));
+    }
+
+    /**
+     * @param ipa the address
+     * @return the ids of the groups with a range containing {@code ipa}.
+     */
+    public Set<Long> findGroupIdsContaining(IpAddress ipa) {
+        if (ipa instanceof IPv4Address ip4) {
+            return ipv4Index.findGroupIdsContaining(ip4);
+        } else if (ipa instanceof IPv6Address ip6) {
+            return ipv6Index.findGroupIdsContaining(ip6);
+        } else {
+            throw new IllegalArgumentException( "Unknown IpAddress type: " + ipa.getClass() + " (for IpAddress:" + ipa + ")" );
+        }
+    }
+
+    public int size() {
+        return ipv4Index.size() + ipv6Index.size();
+    }
+
+    private record Entry<A>(A bottom, A top, Long groupId) {}
+
+    private static class RangeIndex<A extends Comparable<A>> {
+
+        private final List<Entry<A>> entries;
+        // maxTops.get(i) is the highest top address of entries 0..i
+        private final List<A> maxTops;
+
+        RangeIndex(List<Entry<A>> unsortedEntries) {
+            entries = new ArrayList<>(unsortedEntries);
+            entries.sort(Comparator.comparing(Entry::bottom));
+            maxTops = new ArrayList<>(entries.size());
+            A maxTop = null;
+            for (Entry<A> entry : entries) {
+                if (maxTop == null || entry.top().compareTo(maxTop) > 0) {
+                    maxTop = entry.top();
+                }
+                maxTops.add(maxTop);
+            }
+        }
+
+        Set<Long> findGroupIdsContaining(A address) {
+            Set<Long> groupIds = new HashSet<>();
+            // the last range starting at, or before, the address:
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (entries.get(mid).bottom().compareTo(address) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            for (int i = high; i >= 0 && maxTops.get(i).compareTo(address) >= 0; i--) {
+                if (entries.get(i).top().compareTo(address) >= 0) {
+                    groupIds.add(entries.get(i).groupId());
+                }
+            }
+            return groupIds;
+        }
+
+        int size() {
+            return entries.size();
+        }
+    }
+}
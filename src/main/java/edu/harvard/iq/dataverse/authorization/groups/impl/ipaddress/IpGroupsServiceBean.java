@@ -3,19 +3,27 @@ package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
-import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
-import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Range;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import java.util.ArrayList;
 import java.util.HashSet;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 /**
  * Provides CRUD tools to efficiently manage IP groups in a Java EE container.
@@ -28,6 +36,19 @@ public class IpGroupsServiceBean {
     
     private static final Logger logger = Logger.getLogger(IpGroupsServiceBean.class.getName());
     
+    /**
+     * How often the range index of this node is checked against the IP groups
+     * version of the cluster, and rebuilt if the groups were changed on
+     * another node.
+     */
+    static final long VERSION_CHECK_INTERVAL_MILLIS = 1000L;
+    
+    /**
+     * The range index, as last built from the database. Replaced as a whole,
+     * never modified.
+     */
+    private static volatile IndexSnapshot index;
+    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
 	protected EntityManager em;
     
@@ -37,12 +58,25 @@ public class IpGroupsServiceBean {
     @EJB
     RoleAssigneeServiceBean roleAssigneeSvc;
     
+    @EJB
+    CacheFactoryBean cacheFactory;
+    
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    
     /**
      * Stores (inserts/updates) the passed IP group.
      * @param grp The group to store.
      * @return Managed version of the group. The provider might be un-set.
      */
     public IpGroup store( IpGroup grp ) {
+        IpGroup stored = doStore( grp );
+        em.flush();
+        invalidateIndex();
+        return stored;
+    }
+    
+    private IpGroup doStore( IpGroup grp ) {
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "ipCreate");
         if ( grp.getGroupProvider() != null ) {
             alr.setInfo( grp.getIdentifier());
@@ -97,26 +131,86 @@ public class IpGroupsServiceBean {
         return em.createNamedQuery("IpGroup.findAll", IpGroup.class).getResultList();
     }
     
+    /**
+     * Finds the groups with a range containing the passed address, using the
+     * in-memory range index rather than querying the ranges table.
+     * @param ipa the address
+     * @return the groups containing {@code ipa}
+     */
     public Set<IpGroup> findAllIncludingIp( IpAddress ipa ) {
-        if ( ipa instanceof IPv4Address ) {
-            IPv4Address ip4 = (IPv4Address) ipa;
-            List<IpGroup> groupList = em.createNamedQuery("IPv4Range.findGroupsContainingAddressAsLong", IpGroup.class)
-                    .setParameter("addressAsLong", ip4.toBigInteger()).getResultList();
-            return new HashSet<>(groupList);
-
-        } else if ( ipa instanceof IPv6Address ) {
-            IPv6Address ip6 = (IPv6Address) ipa;
-            long[] ip6arr = ip6.toLongArray();
-            List<IpGroup> groupList = em.createNamedQuery("IPv6Range.findGroupsContainingABCD", IpGroup.class)
-                    .setParameter("a", ip6arr[0])
-                    .setParameter("b", ip6arr[1])
-                    .setParameter("c", ip6arr[2])
-                    .setParameter("d", ip6arr[3])
-                    .getResultList();
-            return new HashSet<>(groupList);
-
+        Set<IpGroup> groups = new HashSet<>();
+        for ( Long groupId : getIndex().findGroupIdsContaining(ipa) ) {
+            IpGroup grp = em.find( IpGroup.class, groupId );
+            if ( grp != null ) {
+                groups.add( grp );
+            }
+        }
+        return groups;
+    }
+    
+    private IpGroupIndex getIndex() {
+        IndexSnapshot current = index;
+        long now = System.currentTimeMillis();
+        if ( current != null && now - current.checkedAt > VERSION_CHECK_INTERVAL_MILLIS ) {
+            if ( Objects.equals(cacheFactory.getIpGroupsVersion(), current.version) ) {
+                current.checkedAt = now;
+            } else {
+                current = null;
+            }
+        }
+        if ( current == null ) {
+            current = rebuildIndex();
+        }
+        return current.index;
+    }
+    
+    private IndexSnapshot rebuildIndex() {
+        // read the version first, so a change made while building is picked up by the next check
+        String version = cacheFactory.getIpGroupsVersion();
+        List<IpAddressRange> ranges = new ArrayList<>();
+        ranges.addAll( em.createNamedQuery("IPv4Range.findAll", IPv4Range.class).getResultList() );
+        ranges.addAll( em.createNamedQuery("IPv6Range.findAll", IPv6Range.class).getResultList() );
+        IndexSnapshot rebuilt = new IndexSnapshot( version, IpGroupIndex.build(ranges) );
+        index = rebuilt;
+        logger.fine(() -> "Rebuilt the IP group index with " + rebuilt.index.size() + " ranges");
+        return rebuilt;
+    }
+    
+    /**
+     * Discards the index of this node right away, since the current
+     * transaction may look up groups again, and on all nodes once the change
+     * is committed.
+     */
+    private void invalidateIndex() {
+        index = null;
+        if ( transactionRegistry != null && transactionRegistry.getTransactionKey() != null ) {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    index = null;
+                    if ( status == Status.STATUS_COMMITTED ) {
+                        cacheFactory.invalidateIpGroups();
+                    }
+                }
+            });
         } else {
-            throw new IllegalArgumentException( "Unknown IpAddress type: " + ipa.getClass() + " (for IpAddress:" + ipa + ")" );
+            cacheFactory.invalidateIpGroups();
+        }
+    }
+    
+    private static final class IndexSnapshot {
+        final String version;
+        final IpGroupIndex index;
+        volatile long checkedAt;
+        
+        IndexSnapshot( String version, IpGroupIndex index ) {
+            this.version = version;
+            this.index = index;
+            this.checkedAt = System.currentTimeMillis();
         }
     }
     
@@ -132,6 +226,8 @@ public class IpGroupsServiceBean {
         if ( roleAssigneeSvc.getAssignmentsFor(grp.getIdentifier()).isEmpty() ) {
             em.remove( grp );
             actionLogSvc.log(alr);
+            em.flush();
+            invalidateIndex();
             
         } else {
             String failReason = "Group " + grp.getAlias() + " has assignments and thus can't be deleted.";
@@ -15,6 +15,8 @@ import jakarta.persistence.Table;
  */
 @Table(indexes = {@Index(columnList="owner_id")})
 @NamedQueries({
+    @NamedQuery( name="IPv6Range.findAll",
+                query="SELECT r FROM IPv6Range r"),
     @NamedQuery( name="IPv6Range.findGroupsContainingABCD",
                 query="SELECT DISTINCT r.owner FROM IPv6Range r "
                     + "WHERE "
@@ -38,9 +38,30 @@ public class MailDomainGroupServiceBean {
     @Inject
     ActionLogServiceBean actionLogSvc;
     
+    /**
+     * How many users with a verified email address are remembered, so their addresses need not be looked up again.
+     */
+    static final int VERIFIED_EMAIL_CACHE_SIZE = 10000;
+    
+    /**
+     * Back-references are numbered across the whole pattern, so patterns using them cannot be combined.
+     */
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\([1-9]|k<)");
+    
     MailDomainGroupProvider provider;
     List<MailDomainGroup> simpleGroups = Collections.EMPTY_LIST;
     Map<MailDomainGroup, Pattern> regexGroups = new HashMap<>();
+    /** The simple groups by each of their domains. */
+    Map<String, Set<MailDomainGroup>> simpleGroupsByDomain = Collections.emptyMap();
+    /** Matches any domain that is matched by at least one of the regex groups, or null if it could not be built. */
+    Pattern anyRegexGroup;
+    /** The email address each user id was last found to have verified. */
+    final Map<Long, String> verifiedEmails = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > VERIFIED_EMAIL_CACHE_SIZE;
+        }
+    });
     
     @PostConstruct
     void setup() {
@@ -51,6 +72,8 @@ public class MailDomainGroupServiceBean {
     /**
      * Update the groups from the database.
      * This is done because regex compilation is an expensive operation and should be cached.
+     * The simple groups are indexed by their domains, and the patterns of all the regex groups are combined into
+     * a single one, so most domains can be ruled out without trying every group.
      */
     @Lock(LockType.WRITE)
     public void updateGroups() {
@@ -62,6 +85,28 @@ public class MailDomainGroupServiceBean {
                 mg -> mg,
                 mg -> Pattern.compile(mg.getEmailDomains().replace(";","|"))
             ));
+        
+        Map<String, Set<MailDomainGroup>> byDomain = new HashMap<>();
+        for (MailDomainGroup mg : this.simpleGroups) {
+            for (String domain : mg.getEmailDomainsAsList()) {
+                byDomain.computeIfAbsent(domain, d -> new HashSet<>()).add(mg);
+            }
+        }
+        this.simpleGroupsByDomain = byDomain;
+        this.anyRegexGroup = combine(this.regexGroups.values());
+        this.verifiedEmails.clear();
+    }
+    
+    /**
+     * @return A pattern matching whatever any of the passed patterns matches, or null if there is no such pattern.
+     */
+    static Pattern combine(Collection<Pattern> patterns) {
+        if (patterns.isEmpty() || patterns.stream().anyMatch(p -> BACK_REFERENCE.matcher(p.pattern()).find())) {
+            return null;
+        }
+        return Pattern.compile(patterns.stream()
+                                       .map(p -> "(?:" + p.pattern() + ")")
+                                       .collect(Collectors.joining("|")));
     }
     
     @Lock(LockType.READ)
@@ -78,7 +123,7 @@ public class MailDomainGroupServiceBean {
     public Set<MailDomainGroup> findAllWithDomain(AuthenticatedUser user) {
         
         // if the mail address is not verified, escape...
-        if (!confirmEmailSvc.hasVerifiedEmail(user)) {
+        if (!hasVerifiedEmail(user)) {
             return Collections.emptySet();
         }
         
@@ -89,21 +134,38 @@ public class MailDomainGroupServiceBean {
             // transform to lowercase, in case someone uses uppercase letters. (we store the comparison values in lowercase)
             String domain = oDomain.get().toLowerCase();
             
-            // scan simple groups (containing an exact match of the domain)
-            Set<MailDomainGroup> result = this.simpleGroups.stream()
-                                                           .filter(mg -> mg.getEmailDomainsAsList().contains(domain))
-                                                           .collect(Collectors.toSet());
-            // scan regex based groups (domain matching a regular expression)
-            result.addAll(this.regexGroups.keySet().stream()
-                                                   .filter(MailDomainGroup::isRegEx)
-                                                   .filter(mg -> regexGroups.get(mg).matcher(domain).matches())
-                                                   .collect(Collectors.toSet()));
+            // lookup simple groups (containing an exact match of the domain)
+            Set<MailDomainGroup> result = new HashSet<>(this.simpleGroupsByDomain.getOrDefault(domain, Collections.emptySet()));
+            // scan regex based groups (domain matching a regular expression), unless none of them can match
+            if (!this.regexGroups.isEmpty() && (this.anyRegexGroup == null || this.anyRegexGroup.matcher(domain).matches())) {
+                result.addAll(this.regexGroups.keySet().stream()
+                                                       .filter(MailDomainGroup::isRegEx)
+                                                       .filter(mg -> regexGroups.get(mg).matcher(domain).matches())
+                                                       .collect(Collectors.toSet()));
+            }
             return result;
             
         }
         return Collections.emptySet();
     }
     
+    /**
+     * Users rarely lose the verification of their email address, other than by changing it, so only verified
+     * addresses are remembered (for the user id) and any other address is looked up again.
+     * @param user
+     * @return true if the current email address of the user is verified
+     */
+    boolean hasVerifiedEmail(AuthenticatedUser user) {
+        if (user.getId() != null && user.getEmail() != null && user.getEmail().equals(verifiedEmails.get(user.getId()))) {
+            return true;
+        }
+        boolean verified = confirmEmailSvc.hasVerifiedEmail(user);
+        if (verified && user.getId() != null && user.getEmail() != null) {
+            verifiedEmails.put(user.getId(), user.getEmail());
+        }
+        return verified;
+    }
+    
     /**
      * Get all mail domain groups from the database.
      * @return A result list from the database. May be null if no results found.
@@ -152,6 +152,11 @@ public abstract class AbstractRemoteOverlayAccessIO<T extends DvObject> extends
         return baseStore.getAuxFileAsInputStream(auxItemTag);
     }
 
+    @Override
+    public InputStream getAuxRangeInputStream(String auxItemTag, long offset, long length) throws IOException {
+        return baseStore.getAuxRangeInputStream(auxItemTag, offset, length);
+    }
+
     protected int getUrlExpirationMinutes() {
         String optionValue = getConfigParam(URL_EXPIRATION_MINUTES);
         if (optionValue != null) {
@@ -24,12 +24,25 @@ import java.io.IOException;
 
 
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -42,6 +55,38 @@ public class DataFileZipper {
     
     private static final Logger logger = Logger.getLogger(DataFileZipper.class.getCanonicalName());
     private static final String MANIFEST_FILE_NAME = "MANIFEST.TXT";
+    // the number of bytes of each file read when it is opened; files that 
+    // fit entirely are known in advance, so they can be STORED in the zip: 
+    private static final int HEAD_BUFFER_SIZE = 256 * 1024;
+    // mime types of the files that are already compressed, and are written 
+    // to the zip without compressing them again: 
+    private static final Set<String> COMPRESSED_MIME_TYPES = Set.of(
+            "application/zip",
+            "application/x-zip-compressed",
+            "application/zipped-shapefile",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/zstd",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp");
+    private static final List<String> COMPRESSED_MIME_TYPE_PREFIXES = List.of(
+            "video/",
+            "audio/",
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument.");
+    private static final Set<String> UNCOMPRESSED_AUDIO_MIME_TYPES = Set.of(
+            "audio/wav",
+            "audio/x-wav",
+            "audio/vnd.wave",
+            "audio/aiff",
+            "audio/x-aiff");
     
     private OutputStream outputStream = null; 
     private ZipOutputStream zipOutputStream = null;
@@ -52,6 +97,22 @@ public class DataFileZipper {
     private String fileManifest = "";
     
     private Set<String> zippedFolders = null; 
+    
+    // files announced with setPrefetchFiles(); the ones right after the 
+    // file currently being zipped are opened in the background: 
+    private List<DataFile> prefetchFiles = null;
+    private boolean prefetchOriginals = false;
+    private int prefetchSize = 0;
+    private int prefetchPosition = 0; // index of the next file expected to be zipped
+    private final Deque<PrefetchedFile> prefetchQueue = new ArrayDeque<>();
+    private ExecutorService prefetchExecutor = null;
+    
+    // throughput statistics, logged when the zip stream is finalized:
+    private long startTime = 0L;
+    private long storageWaitTime = 0L;
+    private long bytesZipped = 0L;
+    private int filesZipped = 0;
+    private int storedEntries = 0;
 
     public DataFileZipper() {
         fileNameList = new ArrayList<>();
@@ -87,6 +148,52 @@ public class DataFileZipper {
             throw new IOException("Attempted to create a ZipOutputStream from a NULL OutputStream.");
         }
         this.zipOutputStream = new ZipOutputStream(outputStream);
+        this.startTime = System.nanoTime();
+    }
+    
+    /**
+     * Announces the files that are going to be added with 
+     * addFileToZipStream(), in the order in which they are going to be 
+     * added. While one file is being written to the zip stream, the next 
+     * files on the list (as many as configured with 
+     * dataverse.files.zip-download-prefetch) are opened in the background, 
+     * and their first bytes read, so that the time spent waiting on the 
+     * storage overlaps with writing the output. The entries are still 
+     * written strictly in the order addFileToZipStream() is called. Files 
+     * on the list that are never added are skipped and closed; but as they 
+     * may have been opened for nothing, the list should only include the 
+     * files that fit within the size limit of the download.
+     * 
+     * The files are opened on the given executor, normally the container's 
+     * ManagedExecutorService, so that the threads are managed, and shared, 
+     * by the application server rather than created for each download. No 
+     * more than dataverse.files.zip-download-prefetch tasks are submitted to 
+     * it at a time; it is not shut down by the zipper. 
+     */
+    public void setPrefetchFiles(List<DataFile> dataFiles, boolean getOriginal, ExecutorService executor) {
+        cancelPrefetch();
+        prefetchSize = JvmSettings.ZIP_DOWNLOAD_PREFETCH.lookupOptional(Integer.class).orElse(2);
+        if (executor == null || prefetchSize < 1 || dataFiles == null || dataFiles.size() < 2) {
+            return;
+        }
+        prefetchFiles = new ArrayList<>(dataFiles);
+        prefetchOriginals = getOriginal;
+        prefetchPosition = 0;
+        prefetchExecutor = executor;
+        fillPrefetchQueue();
+    }
+    
+    /**
+     * Stops the background prefetching, closing any files that have already 
+     * been opened. Called by finalizeZipStream(); should be called 
+     * explicitly if the zip stream is abandoned before it is finalized. 
+     */
+    public void cancelPrefetch() {
+        while (!prefetchQueue.isEmpty()) {
+            discardPrefetched(prefetchQueue.poll());
+        }
+        prefetchExecutor = null;
+        prefetchFiles = null;
     }
     
     public long addFileToZipStream(DataFile dataFile) throws IOException {
@@ -100,22 +207,10 @@ public class DataFileZipper {
 
         boolean createManifest = fileManifest != null;
         
-        DataAccessRequest daReq = new DataAccessRequest();
-        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
+        OpenedFile openedFile = takeOpenedFile(dataFile, getOriginal);
 
-        if (accessObject != null) {
-            Boolean gotOriginal = false;
-            if(getOriginal) {
-                StoredOriginalFile sof = new StoredOriginalFile();
-                StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
-                if(null != tempAccessObject) { //If there is an original, use it
-                    gotOriginal = true;
-                    accessObject = tempAccessObject; 
-                } 
-            }
-            if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
-                accessObject.open();
-            }
+        if (openedFile != null) {
+            StorageIO<DataFile> accessObject = openedFile.accessObject;
 
             long byteSize = 0;
 
@@ -128,7 +223,7 @@ public class DataFileZipper {
             //if (sizeTotal + fileSize < sizeLimit) {
             Boolean Success = true;
 
-            InputStream instream = accessObject.getInputStream();
+            InputStream instream = openedFile.instream;
             if (instream == null) {
                 if (createManifest) {
                     addToManifest(fileName
@@ -164,28 +259,56 @@ public class DataFileZipper {
                 ZipEntry e = new ZipEntry(zipEntryName);
                 logger.fine("created new zip entry for " + zipEntryName);
 
-                zipOutputStream.putNextEntry(e);
-
-                // before writing out any bytes from the input stream, flush
-                // any extra content, such as the variable header for the 
-                // subsettable files:
+                // the variable header, for the subsettable files, is added 
+                // before the bytes from the input stream:
                 String varHeaderLine = accessObject.getVarHeader();
-                if (varHeaderLine != null) {
-                    zipOutputStream.write(varHeaderLine.getBytes());
-                    byteSize += (varHeaderLine.getBytes().length);
+                
+                // Files that are already compressed are not compressed again.
+                // If the whole file has been read already, we know its size and
+                // checksum, and can write it as a STORED entry; otherwise it 
+                // is written as a DEFLATED entry with no compression.
+                boolean uncompressed = varHeaderLine == null && isCompressedContentType(mimeType);
+                if (uncompressed && openedFile.complete) {
+                    CRC32 crc = new CRC32();
+                    crc.update(openedFile.head, 0, openedFile.headLength);
+                    e.setMethod(ZipEntry.STORED);
+                    e.setSize(openedFile.headLength);
+                    e.setCompressedSize(openedFile.headLength);
+                    e.setCrc(crc.getValue());
+                    storedEntries++;
+                } else if (uncompressed) {
+                    zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
                 }
 
-                byte[] data = new byte[8192];
+                try {
+                    zipOutputStream.putNextEntry(e);
+
+                    if (varHeaderLine != null) {
+                        zipOutputStream.write(varHeaderLine.getBytes());
+                        byteSize += (varHeaderLine.getBytes().length);
+                    }
+
+                    zipOutputStream.write(openedFile.head, 0, openedFile.headLength);
+                    byteSize += openedFile.headLength;
 
-                int i = 0;
-                while ((i = instream.read(data)) > 0) {
-                    zipOutputStream.write(data, 0, i);
-                    logger.fine("wrote " + i + " bytes;");
+                    if (!openedFile.complete) {
+                        byte[] data = new byte[8192];
 
-                    byteSize += i;
-                    zipOutputStream.flush();
+                        int i = 0;
+                        while ((i = instream.read(data)) > 0) {
+                            zipOutputStream.write(data, 0, i);
+                            logger.fine("wrote " + i + " bytes;");
+
+                            byteSize += i;
+                            zipOutputStream.flush();
+                        }
+                    }
+                } finally {
+                    instream.close();
+                    if (uncompressed && !openedFile.complete) {
+                        zipOutputStream.setLevel(Deflater.DEFAULT_COMPRESSION);
+                    }
                 }
-                instream.close();
                 zipOutputStream.closeEntry();
                 logger.fine("closed zip entry for " + zipEntryName);
 
@@ -196,6 +319,8 @@ public class DataFileZipper {
                 if (byteSize > 0) {
                     zippedFilesList.add(dataFile.getId());
                 }
+                filesZipped++;
+                bytesZipped += byteSize;
             }
             //} else if (createManifest) {
             //    addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + sizeLimit + " bytes.\r\n");
@@ -208,6 +333,8 @@ public class DataFileZipper {
     public void finalizeZipStream() throws IOException {
         boolean createManifest = fileManifest != null;
         
+        cancelPrefetch();
+        
         if (zipOutputStream == null) {
             openZipStream();
         }
@@ -227,6 +354,30 @@ public class DataFileZipper {
 
         zipOutputStream.flush();
         zipOutputStream.close();
+        
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000L;
+        logger.fine("zipped " + filesZipped + " files (" + storedEntries + " of them stored uncompressed), "
+                + bytesZipped + " bytes in " + elapsedMillis + " ms ("
+                + (elapsedMillis > 0 ? (bytesZipped * 1000L / elapsedMillis) : bytesZipped) + " bytes/s); "
+                + "spent " + (storageWaitTime / 1000000L) + " ms waiting for the files to be opened");
+    }
+    
+    public int getFilesZipped() {
+        return filesZipped;
+    }
+    
+    public long getBytesZipped() {
+        return bytesZipped;
+    }
+    
+    /**
+     * @return the time, in nanoseconds, addFileToZipStream() spent waiting 
+     * for the files to be opened and their first bytes to be read; with 
+     * prefetching, most of it should be overlapping with writing the 
+     * previous files. 
+     */
+    public long getStorageWaitTime() {
+        return storageWaitTime;
     }
     
     public void addToManifest(String manifestEntry) {
@@ -249,4 +400,242 @@ public class DataFileZipper {
         fileNameList.add(name);
         return name;
     }
+    
+    static boolean isCompressedContentType(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String baseType = mimeType.split(";", 2)[0].trim().toLowerCase();
+        if (COMPRESSED_MIME_TYPES.contains(baseType)) {
+            return true;
+        }
+        if (UNCOMPRESSED_AUDIO_MIME_TYPES.contains(baseType)) {
+            return false;
+        }
+        for (String prefix : COMPRESSED_MIME_TYPE_PREFIXES) {
+            if (baseType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the file, opened, either from the prefetched files, or by 
+     * opening it now. 
+     */
+    private OpenedFile takeOpenedFile(DataFile dataFile, boolean getOriginal) throws IOException {
+        long waitStart = System.nanoTime();
+        try {
+            int index = -1;
+            if (prefetchFiles != null && getOriginal == prefetchOriginals) {
+                for (int j = prefetchPosition; j < prefetchFiles.size(); j++) {
+                    if (prefetchFiles.get(j) == dataFile) {
+                        index = j;
+                        break;
+                    }
+                }
+            }
+            if (index == -1) {
+                return openFile(resolveFile(dataFile), getOriginal);
+            }
+            // the files before this one on the list have been skipped:
+            while (prefetchPosition < index) {
+                discardPrefetched(prefetchQueue.poll());
+                prefetchPosition++;
+            }
+            PrefetchedFile prefetched = prefetchQueue.poll();
+            prefetchPosition++;
+            fillPrefetchQueue();
+
+            if (prefetched == null) {
+                return openFile(resolveFile(dataFile), getOriginal);
+            }
+            if (prefetched.openedFile == null) {
+                // the executor did not accept the task
+                return openFile(prefetched.accessObject, getOriginal);
+            }
+            try {
+                return prefetched.openedFile.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while opening the file " + dataFile.getId(), ie);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Failed to open the file " + dataFile.getId(), cause);
+            }
+        } finally {
+            storageWaitTime += System.nanoTime() - waitStart;
+        }
+    }
+    
+    /**
+     * Looks up the storage of the next files here, on the calling thread, 
+     * and loads the fields of their DataFile entities that opening them 
+     * reads; opening the files (including the lookups of the saved originals, 
+     * and the metadata requests to remote stores), and reading their first 
+     * bytes, is left to the prefetch threads. 
+     */
+    private void fillPrefetchQueue() {
+        while (prefetchQueue.size() < prefetchSize && prefetchPosition + prefetchQueue.size() < prefetchFiles.size()) {
+            DataFile next = prefetchFiles.get(prefetchPosition + prefetchQueue.size());
+            StorageIO<DataFile> accessObject;
+            try {
+                accessObject = resolveFile(next);
+            } catch (IOException | RuntimeException ex) {
+                // reported when the file is added to the zip stream
+                prefetchQueue.add(new PrefetchedFile(null, CompletableFuture.failedFuture(ex)));
+                continue;
+            }
+            boolean getOriginal = prefetchOriginals;
+            Future<OpenedFile> openedFile;
+            try {
+                openedFile = prefetchExecutor.submit(() -> openFile(accessObject, getOriginal));
+            } catch (RejectedExecutionException ree) {
+                logger.fine("prefetch task rejected; the file will be opened when it is added: " + ree.getMessage());
+                openedFile = null;
+            }
+            prefetchQueue.add(new PrefetchedFile(accessObject, openedFile));
+        }
+    }
+    
+    private void discardPrefetched(PrefetchedFile prefetched) {
+        if (prefetched == null || prefetched.openedFile == null) {
+            return;
+        }
+        if (prefetched.openedFile.cancel(false)) {
+            // the file was never opened
+            return;
+        }
+        try {
+            OpenedFile openedFile = prefetched.openedFile.get();
+            if (openedFile != null && openedFile.instream != null) {
+                openedFile.instream.close();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException ex) {
+            logger.fine("failed to close a skipped file: " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Looks up the storage of the file, without opening it. The fields of 
+     * the DataFile (and of its data table, file metadata and owner) that 
+     * open() and StoredOriginalFile read are loaded here, so that 
+     * openFile() finds them already loaded, and does not need the 
+     * persistence context of the calling thread. 
+     */
+    private static StorageIO<DataFile> resolveFile(DataFile dataFile) throws IOException {
+        DataAccessRequest daReq = new DataAccessRequest();
+        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
+
+        if (accessObject != null) {
+            dataFile.getContentType();
+            FileMetadata fileMetadata = dataFile.getFileMetadata();
+            if (fileMetadata != null) {
+                fileMetadata.getLabel();
+            }
+            Dataset owner = dataFile.getOwner();
+            if (owner != null) {
+                owner.getAuthorityForFileStorage();
+                owner.getIdentifierForFileStorage();
+            }
+            DataTable dataTable = dataFile.getDataTable();
+            if (dataTable != null) {
+                dataTable.getDataVariables().size();
+                dataFile.getOriginalFileName();
+            }
+        }
+        return accessObject;
+    }
+    
+    /**
+     * Opens a file looked up with resolveFile() (or its saved original) for 
+     * reading, gets its input stream, and reads the first HEAD_BUFFER_SIZE 
+     * bytes. Does not modify any state of the zipper, so that it can run in 
+     * the background. 
+     */
+    private static OpenedFile openFile(StorageIO<DataFile> accessObject, boolean getOriginal) throws IOException {
+        if (accessObject == null) {
+            return null;
+        }
+        Boolean gotOriginal = false;
+        if(getOriginal) {
+            StoredOriginalFile sof = new StoredOriginalFile();
+            StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
+            if(null != tempAccessObject) { //If there is an original, use it
+                gotOriginal = true;
+                accessObject = tempAccessObject; 
+            } 
+        }
+        if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
+            accessObject.open();
+        }
+        return openStream(accessObject);
+    }
+    
+    /**
+     * Gets the input stream of an opened file, and reads the first 
+     * HEAD_BUFFER_SIZE bytes. 
+     */
+    private static OpenedFile openStream(StorageIO<DataFile> accessObject) throws IOException {
+        if (accessObject == null) {
+            return null;
+        }
+        OpenedFile openedFile = new OpenedFile(accessObject, accessObject.getInputStream());
+        if (openedFile.instream != null) {
+            try {
+                openedFile.readHead();
+            } catch (IOException ex) {
+                openedFile.instream.close();
+                throw ex;
+            }
+        }
+        return openedFile;
+    }
+    
+    // a file announced with setPrefetchFiles(), resolved on the calling 
+    // thread, and being opened in the background (openedFile is null if the 
+    // executor did not accept the task): 
+    private static class PrefetchedFile {
+        final StorageIO<DataFile> accessObject;
+        final Future<OpenedFile> openedFile;
+
+        PrefetchedFile(StorageIO<DataFile> accessObject, Future<OpenedFile> openedFile) {
+            this.accessObject = accessObject;
+            this.openedFile = openedFile;
+        }
+    }
+    
+    private static class OpenedFile {
+        final StorageIO<DataFile> accessObject;
+        final InputStream instream;
+        byte[] head = new byte[0];
+        int headLength = 0;
+        boolean complete = false; // whether the whole file is in the head buffer
+
+        OpenedFile(StorageIO<DataFile> accessObject, InputStream instream) {
+            this.accessObject = accessObject;
+            this.instream = instream;
+        }
+
+        void readHead() throws IOException {
+            head = new byte[HEAD_BUFFER_SIZE];
+            while (headLength < head.length) {
+                int n = instream.read(head, headLength, head.length - headLength);
+                if (n == -1) {
+                    complete = true;
+                    break;
+                }
+                headLength += n;
+            }
+        }
+    }
 }
@@ -45,8 +45,10 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import java.io.FileNotFoundException;
 import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 
@@ -504,6 +506,24 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
 
     }
     
+    /**
+     * Positional reads from the channel of the file opened for reading (or,
+     * if there is none, from a new one), without reading the file up to the 
+     * start of the range. 
+     */
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (channel instanceof FileChannel && ((FileChannel) channel).isOpen()) {
+            return RangeInputStream.of((FileChannel) channel, offset, length, false);
+        }
+        return RangeInputStream.of(FileChannel.open(getFileSystemPath(), StandardOpenOption.READ), offset, length, true);
+    }
+
+    @Override
+    public boolean isRangeReadSupported() {
+        return true;
+    }
+    
     // Auxilary helper methods, filesystem access-specific:
     
     public FileInputStream openLocalFileAsInputStream () {
@@ -644,6 +664,16 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         }
         return in;
     }
+
+    @Override
+    public InputStream getAuxRangeInputStream(String auxItemTag, long offset, long length) throws IOException {
+        FileChannel auxChannel = FileChannel.open(getAuxObjectAsPath(auxItemTag), StandardOpenOption.READ);
+        if (length < 0) {
+            length = Math.max(auxChannel.size() - offset, 0);
+        }
+        return RangeInputStream.of(auxChannel, offset, length, true);
+    }
+
     private String stripDriverId(String storageIdentifier) {
         int separatorIndex = storageIdentifier.indexOf(DataAccess.SEPARATOR);
         if(separatorIndex>0) {
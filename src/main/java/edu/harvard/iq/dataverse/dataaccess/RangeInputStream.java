@@ -0,0 +1,108 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A stream of a fixed number of bytes of a stored file, as returned by
+ * {@link StorageIO#getRangeInputStream(long, long)}. The bytes are either
+ * read from another stream, already positioned at the start of the range, or
+ * with positional reads from a file channel.
+ */
+class RangeInputStream extends InputStream {
+
+    private final InputStream in;
+    private final FileChannel channel;
+    private final boolean propagateClose;
+    private long position;
+    private long remaining;
+
+    private RangeInputStream(InputStream in, FileChannel channel, long offset, long length, boolean propagateClose) {
+        this.in = in;
+        this.channel = channel;
+        this.position = offset;
+        this.remaining = length;
+        this.propagateClose = propagateClose;
+    }
+
+    /**
+     * @param in a stream positioned at the start of the range
+     * @param propagateClose whether closing this stream also closes the
+     * underlying one
+     */
+    static RangeInputStream of(InputStream in, long length, boolean propagateClose) {
+        return new RangeInputStream(in, null, 0, length, propagateClose);
+    }
+
+    /**
+     * The channel position is neither used nor modified, so a channel can be
+     * shared by several ranges.
+     */
+    static RangeInputStream of(FileChannel channel, long offset, long length, boolean propagateClose) {
+        return new RangeInputStream(null, channel, offset, length, propagateClose);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        int toRead = (int) Math.min(len, remaining);
+        int n;
+        if (channel != null) {
+            n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+        } else {
+            n = in.read(b, off, toRead);
+        }
+        if (n == -1) {
+            throw new IOException("Unexpected end of the stored file; " + remaining + " bytes of the requested range could not be read.");
+        }
+        position += n;
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (channel != null) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+        long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (channel != null) {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (propagateClose) {
+            if (channel != null) {
+                channel.close();
+            } else {
+                in.close();
+            }
+        }
+    }
+}
@@ -212,6 +212,39 @@ public class RemoteOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
         return super.getInputStream();
     }
 
+    /**
+     * A GET with a Range header; if the remote server ignores it and sends
+     * the whole file, the bytes before the range are skipped.
+     */
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        HttpGet get = new HttpGet(generateTemporaryDownloadUrl(null, null, null));
+        get.addHeader("Range", "bytes=" + offset + "-" + (offset + length - 1));
+        CloseableHttpResponse response = getSharedHttpClient().execute(get, localContext);
+        int code = response.getStatusLine().getStatusCode();
+        switch (code) {
+        case 206:
+            return RangeInputStream.of(response.getEntity().getContent(), length, true);
+        case 200:
+            logger.fine("Range request ignored by " + baseUrl + "; skipping to byte " + offset);
+            InputStream in = response.getEntity().getContent();
+            in.skipNBytes(offset);
+            return RangeInputStream.of(in, length, true);
+        default:
+            EntityUtils.consume(response.getEntity());
+            logger.warning("Response from " + get.getURI().toString() + " was " + code);
+            throw new IOException("Cannot retrieve bytes " + offset + "-" + (offset + length - 1) + " of: " + baseUrl + "/" + path + " code: " + code);
+        }
+    }
+
+    @Override
+    public boolean isRangeReadSupported() {
+        return true;
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if (super.getChannel() == null) {
@@ -309,7 +309,28 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
         return super.getInputStream();
     }
-    
+
+    /**
+     * A ranged GET of the object; only the requested bytes are transferred.
+     */
+    @Override
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String key = getMainFileKey();
+        try {
+            return s3.getObject(new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1)).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get bytes " + offset + "-" + (offset + length - 1) + " of S3 object " + key + " (" + sce.getMessage() + ")");
+        }
+    }
+
+    @Override
+    public boolean isRangeReadSupported() {
+        return true;
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if(super.getChannel()==null) {
@@ -795,6 +816,29 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         }
     }
 
+    /**
+     * A ranged GET of the auxiliary object; only the requested bytes are
+     * transferred.
+     */
+    @Override
+    public InputStream getAuxRangeInputStream(String auxItemTag, long offset, long length) throws IOException {
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        String destinationKey = getDestinationKey(auxItemTag);
+        GetObjectRequest request = new GetObjectRequest(bucketName, destinationKey);
+        if (length < 0) {
+            request.setRange(offset);
+        } else {
+            request.setRange(offset, offset + length - 1);
+        }
+        try {
+            return s3.getObject(request).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get bytes from " + offset + " of S3 object " + destinationKey + " (" + sce.getMessage() + ")");
+        }
+    }
+
     // Rename this getAuxiliaryKey(), maybe? 
     String getDestinationKey(String auxItemTag) throws IOException {
         if (isDirectAccess() || dvObject instanceof DataFile) {
@@ -427,6 +427,61 @@ public abstract class StorageIO<T extends DvObject> {
         }
     }
 
+    /**
+     * Returns a stream of {@code length} bytes of the stored file, starting at
+     * {@code offset}; open() has already been called. Closing the returned
+     * stream does not close the main input stream of this StorageIO.
+     *
+     * The default implementation reads forward in the main input stream, so
+     * successive ranges must be requested in ascending order, without
+     * overlaps. Drivers that can read any range of a file directly override
+     * this method, and {@link #isRangeReadSupported()}.
+     */
+    public InputStream getRangeInputStream(long offset, long length) throws IOException {
+        if (offset < this.offset) {
+            throw new UnsupportedDataAccessOperationException("This storage driver cannot read byte ranges out of order (requested offset "
+                    + offset + ", current position " + this.offset + ")");
+        }
+        InputStream inputStream = getInputStream();
+        if (inputStream == null) {
+            throw new IOException("Could not read a byte range of the InputStream because it is null");
+        }
+        inputStream.skipNBytes(offset - this.offset);
+        this.offset = offset + length;
+        return RangeInputStream.of(inputStream, length, false);
+    }
+
+    /**
+     * @return true if {@link #getRangeInputStream(long, long)} can read byte
+     * ranges in any order, without reading the file from the start.
+     */
+    public boolean isRangeReadSupported() {
+        return false;
+    }
+
+    /**
+     * Returns a stream of {@code length} bytes of an auxiliary object,
+     * starting at {@code offset}; a negative length reads to the end of the
+     * object.
+     *
+     * The default implementation skips to the start of the range in the
+     * stream of the whole object. Drivers that can read a range of an object
+     * directly override this method.
+     */
+    public InputStream getAuxRangeInputStream(String auxItemTag, long offset, long length) throws IOException {
+        InputStream in = getAuxFileAsInputStream(auxItemTag);
+        if (in == null) {
+            throw new IOException("Auxiliary object " + auxItemTag + " not found");
+        }
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException ioex) {
+            in.close();
+            throw ioex;
+        }
+        return length < 0 ? in : RangeInputStream.of(in, length, true);
+    }
+
     public void setInputStream(InputStream is) {
         in = is;
     }
@@ -0,0 +1,264 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A persisted byte offset index of a tab-delimited data file, saved as an
+ * auxiliary object next to the file it describes.
+ *
+ * For every line of the tab file the index stores the byte offset of the
+ * start of the line, plus the offsets (relative to the line start) of every
+ * {@code stride}-th column. With the index available, a subset of variables
+ * can be extracted by reading only the byte ranges of the lines that contain
+ * the requested columns, instead of scanning every byte of the file.
+ *
+ * The index is built as a side effect of a full streaming pass (see
+ * {@link TabularSubsetGenerator#subsetFile(InputStream, OutputStream, List, long, byte, TabularColumnIndex.Builder)}),
+ * so it costs nothing extra to produce on the first subset request.
+ *
+ * Format (all values big-endian):
+ * <pre>
+ * int magic, int version, int stride, int numColumns, long numLines, long dataFileSize,
+ * then, for every line: long lineOffset, int[checkpointsPerLine] column offsets,
+ * and finally one trailing long: the offset one past the end of the last line.
+ * </pre>
+ */
+public class TabularColumnIndex {
+
+    private static final Logger logger = Logger.getLogger(TabularColumnIndex.class.getCanonicalName());
+
+    public static final String AUX_TAG = "colidx";
+    public static final int DEFAULT_STRIDE = 64;
+
+    private static final int MAGIC = 0x44564349; // "DVCI"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 65536;
+    // Mapped regions of the data file are limited to 1GB each:
+    private static final long MAPPED_SEGMENT_SIZE = 1L << 30;
+
+    private TabularColumnIndex() {
+    }
+
+    static int checkpointsPerLine(int numColumns, int stride) {
+        return numColumns > 0 ? (numColumns - 1) / stride : 0;
+    }
+
+    /**
+     * Records the line and column offsets reported by the streaming subset
+     * generator and writes them out in the index format above.
+     */
+    public static class Builder implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private final int stride;
+        private final int numColumns;
+        private final int checkpoints;
+        private final long numLines;
+        private long linesWritten = 0;
+
+        public Builder(OutputStream outputStream, int numColumns, long numLines, long dataFileSize) throws IOException {
+            this(outputStream, numColumns, numLines, dataFileSize, DEFAULT_STRIDE);
+        }
+
+        public Builder(OutputStream outputStream, int numColumns, long numLines, long dataFileSize, int stride) throws IOException {
+            if (stride < 1) {
+                throw new IllegalArgumentException("Column index stride must be positive");
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+            this.stride = stride;
+            this.numColumns = numColumns;
+            this.checkpoints = checkpointsPerLine(numColumns, stride);
+            this.numLines = numLines;
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stride);
+            out.writeInt(numColumns);
+            out.writeLong(numLines);
+            out.writeLong(dataFileSize);
+        }
+
+        /**
+         * @param lineOffset byte offset of the start of the line in the data file
+         * @param delimiterPositions positions of the column delimiters, relative to the line start
+         * @param numDelimiters number of delimiters found on the line
+         */
+        void addLine(long lineOffset, int[] delimiterPositions, int numDelimiters) throws IOException {
+            if (numDelimiters + 1 != numColumns) {
+                throw new IOException("Line " + linesWritten + " has " + (numDelimiters + 1)
+                        + " columns; expected " + numColumns + ". Cannot build the column index.");
+            }
+            out.writeLong(lineOffset);
+            for (int i = 1; i <= checkpoints; i++) {
+                // offset of the first byte of column (i * stride):
+                out.writeInt(delimiterPositions[i * stride - 1] + 1);
+            }
+            linesWritten++;
+        }
+
+        void finish(long endOffset) throws IOException {
+            if (linesWritten != numLines) {
+                throw new IOException("Indexed " + linesWritten + " lines; expected " + numLines);
+            }
+            out.writeLong(endOffset);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Extracts the requested columns from a local tab-delimited file, using
+     * a previously saved index to read only the byte ranges that contain them.
+     *
+     * @return false if the index does not match the data file (for example,
+     * it was built for an earlier version of it), in which case nothing has
+     * been written and the caller should fall back on a full streaming subset.
+     */
+    public static boolean subsetFile(Path dataFile, Path indexFile, OutputStream outputStream, List<Integer> columns) throws IOException {
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), BUFFER_SIZE));
+                FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+
+            if (index.readInt() != MAGIC || index.readInt() != VERSION) {
+                logger.warning("Unrecognized column index format in " + indexFile);
+                return false;
+            }
+            int stride = index.readInt();
+            int numColumns = index.readInt();
+            long numLines = index.readLong();
+            long dataFileSize = index.readLong();
+
+            if (dataFileSize != channel.size()) {
+                logger.warning("Column index " + indexFile + " is out of date (indexed size " + dataFileSize + ", actual size " + channel.size() + ")");
+                return false;
+            }
+
+            int minColumn = Integer.MAX_VALUE;
+            int maxColumn = -1;
+            for (Integer column : columns) {
+                if (column < 0 || column >= numColumns) {
+                    throw new IOException("Column " + column + " is out of range (the file has " + numColumns + " columns)");
+                }
+                minColumn = Math.min(minColumn, column);
+                maxColumn = Math.max(maxColumn, column);
+            }
+
+            int checkpoints = checkpointsPerLine(numColumns, stride);
+            int firstCheckpoint = minColumn / stride;
+            int lastCheckpoint = maxColumn / stride + 1;
+            int firstColumnInSpan = firstCheckpoint * stride;
+            int[] lineCheckpoints = new int[checkpoints + 1];
+
+            MappedSegments data = new MappedSegments(channel);
+            OutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+            byte[] span = new byte[BUFFER_SIZE];
+            int[] fieldEnds = new int[maxColumn - firstColumnInSpan + 1];
+
+            long lineOffset = index.readLong();
+            for (long line = 0; line < numLines; line++) {
+                // lineCheckpoints[0] is the start of column 0, i.e. the line start
+                for (int i = 1; i <= checkpoints; i++) {
+                    lineCheckpoints[i] = index.readInt();
+                }
+                long nextLineOffset = index.readLong();
+                // exclude the newline:
+                long lineEnd = nextLineOffset - 1;
+
+                long spanStart = lineOffset + lineCheckpoints[firstCheckpoint];
+                long spanEnd = lastCheckpoint <= checkpoints ? lineOffset + lineCheckpoints[lastCheckpoint] - 1 : lineEnd;
+                int spanLength = (int) (spanEnd - spanStart);
+                if (span.length < spanLength) {
+                    span = new byte[Math.max(spanLength, span.length * 2)];
+                }
+                data.read(spanStart, span, spanLength);
+
+                // locate the columns within the span:
+                int field = 0;
+                for (int i = 0; i < spanLength && field < fieldEnds.length; i++) {
+                    if (span[i] == '\t') {
+                        fieldEnds[field++] = i;
+                    }
+                }
+                while (field < fieldEnds.length) {
+                    fieldEnds[field++] = spanLength;
+                }
+
+                boolean first = true;
+                for (Integer column : columns) {
+                    int f = column - firstColumnInSpan;
+                    int start = f == 0 ? 0 : fieldEnds[f - 1] + 1;
+                    if (!first) {
+                        out.write('\t');
+                    }
+                    out.write(span, start, fieldEnds[f] - start);
+                    first = false;
+                }
+                out.write('\n');
+
+                lineOffset = nextLineOffset;
+            }
+            out.flush();
+        } catch (EOFException eofex) {
+            throw new IOException("Column index " + indexFile + " is truncated", eofex);
+        }
+        return true;
+    }
+
+    /**
+     * Read-only view of a (potentially multi-GB) file as a sequence of
+     * memory-mapped regions.
+     */
+    private static class MappedSegments {
+
+        private final FileChannel channel;
+        private final long size;
+        private final MappedByteBuffer[] segments;
+
+        MappedSegments(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((size + MAPPED_SEGMENT_SIZE - 1) / MAPPED_SEGMENT_SIZE)];
+        }
+
+        void read(long position, byte[] dst, int length) throws IOException {
+            if (position + length > size) {
+                throw new IOException("Attempted to read past the end of the data file; the column index is invalid.");
+            }
+            int copied = 0;
+            while (copied < length) {
+                int segment = (int) (position / MAPPED_SEGMENT_SIZE);
+                int offset = (int) (position % MAPPED_SEGMENT_SIZE);
+                MappedByteBuffer buffer = segment(segment);
+                int chunk = Math.min(length - copied, buffer.limit() - offset);
+                buffer.get(offset, dst, copied, chunk);
+                copied += chunk;
+                position += chunk;
+            }
+        }
+
+        private MappedByteBuffer segment(int i) throws IOException {
+            if (segments[i] == null) {
+                long start = i * MAPPED_SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAPPED_SEGMENT_SIZE, size - start));
+            }
+            return segments[i];
+        }
+    }
+}
@@ -0,0 +1,691 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A column-wise ("90 deg. rotated") binary copy of an ingested tab-delimited
+ * file, saved as an auxiliary object. Each variable is stored as a typed
+ * primitive column (character variables are dictionary-encoded), with a
+ * table of column offsets in the header, so that a single variable vector
+ * can be read at the cost of the size of that column, rather than that of
+ * the whole file.
+ *
+ * The column types mirror the vectors the ingest has always used for the
+ * summary statistics and UNFs of the different kinds of variables (see
+ * {@link #columnTypeFor(DataVariable)}); so the vectors read from the store
+ * are identical to those produced by the TabularSubsetGenerator.subset*Vector()
+ * methods from the tab file.
+ *
+ * Format (all values big-endian):
+ * <pre>
+ * int magic, int version, int numColumns, long numCases,
+ * then, for every column: byte type, long data offset, long dictionary offset;
+ * then the column data, in column order:
+ *   LONG, DOUBLE: a bitmap of missing values, one bit per case; then numCases longs/doubles
+ *   FLOAT: the same, with floats
+ *   STRING: numCases int codes into the dictionary (-1 for a missing value)
+ * and finally the dictionaries of the STRING columns:
+ *   int size, then size values, each as an int byte length followed by UTF-8 bytes.
+ * </pre>
+ * A column with the type NONE is not available in the store (for example,
+ * because it has too many distinct values to be worth dictionary-encoding);
+ * its vector must be read from the tab file instead.
+ */
+public class TabularColumnStore {
+
+    private static final Logger logger = Logger.getLogger(TabularColumnStore.class.getCanonicalName());
+
+    public static final String AUX_TAG = "cols";
+
+    private static final int MAGIC = 0x44564353; // "DVCS"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 65536;
+    private static final int COLUMN_TABLE_ENTRY_SIZE = 17;
+    private static final int HEADER_SIZE = 20;
+    // Memory budget for the block of rows accumulated in memory before it
+    // is written out to the columns:
+    private static final long BLOCK_BUDGET = 16L * 1024 * 1024;
+    // Character columns with more distinct values than this are not stored:
+    static final int MAX_DICTIONARY_SIZE = 1 << 20;
+
+    public enum ColumnType {
+        NONE(0), LONG(8), FLOAT(4), DOUBLE(8), STRING(4);
+
+        private final int width;
+
+        ColumnType(int width) {
+            this.width = width;
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        boolean hasMissingValueBitmap() {
+            return this == LONG || this == FLOAT || this == DOUBLE;
+        }
+    }
+
+    /**
+     * Opens the input stream of the column store positioned at a given offset.
+     * Only {@code length} bytes are read from the stream (to the end of the
+     * store if it is negative), so a source can fetch just those.
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream openAt(long offset, long length) throws IOException;
+    }
+
+    private final Source source;
+    private final long numCases;
+    private final ColumnType[] types;
+    private final long[] dataOffsets;
+    private final long[] dictionaryOffsets;
+
+    private TabularColumnStore(Source source, long numCases, ColumnType[] types, long[] dataOffsets, long[] dictionaryOffsets) {
+        this.source = source;
+        this.numCases = numCases;
+        this.types = types;
+        this.dataOffsets = dataOffsets;
+        this.dictionaryOffsets = dictionaryOffsets;
+    }
+
+    /**
+     * The type used to store a variable; chosen to match the vector type the
+     * ingest uses for its statistics and UNF (see IngestServiceBean).
+     */
+    public static ColumnType columnTypeFor(DataVariable variable) {
+        if (variable.isTypeCharacter()) {
+            return ColumnType.STRING;
+        }
+        if (variable.isTypeNumeric()) {
+            if (variable.isIntervalDiscrete()) {
+                return ColumnType.LONG;
+            }
+            if (variable.isIntervalContinuous() && "float".equals(variable.getFormat())) {
+                return ColumnType.FLOAT;
+            }
+            return ColumnType.DOUBLE;
+        }
+        return ColumnType.NONE;
+    }
+
+    public static ColumnType[] columnTypesFor(List<DataVariable> variables) {
+        ColumnType[] types = new ColumnType[variables.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columnTypeFor(variables.get(i));
+        }
+        return types;
+    }
+
+    // Generating the store:
+
+    /**
+     * Creates the column store from a tab-delimited file, in a single pass.
+     */
+    public static void generate(File tabFile, ColumnType[] types, long numCases, boolean skipHeader, File storeFile) throws IOException {
+        try (InputStream in = Files.newInputStream(tabFile.toPath())) {
+            generate(in, types, numCases, skipHeader, storeFile);
+        }
+    }
+
+    public static void generate(InputStream in, ColumnType[] types, long numCases, boolean skipHeader, File storeFile) throws IOException {
+        int numColumns = types.length;
+        types = types.clone();
+
+        long bitmapSize = (numCases + 7) / 8;
+        long[] dataOffsets = new long[numColumns];
+        long[] dictionaryOffsets = new long[numColumns];
+        long offset = HEADER_SIZE + (long) numColumns * COLUMN_TABLE_ENTRY_SIZE;
+        long rowWidth = 0;
+        for (int i = 0; i < numColumns; i++) {
+            dataOffsets[i] = offset;
+            offset += (types[i].hasMissingValueBitmap() ? bitmapSize : 0) + numCases * types[i].getWidth();
+            rowWidth += types[i].getWidth();
+        }
+        long dictionariesOffset = offset;
+
+        // The number of rows kept in memory between writes; a multiple of 8,
+        // so that the missing value bitmaps can be written out in whole bytes:
+        int blockRows = (int) Math.min(Math.max(8, BLOCK_BUDGET / Math.max(rowWidth, 1)), numCases + 8) & ~7;
+
+        ColumnBlock[] blocks = new ColumnBlock[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            blocks[i] = new ColumnBlock(types[i], blockRows);
+        }
+
+        try (FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer writeBuffer = ByteBuffer.allocate(blockRows * 8);
+
+            TabularLineReader reader = new TabularLineReader(in, (byte) '\t');
+            if (skipHeader && !reader.next()) {
+                throw new IOException("Failed to read the variable name header line from the tab-delimited file!");
+            }
+
+            long caseIndex = 0;
+            int blockIndex = 0;
+            while (reader.next()) {
+                if (caseIndex >= numCases) {
+                    if (reader.length() > 0) {
+                        throw new IOException("Tab file has more nonempty rows than the stored number of cases (" + numCases + ")!");
+                    }
+                    continue;
+                }
+                for (int i = 0; i < numColumns; i++) {
+                    if (types[i] != ColumnType.NONE) {
+                        blocks[i].add(blockIndex, reader, i);
+                    }
+                }
+                blockIndex++;
+                caseIndex++;
+
+                if (blockIndex == blockRows) {
+                    writeBlocks(channel, writeBuffer, blocks, types, dataOffsets, bitmapSize, caseIndex - blockIndex, blockIndex);
+                    blockIndex = 0;
+                }
+            }
+            if (caseIndex < numCases) {
+                throw new IOException("Tab file has fewer rows than the stored number of cases!");
+            }
+            if (blockIndex > 0) {
+                writeBlocks(channel, writeBuffer, blocks, types, dataOffsets, bitmapSize, caseIndex - blockIndex, blockIndex);
+            }
+
+            // dictionaries:
+            channel.position(dictionariesOffset);
+            for (int i = 0; i < numColumns; i++) {
+                if (types[i] == ColumnType.STRING) {
+                    if (blocks[i].dictionaryOverflow) {
+                        logger.fine("Column " + i + " has more than " + MAX_DICTIONARY_SIZE + " distinct values; not stored");
+                        types[i] = ColumnType.NONE;
+                    } else {
+                        dictionaryOffsets[i] = channel.position();
+                        writeDictionary(channel, blocks[i].dictionaryValues);
+                    }
+                }
+            }
+
+            // and, finally, the header:
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + numColumns * COLUMN_TABLE_ENTRY_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(numColumns);
+            header.putLong(numCases);
+            for (int i = 0; i < numColumns; i++) {
+                header.put((byte) types[i].ordinal());
+                header.putLong(dataOffsets[i]);
+                header.putLong(dictionaryOffsets[i]);
+            }
+            header.flip();
+            writeFully(channel, header, 0);
+        }
+    }
+
+    private static void writeBlocks(FileChannel channel, ByteBuffer buffer, ColumnBlock[] blocks, ColumnType[] types,
+            long[] dataOffsets, long bitmapSize, long firstCase, int rows) throws IOException {
+        for (int i = 0; i < blocks.length; i++) {
+            ColumnType type = types[i];
+            if (type == ColumnType.NONE || blocks[i].dictionaryOverflow) {
+                continue;
+            }
+            ColumnBlock block = blocks[i];
+            long valuesOffset = dataOffsets[i];
+
+            if (type.hasMissingValueBitmap()) {
+                // firstCase is always a multiple of 8:
+                writeFully(channel, ByteBuffer.wrap(block.missing, 0, (rows + 7) / 8), dataOffsets[i] + firstCase / 8);
+                valuesOffset += bitmapSize;
+                Arrays.fill(block.missing, (byte) 0);
+            }
+
+            buffer.clear();
+            switch (type) {
+                case LONG:
+                    buffer.asLongBuffer().put(block.longs, 0, rows);
+                    break;
+                case FLOAT:
+                    buffer.asFloatBuffer().put(block.floats, 0, rows);
+                    break;
+                case DOUBLE:
+                    buffer.asDoubleBuffer().put(block.doubles, 0, rows);
+                    break;
+                case STRING:
+                    buffer.asIntBuffer().put(block.codes, 0, rows);
+                    break;
+                default:
+                    break;
+            }
+            buffer.limit(rows * type.getWidth());
+            writeFully(channel, buffer, valuesOffset + firstCase * type.getWidth());
+        }
+    }
+
+    private static void writeDictionary(FileChannel channel, List<String> values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 4 + bytes.length) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                if (buffer.remaining() < 4 + bytes.length) {
+                    buffer = ByteBuffer.allocate(4 + bytes.length);
+                }
+            }
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * The values of one column for the current block of rows.
+     */
+    private static class ColumnBlock {
+
+        private final ColumnType type;
+        private long[] longs;
+        private float[] floats;
+        private double[] doubles;
+        private int[] codes;
+        private byte[] missing;
+        private Map<String, Integer> dictionary;
+        private List<String> dictionaryValues;
+        private boolean dictionaryOverflow = false;
+
+        ColumnBlock(ColumnType type, int rows) {
+            this.type = type;
+            switch (type) {
+                case LONG:
+                    longs = new long[rows];
+                    break;
+                case FLOAT:
+                    floats = new float[rows];
+                    break;
+                case DOUBLE:
+                    doubles = new double[rows];
+                    break;
+                case STRING:
+                    codes = new int[rows];
+                    dictionary = new HashMap<>();
+                    dictionaryValues = new ArrayList<>();
+                    break;
+                default:
+                    break;
+            }
+            if (type.hasMissingValueBitmap()) {
+                missing = new byte[rows / 8];
+            }
+        }
+
+        /*
+         * The parsing rules below are the same as in the
+         * TabularSubsetGenerator.subset*Vector() methods.
+         */
+        void add(int row, TabularLineReader reader, int column) {
+            switch (type) {
+                case LONG:
+                    try {
+                        longs[row] = Long.parseLong(reader.field(column));
+                    } catch (NumberFormatException ex) {
+                        setMissing(row);
+                    }
+                    break;
+                case FLOAT: {
+                    String value = reader.field(column);
+                    if ("inf".equalsIgnoreCase(value) || "+inf".equalsIgnoreCase(value)) {
+                        floats[row] = Float.POSITIVE_INFINITY;
+                    } else if ("-inf".equalsIgnoreCase(value)) {
+                        floats[row] = Float.NEGATIVE_INFINITY;
+                    } else if (value.isEmpty()) {
+                        setMissing(row);
+                    } else {
+                        try {
+                            floats[row] = Float.parseFloat(value);
+                        } catch (NumberFormatException ex) {
+                            setMissing(row);
+                        }
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    String value = reader.field(column);
+                    if ("inf".equalsIgnoreCase(value) || "+inf".equalsIgnoreCase(value)) {
+                        doubles[row] = Double.POSITIVE_INFINITY;
+                    } else if ("-inf".equalsIgnoreCase(value)) {
+                        doubles[row] = Double.NEGATIVE_INFINITY;
+                    } else if (value.isEmpty()) {
+                        setMissing(row);
+                    } else {
+                        try {
+                            doubles[row] = Double.parseDouble(value);
+                        } catch (NumberFormatException ex) {
+                            setMissing(row);
+                        }
+                    }
+                    break;
+                }
+                case STRING:
+                    if (dictionaryOverflow) {
+                        break;
+                    }
+                    if (reader.isFieldEmpty(column)) {
+                        // An empty string is a string missing value!
+                        codes[row] = -1;
+                    } else {
+                        String value = TabularSubsetGenerator.unescapeStringValue(reader.field(column));
+                        Integer code = dictionary.get(value);
+                        if (code == null) {
+                            if (dictionaryValues.size() >= MAX_DICTIONARY_SIZE) {
+                                dictionaryOverflow = true;
+                                dictionary = null;
+                                dictionaryValues = null;
+                                break;
+                            }
+                            code = dictionaryValues.size();
+                            dictionary.put(value, code);
+                            dictionaryValues.add(value);
+                        }
+                        codes[row] = code;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void setMissing(int row) {
+            missing[row >> 3] |= (byte) (1 << (row & 7));
+        }
+    }
+
+    // Reading the store:
+
+    public static TabularColumnStore open(Path storeFile) throws IOException {
+        return open((offset, length) -> {
+            InputStream in = Files.newInputStream(storeFile);
+            in.skipNBytes(offset);
+            return in;
+        });
+    }
+
+    /**
+     * Opens the column store saved as an auxiliary object of a tabular data
+     * file. For files on local storage, columns are read by seeking directly
+     * to their offsets; from other stores, each column is fetched with a
+     * ranged read of its own bytes.
+     */
+    public static TabularColumnStore open(StorageIO<DataFile> storageIO) throws IOException {
+        if (storageIO.isLocalFile()) {
+            return open(storageIO.getAuxObjectAsPath(AUX_TAG));
+        }
+        return open((offset, length) -> storageIO.getAuxRangeInputStream(AUX_TAG, offset, length));
+    }
+
+    public static TabularColumnStore open(Source source) throws IOException {
+        int numColumns;
+        long numCases;
+        try (DataInputStream in = new DataInputStream(source.openAt(0, HEADER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized column store format");
+            }
+            numColumns = in.readInt();
+            numCases = in.readLong();
+        } catch (EOFException eofex) {
+            throw new IOException("Column store is truncated", eofex);
+        }
+        long tableSize = (long) numColumns * COLUMN_TABLE_ENTRY_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(source.openAt(HEADER_SIZE, tableSize), BUFFER_SIZE))) {
+            ColumnType[] types = new ColumnType[numColumns];
+            long[] dataOffsets = new long[numColumns];
+            long[] dictionaryOffsets = new long[numColumns];
+            for (int i = 0; i < numColumns; i++) {
+                int type = in.readByte();
+                if (type < 0 || type >= ColumnType.values().length) {
+                    throw new IOException("Unrecognized column type " + type + " in the column store");
+                }
+                types[i] = ColumnType.values()[type];
+                dataOffsets[i] = in.readLong();
+                dictionaryOffsets[i] = in.readLong();
+            }
+            return new TabularColumnStore(source, numCases, types, dataOffsets, dictionaryOffsets);
+        } catch (EOFException eofex) {
+            throw new IOException("Column store is truncated", eofex);
+        }
+    }
+
+    public long getNumCases() {
+        return numCases;
+    }
+
+    public int getNumColumns() {
+        return types.length;
+    }
+
+    public ColumnType getColumnType(int column) {
+        return column >= 0 && column < types.length ? types[column] : ColumnType.NONE;
+    }
+
+    /**
+     * @return true if the vectors needed for the frequencies of the categories
+     * of this variable can be read from the store
+     */
+    public boolean hasFrequencyVector(int column, boolean numeric) {
+        ColumnType type = getColumnType(column);
+        return numeric ? (type == ColumnType.LONG || type == ColumnType.FLOAT || type == ColumnType.DOUBLE) : type == ColumnType.STRING;
+    }
+
+    /**
+     * @return the vector, or null if the column is not stored as DOUBLE
+     */
+    public Double[] getDoubleVector(int column) throws IOException {
+        if (getColumnType(column) != ColumnType.DOUBLE) {
+            return null;
+        }
+        Double[] vector = new Double[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            byte[] missing = readMissingValueBitmap(in);
+            for (int i = 0; i < vector.length; i++) {
+                double value = in.readDouble();
+                vector[i] = isMissing(missing, i) ? null : value;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * @return the vector, or null if the column is not stored as LONG
+     */
+    public Long[] getLongVector(int column) throws IOException {
+        if (getColumnType(column) != ColumnType.LONG) {
+            return null;
+        }
+        Long[] vector = new Long[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            byte[] missing = readMissingValueBitmap(in);
+            for (int i = 0; i < vector.length; i++) {
+                long value = in.readLong();
+                vector[i] = isMissing(missing, i) ? null : value;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Float vectors are used for the continuous variables stored as floats;
+     * and for the frequencies of the categories of any numeric variable, so
+     * LONG and DOUBLE columns are converted.
+     *
+     * @return the vector, or null if the column is not numeric
+     */
+    public Float[] getFloatVector(int column) throws IOException {
+        ColumnType type = getColumnType(column);
+        if (type != ColumnType.FLOAT && type != ColumnType.LONG && type != ColumnType.DOUBLE) {
+            return null;
+        }
+        Float[] vector = new Float[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            byte[] missing = readMissingValueBitmap(in);
+            for (int i = 0; i < vector.length; i++) {
+                float value;
+                switch (type) {
+                    case LONG:
+                        value = (float) in.readLong();
+                        break;
+                    case DOUBLE:
+                        value = (float) in.readDouble();
+                        break;
+                    default:
+                        value = in.readFloat();
+                }
+                vector[i] = isMissing(missing, i) ? null : value;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Primitive version of {@link #getDoubleVector(int)}, for the summary
+     * statistics; FLOAT columns are widened to doubles.
+     *
+     * @param missing the positions of the missing values are set in this BitSet
+     * @return the values, or null if the column is not stored as DOUBLE or FLOAT
+     */
+    public double[] getDoubleValues(int column, BitSet missing) throws IOException {
+        ColumnType type = getColumnType(column);
+        if (type != ColumnType.DOUBLE && type != ColumnType.FLOAT) {
+            return null;
+        }
+        double[] values = new double[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            readMissingValueBitmap(in, missing);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = type == ColumnType.DOUBLE ? in.readDouble() : in.readFloat();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Primitive version of {@link #getLongVector(int)}.
+     *
+     * @param missing the positions of the missing values are set in this BitSet
+     * @return the values, or null if the column is not stored as LONG
+     */
+    public long[] getLongValues(int column, BitSet missing) throws IOException {
+        if (getColumnType(column) != ColumnType.LONG) {
+            return null;
+        }
+        long[] values = new long[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            readMissingValueBitmap(in, missing);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readLong();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the vector, or null if the column is not stored as STRING
+     */
+    public String[] getStringVector(int column) throws IOException {
+        if (getColumnType(column) != ColumnType.STRING) {
+            return null;
+        }
+        String[] dictionary;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                source.openAt(dictionaryOffsets[column], getDictionaryLength(column)), BUFFER_SIZE))) {
+            dictionary = new String[in.readInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = in.readInt();
+                if (bytes.length < length) {
+                    bytes = new byte[length];
+                }
+                in.readFully(bytes, 0, length);
+                dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        String[] vector = new String[(int) numCases];
+        try (DataInputStream in = openColumn(column)) {
+            for (int i = 0; i < vector.length; i++) {
+                int code = in.readInt();
+                vector[i] = code < 0 ? null : dictionary[code];
+            }
+        }
+        return vector;
+    }
+
+    private DataInputStream openColumn(int column) throws IOException {
+        ColumnType type = types[column];
+        long length = numCases * type.getWidth() + (type.hasMissingValueBitmap() ? (numCases + 7) / 8 : 0);
+        return new DataInputStream(new BufferedInputStream(source.openAt(dataOffsets[column], length), BUFFER_SIZE));
+    }
+
+    /**
+     * The dictionaries are written one after the other at the end of the
+     * store, so each one ends where the next one starts; the last one ends
+     * with the store (-1).
+     */
+    private long getDictionaryLength(int column) {
+        long end = -1;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == ColumnType.STRING && dictionaryOffsets[i] > dictionaryOffsets[column]
+                    && (end < 0 || dictionaryOffsets[i] < end)) {
+                end = dictionaryOffsets[i];
+            }
+        }
+        return end < 0 ? -1 : end - dictionaryOffsets[column];
+    }
+
+    private byte[] readMissingValueBitmap(DataInputStream in) throws IOException {
+        byte[] missing = new byte[(int) ((numCases + 7) / 8)];
+        in.readFully(missing);
+        return missing;
+    }
+
+    private void readMissingValueBitmap(DataInputStream in, BitSet missing) throws IOException {
+        missing.clear();
+        missing.or(BitSet.valueOf(readMissingValueBitmap(in)));
+    }
+
+    private static boolean isMissing(byte[] missing, int i) {
+        return (missing[i >> 3] & (1 << (i & 7))) != 0;
+    }
+}
@@ -0,0 +1,165 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a delimited text file one line at a time, as raw bytes, recording the
+ * positions of the delimiters on each line. No Strings are created unless a
+ * caller asks for one specific field with {@link #field(int)}.
+ *
+ * The returned line buffer is reused from one line to the next.
+ */
+class TabularLineReader {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final InputStream in;
+    private final byte delimiter;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    private boolean eof = false;
+
+    private byte[] line = new byte[BUFFER_SIZE];
+    private int lineLength = 0;
+    private int[] delimiters = new int[16];
+    private int numDelimiters = 0;
+
+    private long lineOffset = 0;
+    private long nextLineOffset = 0;
+
+    TabularLineReader(InputStream in, byte delimiter) {
+        this.in = in;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Advances to the next line. The last line of the file does not need to
+     * be terminated by a new line.
+     *
+     * @return false if there are no more lines
+     */
+    boolean next() throws IOException {
+        lineLength = 0;
+        numDelimiters = 0;
+        lineOffset = nextLineOffset;
+
+        while (true) {
+            if (bufferPosition == bufferLimit) {
+                if (eof || !fill()) {
+                    if (lineLength > 0) {
+                        nextLineOffset = lineOffset + lineLength + 1;
+                        return true;
+                    }
+                    return false;
+                }
+            }
+
+            int segmentStart = bufferPosition;
+            for (int i = bufferPosition; i < bufferLimit; i++) {
+                byte b = buffer[i];
+                if (b == delimiter) {
+                    if (numDelimiters == delimiters.length) {
+                        delimiters = Arrays.copyOf(delimiters, delimiters.length * 2);
+                    }
+                    delimiters[numDelimiters++] = lineLength + (i - segmentStart);
+                } else if (b == '\n') {
+                    append(segmentStart, i - segmentStart);
+                    bufferPosition = i + 1;
+                    nextLineOffset = lineOffset + lineLength + 1;
+                    return true;
+                }
+            }
+            append(segmentStart, bufferLimit - segmentStart);
+            bufferPosition = bufferLimit;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        bufferPosition = 0;
+        bufferLimit = n;
+        return true;
+    }
+
+    private void append(int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(lineLength + length, line.length * 2));
+        }
+        System.arraycopy(buffer, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    byte[] line() {
+        return line;
+    }
+
+    int length() {
+        return lineLength;
+    }
+
+    int[] delimiters() {
+        return delimiters;
+    }
+
+    int numDelimiters() {
+        return numDelimiters;
+    }
+
+    int numFields() {
+        return numDelimiters + 1;
+    }
+
+    /**
+     * @return byte offset of the start of the current line in the file
+     */
+    long lineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return byte offset of the start of the line following the current one
+     */
+    long nextLineOffset() {
+        return nextLineOffset;
+    }
+
+    int fieldStart(int column) {
+        checkColumn(column);
+        return column == 0 ? 0 : delimiters[column - 1] + 1;
+    }
+
+    int fieldEnd(int column) {
+        checkColumn(column);
+        return column == numDelimiters ? lineLength : delimiters[column];
+    }
+
+    boolean isFieldEmpty(int column) {
+        return fieldStart(column) == fieldEnd(column);
+    }
+
+    String field(int column) {
+        int start = fieldStart(column);
+        return new String(line, start, fieldEnd(column) - start, StandardCharsets.UTF_8);
+    }
+
+    private void checkColumn(int column) {
+        if (column > numDelimiters) {
+            throw new RuntimeException("Line starting at byte " + lineOffset + " of the tab file has fewer than " + (column + 1) + " columns.");
+        }
+    }
+}
@@ -22,6 +22,7 @@ package edu.harvard.iq.dataverse.dataaccess;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -33,6 +34,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -42,6 +44,7 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
@@ -62,7 +65,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
 
     private static Logger logger = Logger.getLogger(TabularSubsetGenerator.class.getPackage().getName());
 
-    //private static int MAX_COLUMN_BUFFER = 8192;
+    private static final int BUFFER_SIZE = 65536;
         
     public TabularSubsetGenerator() {
         
@@ -78,6 +81,9 @@ public class TabularSubsetGenerator implements SubsetGenerator {
      * data files. These methods were not used, so they were deleted (in Jan. 2024
      * prior to 6.2.
      * Please consult git history if you are interested in looking at that code. 
+     * The column-wise copy has since been brought back, in a binary, typed 
+     * form, as an optional auxiliary object generated at ingest - see 
+     * {@link TabularColumnStore}. 
      */
         
     public void subsetFile(String infile, String outfile, List<Integer> columns, Long numCases) {
@@ -96,37 +102,130 @@ public class TabularSubsetGenerator implements SubsetGenerator {
 
     public void subsetFile(InputStream in, String outfile, List<Integer> columns, Long numCases,
         String delimiter) {
-          try (Scanner scanner = new Scanner(in); BufferedWriter out = new BufferedWriter(new FileWriter(outfile))) {
-            scanner.useDelimiter("\\n");
+        try (OutputStream out = new FileOutputStream(outfile)) {
+            subsetFile(in, out, columns, numCases, delimiterByte(delimiter), null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-                for (long caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                    if (scanner.hasNext()) {
-                        String[] line = (scanner.next()).split(delimiter,-1);
-                        List<String> ln = new ArrayList<String>();
-                        for (Integer i : columns) {
-                            ln.add(line[i]);
-                        }
-                        out.write(StringUtils.join(ln,"\t")+"\n");
-                    } else {
-                        throw new RuntimeException("Tab file has fewer rows than the determined number of cases.");
-                    }
+    /**
+     * Subsets a tabular data file served by a StorageIO driver. If the file is
+     * stored on the local filesystem and a column index ({@link TabularColumnIndex})
+     * has been saved for it, only the byte ranges containing the requested
+     * columns are read. Otherwise the whole file is streamed; and, if enabled
+     * via {@link JvmSettings#TABULAR_SUBSET_INDEX}, the index is built in the
+     * same pass and saved as an auxiliary object, so that repeat subsets of
+     * the same file are cheap.
+     *
+     * @param numLines number of lines in the file (including the variable
+     * name header line, if the file is stored with one)
+     * @param numColumns number of variables in the file
+     */
+    public void subsetFile(StorageIO<DataFile> storageIO, String outfile, List<Integer> columns, long numLines, int numColumns) throws IOException {
+        boolean localFile = storageIO.isLocalFile();
+
+        if (localFile && storageIO.isAuxObjectCached(TabularColumnIndex.AUX_TAG)) {
+            try (OutputStream out = new FileOutputStream(outfile)) {
+                if (TabularColumnIndex.subsetFile(storageIO.getFileSystemPath(),
+                        storageIO.getAuxObjectAsPath(TabularColumnIndex.AUX_TAG),
+                        out,
+                        columns)) {
+                    logger.fine("subset generated using the saved column index");
+                    storageIO.closeInputStream();
+                    return;
                 }
+            } catch (IOException ioex) {
+                logger.warning("Failed to subset using the saved column index (" + ioex.getMessage() + "); falling back on a full pass.");
+            }
+            storageIO.deleteAuxObject(TabularColumnIndex.AUX_TAG);
+        }
 
-              while (scanner.hasNext()) {
-                  if (!"".equals(scanner.next()) ) {
-                      throw new RuntimeException("Tab file has extra nonempty rows than the determined number of cases.");
+        boolean buildIndex = localFile && JvmSettings.TABULAR_SUBSET_INDEX.lookupOptional(Boolean.class).orElse(false);
+        File tempIndexFile = null;
+
+        try (InputStream in = storageIO.getInputStream(); OutputStream out = new FileOutputStream(outfile)) {
+            if (buildIndex) {
+                tempIndexFile = File.createTempFile("tempColumnIndex", ".tmp");
+                try (TabularColumnIndex.Builder indexBuilder = new TabularColumnIndex.Builder(
+                        new FileOutputStream(tempIndexFile),
+                        numColumns,
+                        numLines,
+                        Files.size(storageIO.getFileSystemPath()))) {
+                    subsetFile(in, out, columns, numLines, (byte) '\t', indexBuilder);
+                }
+                storageIO.savePathAsAux(tempIndexFile.toPath(), TabularColumnIndex.AUX_TAG);
+            } else {
+                subsetFile(in, out, columns, numLines, (byte) '\t', null);
+            }
+        } finally {
+            if (tempIndexFile != null) {
+                tempIndexFile.delete();
+            }
+        }
+    }
 
-                  }
-              }
+    /**
+     * Byte-level streaming subset: the input is read through a large buffer
+     * and the bytes of the selected columns are copied straight to the
+     * output, without decoding the lines into Strings.
+     *
+     * @param numLines number of lines expected in the input
+     * @param indexBuilder if not null, the line and column offsets found
+     * while scanning the input are recorded in it
+     */
+    public void subsetFile(InputStream in, OutputStream outputStream, List<Integer> columns, long numLines,
+            byte delimiter, TabularColumnIndex.Builder indexBuilder) throws IOException {
+        OutputStream out = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        TabularLineReader reader = new TabularLineReader(in, delimiter);
+
+        long lineIndex = 0;
+        long indexedEndOffset = 0;
+
+        while (reader.next()) {
+            if (lineIndex >= numLines) {
+                if (reader.length() > 0) {
+                    throw new RuntimeException("Tab file has extra nonempty rows than the determined number of cases.");
+                }
+                continue;
+            }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+            byte[] line = reader.line();
+            boolean first = true;
+            for (Integer column : columns) {
+                int start = reader.fieldStart(column);
+                if (!first) {
+                    out.write('\t');
+                }
+                out.write(line, start, reader.fieldEnd(column) - start);
+                first = false;
+            }
+            out.write('\n');
+
+            if (indexBuilder != null) {
+                indexBuilder.addLine(reader.lineOffset(), reader.delimiters(), reader.numDelimiters());
+                indexedEndOffset = reader.nextLineOffset();
+            }
+            lineIndex++;
+        }
+
+        if (lineIndex < numLines) {
+            throw new RuntimeException("Tab file has fewer rows than the determined number of cases.");
         }
 
+        if (indexBuilder != null) {
+            indexBuilder.finish(indexedEndOffset);
+        }
+        out.flush();
     }
-    
+
+    private static byte delimiterByte(String delimiter) {
+        if (delimiter == null || delimiter.length() != 1 || delimiter.charAt(0) > 127) {
+            throw new IllegalArgumentException("Only single-byte delimiters are supported: " + delimiter);
+        }
+        return (byte) delimiter.charAt(0);
+    }
+
     /*
      * Straightforward method for subsetting a column; inefficient on large 
      * files, OK to use on small files:
@@ -301,42 +400,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
                         // An empty string in quotes is an empty string!
                         retVector[caseIndex] = null;
                     } else {
-                        // Strip the outer quotes:
-                        line[column] = line[column].replaceFirst("^\\\"", "");
-                        line[column] = line[column].replaceFirst("\\\"$", "");
-
-                        // We need to restore the special characters that
-                        // are stored in tab files escaped - quotes, new lines
-                        // and tabs. Before we do that however, we need to
-                        // take care of any escaped backslashes stored in
-                        // the tab file. I.e., "foo\t" should be transformed
-                        // to "foo<TAB>"; but "foo\\t" should be transformed
-                        // to "foo\t". This way new lines and tabs that were
-                        // already escaped in the original data are not
-                        // going to be transformed to unescaped tab and
-                        // new line characters!
-                        String[] splitTokens = line[column].split(Matcher.quoteReplacement("\\\\"), -2);
-
-                        // (note that it's important to use the 2-argument version
-                        // of String.split(), and set the limit argument to a
-                        // negative value; otherwise any trailing backslashes
-                        // are lost.)
-                        for (int i = 0; i < splitTokens.length; i++) {
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
-                        }
-                        // TODO:
-                        // Make (some of?) the above optional; for ex., we
-                        // do need to restore the newlines when calculating UNFs;
-                        // But if we are subsetting these vectors in order to
-                        // create a new tab-delimited file, they will
-                        // actually break things! -- L.A. Jul. 28 2014
-
-                        line[column] = StringUtils.join(splitTokens, '\\');
-
-                        retVector[caseIndex] = line[column];
+                        retVector[caseIndex] = unescapeStringValue(line[column]);
                     }
 
                 } else {
@@ -358,6 +422,50 @@ public class TabularSubsetGenerator implements SubsetGenerator {
 
     }
 
+    /**
+     * Strips the outer quotes from a string value stored in a tab file, and
+     * restores the special characters (quotes, tabs and new lines) that are
+     * stored escaped.
+     */
+    static String unescapeStringValue(String value) {
+        // Strip the outer quotes:
+        value = value.replaceFirst("^\\\"", "");
+        value = value.replaceFirst("\\\"$", "");
+
+        // We need to restore the special characters that
+        // are stored in tab files escaped - quotes, new lines
+        // and tabs. Before we do that however, we need to
+        // take care of any escaped backslashes stored in
+        // the tab file. I.e., "foo\t" should be transformed
+        // to "foo<TAB>"; but "foo\\t" should be transformed
+        // to "foo\t". This way new lines and tabs that were
+        // already escaped in the original data are not
+        // going to be transformed to unescaped tab and
+        // new line characters!
+        String[] splitTokens = value.split(Matcher.quoteReplacement("\\\\"), -2);
+
+        // (note that it's important to use the 2-argument version
+        // of String.split(), and set the limit argument to a
+        // negative value; otherwise any trailing backslashes
+        // are lost.)
+        for (int i = 0; i < splitTokens.length; i++) {
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
+        }
+        // TODO:
+        // Make (some of?) the above optional; for ex., we
+        // do need to restore the newlines when calculating UNFs;
+        // But if we are subsetting these vectors in order to
+        // create a new tab-delimited file, they will
+        // actually break things! -- L.A. Jul. 28 2014
+
+        value = StringUtils.join(splitTokens, '\\');
+
+        return value;
+    }
+
     private static void skipFirstLine(Scanner scanner) {
         if (!scanner.hasNext()) {
             throw new RuntimeException("Failed to read the variable name header line from the tab-delimited file!");
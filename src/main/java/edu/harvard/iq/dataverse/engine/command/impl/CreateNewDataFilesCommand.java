@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandExecutionException;
 import edu.harvard.iq.dataverse.ingest.IngestServiceShapefileHelper;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.storageuse.UploadSessionQuotaLimit;
 import edu.harvard.iq.dataverse.util.file.FileExceedsStorageQuotaException;
 import edu.harvard.iq.dataverse.util.BundleUtil;
@@ -27,6 +28,7 @@ import static edu.harvard.iq.dataverse.util.FileUtil.saveInputStreamInTempFile;
 import static edu.harvard.iq.dataverse.util.FileUtil.useRecognizedType;
 import edu.harvard.iq.dataverse.util.ShapefileHandler;
 import edu.harvard.iq.dataverse.util.StringUtil;
+import edu.harvard.iq.dataverse.util.UploadedTempFile;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandler;
 import edu.harvard.iq.dataverse.util.file.BagItFileHandlerFactory;
 import edu.harvard.iq.dataverse.util.file.CreateDataFileResult;
@@ -38,7 +40,6 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,6 +50,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipFile;
@@ -136,6 +142,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
         }
         String finalType = null;
         File newFile = null;    // this File will be used for a single-file, local (non-direct) upload
+        UploadedTempFile upload = null; // the same, with its checksum and first bytes
         long fileSize = -1; 
 
 
@@ -148,7 +155,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     // temp files will always be stored on the local filesystem.
                     // -- L.A. Jul. 2014
                     logger.fine("Will attempt to save the file as: " + tempFile.toString());
-                    Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                    // the checksum is calculated, and the first bytes kept for the
+                    // type checks, while the file is being saved:
+                    upload = UploadedTempFile.save(inputStream, tempFile, newCheckSumType);
                 } catch (IOException ioex) {
                     throw new CommandExecutionException("Failed to save the upload as a temp file (temp disk space?)", ioex, this);
                 }
@@ -157,7 +166,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                 // (note that "no size limit set" = "unlimited")
                 // (also note, that if this is a zip file, we'll be checking
                 // the size limit for each of the individual unpacked files)
-                fileSize = tempFile.toFile().length();
+                fileSize = upload.getSize();
                 if (fileSizeLimit != null && fileSize > fileSizeLimit) {
                     try {
                         tempFile.toFile().delete();
@@ -184,7 +193,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             String recognizedType = null;
 
             try {
-                recognizedType = determineFileType(tempFile.toFile(), fileName);
+                recognizedType = determineFileType(tempFile.toFile(), fileName, upload.getHead());
                 logger.fine("File utility recognized the file as " + recognizedType);
                 if (recognizedType != null && !recognizedType.equals("")) {
                     if (useRecognizedType(suppliedContentType, recognizedType)) {
@@ -266,6 +275,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
 
                 int fileNumberLimit = ctxt.systemConfig().getZipUploadFilesLimit();
                 Long combinedUnzippedFileSize = 0L;
+                int zipUploadWorkers = JvmSettings.ZIP_UPLOAD_WORKERS.lookupOptional(Integer.class).orElse(1);
+                // the file entries to unpack, in the order of the central directory:
+                List<ZipEntry> unpackableEntries = new ArrayList<>();
 
                 try {
                     Charset charset = null;
@@ -333,6 +345,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                             // start with "._") 
                             if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
                                 numberOfUnpackableFiles++;
+                                unpackableEntries.add(entry);
                                 if (numberOfUnpackableFiles > fileNumberLimit) {
                                     logger.warning("Zip upload - too many files in the zip to process individually.");
                                     warningMessage = "The number of files in the zip archive is over the limit (" + fileNumberLimit
@@ -366,19 +379,38 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     }
                     
                     // OK we're still here - that means we can proceed unzipping. 
-                    
-                    // Close the ZipFile, re-open as ZipInputStream: 
-                    zipFile.close(); 
                     // reset:
                     combinedUnzippedFileSize = 0L;
 
-                    if (charset != null) {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()), charset);
+                    if (zipUploadWorkers > 1) {
+                        // Unpack the entries straight from the ZipFile, several 
+                        // at a time, rather than reading the archive again 
+                        // as a stream: 
+                        for (UnzippedEntry unzipped : unzipEntries(zipFile, unpackableEntries, zipUploadWorkers, ctxt.systemConfig().getFileFixityChecksumAlgorithm())) {
+                            String fileEntryName = unzipped.entryName;
+                            String shortName = fileEntryName.replaceFirst("^.*[\\/]", "");
+                            DataFile datafile = FileUtil.createSingleDataFile(version, null, unzipped.storageIdentifier, shortName,
+                                    MIME_TYPE_UNDETERMINED_DEFAULT,
+                                    unzipped.checksumType, unzipped.checksum, false);
+                            setDirectoryLabel(datafile, fileEntryName, shortName);
+                            if (unzipped.contentType != null && !unzipped.contentType.equals("")) {
+                                datafile.setContentType(unzipped.contentType);
+                            }
+                            datafiles.add(datafile);
+                            combinedUnzippedFileSize += datafile.getFilesize();
+                        }
                     } else {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()));
+                        // Close the ZipFile, re-open as ZipInputStream: 
+                        zipFile.close(); 
+
+                        if (charset != null) {
+                            unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()), charset);
+                        } else {
+                            unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()));
+                        }
                     }
 
-                    while (true) {
+                    while (unZippedIn != null) {
                         try {
                             zipEntry = unZippedIn.getNextEntry();
                         } catch (IllegalArgumentException iaex) {
@@ -424,27 +456,15 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
 
                                     String storageIdentifier = FileUtil.generateStorageIdentifier();
                                     File unzippedFile = new File(getFilesTempDirectory() + "/" + storageIdentifier);
-                                    Files.copy(unZippedIn, unzippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                                    UploadedTempFile unzipped = UploadedTempFile.save(unZippedIn, unzippedFile.toPath(), ctxt.systemConfig().getFileFixityChecksumAlgorithm());
                                     // No need to check the size of this unpacked file against the size limit, 
                                     // since we've already checked for that in the first pass.
                                     
                                     DataFile datafile = FileUtil.createSingleDataFile(version, null, storageIdentifier, shortName,
                                             MIME_TYPE_UNDETERMINED_DEFAULT,
-                                            ctxt.systemConfig().getFileFixityChecksumAlgorithm(), null, false);
+                                            unzipped.getChecksumType(), unzipped.getChecksum(), false);
                                     
-                                    if (!fileEntryName.equals(shortName)) {
-                                        // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
-                                        // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
-                                        // the leading, trailing and duplicate slashes; then replace all the characters that 
-                                        // don't pass our validation rules.
-                                        String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
-                                        directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
-                                        // if (!"".equals(directoryName)) {
-                                        if (!StringUtil.isEmpty(directoryName)) {
-                                            logger.fine("setting the directory label to " + directoryName);
-                                            datafile.getFileMetadata().setDirectoryLabel(directoryName);
-                                        }
-                                    }
+                                    setDirectoryLabel(datafile, fileEntryName, shortName);
 
                                     if (datafile != null) {
                                         // We have created this datafile with the mime type "unknown";
@@ -454,7 +474,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                                         String tempFileName = getFilesTempDirectory() + "/" + datafile.getStorageIdentifier();
 
                                         try {
-                                            recognizedType = determineFileType(unzippedFile, shortName);
+                                            recognizedType = determineFileType(unzippedFile, shortName, unzipped.getHead());
                                             // null the File explicitly, to release any open FDs:
                                             unzippedFile = null;
                                             logger.fine("File utility recognized unzipped file as " + recognizedType);
@@ -699,7 +719,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             throw new CommandExecutionException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.quota_exceeded"), bytesToHumanReadable(fileSize), bytesToHumanReadable(storageQuotaLimit)), this);
         } 
         
-        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum);
+        // for a local upload, the checksum of the temp file, calculated as it was saved
+        String checksum = newCheckSum == null && upload != null ? upload.getChecksum() : newCheckSum;
+        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, checksum);
 
         if (datafile != null) {
 
@@ -730,6 +752,119 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
 
         return CreateDataFileResult.error(fileName, finalType);
     }   // end createDataFiles
+
+    private static void setDirectoryLabel(DataFile datafile, String fileEntryName, String shortName) {
+        if (!fileEntryName.equals(shortName)) {
+            // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
+            // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
+            // the leading, trailing and duplicate slashes; then replace all the characters that 
+            // don't pass our validation rules.
+            String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
+            directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
+            // if (!"".equals(directoryName)) {
+            if (!StringUtil.isEmpty(directoryName)) {
+                logger.fine("setting the directory label to " + directoryName);
+                datafile.getFileMetadata().setDirectoryLabel(directoryName);
+            }
+        }
+    }
+
+    /**
+     * Unpacks the entries of a zip archive into the temp directory, on a pool
+     * of {@code workers} threads; each entry is checksummed as it is written,
+     * and then its type is determined. The ZipFile reads the entries from the 
+     * central directory, so any of them can be read while the others are being
+     * written. No more than {@code workers} entries are being read at a time,
+     * each through its own buffer (see {@link UploadedTempFile}), which limits
+     * both the threads and the memory used by one upload.
+     *
+     * @return the unpacked entries, in the same order as {@code entries}
+     * @throws IOException if any of the entries can't be unpacked; the files
+     * already unpacked are deleted.
+     */
+    private static List<UnzippedEntry> unzipEntries(ZipFile zipFile, List<ZipEntry> entries, int workers, DataFile.ChecksumType checksumType) throws IOException {
+        String tempDirectory = getFilesTempDirectory();
+        List<Path> unzippedFiles = new ArrayList<>(entries.size());
+        List<Future<UnzippedEntry>> futures = new ArrayList<>(entries.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(entries.size(), 1)));
+        boolean success = false;
+        try {
+            for (ZipEntry entry : entries) {
+                String storageIdentifier = FileUtil.generateStorageIdentifier();
+                Path unzippedFile = Paths.get(tempDirectory, storageIdentifier);
+                unzippedFiles.add(unzippedFile);
+                futures.add(executor.submit(() -> unzipEntry(zipFile, entry, storageIdentifier, unzippedFile, checksumType)));
+            }
+            List<UnzippedEntry> unzippedEntries = new ArrayList<>(entries.size());
+            for (Future<UnzippedEntry> future : futures) {
+                unzippedEntries.add(future.get());
+            }
+            success = true;
+            return unzippedEntries;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while unpacking the zip file", ie);
+        } catch (ExecutionException ee) {
+            logger.warning("Failed to unpack zip file entry: " + ee.getCause());
+            if (ee.getCause() instanceof IOException ioex) {
+                throw ioex;
+            }
+            throw new IOException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (!success) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                for (Path unzippedFile : unzippedFiles) {
+                    try {
+                        Files.deleteIfExists(unzippedFile);
+                    } catch (IOException ioex) {
+                        logger.warning("Could not remove temp file " + unzippedFile);
+                    }
+                }
+            }
+        }
+    }
+
+    private static UnzippedEntry unzipEntry(ZipFile zipFile, ZipEntry entry, String storageIdentifier, Path unzippedFile, DataFile.ChecksumType checksumType) throws IOException {
+        UploadedTempFile unzipped;
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            unzipped = UploadedTempFile.save(in, unzippedFile, checksumType);
+        }
+        String shortName = entry.getName().replaceFirst("^.*[\\/]", "");
+        String contentType = null;
+        try {
+            contentType = determineFileType(unzippedFile.toFile(), shortName, unzipped.getHead());
+            logger.fine("File utility recognized unzipped file as " + contentType);
+        } catch (Exception ex) {
+            logger.warning("Failed to run the file utility mime type check on file " + entry.getName());
+        }
+        return new UnzippedEntry(entry.getName(), storageIdentifier, unzipped.getChecksumType(), unzipped.getChecksum(), contentType);
+    }
+
+    /**
+     * A zip archive entry saved in the temp directory by
+     * {@link #unzipEntries(ZipFile, List, int, DataFile.ChecksumType)}. Only what
+     * is needed to create its DataFile is kept, not the first bytes of the file.
+     */
+    private static class UnzippedEntry {
+        final String entryName;
+        final String storageIdentifier;
+        final DataFile.ChecksumType checksumType;
+        final String checksum;
+        final String contentType;
+
+        UnzippedEntry(String entryName, String storageIdentifier, DataFile.ChecksumType checksumType, String checksum, String contentType) {
+            this.entryName = entryName;
+            this.storageIdentifier = storageIdentifier;
+            this.checksumType = checksumType;
+            this.checksum = checksum;
+            this.contentType = contentType;
+        }
+    }
     
     @Override
     public Map<String, Set<Permission>> getRequiredPermissions() {
@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
+import edu.harvard.iq.dataverse.search.DatasetIndexChanges;
 import edu.harvard.iq.dataverse.util.DatasetFieldUtil;
 import edu.harvard.iq.dataverse.util.FileMetadataUtil;
 
@@ -35,6 +36,7 @@ public class UpdateDatasetVersionCommand extends AbstractDatasetCommand<Dataset>
     private final List<FileMetadata> filesToDelete;
     private boolean validateLenient = false;
     private final DatasetVersion clone;
+    private DatasetIndexChanges indexChanges = null;
     final FileMetadata fmVarMet;
     
     public UpdateDatasetVersionCommand(Dataset theDataset, DataverseRequest aRequest) {
@@ -274,6 +276,7 @@ public class UpdateDatasetVersionCommand extends AbstractDatasetCommand<Dataset>
                 DatasetVersionDifference dvd = new DatasetVersionDifference(editVersion, clone);
                 AuthenticatedUser au = (AuthenticatedUser) getUser();
                 ctxt.datasetVersion().writeEditVersionLog(dvd, au);
+                indexChanges = DatasetIndexChanges.of(dvd);
             }
         } finally {
             // We're done making changes - remove the lock...
@@ -294,7 +297,12 @@ public class UpdateDatasetVersionCommand extends AbstractDatasetCommand<Dataset>
         // Indexing will be started immediately, unless an index is already busy for the given data
         // (it will be scheduled then for later indexing of the newest version).
         // See the documentation of asyncIndexDataset method for more details.
-        ctxt.index().asyncIndexDataset((Dataset) r, true);
+        // When we know what changed in the draft, only the affected Solr documents are updated.
+        if (indexChanges != null) {
+            ctxt.index().asyncIndexDatasetChanges((Dataset) r, indexChanges);
+        } else {
+            ctxt.index().asyncIndexDataset((Dataset) r, true);
+        }
         return true;
     }
 
@@ -16,6 +16,8 @@ import edu.harvard.iq.dataverse.datavariable.VariableMetadata;
 import edu.harvard.iq.dataverse.datavariable.CategoryMetadata;
 import edu.harvard.iq.dataverse.datavariable.VarGroup;
 import edu.harvard.iq.dataverse.dataaccess.DataConverter;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnStore;
 
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
@@ -592,10 +594,26 @@ public class DDIExportServiceBean {
     {
         // @todo: see the comment in the part of the code that calls this method
         try {
-            DataConverter dc = new DataConverter();
-            File tabFile = dc.downloadFromStorageIO(df.getStorageIO());
+            StorageIO<DataFile> storageIO = df.getStorageIO();
+            storageIO.open();
+            TabularColumnStore columnStore = null;
+            if (storageIO.isAuxObjectCached(TabularColumnStore.AUX_TAG)) {
+                columnStore = TabularColumnStore.open(storageIO);
+            }
+
+            // The (potentially large) tab file only needs to be downloaded 
+            // if some of the vectors are not available in the column store:
+            File tabFile = null;
+            for (int i = 0; i < vars.size(); i++) {
+                if (!vars.get(i).getCategories().isEmpty()
+                        && (columnStore == null || !columnStore.hasFrequencyVector(i, vars.get(i).isTypeNumeric()))) {
+                    DataConverter dc = new DataConverter();
+                    tabFile = dc.downloadFromStorageIO(storageIO);
+                    break;
+                }
+            }
 
-            ingestService.produceFrequencies(tabFile, vars );
+            ingestService.produceFrequencies(tabFile, vars, columnStore);
 
         } catch (Exception ex)
         {
@@ -9,8 +9,11 @@ import io.gdcc.spi.export.Exporter;
 import io.gdcc.spi.export.XMLExporter;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import jakarta.json.JsonObject;
 import javax.xml.stream.XMLStreamException;
@@ -48,8 +51,21 @@ public class DDIExporter implements XMLExporter {
             XMLStreamWriter xmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream);
             xmlw.writeStartDocument();
             xmlw.flush();
-            DdiExportUtil.datasetJson2ddi(dataProvider.getDatasetJson(), dataProvider.getDatasetFileDetails(),
-                    outputStream);
+            // The file details are gone through more than once, with a new 
+            // stream each time; the streams are closed once the export is 
+            // written. The study description only needs the dataset level 
+            // metadata: 
+            List<Stream<JsonObject>> passes = new ArrayList<>();
+            Iterable<JsonObject> fileDetails = () -> {
+                Stream<JsonObject> details = dataProvider.getDatasetFileDetailsStream();
+                passes.add(details);
+                return details.iterator();
+            };
+            try {
+                DdiExportUtil.datasetJson2ddi(dataProvider.getDatasetJsonWithoutFiles(), fileDetails, outputStream);
+            } finally {
+                passes.forEach(Stream::close);
+            }
         } catch (XMLStreamException xse) {
             throw new ExportException("Caught XMLStreamException performing DDI export", xse);
         }
@@ -38,7 +38,7 @@ public class DublinCoreExporter implements XMLExporter {
     @Override
     public void exportDataset(ExportDataProvider dataProvider, OutputStream outputStream) throws ExportException {
         try {
-            DublinCoreExportUtil.datasetJson2dublincore(dataProvider.getDatasetJson(), outputStream,
+            DublinCoreExportUtil.datasetJson2dublincore(dataProvider.getDatasetJsonWithoutFiles(), outputStream,
                     DublinCoreExportUtil.DC_FLAVOR_OAI);
         } catch (XMLStreamException xse) {
             throw new ExportException("Caught XMLStreamException performing DC export", xse);
@@ -16,8 +16,8 @@ import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -44,11 +44,16 @@ import java.util.Optional;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ws.rs.core.MediaType;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 
 /**
  *
@@ -62,6 +67,12 @@ public class ExportService {
 
     private static final Logger logger = Logger.getLogger(ExportService.class.getCanonicalName());
 
+    /**
+     * The size up to which an export is kept in memory, when it can't be
+     * written directly to the storage, before it is saved.
+     */
+    private static final int EXPORT_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
     private ExportService() {
         /*
          * Step 1 - find the EXPORTERS dir and add all jar files there to a class loader
@@ -252,21 +263,33 @@ public class ExportService {
             if (releasedVersion == null) {
                 throw new ExportException("No released version for dataset " + dataset.getGlobalId().toString());
             }
-            InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion);
-
-            for (Exporter e : exporterMap.values()) {
-                String formatName = e.getFormatName();
-                if(e.getPrerequisiteFormatName().isPresent()) {
-                    String prereqFormatName = e.getPrerequisiteFormatName().get();
-                    try (InputStream preReqStream = getExport(dataset, prereqFormatName)) {
-                        dataProvider.setPrerequisiteInputStream(preReqStream);
-                        cacheExport(dataset, dataProvider, formatName, e);
-                        dataProvider.setPrerequisiteInputStream(null);
-                    } catch (IOException ioe) {
-                        throw new ExportException ("Could not get prerequisite " + e.getPrerequisiteFormatName() + " to create " + formatName + "export for dataset " + dataset.getId(), ioe);
+            try (InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion)) {
+                // Build the representations of the version shared by the exporters
+                // once, here, rather than in each exporter:
+                dataProvider.prepareAll();
+                StorageIO<Dataset> storageIO = openForExport(dataset);
+
+                // The exporters are run at the same time, except that an exporter
+                // with a prerequisite format is only started once that format has
+                // been exported:
+                int workers = Math.max(JvmSettings.EXPORTERS_WORKERS.lookupOptional(Integer.class).orElse(4), 1);
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(exporterMap.size(), 1)));
+                try {
+                    Map<String, CompletableFuture<Void>> exports = new HashMap<>();
+                    for (Exporter e : exporterMap.values()) {
+                        scheduleExport(dataset, storageIO, dataProvider, e, exports, new HashSet<>(), executor);
                     }
-                } else {
-                    cacheExport(dataset, dataProvider, formatName, e);
+                    CompletableFuture.allOf(exports.values().toArray(new CompletableFuture[0])).join();
+                } catch (CompletionException ce) {
+                    if (ce.getCause() instanceof ExportException ee) {
+                        throw ee;
+                    }
+                    if (ce.getCause() instanceof RuntimeException re) {
+                        throw re;
+                    }
+                    throw new ExportException("Unknown exception exporting metadata. " + ce.getCause());
+                } finally {
+                    executor.shutdown();
                 }
             }
             // Finally, if we have been able to successfully export in all available
@@ -283,6 +306,55 @@ public class ExportService {
 
     }
 
+    /**
+     * Starts the export in the given format once its prerequisite format, if
+     * any, has been exported, starting that one first if needed.
+     *
+     * @param scheduling the formats being scheduled, to detect circular
+     * prerequisites
+     * @return the export, which completes with an ExportException if it fails
+     */
+    private CompletableFuture<Void> scheduleExport(Dataset dataset, StorageIO<Dataset> storageIO, InternalExportDataProvider dataProvider,
+            Exporter exporter, Map<String, CompletableFuture<Void>> exports, Set<String> scheduling, ExecutorService executor) {
+        String formatName = exporter.getFormatName();
+        CompletableFuture<Void> export = exports.get(formatName);
+        if (export != null) {
+            return export;
+        }
+        CompletableFuture<Void> prerequisite = CompletableFuture.completedFuture(null);
+        Optional<String> prereqFormatName = exporter.getPrerequisiteFormatName();
+        if (prereqFormatName.isPresent() && exporterMap.containsKey(prereqFormatName.get())) {
+            if (!scheduling.add(formatName)) {
+                return CompletableFuture.failedFuture(new ExportException("Circular prerequisites found when exporting as " + formatName));
+            }
+            prerequisite = scheduleExport(dataset, storageIO, dataProvider, exporterMap.get(prereqFormatName.get()), exports, scheduling, executor);
+        }
+        // The exporters only use the provider and the StorageIO; not the
+        // dataset, which must not be used outside of the calling thread:
+        Long datasetId = dataset.getId();
+        export = prerequisite.thenRunAsync(() -> {
+            try {
+                if (prereqFormatName.isPresent()) {
+                    // the prerequisite has just been exported, in this run:
+                    try (InputStream preReqStream = getCachedExportFormat(storageIO, prereqFormatName.get())) {
+                        if (preReqStream == null) {
+                            throw new ExportException("Prerequisite " + prereqFormatName.get() + " to create " + formatName + " export for dataset " + datasetId + " was not exported");
+                        }
+                        cacheExport(storageIO, dataProvider.withPrerequisiteInputStream(preReqStream), formatName, exporter);
+                    } catch (IOException ioe) {
+                        throw new ExportException("Could not get prerequisite " + prereqFormatName + " to create " + formatName + "export for dataset " + datasetId, ioe);
+                    }
+                } else {
+                    cacheExport(storageIO, dataProvider, formatName, exporter);
+                }
+            } catch (ExportException ee) {
+                throw new CompletionException(ee);
+            }
+        }, executor);
+        exports.put(formatName, export);
+        return export;
+    }
+
     public void clearAllCachedFormats(Dataset dataset) throws IOException {
         try {
 
@@ -311,17 +383,19 @@ public class ExportService {
                     throw new ExportException(
                             "No published version found during export. " + dataset.getGlobalId().toString());
                 }
+                StorageIO<Dataset> storageIO = openForExport(dataset);
                 if(e.getPrerequisiteFormatName().isPresent()) {
                     String prereqFormatName = e.getPrerequisiteFormatName().get();
-                    try (InputStream preReqStream = getExport(dataset, prereqFormatName)) {
-                        InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion, preReqStream);
-                        cacheExport(dataset, dataProvider, formatName, e);
+                    try (InputStream preReqStream = getExport(dataset, prereqFormatName);
+                            InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion, preReqStream)) {
+                        cacheExport(storageIO, dataProvider, formatName, e);
                     } catch (IOException ioe) {
                         throw new ExportException ("Could not get prerequisite " + e.getPrerequisiteFormatName() + " to create " + formatName + "export for dataset " + dataset.getId(), ioe);
                     }
                 } else {
-                    InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion);
-                    cacheExport(dataset, dataProvider, formatName, e);
+                    try (InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion)) {
+                        cacheExport(storageIO, dataProvider, formatName, e);
+                    }
                 }
                 // As with exportAll, we should update the lastexporttime for the dataset
                 dataset.setLastExportTime(new Timestamp(new Date().getTime()));
@@ -351,48 +425,74 @@ public class ExportService {
         throw new ExportException("No such Exporter: " + formatName);
     }
 
+    /**
+     * Resolves the StorageIO the exports of the dataset are cached with, and
+     * opens it for writing. Opening it may update the dataset (e.g. its
+     * storage identifier), so this is done on the calling thread, and the
+     * StorageIO is then shared by the exporters running on other threads.
+     */
+    private StorageIO<Dataset> openForExport(Dataset dataset) throws ExportException {
+        StorageIO<Dataset> storageIO;
+        try {
+            storageIO = DataAccess.getStorageIO(dataset);
+        } catch (IOException ioex) {
+            throw new ExportException("Could not access the storage of dataset " + dataset.getId() + " to cache its exports", ioex);
+        }
+        try {
+            storageIO.open(DataAccessOption.WRITE_ACCESS);
+        } catch (IOException ioex) {
+            // the exports are then saved with saveInputStreamAsAux(), see cacheExport()
+            logger.fine("Could not open the storage of dataset " + dataset.getId() + " for writing: " + ioex.getMessage());
+        }
+        return storageIO;
+    }
+
     // This method runs the selected metadata exporter, caching the output
     // in a file in the dataset directory / container based on its DOI:
-    private void cacheExport(Dataset dataset, InternalExportDataProvider dataProvider, String format, Exporter exporter)
+    private void cacheExport(StorageIO<Dataset> storageIO, InternalExportDataProvider dataProvider, String format, Exporter exporter)
             throws ExportException {
         
         OutputStream outputStream = null;
+        DeferredFileOutputStream bufferedOutput = null;
         try {
-            boolean tempFileUsed = false;
-            File tempFile = null;
-            StorageIO<Dataset> storageIO = null;
-
             // With some storage drivers, we can open a WritableChannel, or OutputStream
             // to directly write the generated metadata export that we want to cache;
             // Some drivers (like Swift) do not support that, and will give us an
-            // "operation not supported" exception. If that's the case, we'll have
-            // to save the output into a temp file, and then copy it over to the
-            // permanent storage using the IO "save" command:
+            // "operation not supported" exception. If that's the case, we'll keep
+            // the output in memory (or in a temp file, if it gets too big), and then 
+            // copy it over to the permanent storage using the IO "save" command:
             try {
-                storageIO = DataAccess.getStorageIO(dataset);
                 Channel outputChannel = storageIO.openAuxChannel("export_" + format + ".cached",
                         DataAccessOption.WRITE_ACCESS);
                 outputStream = Channels.newOutputStream((WritableByteChannel) outputChannel);
             } catch (IOException ioex) {
                 // A common case = an IOException in openAuxChannel which is not supported by S3
                 // stores for WRITE_ACCESS
-                tempFileUsed = true;
-                tempFile = File.createTempFile("tempFileToExport", ".tmp");
-                outputStream = new FileOutputStream(tempFile);
+                bufferedOutput = DeferredFileOutputStream.builder()
+                        .setThreshold(EXPORT_MEMORY_THRESHOLD)
+                        .setPrefix("tempFileToExport")
+                        .setSuffix(".tmp")
+                        .get();
+                outputStream = bufferedOutput;
             }
 
             try {
                 // Write the metadata export file to the outputStream, which may be the final
-                // location or a temp file
+                // location, or the buffer
                 exporter.exportDataset(dataProvider, outputStream);
                 outputStream.flush();
                 outputStream.close();
-                if (tempFileUsed) {
-                    logger.fine("Saving export_" + format + ".cached aux file from temp file: "
-                            + Paths.get(tempFile.getAbsolutePath()));
-                    storageIO.savePathAsAux(Paths.get(tempFile.getAbsolutePath()), "export_" + format + ".cached");
-                    boolean tempFileDeleted = tempFile.delete();
-                    logger.fine("tempFileDeleted: " + tempFileDeleted);
+                if (bufferedOutput != null) {
+                    if (bufferedOutput.isInMemory()) {
+                        byte[] data = bufferedOutput.getData();
+                        storageIO.saveInputStreamAsAux(new ByteArrayInputStream(data), "export_" + format + ".cached", (long) data.length);
+                    } else {
+                        File tempFile = bufferedOutput.getFile();
+                        logger.fine("Saving export_" + format + ".cached aux file from temp file: " + tempFile);
+                        storageIO.savePathAsAux(tempFile.toPath(), "export_" + format + ".cached");
+                        boolean tempFileDeleted = tempFile.delete();
+                        logger.fine("tempFileDeleted: " + tempFileDeleted);
+                    }
                 }
             } catch (ExportException exex) {
                 /*
@@ -408,11 +508,11 @@ public class ExportService {
                 throw new ExportException("IO Exception thrown exporting as " + "export_" + format + ".cached");
             }
 
-        } catch (IOException ioex) {
-            // This catches any problem creating a local temp file in the catch clause above
-            throw new ExportException("IO Exception thrown before exporting as " + "export_" + format + ".cached");
         } finally {
             IOUtils.closeQuietly(outputStream);
+            if (bufferedOutput != null && !bufferedOutput.isInMemory() && bufferedOutput.getFile().exists()) {
+                bufferedOutput.getFile().delete();
+            }
         }
 
     }
@@ -428,6 +528,17 @@ public class ExportService {
 
     }
 
+    /**
+     * Opens the cached export of the dataset in the given format as it is.
+     * Unlike {@link #getExport(Dataset, String)}, this never creates or 
+     * refreshes the export, so only the fields locating the stored files of 
+     * the dataset are used.
+     * @return the cached export, or null if there is none
+     */
+    public InputStream getCachedExport(Dataset dataset, String formatName) throws ExportException, IOException {
+        return getCachedExportFormat(dataset, formatName);
+    }
+
     // This method checks if the metadata has already been exported in this
     // format and cached on disk. If it has, it'll open the file and retun
     // the file input stream. If not, it'll return null.
@@ -441,15 +552,15 @@ public class ExportService {
             throw new IOException("IO Exception thrown exporting as " + "export_" + formatName + ".cached", ioex);
         }
 
-        InputStream cachedExportInputStream = null;
+        return getCachedExportFormat(dataAccess, formatName);
+    }
 
+    private InputStream getCachedExportFormat(StorageIO<Dataset> dataAccess, String formatName) throws IOException {
         try {
-            cachedExportInputStream = dataAccess.getAuxFileAsInputStream("export_" + formatName + ".cached");
-            return cachedExportInputStream;
+            return dataAccess.getAuxFileAsInputStream("export_" + formatName + ".cached");
         } catch (IOException ioex) {
             throw new IOException("IO Exception thrown exporting as " + "export_" + formatName + ".cached", ioex);
         }
-
     }
 
     /*
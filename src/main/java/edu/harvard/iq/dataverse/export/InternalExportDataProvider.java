@@ -1,13 +1,28 @@
 package edu.harvard.iq.dataverse.export;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.stream.JsonGenerator;
 import edu.harvard.iq.dataverse.DataCitation;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetVersion;
@@ -21,64 +36,194 @@ import edu.harvard.iq.dataverse.util.json.JsonUtil;
 /**
  * Provides all data necessary to create an export
  * 
+ * Each representation of the dataset version is only built once, the first
+ * time it is asked for, and then shared by all the exporters using this
+ * provider (and the providers derived from it with
+ * {@link #withPrerequisiteInputStream(InputStream)}), which may be running on
+ * different threads.
+ *
+ * The representations that include all the files (the dataset JSON and the
+ * file details) are only built if an exporter asks for them as a whole.
+ * {@link #prepareAll()} instead writes the JSON of each file, once, to
+ * temporary files, which the streaming accessors, and those whole
+ * representations, read one file at a time. If the files have not been
+ * prepared, {@link #writeDatasetJson(JsonGenerator)} reads the files of the
+ * version one at a time, and {@link #getDatasetFileDetailsStream()} prepares
+ * them on its first call. A representation that could not be prepared is not built again, since
+ * the exporters are then running on other threads, where the version must not
+ * be read.
+ *
+ * The temporary files are deleted by {@link #close()}, once all the exporters
+ * using this provider, and the providers derived from it, are done.
  */
-public class InternalExportDataProvider implements ExportDataProvider {
+public class InternalExportDataProvider implements ExportDataProvider, AutoCloseable {
 
-    private DatasetVersion dv;
-    private JsonObject jsonRepresentation = null;
-    private JsonObject schemaDotOrgRepresentation = null;
-    private JsonObject oreRepresentation = null;
+    private static final Logger logger = Logger.getLogger(InternalExportDataProvider.class.getCanonicalName());
+
+    private final DatasetVersion dv;
+    private final Memo<JsonObject> jsonWithoutFiles;
+    private final Memo<JsonObject> jsonRepresentation;
+    private final Memo<JsonObject> schemaDotOrgRepresentation;
+    private final Memo<JsonObject> oreRepresentation;
+    private final Memo<String> dataCiteXml;
+    private final Memo<JsonArray> fileDetails;
+    private final Memo<PreparedFiles> preparedFiles;
     private InputStream is = null;
 
     InternalExportDataProvider(DatasetVersion dv) {
         this.dv = dv;
+        // the same as JsonPrinter.jsonAsDatasetDto(dv), without the files:
+        jsonWithoutFiles = new Memo<>(() -> JsonPrinter.json(dv.getDataset())
+                .add("datasetVersion", JsonPrinter.jsonWithCitation(dv, false))
+                .build());
+        jsonRepresentation = new Memo<>(() -> {
+            JsonObject datasetJson = jsonWithoutFiles.get();
+            JsonArrayBuilder files = Json.createArrayBuilder();
+            try (Stream<JsonObject> fileJsons = getDatasetFilesStream()) {
+                fileJsons.forEach(files::add);
+            }
+            JsonObjectBuilder version = Json.createObjectBuilder(datasetJson.getJsonObject("datasetVersion")).add("files", files);
+            return Json.createObjectBuilder(datasetJson).add("datasetVersion", version).build();
+        });
+        schemaDotOrgRepresentation = new Memo<>(() -> JsonUtil.getJsonObject(dv.getJsonLd()));
+        oreRepresentation = new Memo<>(() -> new OREMap(dv).getOREMap());
+        dataCiteXml = new Memo<>(() -> DOIDataCiteRegisterService.getMetadataFromDvObject(
+                dv.getDataset().getGlobalId().asString(), new DataCitation(dv).getDataCiteMetadata(), dv.getDataset()));
+        fileDetails = new Memo<>(() -> {
+            JsonArrayBuilder jab = Json.createArrayBuilder();
+            try (Stream<JsonObject> details = getDatasetFileDetailsStream()) {
+                details.forEach(jab::add);
+            }
+            return jab.build();
+        });
+        preparedFiles = new Memo<>(() -> {
+            try {
+                return PreparedFiles.write(dv);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
     
     InternalExportDataProvider(DatasetVersion dv, InputStream is) {
-        this.dv = dv;
+        this(dv);
         this.is=is;
     }
 
+    private InternalExportDataProvider(InternalExportDataProvider provider, InputStream is) {
+        this.dv = provider.dv;
+        this.jsonWithoutFiles = provider.jsonWithoutFiles;
+        this.jsonRepresentation = provider.jsonRepresentation;
+        this.schemaDotOrgRepresentation = provider.schemaDotOrgRepresentation;
+        this.oreRepresentation = provider.oreRepresentation;
+        this.dataCiteXml = provider.dataCiteXml;
+        this.fileDetails = provider.fileDetails;
+        this.preparedFiles = provider.preparedFiles;
+        this.is = is;
+    }
+
+    /**
+     * @return a provider sharing the representations of this one, with the
+     * given prerequisite export.
+     */
+    InternalExportDataProvider withPrerequisiteInputStream(InputStream prereqStream) {
+        return new InternalExportDataProvider(this, prereqStream);
+    }
+
+    /**
+     * Builds the representations of the dataset version that don't include
+     * the files now, on the calling thread, and writes the JSON of each file
+     * to the temporary files, so that the exporters using this provider don't
+     * read the database themselves. A representation that can't be built is
+     * not built again: the exporters that need it fail with the same
+     * exception, without reading the version.
+     */
+    void prepareAll() {
+        for (Memo<?> memo : List.of(jsonWithoutFiles, schemaDotOrgRepresentation, oreRepresentation, dataCiteXml, preparedFiles)) {
+            try {
+                memo.prepare();
+            } catch (RuntimeException e) {
+                logger.log(Level.FINE, "Failed to prepare a representation of the dataset version for export", e);
+            }
+        }
+    }
+
     @Override
     public JsonObject getDatasetJson() {
-        if (jsonRepresentation == null) {
-            final JsonObjectBuilder datasetAsJsonBuilder = JsonPrinter.jsonAsDatasetDto(dv);
-            jsonRepresentation = datasetAsJsonBuilder.build();
+        return jsonRepresentation.get();
+    }
+
+    @Override
+    public JsonObject getDatasetJsonWithoutFiles() {
+        return jsonWithoutFiles.get();
+    }
+
+    @Override
+    public void writeDatasetJson(JsonGenerator generator) {
+        JsonObject datasetJson = jsonRepresentation.getIfPresent();
+        if (datasetJson != null) {
+            generator.write(datasetJson);
+            return;
+        }
+        // the same as JsonPrinter.jsonAsDatasetDto(dv), with the files 
+        // written one at a time, at the end of the version:
+        JsonObject withoutFiles = jsonWithoutFiles.get();
+        generator.writeStartObject();
+        withoutFiles.forEach((key, value) -> {
+            if (!"datasetVersion".equals(key)) {
+                generator.write(key, value);
+            }
+        });
+        generator.writeStartObject("datasetVersion");
+        withoutFiles.getJsonObject("datasetVersion").forEach(generator::write);
+        generator.writeStartArray("files");
+        try (Stream<JsonObject> fileJsons = getDatasetFilesStream()) {
+            fileJsons.forEach(generator::write);
         }
-        return jsonRepresentation;
+        generator.writeEnd(); // files
+        generator.writeEnd(); // datasetVersion
+        generator.writeEnd();
     }
 
     @Override
     public JsonObject getDatasetSchemaDotOrg() {
-        if (schemaDotOrgRepresentation == null) {
-            String jsonLdAsString = dv.getJsonLd();
-            schemaDotOrgRepresentation = JsonUtil.getJsonObject(jsonLdAsString);
-        }
-        return schemaDotOrgRepresentation;
+        return schemaDotOrgRepresentation.get();
     }
 
     @Override
     public JsonObject getDatasetORE() {
-        if (oreRepresentation == null) {
-            oreRepresentation = new OREMap(dv).getOREMap();
-        }
-        return oreRepresentation;
+        return oreRepresentation.get();
     }
 
     @Override
     public String getDataCiteXml() {
-        return DOIDataCiteRegisterService.getMetadataFromDvObject(
-                dv.getDataset().getGlobalId().asString(), new DataCitation(dv).getDataCiteMetadata(), dv.getDataset());
+        return dataCiteXml.get();
     }
     
     @Override
     public JsonArray getDatasetFileDetails() {
-        JsonArrayBuilder jab = Json.createArrayBuilder();
-        for (FileMetadata fileMetadata : dv.getFileMetadatas()) {
-            DataFile dataFile = fileMetadata.getDataFile();
-            jab.add(JsonPrinter.json(dataFile, fileMetadata, true));
+        return fileDetails.get();
+    }
+    
+    @Override
+    public Stream<JsonObject> getDatasetFileDetailsStream() {
+        JsonArray details = fileDetails.getIfPresent();
+        if (details != null) {
+            return details.getValuesAs(JsonObject.class).stream();
         }
-        return jab.build();
+        // If the files have not been prepared yet, they are now, so that an 
+        // exporter that goes through the details more than once (such as 
+        // DDI) doesn't build them again each time:
+        return preparedFiles.get().fileDetails();
+    }
+
+    // the "files" of the dataset JSON, one file at a time
+    private Stream<JsonObject> getDatasetFilesStream() {
+        PreparedFiles prepared = preparedFiles.getIfPresent();
+        if (prepared != null) {
+            return prepared.datasetFiles();
+        }
+        return dv.getFileMetadatas().stream().map(fileMetadata -> JsonPrinter.json(fileMetadata).build());
     }
     
     @Override
@@ -89,4 +234,155 @@ public class InternalExportDataProvider implements ExportDataProvider {
     public void setPrerequisiteInputStream(InputStream prereqStream) {
         this.is=prereqStream;
     }
+
+    /**
+     * Deletes the temporary files written by {@link #prepareAll()}, which
+     * are shared with the providers derived from this one.
+     */
+    @Override
+    public void close() {
+        PreparedFiles prepared = preparedFiles.value;
+        if (prepared != null) {
+            prepared.delete();
+        }
+    }
+
+    /**
+     * The JSON of each file of the version, both as in the "files" of the
+     * dataset JSON and as in the file details, built once and written to
+     * temporary files, one object per line. They can then be read any number
+     * of times, from any thread, without keeping the JSON of all the files in
+     * memory.
+     */
+    private static class PreparedFiles {
+        private final Path datasetFiles;
+        private final Path fileDetails;
+
+        private PreparedFiles(Path datasetFiles, Path fileDetails) {
+            this.datasetFiles = datasetFiles;
+            this.fileDetails = fileDetails;
+        }
+
+        static PreparedFiles write(DatasetVersion dv) throws IOException {
+            Path datasetFiles = Files.createTempFile("tempExportFiles", ".jsonl");
+            Path fileDetails = null;
+            boolean written = false;
+            try {
+                fileDetails = Files.createTempFile("tempExportFileDetails", ".jsonl");
+                try (BufferedWriter filesWriter = Files.newBufferedWriter(datasetFiles, StandardCharsets.UTF_8);
+                        BufferedWriter detailsWriter = Files.newBufferedWriter(fileDetails, StandardCharsets.UTF_8)) {
+                    for (FileMetadata fileMetadata : dv.getFileMetadatas()) {
+                        DataFile dataFile = fileMetadata.getDataFile();
+                        // a JsonObject is written on a single line, with any line breaks in its values escaped:
+                        filesWriter.write(JsonPrinter.json(fileMetadata).build().toString());
+                        filesWriter.newLine();
+                        detailsWriter.write(JsonPrinter.json(dataFile, fileMetadata, true).build().toString());
+                        detailsWriter.newLine();
+                    }
+                }
+                written = true;
+            } finally {
+                if (!written) {
+                    deleteQuietly(datasetFiles);
+                    deleteQuietly(fileDetails);
+                }
+            }
+            return new PreparedFiles(datasetFiles, fileDetails);
+        }
+
+        Stream<JsonObject> datasetFiles() {
+            return read(datasetFiles);
+        }
+
+        Stream<JsonObject> fileDetails() {
+            return read(fileDetails);
+        }
+
+        void delete() {
+            deleteQuietly(datasetFiles);
+            deleteQuietly(fileDetails);
+        }
+
+        // the reader is closed when the stream is closed
+        private static Stream<JsonObject> read(Path path) {
+            BufferedReader reader;
+            try {
+                reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return reader.lines().map(line -> {
+                try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+                    return jsonReader.readObject();
+                }
+            }).onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.log(Level.FINE, "Failed to close " + path, e);
+                }
+            });
+        }
+
+        private static void deleteQuietly(Path path) {
+            if (path == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to delete the temporary file " + path, e);
+            }
+        }
+    }
+
+    private static class Memo<T> {
+        private final Supplier<T> supplier;
+        private volatile T value;
+        private volatile RuntimeException failure;
+
+        Memo(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        /**
+         * Builds the value now; if that fails, the exception is kept and
+         * thrown by all the later calls, instead of building it again.
+         */
+        void prepare() {
+            try {
+                get();
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        /**
+         * @return the value, or null if it has not been built yet
+         */
+        T getIfPresent() {
+            if (failure != null) {
+                throw failure;
+            }
+            return value;
+        }
+
+        T get() {
+            if (failure != null) {
+                throw failure;
+            }
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        result = supplier.get();
+                        value = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
 }
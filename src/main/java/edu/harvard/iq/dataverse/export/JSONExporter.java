@@ -10,7 +10,9 @@ import java.io.OutputStream;
 import java.util.Locale;
 import java.util.Optional;
 
+import jakarta.json.Json;
 import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.ws.rs.core.MediaType;
 
 
@@ -35,8 +37,10 @@ public class JSONExporter implements Exporter {
     @Override
     public void exportDataset(ExportDataProvider dataProvider, OutputStream outputStream) throws ExportException {
         try{
-            outputStream.write(dataProvider.getDatasetJson().toString().getBytes("UTF8"));
-            outputStream.flush();
+            // the generator isn't closed, as that would close the outputStream:
+            JsonGenerator generator = Json.createGenerator(outputStream);
+            dataProvider.writeDatasetJson(generator);
+            generator.flush();
         } catch (Exception e){
             throw new ExportException("Unknown exception caught during JSON export.");
         }
@@ -11,7 +11,9 @@ import java.util.Locale;
 import java.util.Optional;
 import java.util.logging.Logger;
 
+import jakarta.json.Json;
 import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.ws.rs.core.MediaType;
 
 @AutoService(Exporter.class)
@@ -25,8 +27,10 @@ public class OAI_OREExporter implements Exporter {
     public void exportDataset(ExportDataProvider dataProvider, OutputStream outputStream)
             throws ExportException {
         try {
-            outputStream.write(dataProvider.getDatasetORE().toString().getBytes("UTF8"));
-            outputStream.flush();
+            // the generator isn't closed, as that would close the outputStream:
+            JsonGenerator generator = Json.createGenerator(outputStream);
+            dataProvider.writeDatasetORE(generator);
+            generator.flush();
         } catch (Exception e) {
             logger.severe(e.getMessage());
             e.printStackTrace();
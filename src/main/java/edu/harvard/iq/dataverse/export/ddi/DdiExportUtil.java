@@ -124,7 +124,18 @@ public class DdiExportUtil {
     
     // "full" ddi, with the the "<fileDscr>"  and "<dataDscr>/<var>" sections: 
     public static void datasetJson2ddi(JsonObject datasetDtoAsJson, JsonArray fileDetails, OutputStream outputStream) throws XMLStreamException {
-        logger.fine(JsonUtil.prettyPrint(datasetDtoAsJson.toString()));
+        datasetJson2ddi(datasetDtoAsJson, fileDetails.getValuesAs(JsonObject.class), outputStream);
+    }
+
+    /**
+     * @param fileDetails the details of the files, as in 
+     * {@link io.gdcc.spi.export.ExportDataProvider#getDatasetFileDetails()};
+     * they are gone through three times, one file at a time.
+     */
+    public static void datasetJson2ddi(JsonObject datasetDtoAsJson, Iterable<JsonObject> fileDetails, OutputStream outputStream) throws XMLStreamException {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(JsonUtil.prettyPrint(datasetDtoAsJson.toString()));
+        }
         Gson gson = new Gson();
         DatasetDTO datasetDto = gson.fromJson(datasetDtoAsJson.toString(), DatasetDTO.class);
         
@@ -1449,12 +1460,11 @@ public class DdiExportUtil {
     // otherMat, or a fileDscr section. 
     // -- L.A. 4.5 
     
-    private static void createOtherMatsFromFileMetadatas(XMLStreamWriter xmlw, JsonArray fileDetails) throws XMLStreamException {
+    private static void createOtherMatsFromFileMetadatas(XMLStreamWriter xmlw, Iterable<JsonObject> fileDetails) throws XMLStreamException {
         // The preferred URL for this dataverse, for cooking up the file access API links:
         String dataverseUrl = SystemConfig.getDataverseSiteUrlStatic();
         
-        for (int i=0;i<fileDetails.size();i++) {
-            JsonObject fileJson = fileDetails.getJsonObject(i);
+        for (JsonObject fileJson : fileDetails) {
             // We'll continue using the scheme we've used before, in DVN2-3: non-tabular files are put into otherMat,
             // tabular ones - in fileDscr sections. (fileDscr sections have special fields for numbers of variables
             // and observations, etc.)
@@ -1687,18 +1697,13 @@ public class DdiExportUtil {
     // plus, the structure of file-level metadata is currently being re-designed, 
     // so we probably should not invest any time into it right now). -- L.A. 4.5
     
-    public static void createDataDscr(XMLStreamWriter xmlw, JsonArray fileDetails) throws XMLStreamException {
-
-        if (fileDetails.isEmpty()) {
-            return;
-        }
+    public static void createDataDscr(XMLStreamWriter xmlw, Iterable<JsonObject> fileDetails) throws XMLStreamException {
 
         boolean tabularData = false;
 
         // we're not writing the opening <dataDscr> tag until we find an actual 
         // tabular datafile.
-        for (int i=0;i<fileDetails.size();i++) {
-            JsonObject fileJson = fileDetails.getJsonObject(i);
+        for (JsonObject fileJson : fileDetails) {
 
             /**
              * Previously (in Dataverse 5.3 and below) the dataDscr section was
@@ -2008,10 +2013,9 @@ public class DdiExportUtil {
 
     }
     
-    private static void createFileDscr(XMLStreamWriter xmlw, JsonArray fileDetails) throws XMLStreamException {
+    private static void createFileDscr(XMLStreamWriter xmlw, Iterable<JsonObject> fileDetails) throws XMLStreamException {
         String dataverseUrl = SystemConfig.getDataverseSiteUrlStatic();
-        for (int i =0;i<fileDetails.size();i++) {
-            JsonObject fileJson = fileDetails.getJsonObject(i);
+        for (JsonObject fileJson : fileDetails) {
             //originalFileFormat is one of several keys that only exist for tabular data
             if (fileJson.containsKey("originalFileFormat")) {
                 JsonObject dt = null;
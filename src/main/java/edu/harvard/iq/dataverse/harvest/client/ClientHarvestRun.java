@@ -97,6 +97,12 @@ public class ClientHarvestRun implements Serializable {
         } else if (isFailed()) {
             return RESULT_LABEL_FAILURE;
         } else if (isInProgress()) {
+            if (fetchedRecordCount != null && fetchedRecordCount > 0) {
+                return RESULT_LABEL_INPROGRESS + "; " + fetchedRecordCount + " records retrieved, "
+                        + harvestedDatasetCount + " harvested, "
+                        + deletedDatasetCount + " deleted, "
+                        + failedDatasetCount + " failed so far.";
+            }
             return RESULT_LABEL_INPROGRESS;
         }
         return null;
@@ -193,6 +199,19 @@ public class ClientHarvestRun implements Serializable {
         this.deletedDatasetCount = deletedDatasetCount;
     }
 
+    // The number of records retrieved from the remote server, including the
+    // deleted ones; updated periodically while the harvest is in progress,
+    // along with the counts above:
+    private Long fetchedRecordCount = 0L;
+
+    public Long getFetchedRecordCount() {
+        return fetchedRecordCount;
+    }
+
+    public void setFetchedRecordCount(Long fetchedRecordCount) {
+        this.fetchedRecordCount = fetchedRecordCount;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
@@ -0,0 +1,352 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import static java.net.HttpURLConnection.HTTP_OK;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipInputStream;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Client-side implementation of the OAI-PMH ListRecords verb, an alternative
+ * to a ListIdentifiers call followed by a GetRecord call for every identifier.
+ * Each call to {@link #nextPage()} retrieves one page of the list (following
+ * the resumption token of the previous page), streams through the response
+ * and saves the metadata section of each record in a temporary file of its
+ * own, the same way {@link FastGetRecord} does, to be parsed and validated
+ * when it is imported.
+ *
+ * Not thread-safe; the pages must be retrieved one after another anyway.
+ */
+public class FastListRecords {
+
+    private static final String OAI_ERROR_NO_RECORDS_MATCH = "noRecordsMatch";
+
+    private final String baseURL;
+    private final String metadataPrefix;
+    private final String setName;
+    private final Date fromDate;
+    private final Map<String, String> customHeaders;
+    private final HttpClient httpClient;
+
+    private final XMLInputFactory xmlInputFactory;
+    private final XMLOutputFactory xmlOutputFactory;
+    private final XMLEventFactory xmlEventFactory = XMLEventFactory.newInstance();
+
+    private String resumptionToken = null;
+    private boolean started = false;
+
+    public FastListRecords(OaiHandler oaiHandler, HttpClient httpClient) {
+        this(oaiHandler.getBaseOaiUrl(), oaiHandler.getMetadataPrefix(), oaiHandler.getSetName(), oaiHandler.getFromDate(), oaiHandler.getCustomHeaders(), httpClient);
+    }
+
+    FastListRecords(String baseURL, String metadataPrefix, String setName, Date fromDate, Map<String, String> customHeaders, HttpClient httpClient) {
+        this.baseURL = baseURL;
+        this.metadataPrefix = metadataPrefix;
+        this.setName = setName;
+        this.fromDate = fromDate;
+        this.customHeaders = customHeaders;
+        this.httpClient = httpClient;
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlOutputFactory = XMLOutputFactory.newInstance();
+        // The metadata records may use namespace prefixes declared further
+        // up in the response; the writer declares them again as needed:
+        xmlOutputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+    }
+
+    /**
+     * @return whether there is another page to retrieve.
+     */
+    public boolean hasMorePages() {
+        return !started || resumptionToken != null;
+    }
+
+    /**
+     * Retrieves the next page of the list.
+     *
+     * @return the records on the page; possibly empty.
+     * @throws IOException if the request fails or the server responds with an
+     * error (other than "noRecordsMatch", which is just an empty list).
+     */
+    public List<FetchedRecord> nextPage() throws IOException {
+        if (!hasMorePages()) {
+            return new ArrayList<>();
+        }
+        if (httpClient == null) {
+            throw new IOException("Null Http Client, cannot make a ListRecords call to obtain the metadata.");
+        }
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(getRequestURL()))
+                .GET()
+                .header("User-Agent", "XOAI Service Provider v5 (Dataverse)")
+                .header("Accept-Encoding", "compress, gzip");
+
+        if (customHeaders != null) {
+            for (String headerName : customHeaders.keySet()) {
+                requestBuilder.header(headerName, customHeaders.get(headerName));
+            }
+        }
+
+        HttpResponse<InputStream> response;
+
+        try {
+            response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the ListRecords response from the remote server");
+        }
+
+        if (response.statusCode() != HTTP_OK) {
+            response.body().close();
+            throw new IOException("ListRecords request failed. HTTP error code " + response.statusCode());
+        }
+
+        try (InputStream in = decode(response.body(), response.headers().firstValue("Content-Encoding"))) {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Parses a ListRecords response.
+     */
+    List<FetchedRecord> parse(InputStream in) throws IOException {
+        started = true;
+        resumptionToken = null;
+        List<FetchedRecord> records = new ArrayList<>();
+        XMLEventReader reader = null;
+        boolean parsed = false;
+
+        try {
+            reader = xmlInputFactory.createXMLEventReader(in);
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (!event.isStartElement()) {
+                    continue;
+                }
+                StartElement start = event.asStartElement();
+                switch (start.getName().getLocalPart()) {
+                    case "error":
+                        String errorCode = getAttribute(start, "code");
+                        String errorMessageText = reader.getElementText();
+                        if (OAI_ERROR_NO_RECORDS_MATCH.equals(errorCode)) {
+                            parsed = true;
+                            return records;
+                        }
+                        throw new IOException("ListRecords error code: " + errorCode + "; ListRecords error message: " + errorMessageText);
+                    case "record":
+                        records.add(parseRecord(reader));
+                        break;
+                    case "resumptionToken":
+                        String token = reader.getElementText().trim();
+                        resumptionToken = token.isEmpty() ? null : token;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            parsed = true;
+        } catch (XMLStreamException xse) {
+            throw new IOException("Malformed ListRecords response; baseURL=" + baseURL + ", metadataPrefix=" + metadataPrefix + ": " + xse.getMessage());
+        } finally {
+            if (!parsed) {
+                for (FetchedRecord record : records) {
+                    record.discard();
+                }
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException xse) {
+                    // seems OK to ignore;
+                }
+            }
+        }
+
+        return records;
+    }
+
+    private FetchedRecord parseRecord(XMLEventReader reader) throws XMLStreamException, IOException {
+        FetchedRecord record = new FetchedRecord();
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                switch (start.getName().getLocalPart()) {
+                    case "header":
+                        record.setDeleted("deleted".equals(getAttribute(start, "status")));
+                        break;
+                    case "identifier":
+                        record.setIdentifier(reader.getElementText().trim());
+                        break;
+                    case "datestamp":
+                        record.setDateStamp(parseDatestamp(reader.getElementText().trim()));
+                        break;
+                    case "metadata":
+                        record.setMetadataFile(saveMetadata(reader));
+                        break;
+                    case "about":
+                        skipElement(reader);
+                        break;
+                    default:
+                        break;
+                }
+            } else if (event.isEndElement() && "record".equals(event.asEndElement().getName().getLocalPart())) {
+                break;
+            }
+        }
+
+        if (record.getMetadataFile() == null && !record.isDeleted()) {
+            record.setErrorMessage("Failed to parse ListRecords response; no metadata found for identifier=" + record.getIdentifier() + ", metadataPrefix=" + metadataPrefix);
+        }
+        return record;
+    }
+
+    /**
+     * Copies the contents of the metadata section, up to (and not including)
+     * its closing tag, into a temp file as a standalone XML document.
+     */
+    private File saveMetadata(XMLEventReader reader) throws XMLStreamException, IOException {
+        File metadataFile = File.createTempFile("meta", ".tmp");
+        boolean elementWritten = false;
+
+        try (OutputStream out = new FileOutputStream(metadataFile)) {
+            XMLEventWriter writer = xmlOutputFactory.createXMLEventWriter(out, "UTF-8");
+            writer.add(xmlEventFactory.createStartDocument("UTF-8", "1.0"));
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                    elementWritten = true;
+                } else if (event.isEndElement()) {
+                    if (depth == 0) {
+                        break;
+                    }
+                    depth--;
+                } else if (depth == 0) {
+                    // whitespace around the record
+                    continue;
+                }
+                writer.add(event);
+            }
+            writer.add(xmlEventFactory.createEndDocument());
+            writer.close();
+        } catch (XMLStreamException | IOException ex) {
+            metadataFile.delete();
+            throw ex;
+        }
+
+        if (!elementWritten) {
+            metadataFile.delete();
+            return null;
+        }
+        return metadataFile;
+    }
+
+    private void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+        }
+    }
+
+    private static String getAttribute(StartElement start, String name) {
+        Attribute attribute = start.getAttributeByName(new QName(name));
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    /**
+     * OAI datestamps are either full UTC timestamps or days, depending on the
+     * granularity of the server.
+     */
+    static Date parseDatestamp(String datestamp) {
+        if (datestamp == null || datestamp.isEmpty()) {
+            return null;
+        }
+        try {
+            return Date.from(Instant.parse(datestamp));
+        } catch (DateTimeParseException dtpe) {
+            try {
+                return Date.from(LocalDate.parse(datestamp).atStartOfDay(ZoneOffset.UTC).toInstant());
+            } catch (DateTimeParseException dtpe2) {
+                return null;
+            }
+        }
+    }
+
+    private static InputStream decode(InputStream inputStream, Optional<String> contentEncoding) throws IOException {
+        if (contentEncoding.isPresent()) {
+            if (contentEncoding.get().equals("compress")) {
+                ZipInputStream zis = new ZipInputStream(inputStream);
+                zis.getNextEntry();
+                return zis;
+            } else if (contentEncoding.get().equals("gzip")) {
+                return new GZIPInputStream(inputStream);
+            } else if (contentEncoding.get().equals("deflate")) {
+                return new InflaterInputStream(inputStream);
+            }
+        }
+        return inputStream;
+    }
+
+    String getRequestURL() {
+        StringBuilder requestURL = new StringBuilder(baseURL);
+        requestURL.append("?verb=ListRecords");
+        if (resumptionToken != null) {
+            requestURL.append("&resumptionToken=").append(URLEncoder.encode(resumptionToken, UTF_8));
+        } else {
+            requestURL.append("&metadataPrefix=").append(URLEncoder.encode(metadataPrefix, UTF_8));
+            if (fromDate != null) {
+                requestURL.append("&from=").append(DateTimeFormatter.ISO_INSTANT.format(fromDate.toInstant().truncatedTo(ChronoUnit.SECONDS)));
+            }
+            if (setName != null && !setName.isEmpty()) {
+                requestURL.append("&set=").append(URLEncoder.encode(setName, UTF_8));
+            }
+        }
+        return requestURL.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * A record retrieved from a remote server - with GetRecord, ListRecords, or
+ * from the native API of a remote Dataverse - with its metadata saved in a
+ * temporary file, waiting to be imported.
+ */
+public class FetchedRecord {
+
+    private String identifier;
+    private Date dateStamp;
+    private boolean deleted = false;
+    private File metadataFile = null;
+    private String errorMessage = null;
+
+    public FetchedRecord() {
+
+    }
+
+    public FetchedRecord(String identifier, Date dateStamp) {
+        this.identifier = identifier;
+        this.dateStamp = dateStamp;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    public Date getDateStamp() {
+        return dateStamp;
+    }
+
+    public void setDateStamp(Date dateStamp) {
+        this.dateStamp = dateStamp;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public File getMetadataFile() {
+        return metadataFile;
+    }
+
+    public void setMetadataFile(File metadataFile) {
+        this.metadataFile = metadataFile;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Deletes the saved metadata file, if any; for records that are not going
+     * to be imported after all.
+     */
+    public void discard() {
+        if (metadataFile != null) {
+            try {
+                metadataFile.delete();
+            } catch (SecurityException se) {
+                // seems OK to ignore; it's a temp file
+            }
+            metadataFile = null;
+        }
+    }
+}
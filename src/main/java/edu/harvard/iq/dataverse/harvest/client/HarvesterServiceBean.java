@@ -14,10 +14,25 @@ import edu.harvard.iq.dataverse.timer.DataverseTimerServiceBean;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -88,6 +103,8 @@ public class HarvesterServiceBean {
     public static final String HARVEST_RESULT_FAILED="failed";
     public static final String DATAVERSE_PROPRIETARY_METADATA_FORMAT="dataverse_json";
     public static final String DATAVERSE_PROPRIETARY_METADATA_API="/api/datasets/export?exporter="+DATAVERSE_PROPRIETARY_METADATA_FORMAT+"&persistentId=";
+    // How often (in records processed) the progress of a harvest is saved in its ClientHarvestRun:
+    private static final int PROGRESS_UPDATE_INTERVAL = 100;
 
     public HarvesterServiceBean() {
 
@@ -231,6 +248,45 @@ public class HarvesterServiceBean {
         // OAI (or remote Dataverse API) to obtain the metadata records 
         httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
         
+        // (the proprietary Dataverse json is never served in the ListRecords
+        // responses, it has to be obtained from the native API record by record)
+        if (harvestingClient.isUseListRecords() && !DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
+            harvestOAIWithListRecords(dataverseRequest, harvestingClient, oaiHandler, httpClient, hdLogger, importCleanupLog, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+        } else {
+            harvestOAIWithGetRecord(dataverseRequest, harvestingClient, oaiHandler, httpClient, hdLogger, importCleanupLog, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+        }
+
+        logCompletedOaiHarvest(hdLogger, harvestingClient);
+
+    }
+    
+    /**
+     * Lists the identifiers with ListIdentifiers, and retrieves the records one
+     * by one with GetRecord (or from the native API of the remote Dataverse).
+     * With a harvesting concurrency greater than 1 the records are retrieved
+     * by a pool of that many threads, up to twice as many records ahead of the
+     * import; the records are still imported one at a time, in the order they
+     * were listed, by the calling thread.
+     */
+    private void harvestOAIWithGetRecord(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, OaiHandler oaiHandler, HttpClient httpClient, Logger hdLogger, PrintWriter importCleanupLog, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds)
+            throws IOException, StopHarvestException {
+        
+        int concurrency = harvestingClient.getHarvestingConcurrency();
+        ExecutorService fetchExecutor = concurrency > 1 ? Executors.newFixedThreadPool(concurrency) : null;
+        int maxPending = concurrency > 1 ? 2 * concurrency : 1;
+        Deque<PendingRecord> pending = new ArrayDeque<>();
+        AtomicInteger fetchedCount = new AtomicInteger();
+        // The records retrieved and not imported yet; each is taken out of
+        // this set exactly once, either to be imported or to be discarded:
+        Set<FetchedRecord> unimported = ConcurrentHashMap.newKeySet();
+        // set once the records still pending are not going to be imported:
+        AtomicBoolean stopped = new AtomicBoolean();
+        int processedCount = 0;
+        
+        if (fetchExecutor != null) {
+            hdLogger.info("Retrieving up to " + concurrency + " records in parallel");
+        }
+        
         try {
             for (Iterator<Header> idIter = oaiHandler.runListIdentifiers(); idIter.hasNext();) {
                 // Before each iteration, check if this harvesting job needs to be aborted:
@@ -248,73 +304,279 @@ public class HarvesterServiceBean {
                     hdLogger.info("Deleting harvesting dataset for " + identifier + ", per ListIdentifiers.");
 
                     deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
+                    fetchedCount.incrementAndGet();
                     continue;
                 }
 
-                MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
-
-                // Retrieve and process this record with a separate GetRecord call:
-                
-                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, getRecordErrorOccurred, deletedIdentifiers, dateStamp, httpClient);
+                // Retrieve this record with a separate GetRecord call:
+                Callable<FetchedRecord> fetch = () -> {
+                    FetchedRecord record = fetchRecord(hdLogger, oaiHandler, identifier, dateStamp, httpClient);
+                    fetchedCount.incrementAndGet();
+                    unimported.add(record);
+                    if (stopped.get() && unimported.remove(record)) {
+                        // the harvest was stopped while this record was being retrieved
+                        record.discard();
+                    }
+                    return record;
+                };
                 
-                if (datasetId != null) {
-                    harvestedDatasetIds.add(datasetId);
+                Future<FetchedRecord> fetched;
+                if (fetchExecutor != null) {
+                    fetched = fetchExecutor.submit(fetch);
+                } else {
+                    try {
+                        fetched = CompletableFuture.completedFuture(fetch.call());
+                    } catch (Exception e) {
+                        // (fetchRecord() never throws)
+                        fetched = CompletableFuture.failedFuture(e);
+                    }
                 }
+                pending.add(new PendingRecord(identifier, fetched));
                 
-                if (getRecordErrorOccurred.booleanValue() == true) {
-                    failedIdentifiers.add(identifier);
-                    //can be uncommented out for testing failure handling:
-                    //throw new IOException("Exception occured, stopping harvest");
+                while (pending.size() >= maxPending) {
+                    importPendingRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, pending.poll(), unimported, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                    if (++processedCount % PROGRESS_UPDATE_INTERVAL == 0) {
+                        updateHarvestProgress(harvestingClient, fetchedCount.get(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                    }
                 }
             }
+            
+            while (!pending.isEmpty()) {
+                if (checkIfStoppingJob(harvestingClient)) {
+                    throw new StopHarvestException("Harvesting stopped by external request");
+                }
+                importPendingRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, pending.poll(), unimported, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                if (++processedCount % PROGRESS_UPDATE_INTERVAL == 0) {
+                    updateHarvestProgress(harvestingClient, fetchedCount.get(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                }
+            }
+            updateHarvestProgress(harvestingClient, fetchedCount.get(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
         } catch (OaiHandlerException e) {
             throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
+        } finally {
+            // Records retrieved, or being retrieved, but not imported, if the
+            // harvest was stopped. The retrievals that have not started are
+            // cancelled; those in progress are not interrupted, and delete
+            // their own files once they complete.
+            stopped.set(true);
+            for (PendingRecord unprocessed : pending) {
+                unprocessed.result().cancel(false);
+            }
+            if (fetchExecutor != null) {
+                fetchExecutor.shutdown();
+            }
+            for (FetchedRecord record : unimported) {
+                if (unimported.remove(record)) {
+                    record.discard();
+                }
+            }
         }
-
-        logCompletedOaiHarvest(hdLogger, harvestingClient);
-
-    }    
+    }
     
-    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp, HttpClient httpClient) {
-        String errMessage = null;
-        Dataset harvestedDataset = null;
-        logGetRecord(hdLogger, oaiHandler, identifier);
-        File tempFile = null;
+    /**
+     * Retrieves the records with ListRecords, one page after another, on a
+     * separate thread that stays up to as many pages ahead of the import as
+     * the harvesting concurrency of the client; the records are imported one
+     * at a time, in the order they were listed, by the calling thread.
+     */
+    private void harvestOAIWithListRecords(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, OaiHandler oaiHandler, HttpClient httpClient, Logger hdLogger, PrintWriter importCleanupLog, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds)
+            throws IOException, StopHarvestException {
         
+        FastListRecords listRecords;
         try {
-            boolean deleted = false;
+            listRecords = oaiHandler.runListRecords(httpClient);
+        } catch (OaiHandlerException e) {
+            throw new IOException("Failed to run ListRecords: " + e.getMessage());
+        }
+        
+        BlockingQueue<List<FetchedRecord>> pages = new ArrayBlockingQueue<>(harvestingClient.getHarvestingConcurrency());
+        Deque<FetchedRecord> currentPage = new ArrayDeque<>();
+        AtomicInteger fetchedCount = new AtomicInteger();
+        int processedCount = 0;
+        
+        hdLogger.info("Retrieving the records with ListRecords");
+        
+        ExecutorService fetchExecutor = Executors.newSingleThreadExecutor();
+        Future<Void> fetching = fetchExecutor.submit(() -> {
+            while (listRecords.hasMorePages()) {
+                List<FetchedRecord> page = listRecords.nextPage();
+                fetchedCount.addAndGet(page.size());
+                try {
+                    pages.put(page);
+                } catch (InterruptedException ie) {
+                    page.forEach(FetchedRecord::discard);
+                    throw ie;
+                }
+            }
+            return null;
+        });
+        
+        try {
+            while (true) {
+                List<FetchedRecord> page;
+                try {
+                    page = pages.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the ListRecords response");
+                }
+                if (page == null) {
+                    if (fetching.isDone() && pages.isEmpty()) {
+                        break;
+                    }
+                    if (checkIfStoppingJob(harvestingClient)) {
+                        throw new StopHarvestException("Harvesting stopped by external request");
+                    }
+                    continue;
+                }
+                currentPage.addAll(page);
+                
+                while (!currentPage.isEmpty()) {
+                    // Before each record, check if this harvesting job needs to be aborted:
+                    if (checkIfStoppingJob(harvestingClient)) {
+                        throw new StopHarvestException("Harvesting stopped by external request");
+                    }
+                    
+                    FetchedRecord record = currentPage.poll();
+                    hdLogger.info("processing identifier: " + record.getIdentifier() + ", date: " + record.getDateStamp());
+                    
+                    if (record.isDeleted()) {
+                        hdLogger.info("Deleting harvesting dataset for " + record.getIdentifier() + ", per ListRecords.");
+                        
+                        deleteHarvestedDatasetIfExists(record.getIdentifier(), oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
+                    } else {
+                        if (record.getErrorMessage() != null) {
+                            hdLogger.log(Level.SEVERE, "Error calling ListRecords - " + record.getErrorMessage());
+                        }
+                        importFetchedRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, record, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                    }
+                    
+                    if (++processedCount % PROGRESS_UPDATE_INTERVAL == 0) {
+                        updateHarvestProgress(harvestingClient, fetchedCount.get(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                    }
+                }
+            }
             
+            try {
+                fetching.get();
+            } catch (ExecutionException ee) {
+                throw new IOException("Failed to run ListRecords: " + ee.getCause().getMessage());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the ListRecords response");
+            }
+        } finally {
+            fetching.cancel(true);
+            fetchExecutor.shutdownNow();
+            // Records retrieved, but not imported, if the harvest was stopped:
+            currentPage.forEach(FetchedRecord::discard);
+            for (List<FetchedRecord> page : pages) {
+                page.forEach(FetchedRecord::discard);
+            }
+        }
+        
+        updateHarvestProgress(harvestingClient, fetchedCount.get(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+    }
+    
+    private void importPendingRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, PendingRecord pendingRecord, Set<FetchedRecord> unimported, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds) throws IOException {
+        FetchedRecord record;
+        try {
+            record = pendingRecord.result().get();
+            unimported.remove(record);
+        } catch (ExecutionException ee) {
+            logGetRecordException(hdLogger, oaiHandler, pendingRecord.identifier(), ee.getCause());
+            record = new FetchedRecord(pendingRecord.identifier(), null);
+            record.setErrorMessage("Caught exception while executing GetRecord on " + pendingRecord.identifier());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the GetRecord response for " + pendingRecord.identifier());
+        }
+        importFetchedRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, record, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+    }
+    
+    private void importFetchedRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, FetchedRecord record, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds) {
+        MutableBoolean recordErrorOccurred = new MutableBoolean(false);
+        
+        Long datasetId = importRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, record, recordErrorOccurred, deletedIdentifiers);
+        
+        if (datasetId != null) {
+            harvestedDatasetIds.add(datasetId);
+        }
+        
+        if (recordErrorOccurred.booleanValue() == true) {
+            failedIdentifiers.add(record.getIdentifier());
+            //can be uncommented out for testing failure handling:
+            //throw new IOException("Exception occured, stopping harvest");
+        }
+    }
+    
+    private void updateHarvestProgress(HarvestingClient harvestingClient, int fetchedCount, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds) {
+        try {
+            harvestingClientService.setHarvestProgress(harvestingClient.getId(), fetchedCount, harvestedDatasetIds.size(), failedIdentifiers.size(), deletedIdentifiers.size());
+        } catch (Exception e) {
+            // not worth interrupting the harvest over
+            logger.warning("Failed to record the progress of the harvest " + harvestingClient.getName() + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Retrieves a record with GetRecord (or from the native API of the remote
+     * Dataverse). Safe to call from multiple threads at once; any problems
+     * are reported in the error message of the record returned.
+     */
+    FetchedRecord fetchRecord(Logger hdLogger, OaiHandler oaiHandler, String identifier, Date dateStamp, HttpClient httpClient) {
+        logGetRecord(hdLogger, oaiHandler, identifier);
+        FetchedRecord record = new FetchedRecord(identifier, dateStamp);
+        
+        try {
             if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
                 // Make direct call to obtain the proprietary Dataverse metadata
                 // in JSON from the remote Dataverse server:
                 String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
                 logger.fine("calling "+metadataApiUrl);
-                tempFile = retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl);
+                record.setMetadataFile(retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl));
                 
             } else {
-                FastGetRecord record = oaiHandler.runGetRecord(identifier, httpClient);
-                errMessage = record.getErrorMessage();
-                deleted = record.isDeleted();
-                tempFile = record.getMetadataFile();
+                FastGetRecord getRecord = oaiHandler.runGetRecord(identifier, httpClient);
+                record.setErrorMessage(getRecord.getErrorMessage());
+                record.setDeleted(getRecord.isDeleted());
+                record.setMetadataFile(getRecord.getMetadataFile());
             }
 
+            if (record.getErrorMessage() != null) {
+                hdLogger.log(Level.SEVERE, "Error calling GetRecord - " + record.getErrorMessage());
+            }
+        } catch (Throwable e) {
+            logGetRecordException(hdLogger, oaiHandler, identifier, e);
+            record.setErrorMessage("Caught exception while executing GetRecord on "+identifier);
+        }
+        
+        return record;
+    }
+    
+    private Long importRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, FetchedRecord record, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers) {
+        String errMessage = record.getErrorMessage();
+        Dataset harvestedDataset = null;
+        String identifier = record.getIdentifier();
+        File tempFile = record.getMetadataFile();
+        
+        try {
             if (errMessage != null) {
-                hdLogger.log(Level.SEVERE, "Error calling GetRecord - " + errMessage);
+                // (already logged when the record was retrieved)
                 
-            } else if (deleted) {
+            } else if (record.isDeleted()) {
                 hdLogger.info("Deleting harvesting dataset for "+identifier+", per GetRecord.");
                 
                 deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger); 
             } else {
                 hdLogger.info("Successfully retrieved GetRecord response.");
 
-                PrintWriter cleanupLog;
                 harvestedDataset = importService.doImportHarvestedDataset(dataverseRequest, 
                         oaiHandler.getHarvestingClient(),
                         identifier,
                         oaiHandler.getMetadataPrefix(), 
                         tempFile,
-                        dateStamp,
+                        record.getDateStamp(),
                         importCleanupLog);
                 
                 hdLogger.fine("Harvest Successful for identifier " + identifier);
@@ -348,6 +610,8 @@ public class HarvesterServiceBean {
         return harvestedDataset != null ? harvestedDataset.getId() : null;
     }
     
+    private record PendingRecord(String identifier, Future<FetchedRecord> result) {}
+    
     File retrieveProprietaryDataverseMetadata (HttpClient client, String remoteApiUrl) throws IOException {
         
         if (client == null) {
@@ -251,6 +251,35 @@ public class HarvestingClient implements Serializable {
     public void setAllowHarvestingMissingCVV(boolean allowHarvestingMissingCVV) {
         this.allowHarvestingMissingCVV = allowHarvestingMissingCVV;
     }
+
+    public static final int MAX_HARVESTING_CONCURRENCY = 16;
+
+    // The number of records retrieved from the remote server in parallel
+    // (null means 1, one record at a time):
+    private Integer harvestingConcurrency;
+
+    public int getHarvestingConcurrency() {
+        if (harvestingConcurrency == null || harvestingConcurrency < 1) {
+            return 1;
+        }
+        return Math.min(harvestingConcurrency, MAX_HARVESTING_CONCURRENCY);
+    }
+
+    public void setHarvestingConcurrency(Integer harvestingConcurrency) {
+        this.harvestingConcurrency = harvestingConcurrency;
+    }
+
+    // Retrieve the records with ListRecords, rather than with ListIdentifiers
+    // followed by one GetRecord call per record:
+    private boolean useListRecords;
+
+    public boolean isUseListRecords() {
+        return useListRecords;
+    }
+
+    public void setUseListRecords(boolean useListRecords) {
+        this.useListRecords = useListRecords;
+    }
     
     // TODO: do we need "orphanRemoval=true"? -- L.A. 4.4
     // TODO: should it be @OrderBy("startTime")? -- L.A. 4.4
@@ -178,6 +178,24 @@ public class HarvestingClientServiceBean implements java.io.Serializable {
         recordHarvestJobStatus(hcId, finishTime, harvestedCount, failedCount, deletedCount, ClientHarvestRun.RunResultType.INTERRUPTED);
     }
     
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void setHarvestProgress(Long hcId, int fetchedCount, int harvestedCount, int failedCount, int deletedCount) {
+        HarvestingClient harvestingClient = em.find(HarvestingClient.class, hcId);
+        if (harvestingClient == null) {
+            return;
+        }
+        em.refresh(harvestingClient);
+        
+        ClientHarvestRun currentRun = harvestingClient.getLastRun();
+        
+        if (currentRun != null && currentRun.isInProgress()) {
+            currentRun.setFetchedRecordCount(Long.valueOf(fetchedCount));
+            currentRun.setHarvestedDatasetCount(Long.valueOf(harvestedCount));
+            currentRun.setFailedDatasetCount(Long.valueOf(failedCount));
+            currentRun.setDeletedDatasetCount(Long.valueOf(deletedCount));
+        }
+    }
+    
     public void recordHarvestJobStatus(Long hcId, Date finishTime, int harvestedCount, int failedCount, int deletedCount, ClientHarvestRun.RunResultType result) {
         HarvestingClient harvestingClient = em.find(HarvestingClient.class, hcId);
         if (harvestingClient == null) {
@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -315,12 +316,72 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
     
     public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, boolean excludeSet) {
+        TypedQuery<OAIRecord> query = createOaiRecordsQuery("SELECT object(h)", setName, from, until, excludeSet, null, null, " order by h.globalId", OAIRecord.class);
                 
+        try {
+            return query.getResultList();      
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    /**
+     * Looks up one page of the records in the set, ordered by the global id.
+     * @param setName      name of the OAI set
+     * @param from         earliest update time, or null
+     * @param until        latest update time, or null
+     * @param afterGlobalId the global id of the last record of the previous 
+     *                     page, if known; the page then starts right after it,
+     *                     which, unlike an offset, the database can seek to 
+     *                     using the index on the global id.
+     * @param offset       number of records to skip, if afterGlobalId is null
+     * @param maxResults   maximum number of records to return
+     * @return the records, or null if the lookup failed
+     */
+    public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, String afterGlobalId, int offset, int maxResults) {
+        TypedQuery<OAIRecord> query = createOaiRecordsQuery("SELECT object(h)", setName, from, until, false, afterGlobalId, null, " order by h.globalId", OAIRecord.class);
+        if (afterGlobalId == null && offset > 0) {
+            query.setFirstResult(offset);
+        }
+        query.setMaxResults(maxResults);
+        
+        try {
+            return query.getResultList();
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    public long countOaiRecordsBySetName(String setName, Instant from, Instant until) {
+        return createOaiRecordsQuery("SELECT count(h)", setName, from, until, false, null, null, "", Long.class).getSingleResult();
+    }
+    
+    /**
+     * Same as {@link #findOaiRecordsNotInThisSet(String, Instant, Instant)},
+     * but only looks up the records with the given global ids. 
+     */
+    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Instant from, Instant until, Collection<String> globalIds) {
+        if (globalIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TypedQuery<OAIRecord> query = createOaiRecordsQuery("SELECT object(h)", setName, from, until, true, null, globalIds, " order by h.globalId", OAIRecord.class);
+        
+        try {
+            return query.getResultList();
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+    
+    private <T> TypedQuery<T> createOaiRecordsQuery(String select, String setName, Instant from, Instant until, boolean excludeSet, String afterGlobalId, Collection<String> globalIds, String orderBy, Class<T> resultClass) {
         if (setName == null) {
             setName = "";
         }
         
-        String queryString = "SELECT object(h) from OAIRecord h where h.id is not null";
+        String queryString = select + " from OAIRecord h where h.id is not null";
         if (excludeSet) {
             queryString += " and h.setName is not null and h.setName != '' and h.setName != :setName";
         } else {
@@ -329,14 +390,14 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         
         queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
         queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
-        queryString += " order by h.globalId";
+        queryString += afterGlobalId != null ? " and h.globalId > :afterGlobalId" : "";
+        queryString += globalIds != null ? " and h.globalId in :globalIds" : "";
+        queryString += orderBy;
 
         logger.fine("Query: "+queryString);
         
-        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
-        if (setName != null) { 
-            query.setParameter("setName",setName); 
-        }
+        TypedQuery<T> query = em.createQuery(queryString, resultClass);
+        query.setParameter("setName",setName); 
         // TODO: review and phase out the use of java.util.Date throughout this service.
         
         if (from != null) { 
@@ -347,13 +408,15 @@ public class OAIRecordServiceBean implements java.io.Serializable {
             Date untilDate = Date.from(until);
             query.setParameter("until",untilDate,TemporalType.TIMESTAMP); 
         }
-                
-        try {
-            return query.getResultList();      
-        } catch (Exception ex) {
-            logger.fine("Caught exception; returning null.");
-            return null;
+        
+        if (afterGlobalId != null) {
+            query.setParameter("afterGlobalId", afterGlobalId);
+        }
+        
+        if (globalIds != null) {
+            query.setParameter("globalIds", globalIds);
         }
+        return query;
     }
     
     // This method is to only get the records NOT marked as "deleted":
@@ -9,6 +9,7 @@ import io.gdcc.xoai.dataprovider.model.MetadataFormat;
 import io.gdcc.xoai.dataprovider.repository.ItemRepository;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.export.DDIExporter;
 import edu.harvard.iq.dataverse.export.ExportService;
 import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecord;
@@ -24,7 +25,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -38,9 +43,34 @@ import java.util.logging.Logger;
 public class DataverseXoaiItemRepository implements ItemRepository {
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.xoai.DataverseXoaiItemRepository");
     
+    /**
+     * How many "cursors" (see below) are remembered, across all the ongoing harvests.
+     */
+    private static final int MAX_CURSORS = 1000;
+    /**
+     * How long the total number of records in a set is remembered, to be
+     * reported on every page of the same harvest.
+     */
+    private static final long COUNT_MAX_AGE_MILLIS = 5 * 60 * 1000L;
+    
     private final OAIRecordServiceBean recordService;
     private final DatasetServiceBean datasetService;
     private final String serverUrl; 
+    
+    /*
+     * The resumption tokens only carry an offset. So, for every page that is
+     * served with more to follow, we remember the global id of its last 
+     * record, for the offset of the next page; the next page can then be 
+     * looked up as the records following that id, rather than by skipping 
+     * through all the records before the offset. 
+     */
+    private final Map<String, String> cursors = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    });
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
 
     public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl) {
         this.recordService = recordService;
@@ -133,22 +163,34 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
+        String query = setSpec + "|" + from + "|" + until;
+        String afterGlobalId = offset > 0 ? cursors.get(query + "|" + offset) : null;
+        
+        // looking up one more record than requested, to know whether there are more:
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until, afterGlobalId, offset, maxResponseLength + 1);
         
         List<DataverseXoaiItem> xoaiItems = new ArrayList<>();
 
         if (oaiRecords != null && !oaiRecords.isEmpty()) {
-            logger.fine("total " + oaiRecords.size() + " records returned");
+            logger.fine(oaiRecords.size() + " records returned"
+                    + (afterGlobalId != null ? ", following " + afterGlobalId : ""));
+            
+            List<OAIRecord> pageRecords = oaiRecords.subList(0, Math.min(maxResponseLength, oaiRecords.size()));
+            Map<String, Dataset> storageLocations = fullItems 
+                    ? findStorageLocations(pageRecords, metadataFormat.getPrefix()) 
+                    : Collections.emptyMap();
             
-            for (int i = offset; i < offset + maxResponseLength && i < oaiRecords.size(); i++) {
-                OAIRecord record = oaiRecords.get(i);
+            for (OAIRecord record : pageRecords) {
                 DataverseXoaiItem xoaiItem = new DataverseXoaiItem(record);
                 
                 if (fullItems) {
                     // If we are cooking "full" Items (for the ListRecords verb),
                     // add the metadata to the item object (if not a deleted
                     // record, if available, etc.):
-                    xoaiItem = addMetadata(xoaiItem, metadataFormat);
+                    Dataset storageLocation = storageLocations.get(record.getGlobalId());
+                    if (storageLocation == null || !addCachedMetadata(xoaiItem, storageLocation, metadataFormat)) {
+                        xoaiItem = addMetadata(xoaiItem, metadataFormat);
+                    }
                 }
                 
                 xoaiItems.add(xoaiItem);
@@ -159,9 +201,12 @@ public class DataverseXoaiItemRepository implements ItemRepository {
             // formatted output in the header:
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            hasMore = offset + maxResponseLength < oaiRecords.size();
+            hasMore = oaiRecords.size() > maxResponseLength;
+            if (hasMore) {
+                cursors.put(query + "|" + (offset + xoaiItems.size()), xoaiItems.get(xoaiItems.size() - 1).getIdentifier());
+            }
             
-            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, oaiRecords.size());
+            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, countRecords(query, setSpec, from, until));
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
         }
@@ -169,11 +214,29 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         return new ResultsPage(resumptionToken, false, xoaiItems, 0);
     }
     
+    private int countRecords(String query, String setSpec, Instant from, Instant until) {
+        long now = System.currentTimeMillis();
+        CachedCount count = counts.get(query);
+        if (count == null || now - count.countedAt() > COUNT_MAX_AGE_MILLIS) {
+            count = new CachedCount(recordService.countOaiRecordsBySetName(setSpec, from, until), now);
+            // drop the expired counts of the other queries, so they don't pile up:
+            counts.values().removeIf(c -> now - c.countedAt() > COUNT_MAX_AGE_MILLIS);
+            counts.put(query, count);
+        }
+        return (int) count.count();
+    }
+    
+    private record CachedCount(long count, long countedAt) {}
+    
     private void addExtraSets(Object xoaiItemsList, String setSpec, Instant from, Instant until) {
         
         List<DataverseXoaiItem> xoaiItems = (List<DataverseXoaiItem>)xoaiItemsList;
         
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until);
+        List<String> globalIds = new ArrayList<>();
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            globalIds.add(xoaiItem.getIdentifier());
+        }
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until, globalIds);
         
         if (oaiRecords == null || oaiRecords.isEmpty()) {
             return;
@@ -200,6 +263,49 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         }
     }
     
+    /**
+     * Looks up where the datasets of the active records on the page are stored,
+     * so that their pre-generated metadata can be read without loading the 
+     * datasets (see {@link #addCachedMetadata}).
+     */
+    private Map<String, Dataset> findStorageLocations(List<OAIRecord> oaiRecords, String metadataPrefix) {
+        // The DDI exports may need to be refreshed when embargoes end, and the 
+        // "dataverse_json" records are not read from storage, so these are 
+        // handled the usual way:
+        if (DDIExporter.PROVIDER_NAME.equals(metadataPrefix) || "dataverse_json".equals(metadataPrefix)) {
+            return Collections.emptyMap();
+        }
+        List<String> globalIds = new ArrayList<>();
+        for (OAIRecord oaiRecord : oaiRecords) {
+            if (!oaiRecord.isRemoved()) {
+                globalIds.add(oaiRecord.getGlobalId());
+            }
+        }
+        if (globalIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return datasetService.findStorageLocationsByGlobalIds(globalIds);
+    }
+    
+    /**
+     * Adds the pre-generated metadata to the item, reading it straight from 
+     * the storage location of the dataset.
+     * @return false if there is no such metadata, in which case the item is 
+     * left as it was, to be handled by {@link #addMetadata}. 
+     */
+    private boolean addCachedMetadata(DataverseXoaiItem xoaiItem, Dataset storageLocation, MetadataFormat metadataFormat) {
+        try (InputStream cachedExportStream = ExportService.getInstance().getCachedExport(storageLocation, metadataFormat.getPrefix())) {
+            if (cachedExportStream == null) {
+                return false;
+            }
+            xoaiItem.withMetadata(Metadata.copyFromStream(cachedExportStream));
+            return true;
+        } catch (IOException | ExportException ex) {
+            logger.fine("Could not read the cached " + metadataFormat.getPrefix() + " export of " + xoaiItem.getIdentifier() + ": " + ex.getMessage());
+            return false;
+        }
+    }
+    
     private DataverseXoaiItem addMetadata(DataverseXoaiItem xoaiItem, MetadataFormat metadataFormat) {
         // This may be a "deleted" record - i.e., a oaiRecord kept in 
         // the OAI set for a dataset that's no longer in this Dataverse. 
@@ -47,6 +47,7 @@ import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnStore;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
 import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
 import static edu.harvard.iq.dataverse.datasetutility.FileSizeChecker.bytesToHumanReadable;
@@ -107,11 +108,17 @@ import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.ListIterator;
 import java.util.logging.Logger;
 import java.util.Hashtable;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
@@ -141,6 +148,10 @@ import ucar.nc2.NetcdfFiles;
 @Named
 public class IngestServiceBean {
     private static final Logger logger = Logger.getLogger(IngestServiceBean.class.getCanonicalName());
+    // caps the number of variables having their statistics calculated at the 
+    // same time, across all the ingests running in parallel: 
+    private static final Semaphore INGEST_STATS_SEMAPHORE = new Semaphore(JvmSettings.INGEST_MAX_STATS_THREADS.lookupOptional(Integer.class)
+            .orElse(Runtime.getRuntime().availableProcessors()), true);
     @EJB
     VariableServiceBean variableService;
     @EJB 
@@ -714,81 +725,219 @@ public class IngestServiceBean {
     }
 
     public void produceSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceSummaryStatistics(dataFile, generatedTabularFile, null);
+    }
+
+    /**
+     * @param columnStore if not null, the variable vectors are read from this
+     * column-wise copy of the tab file, instead of re-reading the entire tab
+     * file for every variable.
+     */
+    public void produceSummaryStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
         /*
         logger.info("Skipping summary statistics and UNF.");
          */
-        produceDiscreteNumericSummaryStatistics(dataFile, generatedTabularFile); 
-        produceContinuousSummaryStatistics(dataFile, generatedTabularFile);
-        produceCharacterSummaryStatistics(dataFile, generatedTabularFile);
+        produceDiscreteNumericSummaryStatistics(dataFile, generatedTabularFile, columnStore); 
+        produceContinuousSummaryStatistics(dataFile, generatedTabularFile, columnStore);
+        produceCharacterSummaryStatistics(dataFile, generatedTabularFile, columnStore);
+        
+        recalculateDataFileUNF(dataFile);
+        recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
+    }
+    
+    /**
+     * Produces the summary statistics, UNFs and category frequencies of all 
+     * the variables of an ingested file. If more than one stats thread is 
+     * configured (dataverse.ingest.concurrency.stats-threads), the variables 
+     * are processed concurrently; each variable task also needs one of the 
+     * permits shared by all the ingests running on this node 
+     * (dataverse.ingest.concurrency.max-stats-threads). 
+     */
+    public void produceSummaryAndFrequencyStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
+        produceSummaryAndFrequencyStatistics(dataFile, generatedTabularFile, columnStore, 
+                JvmSettings.INGEST_STATS_THREADS.lookupOptional(Integer.class).orElse(1));
+    }
+    
+    void produceSummaryAndFrequencyStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore, int statsThreads) throws IOException {
+        int numVariables = dataFile.getDataTable().getDataVariables().size();
+        int threads = Math.min(statsThreads, numVariables);
+        
+        if (threads <= 1) {
+            produceSummaryStatistics(dataFile, generatedTabularFile, columnStore);
+            produceFrequencyStatistics(dataFile, generatedTabularFile, columnStore);
+            return;
+        }
+        
+        logger.fine("Calculating the statistics of " + numVariables + " variables with " + threads + " threads");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<>(numVariables);
+            for (int i = 0; i < numVariables; i++) {
+                final int varnum = i;
+                results.add(executor.submit(() -> {
+                    INGEST_STATS_SEMAPHORE.acquire();
+                    try {
+                        produceVariableStatistics(dataFile, varnum, generatedTabularFile, columnStore);
+                    } finally {
+                        INGEST_STATS_SEMAPHORE.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calculating the summary statistics", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new IOException("Failed to calculate the summary statistics", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
         
         recalculateDataFileUNF(dataFile);
         recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
     }
     
-    public void produceContinuousSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+    // Everything produceSummaryStatistics() and produceFrequencyStatistics()
+    // calculate for one variable. Only that variable is modified, so the 
+    // variables of a file can safely be processed by different threads; 
+    // their UNFs, however, are calculated one at a time (see 
+    // IngestUtil.UNF_LOCK). 
+    private void produceVariableStatistics(DataFile dataFile, int i, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
+        DataVariable var = dataFile.getDataTable().getDataVariables().get(i);
+        if (var.isIntervalDiscrete() && var.isTypeNumeric()) {
+            produceDiscreteNumericSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
+        }
+        if (var.isIntervalContinuous()) {
+            produceContinuousSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
+        }
+        if (var.isTypeCharacter()) {
+            produceCharacterSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
+        }
+        produceFrequencies(generatedTabularFile, var, i, columnStore);
+    }
+    
+    public void produceContinuousSummaryStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isIntervalContinuous()) {
-                logger.fine("subsetting continuous vector");
-
-                if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
-                    Float[] variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(),
-                            dataFile.getDataTable().isStoredWithVariableHeader());
-                    logger.fine("Calculating summary statistics on a Float vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                    // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Float vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+                produceContinuousSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
+            }
+        }
+    }
+    
+    private void produceContinuousSummaryStatistics(DataFile dataFile, int i, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
+        logger.fine("subsetting continuous vector");
+
+        if (columnStore != null) {
+            // primitive values straight from the column store; 
+            // the boxed vector is only needed for the UNF: 
+            BitSet missing = new BitSet();
+            double[] values = columnStore.getDoubleValues(i, missing);
+            if (values != null) {
+                logger.fine("Calculating summary statistics on a primitive vector;");
+                assignContinuousSummaryStatistics(dataFile.getDataTable().getDataVariables().get(i),
+                        SumStatCalculator.calculateSummaryStatistics(values, missing));
+                if (columnStore.getColumnType(i) == TabularColumnStore.ColumnType.FLOAT) {
+                    calculateUNF(dataFile, i, columnStore.getFloatVector(i));
                 } else {
-                    Double[] variableVector = TabularSubsetGenerator.subsetDoubleVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(), 
-                            dataFile.getDataTable().isStoredWithVariableHeader());
-                    logger.fine("Calculating summary statistics on a Double vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                    // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Double vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+                    calculateUNF(dataFile, i, columnStore.getDoubleVector(i));
                 }
                 logger.fine("Done! (continuous);");
+                return;
             }
         }
+
+        if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
+            Float[] variableVector = columnStore != null ? columnStore.getFloatVector(i) : null;
+            if (variableVector == null) {
+                variableVector = TabularSubsetGenerator.subsetFloatVector(
+                    new FileInputStream(generatedTabularFile), 
+                    i, 
+                    dataFile.getDataTable().getCaseQuantity().intValue(),
+                    dataFile.getDataTable().isStoredWithVariableHeader());
+            }
+            logger.fine("Calculating summary statistics on a Float vector;");
+            calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+            // calculate the UNF while we are at it:
+            logger.fine("Calculating UNF on a Float vector;");
+            calculateUNF(dataFile, i, variableVector);
+            variableVector = null; 
+        } else {
+            Double[] variableVector = columnStore != null ? columnStore.getDoubleVector(i) : null;
+            if (variableVector == null) {
+                variableVector = TabularSubsetGenerator.subsetDoubleVector(
+                    new FileInputStream(generatedTabularFile), 
+                    i, 
+                    dataFile.getDataTable().getCaseQuantity().intValue(), 
+                    dataFile.getDataTable().isStoredWithVariableHeader());
+            }
+            logger.fine("Calculating summary statistics on a Double vector;");
+            calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+            // calculate the UNF while we are at it:
+            logger.fine("Calculating UNF on a Double vector;");
+            calculateUNF(dataFile, i, variableVector);
+            variableVector = null; 
+        }
+        logger.fine("Done! (continuous);");
     }
     
-    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
         
         //TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isIntervalDiscrete()
                     && dataFile.getDataTable().getDataVariables().get(i).isTypeNumeric()) {
-                logger.fine("subsetting discrete-numeric vector");
-
-                Long[] variableVector = TabularSubsetGenerator.subsetLongVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(), 
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                // We are discussing calculating the same summary stats for 
-                // all numerics (the same kind of sumstats that we've been calculating
-                // for numeric continuous type)  -- L.A. Jul. 2014
-                calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
+                produceDiscreteNumericSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
+            }
+        }
+    }
+    
+    private void produceDiscreteNumericSummaryStatistics(DataFile dataFile, int i, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
+        logger.fine("subsetting discrete-numeric vector");
+
+        if (columnStore != null) {
+            BitSet missing = new BitSet();
+            long[] values = columnStore.getLongValues(i, missing);
+            if (values != null) {
+                assignContinuousSummaryStatistics(dataFile.getDataTable().getDataVariables().get(i),
+                        SumStatCalculator.calculateSummaryStatistics(values, missing));
                 logger.fine("Calculating UNF on a Long vector");
-                calculateUNF(dataFile, i, variableVector);
+                calculateUNF(dataFile, i, columnStore.getLongVector(i));
                 logger.fine("Done! (discrete numeric)");
-                variableVector = null; 
+                return;
             }
         }
+
+        Long[] variableVector = columnStore != null ? columnStore.getLongVector(i) : null;
+        if (variableVector == null) {
+            variableVector = TabularSubsetGenerator.subsetLongVector(
+                new FileInputStream(generatedTabularFile), 
+                i, 
+                dataFile.getDataTable().getCaseQuantity().intValue(), 
+                dataFile.getDataTable().isStoredWithVariableHeader());
+        }
+        // We are discussing calculating the same summary stats for 
+        // all numerics (the same kind of sumstats that we've been calculating
+        // for numeric continuous type)  -- L.A. Jul. 2014
+        calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+        // calculate the UNF while we are at it:
+        logger.fine("Calculating UNF on a Long vector");
+        calculateUNF(dataFile, i, variableVector);
+        logger.fine("Done! (discrete numeric)");
+        variableVector = null; 
     }
     
-    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
 
         /* 
             At this point it's still not clear what kinds of summary stats we
@@ -806,73 +955,101 @@ public class IngestServiceBean {
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isTypeCharacter()) {
-
-                logger.fine("subsetting character vector");
-                String[] variableVector = TabularSubsetGenerator.subsetStringVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(),
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a String vector");
-                calculateUNF(dataFile, i, variableVector);
-                logger.fine("Done! (character)");
-                variableVector = null; 
+                produceCharacterSummaryStatistics(dataFile, i, generatedTabularFile, columnStore);
             }
         }
     }
 
+    private void produceCharacterSummaryStatistics(DataFile dataFile, int i, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
+        logger.fine("subsetting character vector");
+        String[] variableVector = columnStore != null ? columnStore.getStringVector(i) : null;
+        if (variableVector == null) {
+            variableVector = TabularSubsetGenerator.subsetStringVector(
+                new FileInputStream(generatedTabularFile), 
+                i, 
+                dataFile.getDataTable().getCaseQuantity().intValue(),
+                dataFile.getDataTable().isStoredWithVariableHeader());
+        }
+        //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
+        // calculate the UNF while we are at it:
+        logger.fine("Calculating UNF on a String vector");
+        calculateUNF(dataFile, i, variableVector);
+        logger.fine("Done! (character)");
+        variableVector = null; 
+    }
+
     public static void produceFrequencyStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceFrequencyStatistics(dataFile, generatedTabularFile, null);
+    }
+
+    public static void produceFrequencyStatistics(DataFile dataFile, File generatedTabularFile, TabularColumnStore columnStore) throws IOException {
 
         List<DataVariable> vars = dataFile.getDataTable().getDataVariables();
 
-        produceFrequencies(generatedTabularFile, vars);
+        produceFrequencies(generatedTabularFile, vars, columnStore);
     }
 
     public static void produceFrequencies(File generatedTabularFile, List<DataVariable> vars) throws IOException {
+        produceFrequencies(generatedTabularFile, vars, null);
+    }
+
+    /**
+     * @param generatedTabularFile may be null, if all the vectors needed can
+     * be read from the columnStore
+     */
+    public static void produceFrequencies(File generatedTabularFile, List<DataVariable> vars, TabularColumnStore columnStore) throws IOException {
 
         for (int i = 0; i < vars.size(); i++) {
+            produceFrequencies(generatedTabularFile, vars.get(i), i, columnStore);
+        }
+    }
 
-            Collection<VariableCategory> cats = vars.get(i).getCategories();
-            int caseQuantity = vars.get(i).getDataTable().getCaseQuantity().intValue();
-            boolean isNumeric = vars.get(i).isTypeNumeric();
-            boolean skipVariableHeaderLine = vars.get(i).getDataTable().isStoredWithVariableHeader();
-            Object[] variableVector = null;
-            if (cats.size() > 0) {
-                if (isNumeric) {
-                    variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
-                else {
-                    variableVector = TabularSubsetGenerator.subsetStringVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
-                if (variableVector != null) {
-                    Hashtable<Object, Double> freq = calculateFrequency(variableVector);
-                    for (VariableCategory cat : cats) {
-                        Object catValue;
-                        if (isNumeric) {
-                            catValue = new Float(cat.getValue());
-                        } else {
-                            catValue = cat.getValue();
-                        }
-                        Double numberFreq = freq.get(catValue);
-                        if (numberFreq != null) {
-                            cat.setFrequency(numberFreq);
-                        } else {
-                            cat.setFrequency(0D);
-                        }
+    private static void produceFrequencies(File generatedTabularFile, DataVariable var, int i, TabularColumnStore columnStore) throws IOException {
+        Collection<VariableCategory> cats = var.getCategories();
+        int caseQuantity = var.getDataTable().getCaseQuantity().intValue();
+        boolean isNumeric = var.isTypeNumeric();
+        boolean skipVariableHeaderLine = var.getDataTable().isStoredWithVariableHeader();
+        Object[] variableVector = null;
+        if (cats.size() > 0) {
+            if (columnStore != null) {
+                variableVector = isNumeric ? columnStore.getFloatVector(i) : columnStore.getStringVector(i);
+            }
+            if (variableVector != null) {
+                logger.fine("read the vector of variable " + var.getName() + " from the column store");
+            } else if (generatedTabularFile == null) {
+                throw new IOException("Variable " + var.getName() + " is not available in the column store, and no tab file was supplied");
+            } else if (isNumeric) {
+                variableVector = TabularSubsetGenerator.subsetFloatVector(
+                        new FileInputStream(generatedTabularFile), 
+                        i, 
+                        caseQuantity,
+                        skipVariableHeaderLine);
+            }
+            else {
+                variableVector = TabularSubsetGenerator.subsetStringVector(
+                        new FileInputStream(generatedTabularFile), 
+                        i, 
+                        caseQuantity,
+                        skipVariableHeaderLine);
+            }
+            if (variableVector != null) {
+                Hashtable<Object, Double> freq = calculateFrequency(variableVector);
+                for (VariableCategory cat : cats) {
+                    Object catValue;
+                    if (isNumeric) {
+                        catValue = new Float(cat.getValue());
+                    } else {
+                        catValue = cat.getValue();
+                    }
+                    Double numberFreq = freq.get(catValue);
+                    if (numberFreq != null) {
+                        cat.setFrequency(numberFreq);
+                    } else {
+                        cat.setFrequency(0D);
                     }
-                } else {
-                    logger.fine("variableVector is null for variable " + vars.get(i).getName());
                 }
+            } else {
+                logger.fine("variableVector is null for variable " + var.getName());
             }
         }
     }
@@ -905,7 +1082,9 @@ public class IngestServiceBean {
         }
         
         try {
-            fileUnfValue = UNFUtil.calculateUNF(unfValues);
+            synchronized (IngestUtil.UNF_LOCK) {
+                fileUnfValue = UNFUtil.calculateUNF(unfValues);
+            }
         } catch (IOException ex) {
             logger.warning("Failed to recalculate the UNF for the datafile id="+dataFile.getId());
         } catch (UnfException uex) {
@@ -1061,6 +1240,8 @@ public class IngestServiceBean {
         long originalFileSize = dataFile.getFilesize();
         boolean postIngestTasksSuccessful = false;
         boolean databaseSaveSuccessful = false;
+        File columnStoreFile = null;
+        TabularColumnStore columnStore = null;
 
         if (tabDataIngest != null) {
             File tabFile = tabDataIngest.getTabDelimitedFile();
@@ -1090,10 +1271,30 @@ public class IngestServiceBean {
                 tabDataIngest.getDataTable().setDataFile(dataFile);
                 tabDataIngest.getDataTable().setOriginalFileName(originalFileName);
                 dataFile.getDataTable().setStoredWithVariableHeader(storingWithVariableHeader);
+
+                // Produce the column-wise copy of the tab file, in a single 
+                // pass over it; the summary statistics and UNFs below are then
+                // calculated from its primitive vectors, instead of re-reading 
+                // the whole tab file once per variable. If enabled, it is also 
+                // saved as an auxiliary object of the ingested file:
+                try {
+                    columnStoreFile = File.createTempFile("tempColumnStore", ".tmp");
+                    TabularColumnStore.generate(tabFile,
+                            TabularColumnStore.columnTypesFor(dataFile.getDataTable().getDataVariables()),
+                            dataFile.getDataTable().getCaseQuantity(),
+                            storingWithVariableHeader,
+                            columnStoreFile);
+                    columnStore = TabularColumnStore.open(columnStoreFile.toPath());
+                } catch (IOException ioex) {
+                    logger.warning("Failed to generate the column store for the tab file (" + ioex.getMessage() + "); proceeding without it.");
+                    if (columnStoreFile != null) {
+                        columnStoreFile.delete();
+                        columnStoreFile = null;
+                    }
+                }
                 
                 try {
-                    produceSummaryStatistics(dataFile, tabFile);
-                    produceFrequencyStatistics(dataFile, tabFile);
+                    produceSummaryAndFrequencyStatistics(dataFile, tabFile, columnStore);
                     postIngestTasksSuccessful = true;
                 } catch (IOException postIngestEx) {
 
@@ -1106,8 +1307,18 @@ public class IngestServiceBean {
                     logger.warning("Ingest failure: post-ingest tasks.");
                 }
 
+                // Unless it is going to be saved alongside the tab file, the
+                // column store is no longer needed:
+                if (columnStoreFile != null && !JvmSettings.INGEST_COLUMN_STORE.lookupOptional(Boolean.class).orElse(false)) {
+                    columnStoreFile.delete();
+                    columnStoreFile = null;
+                }
+
                 if (!postIngestTasksSuccessful) {
                     logger.warning("Ingest failure (!postIngestTasksSuccessful).");
+                    if (columnStoreFile != null) {
+                        columnStoreFile.delete();
+                    }
                     return false;
                 }
 
@@ -1161,6 +1372,9 @@ public class IngestServiceBean {
                     }
                 } else {
                     logger.warning("Ingest failure (failed to save the tabular data in the database; file left intact as uploaded).");
+                    if (columnStoreFile != null) {
+                        columnStoreFile.delete();
+                    }
                     return false;
                 }
 
@@ -1184,6 +1398,16 @@ public class IngestServiceBean {
                     
                     // Reset the file size: 
                     dataFile.setFilesize(dataAccess.getSize());
+
+                    if (columnStoreFile != null) {
+                        try {
+                            dataAccess.savePathAsAux(columnStoreFile.toPath(), TabularColumnStore.AUX_TAG);
+                            logger.fine("Saved the column store as an aux file " + TabularColumnStore.AUX_TAG);
+                        } catch (IOException iox) {
+                            logger.warning("Failed to save the column store! " + iox.getMessage());
+                        }
+                        columnStoreFile.delete();
+                    }
                     
                     dataFile = fileService.save(dataFile);
                     logger.fine("saved data file after updating the size");
@@ -1195,6 +1419,9 @@ public class IngestServiceBean {
                 } catch (Exception e) {
                     // this probably means that an error occurred while saving the file to the file system
                     logger.warning("Failed to save the tabular file produced by the ingest (resetting the ingested DataFile back to its original state)");
+                    if (columnStoreFile != null) {
+                        columnStoreFile.delete();
+                    }
 
                     dataFile = fileService.find(datafile_id);
 
@@ -1938,7 +2165,9 @@ public class IngestServiceBean {
     private void calculateUNF(DataFile dataFile, int varnum, Double[] dataVector) {
         String unf = null;
         try {
-            unf = UNFUtil.calculateUNF(dataVector);
+            synchronized (IngestUtil.UNF_LOCK) {
+                unf = UNFUtil.calculateUNF(dataVector);
+            }
         } catch (IOException iex) {
             logger.warning("exception thrown when attempted to calculate UNF signature for (numeric, continuous) variable " + varnum);
         } catch (UnfException uex) {
@@ -1955,7 +2184,9 @@ public class IngestServiceBean {
     private void calculateUNF(DataFile dataFile, int varnum, Long[] dataVector) {
         String unf = null;
         try {
-            unf = UNFUtil.calculateUNF(dataVector);
+            synchronized (IngestUtil.UNF_LOCK) {
+                unf = UNFUtil.calculateUNF(dataVector);
+            }
         } catch (IOException iex) {
             logger.warning("exception thrown when attempted to calculate UNF signature for (numeric, discrete) variable " + varnum);
         }  catch (UnfException uex) {
@@ -2052,9 +2283,13 @@ public class IngestServiceBean {
         try {
             if (dateFormats == null) {
                 logger.fine("calculating the UNF value for string vector; first value: "+dataVector[0]);
-                unf = UNFUtil.calculateUNF(dataVector);
+                synchronized (IngestUtil.UNF_LOCK) {
+                    unf = UNFUtil.calculateUNF(dataVector);
+                }
             } else {
-                unf = UNFUtil.calculateUNF(dataVector, dateFormats);
+                synchronized (IngestUtil.UNF_LOCK) {
+                    unf = UNFUtil.calculateUNF(dataVector, dateFormats);
+                }
             }
         } catch (IOException iex) {
             logger.warning("IO exception thrown when attempted to calculate UNF signature for (character) variable " + varnum);
@@ -2080,7 +2315,9 @@ public class IngestServiceBean {
     private void calculateUNF(DataFile dataFile, int varnum, Float[] dataVector) {
         String unf = null;
         try {
-            unf = UNFUtil.calculateUNF(dataVector);
+            synchronized (IngestUtil.UNF_LOCK) {
+                unf = UNFUtil.calculateUNF(dataVector);
+            }
         } catch (IOException iex) {
             logger.warning("exception thrown when attempted to calculate UNF signature for numeric, \"continuous\" (float) variable " + varnum);
         } catch (UnfException uex) {
@@ -48,6 +48,14 @@ public class IngestUtil {
 
     private static final Logger logger = Logger.getLogger(IngestUtil.class.getCanonicalName());
 
+    /**
+     * The UNF library (UnfDigest) keeps the state of a calculation in static
+     * fields, so two UNFs must never be calculated at the same time, by the
+     * statistics threads of one ingest or by two ingests. Every call into
+     * UNFUtil is made holding this lock.
+     */
+    static final Object UNF_LOCK = new Object();
+
     /**
      * Checks a list of new data files for duplicate names, renaming any
      * duplicates to ensure that they are unique.
@@ -301,7 +309,9 @@ public class IngestUtil {
             logger.fine("Attempting to calculate new UNF from total of " + unfValueList.size() + " file-level signatures.");
             String datasetUnfValue = null;
             try {
-                datasetUnfValue = UNFUtil.calculateUNF(unfValues);
+                synchronized (UNF_LOCK) {
+                    datasetUnfValue = UNFUtil.calculateUNF(unfValues);
+                }
             } catch (IOException ex) {
                 // It's unclear how to exercise this IOException.
                 logger.warning("IO Exception: Failed to recalculate the UNF for the dataset version id=" + version.getId());
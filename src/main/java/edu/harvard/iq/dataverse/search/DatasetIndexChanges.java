@@ -0,0 +1,89 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.DatasetVersionDifference;
+import edu.harvard.iq.dataverse.FileMetadata;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What changed in a draft version of a dataset, as far as the search index is
+ * concerned: the files whose Solr documents have to be rebuilt, and the files
+ * that were removed. Derived from the {@link DatasetVersionDifference} computed
+ * when the draft is saved, and used by
+ * {@link IndexServiceBean#asyncIndexDatasetChanges(edu.harvard.iq.dataverse.Dataset, DatasetIndexChanges)}
+ * to avoid rebuilding the documents of all the other files.
+ *
+ * The dataset document itself is always rebuilt; the difference doesn't cover
+ * every field (email fields, for example, are not compared).
+ */
+public class DatasetIndexChanges {
+
+    private final Long versionId;
+    private final Set<Long> changedFileIds;
+    private final Set<Long> removedFileIds;
+
+    DatasetIndexChanges(Long versionId, Set<Long> changedFileIds, Set<Long> removedFileIds) {
+        this.versionId = versionId;
+        this.changedFileIds = Collections.unmodifiableSet(changedFileIds);
+        this.removedFileIds = Collections.unmodifiableSet(removedFileIds);
+    }
+
+    /**
+     * @param difference between the saved draft and the version before the
+     * edit (usually a clone of it, without an id of its own)
+     * @return the changes, or null if they can't be applied incrementally
+     * (files were replaced).
+     */
+    public static DatasetIndexChanges of(DatasetVersionDifference difference) {
+        DatasetVersion newVersion = difference.getNewVersion();
+        if (newVersion.getId() == null || !newVersion.isDraft()) {
+            return null;
+        }
+        if (!difference.getDatasetFilesReplacementList().isEmpty()) {
+            return null;
+        }
+
+        Set<Long> changedFileIds = new HashSet<>();
+        addFileIds(changedFileIds, difference.getAddedFiles());
+        addFileIds(changedFileIds, difference.getChangedFileMetadata());
+        addFileIds(changedFileIds, difference.getChangedVariableMetadata());
+        Set<Long> removedFileIds = new HashSet<>();
+        addFileIds(removedFileIds, difference.getRemovedFiles());
+        if (changedFileIds.contains(null)) {
+            // a file that hasn't been saved yet; shouldn't happen after a flush
+            return null;
+        }
+        return new DatasetIndexChanges(newVersion.getId(), changedFileIds, removedFileIds);
+    }
+
+    private static void addFileIds(Set<Long> fileIds, List<FileMetadata> fileMetadatas) {
+        for (FileMetadata fileMetadata : fileMetadatas) {
+            fileIds.add(fileMetadata.getDataFile().getId());
+        }
+    }
+
+    /**
+     * @return the id of the draft version the changes were made to.
+     */
+    public Long getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * @return the ids of the files that were added, or whose metadata
+     * (including variable metadata) changed.
+     */
+    public Set<Long> getChangedFileIds() {
+        return changedFileIds;
+    }
+
+    /**
+     * @return the ids of the files that were removed from the draft.
+     */
+    public Set<Long> getRemovedFileIds() {
+        return removedFileIds;
+    }
+}
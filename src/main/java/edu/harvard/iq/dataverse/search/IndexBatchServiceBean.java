@@ -1,13 +1,20 @@
 package edu.harvard.iq.dataverse.search;
 
+import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,6 +22,8 @@ import jakarta.ejb.AsyncResult;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Named;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
@@ -45,6 +54,16 @@ public class IndexBatchServiceBean {
     DvObjectServiceBean dvObjectService;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    SolrClientService solrClientService;
+    @EJB
+    PartitionedReindexServiceBean partitionedReindexService;
+
+    // the batch of the bulk reindex currently running, or of the last one; for the progress API
+    private static volatile SolrIndexBatch lastBatch = null;
+    // the batch of the chunk each partition running on this node is indexing, by checkpoint id;
+    // reported by PartitionedReindexServiceBean.getStatus()
+    private static final Map<Long, SolrIndexBatch> partitionBatches = new ConcurrentHashMap<>();
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexStatus() {
@@ -198,14 +217,9 @@ public class IndexBatchServiceBean {
             }
         }
 
-        int datasetIndexCount = 0;
-        int datasetFailureCount = 0;
         List<Long> datasetIds = datasetService.findAllOrSubsetOrderByFilesOwned(skipIndexed);
-        for (Long id : datasetIds) {
-            datasetIndexCount++;
-            logger.info("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ")");
-            indexService.indexDatasetInNewTransaction(id);
-        }
+        int datasetIndexCount = datasetIds.size();
+        int datasetFailureCount = indexDatasetsInBatches(datasetIds, null);
         logger.info("done iterating through all datasets");
 
         long indexAllTimeEnd = System.currentTimeMillis();
@@ -259,18 +273,184 @@ public class IndexBatchServiceBean {
         }
         
         // index the Dataset children
-        for (Long childId : datasetChildren) {
-            datasetIndexCount++;
-            logger.info("indexing dataset " + datasetIndexCount + " of " + datasetChildren.size() + " (id=" + childId + ")");
-            indexService.indexDatasetInNewTransaction(childId);
-        }
+        datasetIndexCount = datasetChildren.size();
+        datasetFailureCount = indexDatasetsInBatches(datasetChildren, null);
         long end = System.currentTimeMillis();
         if (datasetFailureCount + dataverseFailureCount > 0){
             logger.info("There were index failures. " + dataverseFailureCount + " dataverse(s) and " + datasetFailureCount + " dataset(s) failed to index. Please check the log for more information.");            
         }
         logger.info(dataverseIndexCount + " dataverses and " + datasetIndexCount + " datasets indexed. Total time to index " + (end - start) + ".");
     }
-      private JsonObjectBuilder getContentInDatabaseButStaleInOrMissingFromSolr() {
+    /**
+     * Indexes one partition of a partitioned reindex (see
+     * {@link PartitionedReindexServiceBean}), from where its checkpoint says
+     * it stopped; the checkpoint is saved after each chunk of datasets. Runs
+     * outside of a transaction, as it can take hours; the checkpoints are
+     * saved, and the datasets indexed, in transactions of their own.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void indexPartition(Long checkpointId) {
+        try {
+            IndexCheckpoint checkpoint = partitionedReindexService.findCheckpoint(checkpointId);
+            if (checkpoint == null || checkpoint.getStatus() != IndexCheckpoint.Status.IN_PROGRESS) {
+                return;
+            }
+            long numPartitions = checkpoint.getNumPartitions();
+            long partitionId = checkpoint.getPartitionId();
+            boolean skipIndexed = checkpoint.isSkipIndexed();
+            String partition = "partition " + partitionId + " of " + numPartitions;
+            logger.info("indexing " + partition + (checkpoint.getLastDatasetId() != null ? ", resuming after dataset id " + checkpoint.getLastDatasetId() : ""));
+
+            if (!checkpoint.isDataversesIndexed()) {
+                for (Dataverse dataverse : dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed)) {
+                    try {
+                        indexService.indexDataverseInNewTransaction(dataverse);
+                    } catch (Exception e) {
+                        //We want to keep running even after an exception so throw some more info into the log
+                        logger.info("FAILURE indexing dataverse (id=" + dataverse.getId() + ") in " + partition + ". Exception info: " + e.getMessage());
+                    }
+                }
+                checkpoint.setDataversesIndexed(true);
+                if (!partitionedReindexService.saveCheckpoint(checkpoint, false)) {
+                    logger.info("stopped indexing " + partition + ": it was cancelled, or taken over by another node");
+                    return;
+                }
+            }
+
+            int chunkSize = Math.max(JvmSettings.REINDEX_CHUNK_SIZE.lookupOptional(Integer.class).orElse(1000), 1);
+            while (true) {
+                long afterId = checkpoint.getLastDatasetId() != null ? checkpoint.getLastDatasetId() : 0L;
+                List<Long> datasetIds = datasetService.findSubsetAfter(numPartitions, partitionId, skipIndexed, afterId, chunkSize);
+                if (datasetIds.isEmpty()) {
+                    partitionedReindexService.saveCheckpoint(checkpoint, true);
+                    logger.info("done indexing " + partition + ": " + checkpoint.getDatasetsIndexed() + " datasets indexed, " + checkpoint.getDatasetsFailed() + " failed");
+                    return;
+                }
+                int failures = indexDatasetsInBatches(datasetIds, checkpointId);
+                if (Thread.currentThread().isInterrupted()) {
+                    // not all of the chunk was indexed; it will be indexed again when the partition is resumed
+                    logger.info("stopped indexing " + partition + ": interrupted");
+                    return;
+                }
+                checkpoint.setLastDatasetId(datasetIds.get(datasetIds.size() - 1));
+                checkpoint.setDatasetsIndexed(checkpoint.getDatasetsIndexed() + datasetIds.size() - failures);
+                checkpoint.setDatasetsFailed(checkpoint.getDatasetsFailed() + failures);
+                if (!partitionedReindexService.saveCheckpoint(checkpoint, false)) {
+                    logger.info("stopped indexing " + partition + ": it was cancelled, or taken over by another node");
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to index a reindex partition; it will be resumed from its last checkpoint", e);
+        } finally {
+            partitionBatches.remove(checkpointId);
+            partitionedReindexService.partitionStopped(checkpointId);
+        }
+    }
+
+    /**
+     * Indexes the datasets on several workers (see
+     * {@link IndexServiceBean#indexDatasetInBatch(Long, SolrIndexBatch)}), and
+     * sends their Solr documents in batches rather than one dataset at a time.
+     *
+     * @param checkpointId the checkpoint of the partition the datasets are
+     * part of, or null if they are not part of a partitioned reindex.
+     * @return the number of datasets that failed to index.
+     */
+    private int indexDatasetsInBatches(List<Long> datasetIds, Long checkpointId) {
+        int workers = Math.max(JvmSettings.BATCH_INDEX_WORKERS.lookupOptional(Integer.class).orElse(4), 1);
+        int batchSize = JvmSettings.SOLR_BATCH_SIZE.lookupOptional(Integer.class).orElse(100);
+        int commitWithin = JvmSettings.SOLR_BATCH_COMMIT_WITHIN.lookupOptional(Integer.class).orElse(10000);
+        SolrIndexBatch batch = new SolrIndexBatch(solrClientService.getSolrClient(), batchSize, commitWithin, datasetIds.size(), this::onBatchSent);
+        if (checkpointId == null) {
+            lastBatch = batch;
+        } else {
+            partitionBatches.put(checkpointId, batch);
+        }
+        logger.info("indexing " + datasetIds.size() + " datasets with " + workers + " workers, in batches of " + batchSize + " Solr documents");
+
+        // Each worker is an asynchronous call; at most "workers" of them are
+        // started at any time, so that the bulk reindex doesn't take all the
+        // threads of the EJB pool.
+        Deque<Future<Boolean>> pending = new ArrayDeque<>();
+        int datasetIndexCount = 0;
+        try {
+            for (Long id : datasetIds) {
+                if (pending.size() >= workers) {
+                    waitFor(pending.poll());
+                }
+                datasetIndexCount++;
+                logger.fine("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ")");
+                pending.add(indexService.indexDatasetInBatch(id, batch));
+                if (datasetIndexCount % 1000 == 0) {
+                    logger.info("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + "; " + Math.round(batch.getDocumentsPerSecond()) + " Solr documents per second");
+                }
+            }
+            while (!pending.isEmpty()) {
+                waitFor(pending.poll());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.warning("Interrupted while indexing datasets; " + (datasetIds.size() - datasetIndexCount) + " datasets were not indexed.");
+        } finally {
+            batch.finish();
+        }
+        logger.info("indexed " + batch.getDatasetsIndexed() + " datasets, " + batch.getDocumentsSent() + " Solr documents in " + batch.getElapsedMillis() + " milliseconds ("
+                + Math.round(batch.getDocumentsPerSecond()) + " documents per second)");
+        return (int) batch.getDatasetsFailed();
+    }
+
+    private void waitFor(Future<Boolean> result) throws InterruptedException {
+        try {
+            result.get();
+        } catch (ExecutionException ee) {
+            logger.log(Level.WARNING, "Failed to index a dataset", ee.getCause());
+        }
+    }
+
+    /**
+     * Called once the documents of these datasets have been sent to Solr (or
+     * failed to).
+     */
+    private void onBatchSent(List<Long> datasetIds, boolean sent) {
+        if (sent) {
+            try {
+                indexService.updateLastIndexedTimes(datasetIds);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to update the index times of datasets " + datasetIds, e);
+            }
+        }
+        for (Long id : datasetIds) {
+            Dataset next = IndexServiceBean.finishIndexing(id);
+            if (next != null) {
+                // changed while it was being indexed:
+                indexService.asyncIndexDataset(next, true);
+            }
+        }
+    }
+
+    /**
+     * @return the progress of the bulk reindex currently running, or of the
+     * last one; null if there has been none since the application started.
+     * The partitions of a partitioned reindex are not included; see
+     * {@link #getPartitionBatchProgress(Long)}.
+     */
+    public JsonObjectBuilder getBatchIndexProgress() {
+        SolrIndexBatch batch = lastBatch;
+        return batch == null ? null : batch.getStatus();
+    }
+
+    /**
+     * @return the progress of the chunk of datasets the partition is
+     * indexing; null if the partition is not running on this node.
+     */
+    public JsonObjectBuilder getPartitionBatchProgress(Long checkpointId) {
+        SolrIndexBatch batch = partitionBatches.get(checkpointId);
+        return batch == null ? null : batch.getStatus();
+    }
+
+    private JsonObjectBuilder getContentInDatabaseButStaleInOrMissingFromSolr() {
         logger.info("checking for stale or missing dataverses");
         List<Long> stateOrMissingDataverses = indexService.findStaleOrMissingDataverses();
         logger.info("checking for stale or missing datasets");  
@@ -0,0 +1,197 @@
+package edu.harvard.iq.dataverse.search;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * The progress of one partition of a partitioned reindex (see
+ * {@link PartitionedReindexServiceBean}). The datasets of a partition are
+ * indexed in the order of their ids, so the id of the last dataset indexed is
+ * enough to resume the partition after a restart.
+ */
+@NamedQueries({
+    @NamedQuery(name = "IndexCheckpoint.findAll",
+            query = "SELECT o FROM IndexCheckpoint o ORDER BY o.partitionId"),
+    @NamedQuery(name = "IndexCheckpoint.findByStatus",
+            query = "SELECT o FROM IndexCheckpoint o WHERE o.status = :status ORDER BY o.partitionId"),
+    @NamedQuery(name = "IndexCheckpoint.updateStatus",
+            query = "UPDATE IndexCheckpoint o SET o.status = :newStatus WHERE o.status = :status"),
+    @NamedQuery(name = "IndexCheckpoint.deleteAll",
+            query = "DELETE FROM IndexCheckpoint o")
+})
+@Entity
+@Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"numPartitions", "partitionId"})})
+public class IndexCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        /**
+         * Not finished; either running on one of the nodes, or waiting to be
+         * resumed.
+         */
+        IN_PROGRESS,
+        DONE,
+        CANCELLED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private int numPartitions;
+
+    @Column(nullable = false)
+    private int partitionId;
+
+    @Column(nullable = false)
+    private boolean skipIndexed;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    private boolean dataversesIndexed;
+
+    /**
+     * The highest id of the datasets already indexed; the partition resumes
+     * with the datasets that have a higher one.
+     */
+    private Long lastDatasetId;
+
+    private long datasetsIndexed;
+
+    private long datasetsFailed;
+
+    private Timestamp startTime;
+
+    private Timestamp lastUpdateTime;
+
+    private Timestamp finishTime;
+
+    public IndexCheckpoint() {
+    }
+
+    public IndexCheckpoint(int numPartitions, int partitionId, boolean skipIndexed) {
+        this.numPartitions = numPartitions;
+        this.partitionId = partitionId;
+        this.skipIndexed = skipIndexed;
+        this.status = Status.IN_PROGRESS;
+        this.startTime = new Timestamp(System.currentTimeMillis());
+        this.lastUpdateTime = startTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    public int getPartitionId() {
+        return partitionId;
+    }
+
+    public boolean isSkipIndexed() {
+        return skipIndexed;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public boolean isDataversesIndexed() {
+        return dataversesIndexed;
+    }
+
+    public void setDataversesIndexed(boolean dataversesIndexed) {
+        this.dataversesIndexed = dataversesIndexed;
+    }
+
+    public Long getLastDatasetId() {
+        return lastDatasetId;
+    }
+
+    public void setLastDatasetId(Long lastDatasetId) {
+        this.lastDatasetId = lastDatasetId;
+    }
+
+    public long getDatasetsIndexed() {
+        return datasetsIndexed;
+    }
+
+    public void setDatasetsIndexed(long datasetsIndexed) {
+        this.datasetsIndexed = datasetsIndexed;
+    }
+
+    public long getDatasetsFailed() {
+        return datasetsFailed;
+    }
+
+    public void setDatasetsFailed(long datasetsFailed) {
+        this.datasetsFailed = datasetsFailed;
+    }
+
+    public Timestamp getStartTime() {
+        return startTime;
+    }
+
+    public Timestamp getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTime(Timestamp lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public Timestamp getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(Timestamp finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public JsonObjectBuilder toJson() {
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("partitionId", partitionId)
+                .add("numPartitions", numPartitions)
+                .add("skipIndexed", skipIndexed)
+                .add("status", status.name())
+                .add("dataversesIndexed", dataversesIndexed)
+                .add("datasetsIndexed", datasetsIndexed)
+                .add("datasetsFailed", datasetsFailed)
+                .add("startTime", startTime.toString())
+                .add("lastUpdateTime", lastUpdateTime.toString());
+        if (lastDatasetId != null) {
+            json.add("lastDatasetId", lastDatasetId);
+        }
+        if (finishTime != null) {
+            json.add("finishTime", finishTime.toString());
+        }
+        return json;
+    }
+}
@@ -35,6 +35,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
@@ -425,13 +426,44 @@ public class IndexServiceBean {
         }
     }
 
+    /**
+     * Indexes a dataset asynchronously, like {@link #asyncIndexDataset(Dataset, boolean)},
+     * but only updates the Solr documents affected by the given changes to its
+     * draft version when possible (see {@link #indexDatasetChanges(Dataset, DatasetIndexChanges)}).
+     * If another indexing of the dataset is requested while this one is
+     * ongoing, that one is a full indexing.
+     *
+     * @param dataset The dataset to be indexed.
+     * @param changes What changed in the draft version.
+     */
+    @Asynchronous
+    public void asyncIndexDatasetChanges(Dataset dataset, DatasetIndexChanges changes) {
+        try {
+            acquirePermitFromSemaphore();
+            doAyncIndexDataset(dataset, true, changes);
+        } catch (InterruptedException e) {
+            String failureLogText = "Indexing failed: interrupted. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+        } finally {
+            ASYNC_INDEX_SEMAPHORE.release();
+        }
+    }
+
     private void doAyncIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+        doAyncIndexDataset(dataset, doNormalSolrDocCleanUp, null);
+    }
+
+    private void doAyncIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp, DatasetIndexChanges changes) {
         Long id = dataset.getId();
         Dataset next = getNextToIndex(id, dataset); // if there is an ongoing index job for this dataset, next is null (ongoing index job will reindex the newest version after current indexing finishes)
         while (next != null) {
             // Time context will automatically start on creation and stop when leaving the try block
             try (var timeContext = indexTimer.time()) {
-                indexDataset(next, doNormalSolrDocCleanUp);
+                // the changes only apply to the dataset they were requested for, not to a later version
+                if (changes == null || next != dataset || !indexDatasetChanges(next, changes)) {
+                    indexDataset(next, doNormalSolrDocCleanUp);
+                }
             } catch (Exception e) { // catch all possible exceptions; otherwise when something unexpected happes the dataset wold remain locked and impossible to reindex
                 String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
                 failureLogText += "\r\n" + e.getLocalizedMessage();
@@ -457,6 +489,74 @@ public class IndexServiceBean {
         }
     }
     
+    /**
+     * Builds the Solr documents of a dataset and adds them to a batch, to be
+     * sent to Solr together with those of other datasets. Used by the bulk
+     * reindexing in {@link IndexBatchServiceBean}, which calls this method for
+     * several datasets at a time.
+     *
+     * Like {@link #asyncIndexDataset(Dataset, boolean)}, the dataset is marked
+     * as being indexed, but here it stays marked until its batch has been
+     * sent; the caller must then release it with {@link #finishIndexing(Long)}.
+     * If the dataset is already being indexed, it is left to the ongoing job.
+     *
+     * @param datasetId The id of the dataset to be indexed.
+     * @param batch     The batch collecting the documents.
+     * @return whether the documents were added to the batch.
+     */
+    @Asynchronous
+    @TransactionAttribute(REQUIRES_NEW)
+    public Future<Boolean> indexDatasetInBatch(Long datasetId, SolrIndexBatch batch) {
+        Dataset dataset = datasetService.findDeep(datasetId);
+        if (dataset == null) {
+            logger.warning("Dataset " + datasetId + " not found; not indexed.");
+            batch.addFailure(datasetId);
+            return new AsyncResult<>(false);
+        }
+        if (getNextToIndex(datasetId, dataset) == null) {
+            batch.addDeferred(datasetId);
+            return new AsyncResult<>(false);
+        }
+        Collection<SolrInputDocument> docs = new ArrayList<>();
+        try (var timeContext = indexTimer.time()) {
+            doIndexDataset(dataset, false, docs);
+        } catch (Exception e) {
+            String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + datasetId.toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+            batch.addFailure(datasetId);
+            return new AsyncResult<>(false);
+        }
+        batch.add(datasetId, docs);
+        return new AsyncResult<>(true);
+    }
+
+    /**
+     * Releases a dataset indexed with {@link #indexDatasetInBatch(Long, SolrIndexBatch)}.
+     *
+     * @return the most recent version of the dataset that was requested to be
+     * indexed in the meantime, if any; it is up to the caller to index it.
+     */
+    synchronized public static Dataset finishIndexing(Long id) {
+        INDEXING_NOW.remove(id);
+        return NEXT_TO_INDEX.remove(id);
+    }
+
+    /**
+     * Sets the index time of many objects at once, as done for a single one
+     * by {@link #updateLastIndexedTimeInNewTransaction(Long)}.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public void updateLastIndexedTimes(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        em.createQuery("UPDATE DvObject o SET o.indexTime = :indexTime WHERE o.id IN :ids")
+                .setParameter("indexTime", new Timestamp(new Date().getTime()))
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
     public void indexDvObject(DvObject objectIn) throws  SolrServerException, IOException {
         if (objectIn.isInstanceofDataset() ){
             asyncIndexDataset((Dataset)objectIn, true);
@@ -466,11 +566,16 @@ public class IndexServiceBean {
     }
 
     public void indexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
-        doIndexDataset(dataset, doNormalSolrDocCleanUp);
+        doIndexDataset(dataset, doNormalSolrDocCleanUp, null);
         updateLastIndexedTime(dataset.getId());
     }
     
-    private void doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
+    /**
+     * @param batchDocuments if not null, the Solr documents of the dataset and
+     * its files are added to this collection instead of being sent to Solr
+     * right away.
+     */
+    private void doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp, Collection<SolrInputDocument> batchDocuments) throws  SolrServerException, IOException {
         logger.fine("indexing dataset " + dataset.getId());
         /**
          * @todo should we use solrDocIdentifierDataset or
@@ -645,7 +750,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.DRAFT, true);
                 IndexableDataset indexableDraftVersion = new IndexableDataset(latestVersion);
-                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion);
+                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion, null, batchDocuments);
                 results.append("The latest version is a working copy (latestVersionState: ")
                         .append(latestVersionStateString).append(") and indexing was attempted for ")
                         .append(solrIdDraftDataset).append(" (limited discoverability). Result: ")
@@ -699,7 +804,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.DEACCESSIONED, true);
                 IndexableDataset indexableDeaccessionedVersion = new IndexableDataset(latestVersion);
-                String indexDeaccessionedVersionResult = addOrUpdateDataset(indexableDeaccessionedVersion);
+                String indexDeaccessionedVersionResult = addOrUpdateDataset(indexableDeaccessionedVersion, null, batchDocuments);
                 results.append("No draft version. Attempting to index as deaccessioned. Result: ").append(indexDeaccessionedVersionResult).append("\n");
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, false);
@@ -753,7 +858,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, true);
                 IndexableDataset indexableReleasedVersion = new IndexableDataset(releasedVersion);
-                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion);
+                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, null, batchDocuments);
                 results.append("Attempted to index " + solrIdPublished).append(". Result: ").append(indexReleasedVersionResult).append("\n");
 
                 desiredCards.put(DatasetVersion.VersionState.DRAFT, false);
@@ -808,10 +913,10 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, true);
                 IndexableDataset indexableReleasedVersion = new IndexableDataset(releasedVersion);
-                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, datafilesInDraftVersion);
+                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, datafilesInDraftVersion, batchDocuments);
                 results.append("There is a published version we will attempt to index. Result: ").append(indexReleasedVersionResult).append("\n");
 
-                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion);
+                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion, null, batchDocuments);
                 results.append("The latest version is a working copy (latestVersionState: ")
                         .append(latestVersionStateString).append(") and will be indexed as ")
                         .append(solrIdDraftDataset).append(" (limited visibility). Result: ").append(indexDraftResult).append("\n");
@@ -911,12 +1016,15 @@ public class IndexServiceBean {
         return indexResponse;
     }
 
-    private String addOrUpdateDataset(IndexableDataset indexableDataset) throws  SolrServerException, IOException {
-        String result = addOrUpdateDataset(indexableDataset, null);
-        return result;
+    public SolrInputDocuments toSolrDocs(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {
+        return toSolrDocs(indexableDataset, datafilesInDraftVersion, null);
     }
 
-    public SolrInputDocuments toSolrDocs(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {
+    /**
+     * @param fileIdsToIndex if not null, only the documents of these files are
+     * built (along with the dataset document).
+     */
+    public SolrInputDocuments toSolrDocs(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion, Set<Long> fileIdsToIndex) throws  SolrServerException, IOException {
         IndexableDataset.DatasetState state = indexableDataset.getDatasetState();
         Dataset dataset = indexableDataset.getDatasetVersion().getDataset();
         logger.fine("adding or updating Solr document for dataset id " + dataset.getId());
@@ -1335,7 +1443,8 @@ public class IndexServiceBean {
                         retentionEndDate=start;
                     }
                 }
-                boolean indexThisMetadata = indexableDataset.isFilesShouldBeIndexed();
+                boolean indexThisMetadata = indexableDataset.isFilesShouldBeIndexed()
+                        && (fileIdsToIndex == null || fileIdsToIndex.contains(fileMetadata.getDataFile().getId()));
                 if (indexThisMetadata && checkForDuplicateMetadata && !releasedFileMetadatas.isEmpty()) {
                     logger.fine("Checking if this file metadata is a duplicate.");
                     FileMetadata getFromMap = fileMap.get(fileMetadata.getDataFile().getId());
@@ -1475,14 +1584,7 @@ public class IndexServiceBean {
                                 String msg = "filePublicationTimestamp was null for fileMetadata id " + fileMetadata.getId() + " (file id " + datafile.getId() + ")";
                                 logger.info(msg);
                             }
-                            datafileSolrInputDocument.addField(SearchFields.ACCESS,
-                                    FileUtil.isRetentionExpired(datafile)
-                                        ? SearchConstants.RETENTIONEXPIRED :
-                                            FileUtil.isActivelyEmbargoed(datafile)
-                                                ? (fileMetadata.isRestricted() ? SearchConstants.EMBARGOEDTHENRESTRICTED
-                                                        : SearchConstants.EMBARGOEDTHENPUBLIC)
-                                                : (fileMetadata.isRestricted() ? SearchConstants.RESTRICTED
-                                                        : SearchConstants.PUBLIC));
+                            datafileSolrInputDocument.addField(SearchFields.ACCESS, getFileAccess(fileMetadata));
                         } else {
                             logger.fine("indexing file with fileCreateTimestamp. " + fileMetadata.getId() + " (file id " + datafile.getId() + ")");
                             Timestamp fileCreateTimestamp = datafile.getCreateDate();
@@ -1492,12 +1594,7 @@ public class IndexServiceBean {
                                 String msg = "fileCreateTimestamp was null for fileMetadata id " + fileMetadata.getId() + " (file id " + datafile.getId() + ")";
                                 logger.info(msg);
                             }
-                            datafileSolrInputDocument.addField(SearchFields.ACCESS,
-                                    FileUtil.isActivelyEmbargoed(fileMetadata)
-                                            ? (fileMetadata.isRestricted() ? SearchConstants.EMBARGOEDTHENRESTRICTED
-                                                    : SearchConstants.EMBARGOEDTHENPUBLIC)
-                                            : (fileMetadata.isRestricted() ? SearchConstants.RESTRICTED
-                                                    : SearchConstants.PUBLIC));
+                            datafileSolrInputDocument.addField(SearchFields.ACCESS, getFileAccess(fileMetadata));
                         }
                         if (datafile.isHarvested()) {
                             datafileSolrInputDocument.addField(SearchFields.IS_HARVESTED, true);
@@ -1665,12 +1762,19 @@ public class IndexServiceBean {
         }
         Long datasetId = dataset.getId();
         final String msg = "indexed dataset " + datasetId + " as " + datasetSolrDocId + ". filesIndexed: " + filesIndexed;
-        return new SolrInputDocuments(docs, msg, datasetId);
+        SolrInputDocuments solrInputDocuments = new SolrInputDocuments(docs, msg, datasetId);
+        solrInputDocuments.setParentName(parentDatasetTitle);
+        solrInputDocuments.setParentCitation(dataset.getCitation());
+        return solrInputDocuments;
     }
     
-    private String addOrUpdateDataset(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {   
+    private String addOrUpdateDataset(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion, Collection<SolrInputDocument> batchDocuments) throws  SolrServerException, IOException {   
         final SolrInputDocuments docs = toSolrDocs(indexableDataset, datafilesInDraftVersion);
 
+        if (batchDocuments != null) {
+            batchDocuments.addAll(docs.getDocuments());
+            return docs.getMessage();
+        }
         try {
             solrClientService.getSolrClient().add(docs.getDocuments());
         } catch (SolrServerException | IOException ex) {
@@ -1683,6 +1787,184 @@ public class IndexServiceBean {
         return docs.getMessage();
     }
 
+    /**
+     * Indexes the changes made to the draft version of a dataset that has
+     * never been published, without rebuilding the Solr documents of the
+     * files that didn't change:
+     * <ul>
+     * <li>the dataset document is rebuilt;</li>
+     * <li>the documents of added and changed files are rebuilt;</li>
+     * <li>the documents of removed files are deleted;</li>
+     * <li>on the documents of all the other files, the fields that depend on
+     * the dataset (its title and citation) or that the changes don't track
+     * (access, embargo and retention) are set with atomic updates, if their
+     * values changed.</li>
+     * </ul>
+     * Atomic updates rebuild a document from its stored fields, so they would
+     * drop the extracted full text of the files; when full-text indexing is
+     * enabled, the documents that need updating are rebuilt instead.
+     *
+     * @return false if the changes can't be indexed this way and the whole
+     * dataset must be indexed instead; for example if it has been published
+     * since.
+     */
+    private boolean indexDatasetChanges(Dataset dataset, DatasetIndexChanges changes) throws SolrServerException, IOException {
+        DatasetVersion draftVersion = dataset.getLatestVersion();
+        if (dataset.getVersions().size() != 1 || !draftVersion.isDraft() || !draftVersion.getId().equals(changes.getVersionId())) {
+            return false;
+        }
+
+        Map<String, SolrDocument> existingFileDocs;
+        try {
+            existingFileDocs = findFileDocsOfParentDataset(dataset.getId());
+        } catch (SolrServerException | IOException ex) {
+            logger.fine("could not find the file documents of dataset " + dataset.getId() + ": " + ex);
+            return false;
+        }
+
+        Set<Long> fileIdsToIndex = new HashSet<>(changes.getChangedFileIds());
+        boolean doFullTextIndexing = settingsService.isTrueForKey(SettingsServiceBean.Key.SolrFullTextIndexing, false);
+        List<FileMetadata> fileMetadatasToUpdate = new ArrayList<>();
+        for (FileMetadata fileMetadata : draftVersion.getFileMetadatas()) {
+            Long fileId = fileMetadata.getDataFile().getId();
+            if (!fileIdsToIndex.contains(fileId)) {
+                if (!existingFileDocs.containsKey(solrDocIdentifierFile + fileId + draftSuffix)) {
+                    // missing from the index; not for us to guess why
+                    fileIdsToIndex.add(fileId);
+                } else {
+                    fileMetadatasToUpdate.add(fileMetadata);
+                }
+            }
+        }
+
+        IndexableDataset indexableDraftVersion = new IndexableDataset(draftVersion);
+        SolrInputDocuments solrInputDocuments = toSolrDocs(indexableDraftVersion, null, fileIdsToIndex);
+        Collection<SolrInputDocument> docs = new ArrayList<>(solrInputDocuments.getDocuments());
+        Set<Long> fileIdsToRebuild = new HashSet<>();
+        int fileDocsUpdated = 0;
+        for (FileMetadata fileMetadata : fileMetadatasToUpdate) {
+            String solrIdOfDraftFile = solrDocIdentifierFile + fileMetadata.getDataFile().getId() + draftSuffix;
+            SolrInputDocument update = toFileDocUpdate(fileMetadata, existingFileDocs.get(solrIdOfDraftFile), solrInputDocuments);
+            if (update != null) {
+                if (doFullTextIndexing) {
+                    fileIdsToRebuild.add(fileMetadata.getDataFile().getId());
+                } else {
+                    docs.add(update);
+                    fileDocsUpdated++;
+                }
+            }
+        }
+        if (!fileIdsToRebuild.isEmpty()) {
+            // (the dataset document is already there)
+            String datasetSolrDocId = indexableDraftVersion.getSolrDocId();
+            for (SolrInputDocument doc : toSolrDocs(indexableDraftVersion, null, fileIdsToRebuild).getDocuments()) {
+                if (!datasetSolrDocId.equals(doc.getFieldValue(SearchFields.ID))) {
+                    docs.add(doc);
+                }
+            }
+        }
+
+        List<String> solrIdsToDelete = new ArrayList<>();
+        for (Long fileId : changes.getRemovedFileIds()) {
+            String solrIdOfDraftFile = solrDocIdentifierFile + fileId + draftSuffix;
+            if (existingFileDocs.containsKey(solrIdOfDraftFile)) {
+                solrIdsToDelete.add(solrIdOfDraftFile);
+                solrIdsToDelete.add(solrIdOfDraftFile + discoverabilityPermissionSuffix);
+            }
+        }
+        if (!solrIdsToDelete.isEmpty()) {
+            solrIndexService.deleteMultipleSolrIds(solrIdsToDelete);
+        }
+
+        solrClientService.getSolrClient().add(docs);
+
+        for (FileMetadata fileMetadata : draftVersion.getFileMetadatas()) {
+            if (fileIdsToIndex.contains(fileMetadata.getDataFile().getId())) {
+                solrIndexService.indexPermissionsForOneDvObject(fileMetadata.getDataFile());
+            }
+        }
+        logger.fine("indexed the changes to dataset " + dataset.getId() + ": " + (fileIdsToIndex.size() + fileIdsToRebuild.size()) + " file documents rebuilt, "
+                + fileDocsUpdated + " updated, " + solrIdsToDelete.size() / 2 + " deleted");
+        updateLastIndexedTime(dataset.getId());
+        return true;
+    }
+
+    /**
+     * Like {@link #findFilesOfParentDataset(long)}, but with the values of the
+     * fields {@link #toFileDocUpdate} compares.
+     *
+     * @return the file documents of the dataset, by Solr id.
+     */
+    private Map<String, SolrDocument> findFileDocsOfParentDataset(long parentDatasetId) throws SolrServerException, IOException {
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery("*");
+        solrQuery.setRows(Integer.MAX_VALUE);
+        solrQuery.addFilterQuery(SearchFields.PARENT_ID + ":" + parentDatasetId);
+        solrQuery.addFilterQuery(SearchFields.TYPE + ":" + "files");
+        solrQuery.setFields(SearchFields.ID, SearchFields.PARENT_NAME, SearchFields.PARENT_CITATION,
+                SearchFields.ACCESS, SearchFields.EMBARGO_END_DATE, SearchFields.RETENTION_END_DATE);
+        Map<String, SolrDocument> fileDocs = new HashMap<>();
+        for (SolrDocument solrDocument : solrClientService.getSolrClient().query(solrQuery).getResults()) {
+            Object id = solrDocument.getFieldValue(SearchFields.ID);
+            if (id != null) {
+                fileDocs.put((String) id, solrDocument);
+            }
+        }
+        return fileDocs;
+    }
+
+    /**
+     * @return an atomic update of the fields of an unchanged file's document
+     * that differ from what they would be if the document was rebuilt; null if
+     * there are none.
+     */
+    private SolrInputDocument toFileDocUpdate(FileMetadata fileMetadata, SolrDocument existing, SolrInputDocuments datasetDocs) {
+        DataFile dataFile = fileMetadata.getDataFile();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put(SearchFields.PARENT_NAME, datasetDocs.getParentName());
+        values.put(SearchFields.PARENT_CITATION, datasetDocs.getParentCitation());
+        values.put(SearchFields.ACCESS, getFileAccess(fileMetadata));
+        values.put(SearchFields.EMBARGO_END_DATE, dataFile.getEmbargo() != null ? dataFile.getEmbargo().getDateAvailable().toEpochDay() : null);
+        values.put(SearchFields.RETENTION_END_DATE, dataFile.getRetention() != null ? dataFile.getRetention().getDateUnavailable().toEpochDay() : null);
+
+        SolrInputDocument update = null;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            Object existingValue = existing.getFirstValue(value.getKey());
+            if (existingValue instanceof Number && value.getValue() instanceof Number) {
+                existingValue = ((Number) existingValue).longValue();
+            }
+            if (!Objects.equals(existingValue, value.getValue())) {
+                if (update == null) {
+                    update = new SolrInputDocument();
+                    update.addField(SearchFields.ID, existing.getFieldValue(SearchFields.ID));
+                }
+                // "set" to null removes the field
+                Map<String, Object> set = new HashMap<>();
+                set.put("set", value.getValue());
+                update.addField(value.getKey(), set);
+            }
+        }
+        return update;
+    }
+
+    private static String getFileAccess(FileMetadata fileMetadata) {
+        DataFile datafile = fileMetadata.getDataFile();
+        if (datafile.isReleased()) {
+            return FileUtil.isRetentionExpired(datafile)
+                    ? SearchConstants.RETENTIONEXPIRED :
+                        FileUtil.isActivelyEmbargoed(datafile)
+                            ? (fileMetadata.isRestricted() ? SearchConstants.EMBARGOEDTHENRESTRICTED
+                                    : SearchConstants.EMBARGOEDTHENPUBLIC)
+                            : (fileMetadata.isRestricted() ? SearchConstants.RESTRICTED
+                                    : SearchConstants.PUBLIC);
+        }
+        return FileUtil.isActivelyEmbargoed(fileMetadata)
+                ? (fileMetadata.isRestricted() ? SearchConstants.EMBARGOEDTHENRESTRICTED
+                        : SearchConstants.EMBARGOEDTHENPUBLIC)
+                : (fileMetadata.isRestricted() ? SearchConstants.RESTRICTED
+                        : SearchConstants.PUBLIC);
+    }
+
     @Asynchronous
     private void updateLastIndexedTime(Long id) {
         // indexing is often in a transaction with update statements
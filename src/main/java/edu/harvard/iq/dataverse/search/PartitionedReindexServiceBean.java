@@ -0,0 +1,237 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.inject.Named;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
+
+/**
+ * Runs a full (or "continue") reindex as a number of partitions, several of
+ * them at the same time on each node of the cluster. The progress of each
+ * partition is saved in an {@link IndexCheckpoint}, so that a partition that
+ * stopped because its node was restarted is resumed (by any node) where it
+ * stopped, rather than from the start.
+ *
+ * A partition is worked on by the node that holds its lease, in the cluster
+ * cache (see {@link CacheFactoryBean#claimReindexLease(String)}). The lease is
+ * renewed every minute while the partition runs, and whenever the checkpoint
+ * is saved; the partitions whose lease has expired are claimed again by the
+ * timer below.
+ *
+ * @see IndexBatchServiceBean#indexPartition(Long)
+ */
+@Named
+@Stateless
+public class PartitionedReindexServiceBean {
+
+    private static final Logger logger = Logger.getLogger(PartitionedReindexServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    @EJB
+    IndexBatchServiceBean indexBatchService;
+    @EJB
+    CacheFactoryBean cacheFactory;
+
+    // the checkpoint ids of the partitions this node is working on
+    private static final Set<Long> localPartitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates the checkpoints of a new reindex, replacing those of the
+     * previous one. The partitions are started by
+     * {@link #resumePartitions()}, which must be called once this
+     * transaction is committed.
+     *
+     * @return the checkpoints, or null if the previous reindex is not
+     * finished (or cancelled) yet.
+     */
+    public List<IndexCheckpoint> start(int numPartitions, boolean skipIndexed) {
+        if (!findCheckpoints(IndexCheckpoint.Status.IN_PROGRESS).isEmpty()) {
+            return null;
+        }
+        em.createNamedQuery("IndexCheckpoint.deleteAll").executeUpdate();
+        List<IndexCheckpoint> checkpoints = new ArrayList<>();
+        for (int partitionId = 0; partitionId < numPartitions; partitionId++) {
+            IndexCheckpoint checkpoint = new IndexCheckpoint(numPartitions, partitionId, skipIndexed);
+            em.persist(checkpoint);
+            checkpoints.add(checkpoint);
+        }
+        em.flush();
+        logger.info("starting a reindex in " + numPartitions + " partitions" + (skipIndexed ? ", skipping the datasets already indexed" : ""));
+        return checkpoints;
+    }
+
+    /**
+     * Claims the unfinished partitions that no node is working on, up to
+     * {@code dataverse.solr.reindex.partitions-per-node} on this node, and
+     * starts indexing them.
+     *
+     * @return the number of partitions started on this node
+     */
+    public int resumePartitions() {
+        int maxPartitions = Math.max(JvmSettings.REINDEX_PARTITIONS_PER_NODE.lookupOptional(Integer.class).orElse(2), 1);
+        int started = 0;
+        for (IndexCheckpoint checkpoint : findCheckpoints(IndexCheckpoint.Status.IN_PROGRESS)) {
+            if (localPartitions.size() >= maxPartitions) {
+                break;
+            }
+            Long id = checkpoint.getId();
+            if (localPartitions.contains(id) || !cacheFactory.claimReindexLease(leaseKey(id))) {
+                continue;
+            }
+            localPartitions.add(id);
+            try {
+                indexBatchService.indexPartition(id);
+                started++;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to start indexing partition " + checkpoint.getPartitionId(), e);
+                partitionStopped(id);
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Picks up the partitions of the nodes that were restarted or went away,
+     * once their lease has expired. Runs on every node (not only on the timer
+     * server), so that the partitions are spread over the cluster.
+     */
+    @Schedule(minute = "*/5", hour = "*", persistent = false)
+    public void resumePartitionsTimer() {
+        int started = resumePartitions();
+        if (started > 0) {
+            logger.info("resumed " + started + " reindex partition(s) on this node");
+        }
+    }
+
+    /**
+     * Renews the leases of the partitions running on this node, however long
+     * the chunk they are indexing takes, so that they are not resumed by
+     * another node while they are still running on this one.
+     */
+    @Schedule(minute = "*", hour = "*", persistent = false)
+    public void renewLeasesTimer() {
+        for (Long id : localPartitions) {
+            if (!cacheFactory.renewReindexLease(leaseKey(id))) {
+                logger.warning("the lease on reindex partition checkpoint " + id + " has expired; the partition stops at its next checkpoint");
+            }
+        }
+    }
+
+    /**
+     * Stops all the partitions of the reindex in progress, once they are done
+     * with the datasets they are indexing.
+     *
+     * @return the number of partitions cancelled
+     */
+    public int cancel() {
+        return em.createNamedQuery("IndexCheckpoint.updateStatus")
+                .setParameter("status", IndexCheckpoint.Status.IN_PROGRESS)
+                .setParameter("newStatus", IndexCheckpoint.Status.CANCELLED)
+                .executeUpdate();
+    }
+
+    public IndexCheckpoint findCheckpoint(Long id) {
+        return em.find(IndexCheckpoint.class, id);
+    }
+
+    public List<IndexCheckpoint> findCheckpoints(IndexCheckpoint.Status status) {
+        return em.createNamedQuery("IndexCheckpoint.findByStatus", IndexCheckpoint.class)
+                .setParameter("status", status)
+                .getResultList();
+    }
+
+    /**
+     * Saves the progress of a partition, and renews its lease.
+     *
+     * @param progress the checkpoint as updated by the partition
+     * @param done whether all the datasets of the partition have been indexed
+     * @return false if the partition must stop: it was cancelled, or its lease
+     * expired and another node may be working on it.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public boolean saveCheckpoint(IndexCheckpoint progress, boolean done) {
+        IndexCheckpoint checkpoint = em.find(IndexCheckpoint.class, progress.getId());
+        if (checkpoint == null || checkpoint.getStatus() != IndexCheckpoint.Status.IN_PROGRESS) {
+            return false;
+        }
+        checkpoint.setDataversesIndexed(progress.isDataversesIndexed());
+        checkpoint.setLastDatasetId(progress.getLastDatasetId());
+        checkpoint.setDatasetsIndexed(progress.getDatasetsIndexed());
+        checkpoint.setDatasetsFailed(progress.getDatasetsFailed());
+        checkpoint.setLastUpdateTime(new Timestamp(System.currentTimeMillis()));
+        if (done) {
+            checkpoint.setStatus(IndexCheckpoint.Status.DONE);
+            checkpoint.setFinishTime(checkpoint.getLastUpdateTime());
+            return true;
+        }
+        return cacheFactory.renewReindexLease(leaseKey(checkpoint.getId()));
+    }
+
+    /**
+     * Called when a partition stops on this node, whether it is done or not.
+     */
+    public void partitionStopped(Long checkpointId) {
+        localPartitions.remove(checkpointId);
+        cacheFactory.releaseReindexLease(leaseKey(checkpointId));
+    }
+
+    /**
+     * @return the progress of each partition of the reindex in progress, or of
+     * the last one; null if no partitioned reindex was ever started. The
+     * partitions running on this node also report the progress and throughput
+     * of the chunk they are indexing.
+     */
+    public JsonObjectBuilder getStatus() {
+        List<IndexCheckpoint> checkpoints = em.createNamedQuery("IndexCheckpoint.findAll", IndexCheckpoint.class).getResultList();
+        if (checkpoints.isEmpty()) {
+            return null;
+        }
+        JsonArrayBuilder partitions = Json.createArrayBuilder();
+        long datasetsIndexed = 0;
+        long datasetsFailed = 0;
+        int partitionsDone = 0;
+        for (IndexCheckpoint checkpoint : checkpoints) {
+            JsonObjectBuilder partition = checkpoint.toJson();
+            JsonObjectBuilder chunkProgress = indexBatchService.getPartitionBatchProgress(checkpoint.getId());
+            if (chunkProgress != null) {
+                partition.add("currentChunk", chunkProgress);
+            }
+            partitions.add(partition);
+            datasetsIndexed += checkpoint.getDatasetsIndexed();
+            datasetsFailed += checkpoint.getDatasetsFailed();
+            if (checkpoint.getStatus() == IndexCheckpoint.Status.DONE) {
+                partitionsDone++;
+            }
+        }
+        return Json.createObjectBuilder()
+                .add("numPartitions", checkpoints.size())
+                .add("partitionsDone", partitionsDone)
+                .add("partitionsRunningOnThisNode", localPartitions.size())
+                .add("datasetsIndexed", datasetsIndexed)
+                .add("datasetsFailed", datasetsFailed)
+                .add("partitions", partitions);
+    }
+
+    private static String leaseKey(Long checkpointId) {
+        return "reindex:" + checkpointId;
+    }
+}
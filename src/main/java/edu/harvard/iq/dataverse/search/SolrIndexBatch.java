@@ -0,0 +1,186 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Collects the Solr documents of many datasets, built concurrently by several
+ * workers during a bulk reindex, and sends them to Solr in batches of (at
+ * least) {@code batchSize} documents. No explicit commits are made; the
+ * documents are added with {@code commitWithin} and Solr decides when to
+ * commit them.
+ *
+ * The documents of a dataset are always sent together, in the same batch.
+ * Once a batch has been sent (or has failed) the listener is called with the
+ * ids of the datasets in it, from whichever thread completed the batch.
+ *
+ * Also keeps the counts behind the throughput reported by the admin API.
+ */
+public class SolrIndexBatch {
+
+    private static final Logger logger = Logger.getLogger(SolrIndexBatch.class.getCanonicalName());
+
+    private final SolrClient solrClient;
+    private final int batchSize;
+    private final int commitWithinMs;
+    private final int datasetsTotal;
+    private final BiConsumer<List<Long>, Boolean> listener;
+
+    private List<SolrInputDocument> documents = new ArrayList<>();
+    private List<Long> datasetIds = new ArrayList<>();
+
+    private final AtomicLong documentsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong batchesFailed = new AtomicLong();
+    private final AtomicLong datasetsIndexed = new AtomicLong();
+    private final AtomicLong datasetsFailed = new AtomicLong();
+    private final AtomicLong datasetsDeferred = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+    private volatile long finishTime = 0;
+
+    /**
+     * @param datasetsTotal the number of datasets to be indexed, for reporting only
+     * @param listener called with the ids of the datasets of each batch, and
+     * whether they were sent successfully
+     */
+    public SolrIndexBatch(SolrClient solrClient, int batchSize, int commitWithinMs, int datasetsTotal, BiConsumer<List<Long>, Boolean> listener) {
+        this.solrClient = solrClient;
+        this.batchSize = Math.max(batchSize, 1);
+        this.commitWithinMs = commitWithinMs;
+        this.datasetsTotal = datasetsTotal;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds all the documents of a dataset to the batch, and sends the batch if
+     * it is full (on the calling thread).
+     */
+    public void add(Long datasetId, Collection<SolrInputDocument> datasetDocuments) {
+        List<SolrInputDocument> documentsToSend = null;
+        List<Long> datasetIdsToSend = null;
+        synchronized (this) {
+            documents.addAll(datasetDocuments);
+            datasetIds.add(datasetId);
+            // (after finish(), whatever still comes in is sent right away)
+            if (documents.size() >= batchSize || isFinished()) {
+                documentsToSend = documents;
+                datasetIdsToSend = datasetIds;
+                documents = new ArrayList<>();
+                datasetIds = new ArrayList<>();
+            }
+        }
+        if (documentsToSend != null) {
+            send(documentsToSend, datasetIdsToSend);
+        }
+    }
+
+    /**
+     * Records a dataset whose documents could not be built.
+     */
+    public void addFailure(Long datasetId) {
+        datasetsFailed.incrementAndGet();
+        listener.accept(List.of(datasetId), false);
+    }
+
+    /**
+     * Records a dataset that was being indexed by another job at the time;
+     * that job will index it again when it is done.
+     */
+    public void addDeferred(Long datasetId) {
+        datasetsDeferred.incrementAndGet();
+    }
+
+    /**
+     * Sends whatever documents are left, and stops the clock.
+     */
+    public void finish() {
+        List<SolrInputDocument> documentsToSend;
+        List<Long> datasetIdsToSend;
+        synchronized (this) {
+            documentsToSend = documents;
+            datasetIdsToSend = datasetIds;
+            documents = new ArrayList<>();
+            datasetIds = new ArrayList<>();
+        }
+        if (!datasetIdsToSend.isEmpty()) {
+            send(documentsToSend, datasetIdsToSend);
+        }
+        finishTime = System.currentTimeMillis();
+    }
+
+    private void send(List<SolrInputDocument> documentsToSend, List<Long> datasetIdsToSend) {
+        boolean sent = false;
+        try {
+            if (!documentsToSend.isEmpty()) {
+                solrClient.add(documentsToSend, commitWithinMs);
+            }
+            documentsSent.addAndGet(documentsToSend.size());
+            batchesSent.incrementAndGet();
+            datasetsIndexed.addAndGet(datasetIdsToSend.size());
+            sent = true;
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            batchesFailed.incrementAndGet();
+            datasetsFailed.addAndGet(datasetIdsToSend.size());
+            logger.log(Level.WARNING, "Failed to send a batch of " + documentsToSend.size() + " Solr documents; these datasets were not indexed: " + datasetIdsToSend, ex);
+        }
+        listener.accept(datasetIdsToSend, sent);
+    }
+
+    public long getDocumentsSent() {
+        return documentsSent.get();
+    }
+
+    public long getDatasetsIndexed() {
+        return datasetsIndexed.get();
+    }
+
+    public long getDatasetsFailed() {
+        return datasetsFailed.get();
+    }
+
+    public boolean isFinished() {
+        return finishTime > 0;
+    }
+
+    public long getElapsedMillis() {
+        return (isFinished() ? finishTime : System.currentTimeMillis()) - startTime;
+    }
+
+    public double getDocumentsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? documentsSent.get() * 1000.0 / elapsed : 0.0;
+    }
+
+    public double getDatasetsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? datasetsIndexed.get() * 1000.0 / elapsed : 0.0;
+    }
+
+    public JsonObjectBuilder getStatus() {
+        return Json.createObjectBuilder()
+                .add("finished", isFinished())
+                .add("datasetsTotal", datasetsTotal)
+                .add("datasetsIndexed", datasetsIndexed.get())
+                .add("datasetsFailed", datasetsFailed.get())
+                .add("datasetsDeferred", datasetsDeferred.get())
+                .add("documentsSent", documentsSent.get())
+                .add("batchesSent", batchesSent.get())
+                .add("batchesFailed", batchesFailed.get())
+                .add("batchSize", batchSize)
+                .add("commitWithinMs", commitWithinMs)
+                .add("elapsedMillis", getElapsedMillis())
+                .add("documentsPerSecond", Math.round(getDocumentsPerSecond() * 10) / 10.0)
+                .add("datasetsPerSecond", Math.round(getDatasetsPerSecond() * 10) / 10.0);
+    }
+}
@@ -8,6 +8,9 @@ public class SolrInputDocuments {
     private Collection<SolrInputDocument> documents;
     private String message;
     private Long datasetId;
+    // the values indexed on the file documents as their parent dataset's
+    private String parentName;
+    private String parentCitation;
 
     public SolrInputDocuments(Collection<SolrInputDocument> documents, String message, Long datasetId) {
         this.documents = documents;
@@ -26,4 +29,20 @@ public class SolrInputDocuments {
     public Long getDatasetId() {
         return datasetId;
     }
-}
\ No newline at end of file
+
+    public String getParentName() {
+        return parentName;
+    }
+
+    public void setParentName(String parentName) {
+        this.parentName = parentName;
+    }
+
+    public String getParentCitation() {
+        return parentCitation;
+    }
+
+    public void setParentCitation(String parentCitation) {
+        this.parentCitation = parentCitation;
+    }
+}
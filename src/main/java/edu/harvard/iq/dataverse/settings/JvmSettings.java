@@ -51,6 +51,10 @@ public enum JvmSettings {
     DOCROOT_DIRECTORY(SCOPE_FILES, "docroot"),
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
+    TABULAR_SUBSET_INDEX(SCOPE_FILES, "tabular-subset-index"),
+    ZIP_DOWNLOAD_PREFETCH(SCOPE_FILES, "zip-download-prefetch"),
+    ZIP_UPLOAD_WORKERS(SCOPE_FILES, "zip-upload-workers"),
+    CHECKSUM_VALIDATION_WORKERS(SCOPE_FILES, "checksum-validation-workers"),
 
     //STORAGE DRIVER SETTINGS
     SCOPE_DRIVER(SCOPE_FILES),
@@ -67,6 +71,18 @@ public enum JvmSettings {
     // INDEX CONCURENCY
     SCOPE_SOLR_CONCURENCY(SCOPE_SOLR, "concurrency"),
     MAX_ASYNC_INDEXES(SCOPE_SOLR_CONCURENCY, "max-async-indexes"),
+    BATCH_INDEX_WORKERS(SCOPE_SOLR_CONCURENCY, "batch-workers"),
+
+    // INDEX BATCHES
+    SCOPE_SOLR_BATCH(SCOPE_SOLR, "batch"),
+    SOLR_BATCH_SIZE(SCOPE_SOLR_BATCH, "size"),
+    SOLR_BATCH_COMMIT_WITHIN(SCOPE_SOLR_BATCH, "commit-within"),
+
+    // PARTITIONED REINDEX
+    SCOPE_SOLR_REINDEX(SCOPE_SOLR, "reindex"),
+    REINDEX_PARTITIONS_PER_NODE(SCOPE_SOLR_REINDEX, "partitions-per-node"),
+    REINDEX_CHUNK_SIZE(SCOPE_SOLR_REINDEX, "chunk-size"),
+    REINDEX_LEASE_TTL(SCOPE_SOLR_REINDEX, "lease-ttl"),
 
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
@@ -76,6 +92,13 @@ public enum JvmSettings {
     RSERVE_PASSWORD(SCOPE_RSERVE, "password"),
     RSERVE_TEMPDIR(SCOPE_RSERVE, "tempdir"),
     
+    // INGEST SETTINGS
+    SCOPE_INGEST(PREFIX, "ingest"),
+    INGEST_COLUMN_STORE(SCOPE_INGEST, "column-store"),
+    SCOPE_INGEST_CONCURRENCY(SCOPE_INGEST, "concurrency"),
+    INGEST_STATS_THREADS(SCOPE_INGEST_CONCURRENCY, "stats-threads"),
+    INGEST_MAX_STATS_THREADS(SCOPE_INGEST_CONCURRENCY, "max-stats-threads"),
+
     // API SETTINGS
     SCOPE_API(PREFIX, "api"),
     API_SIGNING_SECRET(SCOPE_API, "signing-secret"),
@@ -192,6 +215,7 @@ public enum JvmSettings {
     SCOPE_SPI(PREFIX, "spi"),
     SCOPE_EXPORTERS(SCOPE_SPI, "exporters"),
     EXPORTERS_DIRECTORY(SCOPE_EXPORTERS, "directory"),
+    EXPORTERS_WORKERS(SCOPE_EXPORTERS, "workers"),
     SCOPE_PIDPROVIDERS(SCOPE_SPI, "pidproviders"),
     PIDPROVIDERS_DIRECTORY(SCOPE_PIDPROVIDERS, "directory"),
     
@@ -246,6 +270,11 @@ public enum JvmSettings {
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
     STORAGEUSE_DISABLE_UPDATES(SCOPE_STORAGEUSE, "disable-storageuse-increments"),
+    STORAGEUSE_BUFFER_UPDATES(SCOPE_STORAGEUSE, "buffer-storageuse-increments"),
+
+    // PERMISSIONS SETTINGS
+    SCOPE_PERMISSIONS(PREFIX, "permissions"),
+    PERMISSIONS_CACHE_TTL(SCOPE_PERMISSIONS, "cache-ttl"),
     ;
 
     private static final String SCOPE_SEPARATOR = ".";
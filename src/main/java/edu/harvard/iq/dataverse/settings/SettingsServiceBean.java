@@ -4,7 +4,9 @@ import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.api.ApiBlockingFilter;
 import edu.harvard.iq.dataverse.util.StringUtil;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
@@ -13,6 +15,9 @@ import jakarta.json.JsonObject;
 import jakarta.json.JsonValue;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -24,8 +29,10 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -684,26 +691,139 @@ public class SettingsServiceBean {
         }
     }
     
+    /**
+     * How often the settings loaded on this node are checked against the
+     * settings version of the cluster, and reloaded if they were changed on
+     * another node.
+     */
+    static final long VERSION_CHECK_INTERVAL_MILLIS = 1000L;
+    
+    /**
+     * All the settings, as last loaded from the database. Replaced as a whole,
+     * never modified.
+     */
+    static volatile Snapshot snapshot;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    
     @PersistenceContext
     EntityManager em;
     
     @EJB
     ActionLogServiceBean actionLogSvc;
     
+    @EJB
+    CacheFactoryBean cacheFactory;
+    
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    
     /**
      * Basic functionality - get the name, return the setting, or {@code null}.
      * @param name of the setting
      * @return the actual setting, or {@code null}.
      */
     public String get( String name ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByName", Setting.class)
-                .setParameter("name", name )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
+        return getSnapshot().values.get(name);
+    }
+    
+    /**
+     * @return The number of settings lookups answered by the settings
+     * already loaded on this node.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * @return The number of settings lookups which had to (re)load the
+     * settings from the database.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+    
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.checkedAt > VERSION_CHECK_INTERVAL_MILLIS) {
+            String version = cacheFactory.getSettingsVersion();
+            if (Objects.equals(version, current.version)) {
+                current.checkedAt = now;
+            } else {
+                current = null;
+            }
+        }
+        if (current == null) {
+            misses.incrementAndGet();
+            current = loadSnapshot();
+        } else {
+            hits.incrementAndGet();
+        }
+        return current;
+    }
+    
+    private Snapshot loadSnapshot() {
+        // read the version first, so a change made while loading is picked up by the next check
+        String version = cacheFactory.getSettingsVersion();
+        Map<String, String> values = new HashMap<>();
+        Map<String, Map<String, String>> localizedValues = new HashMap<>();
+        for (Setting setting : em.createNamedQuery("Setting.findAll", Setting.class).getResultList()) {
+            if (setting.getContent() == null) {
+                continue;
+            }
+            if (setting.getLang() == null) {
+                values.put(setting.getName(), setting.getContent());
+            } else {
+                localizedValues.computeIfAbsent(setting.getName(), n -> new HashMap<>())
+                               .put(setting.getLang(), setting.getContent());
+            }
+        }
+        Snapshot loaded = new Snapshot(version, values, localizedValues);
+        snapshot = loaded;
+        logger.log(Level.FINE, "Loaded {0} settings (settings lookups: {1} hits, {2} misses)",
+                new Object[]{values.size() + localizedValues.size(), hits.get(), misses.get()});
+        return loaded;
+    }
+    
+    /**
+     * Discards the settings loaded on this node right away, since the current
+     * transaction may read them again, and on all nodes once the change is
+     * committed.
+     */
+    private void invalidateSnapshot() {
+        snapshot = null;
+        if (transactionRegistry != null && transactionRegistry.getTransactionKey() != null) {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    snapshot = null;
+                    if (status == Status.STATUS_COMMITTED) {
+                        cacheFactory.invalidateSettings();
+                    }
+                }
+            });
+        } else {
+            cacheFactory.invalidateSettings();
+        }
+    }
+    
+    static final class Snapshot {
+        final String version;
+        final Map<String, String> values;
+        final Map<String, Map<String, String>> localizedValues;
+        volatile long checkedAt;
+        
+        Snapshot(String version, Map<String, String> values, Map<String, Map<String, String>> localizedValues) {
+            this.version = version;
+            this.values = Collections.unmodifiableMap(values);
+            this.localizedValues = Collections.unmodifiableMap(localizedValues);
+            this.checkedAt = System.currentTimeMillis();
         }
-        return (val!=null) ? val : null;
     }
     
     /**
@@ -828,14 +948,7 @@ public class SettingsServiceBean {
     }
 
     public String get(String name, String lang, String defaultValue ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByNameAndLang", Setting.class)
-                .setParameter("name", name )
-                .setParameter("lang", lang )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
-        }
+        String val = getSnapshot().localizedValues.getOrDefault(name, Collections.emptyMap()).get(lang);
         return (val!=null) ? val : defaultValue;
     }
     
@@ -865,6 +978,7 @@ public class SettingsServiceBean {
         }
         
         s = em.merge(s);
+        invalidateSnapshot();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                             .setInfo(name + ": " + content));
         return s;
@@ -889,6 +1003,7 @@ public class SettingsServiceBean {
         }
         
         em.merge(s);
+        invalidateSnapshot();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                 .setInfo(name + ": " +lang + ": " + content));
         return s;
@@ -937,6 +1052,7 @@ public class SettingsServiceBean {
         em.createNamedQuery("Setting.deleteByName")
                 .setParameter("name", name)
                 .executeUpdate();
+        invalidateSnapshot();
     }
 
     public void delete( String name, String lang ) {
@@ -946,6 +1062,7 @@ public class SettingsServiceBean {
                 .setParameter("name", name)
                 .setParameter("lang", lang)
                 .executeUpdate();
+        invalidateSnapshot();
     }
     
     public Set<Setting> listAll() {
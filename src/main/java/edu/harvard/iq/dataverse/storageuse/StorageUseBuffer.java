@@ -0,0 +1,106 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * The storage use increments of this node that are not saved yet, when they
+ * are buffered (see {@link StorageUseServiceBean#incrementStorageSizeRecursively}).
+ * The increments are added up per collection and dataset, and saved every 10
+ * seconds, so that each storageuse row (the one of the root collection in
+ * particular) is updated once per flush, rather than once per file added or
+ * deleted by any upload. The increments being saved are only taken out of
+ * the buffer once the transaction that saves them has committed, so the
+ * storage use read on this node (for the quotas) always includes them.
+ */
+@Singleton
+public class StorageUseBuffer {
+
+    private static final Logger logger = Logger.getLogger(StorageUseBuffer.class.getCanonicalName());
+
+    @EJB
+    StorageUseServiceBean storageUseService;
+
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * @param dvObjectContainerIds the dataset and all the collections above it
+     * @param increment size in bytes; negative for files that were deleted
+     */
+    @Lock(READ)
+    public void add(List<Long> dvObjectContainerIds, long increment) {
+        for (Long id : dvObjectContainerIds) {
+            addPending(id, increment);
+        }
+    }
+
+    private void addPending(Long id, long increment) {
+        // an increment that drops to 0 is removed
+        pending.merge(id, increment, (old, added) -> old + added == 0 ? null : old + added);
+    }
+
+    /**
+     * @return the increment of the recorded storage size of the dataset or
+     * collection that is not saved yet
+     */
+    @Lock(READ)
+    public long getPending(Long dvObjectContainerId) {
+        return pending.getOrDefault(dvObjectContainerId, 0L);
+    }
+
+    @Schedule(second = "*/10", minute = "*", hour = "*", persistent = false)
+    @Lock(READ)
+    public void flushTimer() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Saves the pending increments, in a single statement, and takes them out
+     * of the buffer once saved. If it fails (e.g. in a deadlock with another
+     * node updating the same rows), the increments stay in the buffer for the
+     * next attempt.
+     *
+     * @return the number of datasets and collections updated
+     */
+    int flush() {
+        // only one flush at a time, as the increments are taken out after they are saved
+        flushLock.lock();
+        try {
+            Map<Long, Long> increments = new HashMap<>(pending);
+            if (increments.isEmpty()) {
+                return 0;
+            }
+            int updated;
+            try {
+                updated = storageUseService.applyStorageSizeIncrements(increments);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to save the storage use of " + increments.size() + " datasets and collections; will try again", e);
+                return 0;
+            }
+            // Saved; increments added since they were read stay in the buffer,
+            // for the next flush.
+            increments.forEach((id, increment) -> addPending(id, -increment));
+            return updated;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
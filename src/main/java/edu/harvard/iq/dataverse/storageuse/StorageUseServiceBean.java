@@ -1,12 +1,16 @@
 package edu.harvard.iq.dataverse.storageuse;
 
 import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -22,25 +26,35 @@ public class StorageUseServiceBean  implements java.io.Serializable {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
+    @EJB
+    StorageUseBuffer storageUseBuffer;
+    
     public StorageUse findByDvContainerId(Long dvObjectId) {
         return em.createNamedQuery("StorageUse.findByDvContainerId", StorageUse.class).setParameter("dvObjectId", dvObjectId).getSingleResult();
     }
     
     /**
      * Looks up the current storage use size, using a named query in a new 
-     * transaction
+     * transaction. The increments made on this node that are still buffered
+     * (see below) are included. 
      * @param dvObjectId
      * @return 
      */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Long findStorageSizeByDvContainerId(Long dvObjectId) {
         Long res = em.createNamedQuery("StorageUse.findByteSizeByDvContainerId", Long.class).setParameter("dvObjectId", dvObjectId).getSingleResult();
-        return res == null ? 0L : res;
+        return (res == null ? 0L : res) + storageUseBuffer.getPending(dvObjectId);
     }
     
     /**
      * Increments the recorded storage size for all the dvobject parents of a
      * datafile, recursively. 
+     * With dataverse.storageuse.buffer-storageuse-increments, the increment 
+     * is only added to the StorageUseBuffer here, for the dataset and each of
+     * the collections above it, and saved with the other increments of this
+     * node a few seconds later. Otherwise, the storageuse rows of all the 
+     * parents are updated right away, which serializes the concurrent uploads 
+     * on the row of the root collection. 
      * @param dvObjectContainerId database id of the immediate parent (dataset)
      * @param increment size in bytes of the file(s) being added 
      */
@@ -48,7 +62,12 @@ public class StorageUseServiceBean  implements java.io.Serializable {
     public void incrementStorageSizeRecursively(Long dvObjectContainerId, Long increment) {
         if (dvObjectContainerId != null && increment != null) {
             Optional<Boolean> allow = JvmSettings.STORAGEUSE_DISABLE_UPDATES.lookupOptional(Boolean.class);
-            if (!(allow.isPresent() && allow.get())) {
+            if (allow.isPresent() && allow.get()) {
+                return;
+            }
+            if (JvmSettings.STORAGEUSE_BUFFER_UPDATES.lookupOptional(Boolean.class).orElse(false)) {
+                storageUseBuffer.add(findContainerIdsUpTree(dvObjectContainerId), increment);
+            } else {
                 String queryString = "WITH RECURSIVE uptree (id, owner_id) AS\n"
                         + "("
                         + "    SELECT id, owner_id\n"
@@ -69,4 +88,49 @@ public class StorageUseServiceBean  implements java.io.Serializable {
         // the query is < 2 - ? 
     }
     
+    /**
+     * @param dvObjectContainerId database id of a dataset or collection
+     * @return the id of the container and of all the collections above it
+     */
+    private List<Long> findContainerIdsUpTree(Long dvObjectContainerId) {
+        String queryString = "WITH RECURSIVE uptree (id, owner_id) AS\n"
+                + "("
+                + "    SELECT id, owner_id\n"
+                + "    FROM dvobject\n"
+                + "    WHERE id=?1\n"
+                + "    UNION ALL\n"
+                + "    SELECT dvobject.id, dvobject.owner_id\n"
+                + "    FROM dvobject\n"
+                + "    JOIN uptree ON dvobject.id = uptree.owner_id)\n"
+                + "SELECT id FROM uptree;";
+        List<Number> ids = em.createNativeQuery(queryString).setParameter(1, dvObjectContainerId).getResultList();
+        return ids.stream().map(Number::longValue).toList();
+    }
+    
+    /**
+     * Adds the increments buffered by the StorageUseBuffer to the recorded 
+     * storage sizes, with a single update. 
+     * @param increments size in bytes, by database id of dataset or collection
+     * @return the number of storageuse rows updated
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int applyStorageSizeIncrements(Map<Long, Long> increments) {
+        StringBuilder queryString = new StringBuilder("UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+increments.increment\n"
+                + "FROM (VALUES ");
+        int i = 0;
+        for (int n = 0; n < increments.size(); n++) {
+            queryString.append(n == 0 ? "" : ", ").append("(CAST(?").append(++i).append(" AS BIGINT), CAST(?").append(++i).append(" AS BIGINT))");
+        }
+        queryString.append(") AS increments (id, increment)\n"
+                + "WHERE dvobjectcontainer_id = increments.id;");
+        
+        Query query = em.createNativeQuery(queryString.toString());
+        i = 0;
+        for (Map.Entry<Long, Long> increment : increments.entrySet()) {
+            query.setParameter(++i, increment.getKey());
+            query.setParameter(++i, increment.getValue());
+        }
+        return query.executeUpdate();
+    }
+    
 }
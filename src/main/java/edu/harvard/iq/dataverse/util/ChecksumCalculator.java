@@ -0,0 +1,101 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Calculates the checksums of a file, of one or more types, with a single
+ * read of its content. The content is read in large blocks, and each block is
+ * passed on to all the digests while it is in the cache; the JVM uses the
+ * CPU's instructions for the digests where they are available.
+ *
+ * An instance is not thread safe; use one per file.
+ */
+public class ChecksumCalculator {
+
+    /**
+     * The size of the blocks read from the stream.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Map<ChecksumType, MessageDigest> digests = new EnumMap<>(ChecksumType.class);
+    private long size = 0;
+
+    public ChecksumCalculator(ChecksumType... checksumTypes) {
+        this(Arrays.asList(checksumTypes));
+    }
+
+    public ChecksumCalculator(Collection<ChecksumType> checksumTypes) {
+        if (checksumTypes.isEmpty()) {
+            throw new IllegalArgumentException("At least one checksum type is required");
+        }
+        for (ChecksumType checksumType : checksumTypes) {
+            try {
+                // Use "SHA-1" (toString) rather than "SHA1", for example.
+                digests.put(checksumType, MessageDigest.getInstance(checksumType.toString()));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        for (MessageDigest md : digests.values()) {
+            md.update(bytes, offset, length);
+        }
+        size += length;
+    }
+
+    /**
+     * Reads the stream to the end, but doesn't close it.
+     */
+    public ChecksumCalculator update(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            update(buffer, 0, n);
+        }
+        return this;
+    }
+
+    /**
+     * @return the checksum of everything read so far, as a hex string. Only
+     * call it once per type, once all the content has been read.
+     */
+    public String getChecksum(ChecksumType checksumType) {
+        MessageDigest md = digests.get(checksumType);
+        if (md == null) {
+            throw new IllegalArgumentException("Checksum type " + checksumType + " is not being calculated");
+        }
+        return FileUtil.checksumDigestToString(md.digest());
+    }
+
+    public Map<ChecksumType, String> getChecksums() {
+        Map<ChecksumType, String> checksums = new EnumMap<>(ChecksumType.class);
+        for (ChecksumType checksumType : digests.keySet()) {
+            checksums.put(checksumType, getChecksum(checksumType));
+        }
+        return checksums;
+    }
+
+    /**
+     * @return the number of bytes read so far.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the stream to the end, but doesn't close it.
+     */
+    public static String calculate(InputStream in, ChecksumType checksumType) throws IOException {
+        return new ChecksumCalculator(checksumType).update(in).getChecksum(checksumType);
+    }
+}
@@ -54,6 +54,7 @@ import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableC
 import static edu.harvard.iq.dataverse.util.xml.html.HtmlFormatUtil.formatTableRow;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -427,6 +428,15 @@ public class FileUtil implements java.io.Serializable  {
     }
     
     public static String determineFileType(File f, String fileName) throws IOException{
+        return determineFileType(f, fileName, null);
+    }
+
+    /**
+     * @param head the first bytes of the file, if they are at hand (see
+     * {@link UploadedTempFile}); the checks that only look at the magic
+     * number at the start of the file use them instead of opening it.
+     */
+    public static String determineFileType(File f, String fileName, byte[] head) throws IOException{
         String fileType = lookupFileTypeByFileName(fileName);
         if (fileType != null) {
             return fileType;
@@ -457,7 +467,7 @@ public class FileUtil implements java.io.Serializable  {
             // the ".fits" extension and the header check;
             // in 4.0, we'll accept either the extension, or the valid 
             // magic header:
-            if (isFITSFile(f) || (fileExtension != null
+            if ((head != null ? isFITSFile(new ByteArrayInputStream(head)) : isFITSFile(f)) || (fileExtension != null
                     && fileExtension.equalsIgnoreCase("fits"))) {
                 fileType = "application/fits";
             }
@@ -510,7 +520,8 @@ public class FileUtil implements java.io.Serializable  {
 
         if ("application/x-gzip".equals(fileType)) {
             logger.fine("we'll run additional checks on this gzipped file.");
-            try (FileInputStream gzippedIn = new FileInputStream(f);
+            // the head of the compressed stream is enough for the FITS header
+            try (InputStream gzippedIn = head != null ? new ByteArrayInputStream(head) : new FileInputStream(f);
                      InputStream uncompressedIn = new GZIPInputStream(gzippedIn)) {
                 if (isFITSFile(uncompressedIn)) {
                     fileType = "application/fits-gzipped";
@@ -728,21 +739,8 @@ public class FileUtil implements java.io.Serializable  {
 
     // from MD5Checksum.java
     public static String calculateChecksum(InputStream in, ChecksumType checksumType) {
-        MessageDigest md = null;
         try {
-            // Use "SHA-1" (toString) rather than "SHA1", for example.
-            md = MessageDigest.getInstance(checksumType.toString());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-
-        byte[] dataBytes = new byte[1024];
-
-        int nread;
-        try {
-            while ((nread = in.read(dataBytes)) != -1) {
-                md.update(dataBytes, 0, nread);
-            }
+            return ChecksumCalculator.calculate(in, checksumType);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         } finally {
@@ -751,10 +749,21 @@ public class FileUtil implements java.io.Serializable  {
             } catch (Exception e) {
             }
         }
-
-        return checksumDigestToString(md.digest());
     }
     
+    /**
+     * Reads the stream once, calculating the checksums of all the given types.
+     * The stream is not closed. Read errors are rethrown as RuntimeExceptions,
+     * as in {@link #calculateChecksum(InputStream, ChecksumType)}.
+     */
+    public static ChecksumCalculator calculateChecksums(InputStream in, ChecksumType... checksumTypes) {
+        try {
+            return new ChecksumCalculator(checksumTypes).update(in);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     public static String calculateChecksum(byte[] dataBytes, ChecksumType checksumType) {
         MessageDigest md = null;
         try {
@@ -1439,7 +1448,11 @@ public class FileUtil implements java.io.Serializable  {
     	return s3io;
     }
     
-    private static InputStream getOriginalFileInputStream(StorageIO<DataFile> storage, boolean isTabularData) throws IOException {
+    /**
+     * Opens the file for reading; for an ingested tabular file, the saved
+     * original, that the checksum was calculated for.
+     */
+    public static InputStream getOriginalFileInputStream(StorageIO<DataFile> storage, boolean isTabularData) throws IOException {
         storage.open(DataAccessOption.READ_ACCESS);
         if (!isTabularData) {
             return storage.getInputStream();
@@ -1450,7 +1463,15 @@ public class FileUtil implements java.io.Serializable  {
         }
     }
 
-    public static void validateDataFileChecksum(DataFile dataFile) throws IOException {
+    /**
+     * Recalculates the checksum of the file (of the saved original, for an
+     * ingested tabular file) and checks it against the one in the database.
+     *
+     * @return the number of bytes read
+     * @throws IOException if the file can't be read, or the checksums don't
+     * match
+     */
+    public static long validateDataFileChecksum(DataFile dataFile) throws IOException {
         DataFile.ChecksumType checksumType = dataFile.getChecksumType();
         if (checksumType == null) {
             String info = BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.noChecksumType", Arrays.asList(dataFile.getId().toString()));
@@ -1460,9 +1481,12 @@ public class FileUtil implements java.io.Serializable  {
 
         StorageIO<DataFile> storage = dataFile.getStorageIO();
         String recalculatedChecksum = null;
+        long bytesRead = 0;
 
         try (InputStream inputStream = getOriginalFileInputStream(storage, dataFile.isTabularData())) {
-            recalculatedChecksum = FileUtil.calculateChecksum(inputStream, checksumType);
+            ChecksumCalculator calculator = calculateChecksums(inputStream, checksumType);
+            recalculatedChecksum = calculator.getChecksum(checksumType);
+            bytesRead = calculator.getSize();
         } catch (IOException ioex) {
             String info = BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.failRead", Arrays.asList(dataFile.getId().toString()));
             logger.log(Level.INFO, info);
@@ -1475,7 +1499,9 @@ public class FileUtil implements java.io.Serializable  {
         if (recalculatedChecksum == null) { //retry once
             storage = dataFile.getStorageIO();
             try (InputStream inputStream = getOriginalFileInputStream(storage, dataFile.isTabularData())) {
-                recalculatedChecksum = FileUtil.calculateChecksum(inputStream, checksumType);
+                ChecksumCalculator calculator = calculateChecksums(inputStream, checksumType);
+                recalculatedChecksum = calculator.getChecksum(checksumType);
+                bytesRead = calculator.getSize();
             }
         }
 
@@ -1521,6 +1547,7 @@ public class FileUtil implements java.io.Serializable  {
         }
 
         logger.log(Level.INFO, "successfully validated DataFile {0}; checksum {1}", new Object[]{dataFile.getId(), recalculatedChecksum});
+        return bytesRead;
     }
     
     public static String getStorageIdentifierFromLocation(String location) {
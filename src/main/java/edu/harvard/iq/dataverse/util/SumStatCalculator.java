@@ -19,14 +19,10 @@
 */
 
 package edu.harvard.iq.dataverse.util;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
-import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.math.stat.StatUtils;
-
 
 /**
  *
@@ -39,111 +35,136 @@ public class SumStatCalculator {
     public static double[] calculateSummaryStatistics(Number[] x){
         logger.fine("entering calculate summary statistics ("+x.length+" Number values);");
         
-        double[] nx = new double[8];
-        //("mean", "medn", "mode", "vald", "invd", "min", "max", "stdev");
-
-        Float testNanValue = new Float(Float.NaN);
-        Number testNumberValue = testNanValue;
-        if (Double.isNaN(testNumberValue.doubleValue())) {
-            logger.fine("Float test NaN value is still recognized as a Double NaN.");
+        // null and NaN values are both invalid; so a primitive vector with 
+        // the nulls replaced by NaNs produces the same statistics:
+        double[] values = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            values[i] = x[i] != null ? x[i].doubleValue() : Double.NaN;
         }
-        
-        int invalid = countInvalidValues(x);
-        nx[4] = invalid;
-        logger.fine("counted invalid values: "+nx[4]);
-        nx[3] = x.length - invalid;
-        logger.fine("counted valid values: "+nx[3]);
-        
-        
-        //double[] newx = prepareForSummaryStats(x);
-        double[] newx = prepareForSummaryStatsAlternative(x, x.length - invalid);
-        logger.fine("prepared double vector for summary stats calculation ("+newx.length+" double values);");        
-        
-        ////nx[0] = StatUtils.mean(newx);
-        nx[0] = calculateMean(newx);
-        logger.fine("calculated mean: "+nx[0]);
-        ////nx[1] = StatUtils.percentile(newx, 50);
-        nx[1] = calculateMedian(newx);
-        logger.fine("calculated medn: "+nx[1]);
-        nx[2] = 0.0; //getMode(newx); 
-        
-        nx[5] = StatUtils.min(newx);
-        logger.fine("calculated min: "+nx[5]);
-        nx[6] = StatUtils.max(newx);
-        logger.fine("calculated max: "+nx[6]);
-        nx[7] = Math.sqrt(StatUtils.variance(newx));
-        logger.fine("calculated stdev: "+nx[7]);
-        return nx;
-    }  
-
-    private static double[] prepareForSummaryStats(Number[] x) {
-        Double[] z = numberToDouble(x);
-        return removeInvalidValues(z);
+        return calculateSummaryStatistics(values, null);
     }
 
-    private static double[] prepareForSummaryStatsAlternative(Number[] x, int length) {
-        double[] retvector = new double[length];
-
-        int c = 0;
+    /**
+     * Summary statistics of a primitive double vector; no boxed values are 
+     * allocated, and the vector itself is not modified. 
+     * 
+     * @param x the values; NaN values are counted as invalid
+     * @param missing if not null, the positions of the missing values in x
+     * (which are also counted as invalid)
+     */
+    public static double[] calculateSummaryStatistics(double[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" double values);");
+        
+        int valid = 0;
         for (int i = 0; i < x.length; i++) {
-            if (x[i] != null) {
-                double xvalue = x[i].doubleValue();
-                if (!Double.isNaN(xvalue)) {
-                    retvector[c++] = xvalue; 
-                }
+            if (!Double.isNaN(x[i]) && (missing == null || !missing.get(i))) {
+                valid++;
             }
         }
-        
-        // Throw exception if c != length in the end?
-        
-        return retvector;
-    }
-    
-    /**
-     * Converts an array of primitive Number types to doubles
-     *
-     */
-    private static Double[] numberToDouble(Number[] x){
-        Double[] z= new Double[x.length];
-        for (int i=0; i<x.length;i++){
-            z[i] = x[i] != null ? new Double( x[i].doubleValue() ) : null;
+        double[] validValues = new double[valid];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i]) && (missing == null || !missing.get(i))) {
+                validValues[c++] = x[i];
+            }
         }
-        return z;
+        return calculateSummaryStatisticsOfValidValues(validValues, x.length - valid);
     }
-    
+
     /**
-     * Returns a new double array of nulls and non-Double.NaN values only
-     *
+     * Summary statistics of a primitive long vector. 
+     * 
+     * @param missing if not null, the positions of the missing values in x
      */
-    // TODO: 
-    // implement this in some way that does not require allocating a new 
-    // ArrayList for the values of every vector. -- L.A. Aug. 11 2014
-    private static double[] removeInvalidValues(Double[] x){
-        List<Double> dl = new ArrayList<Double>();
-        for (Double d : x){
-            if (d != null && !Double.isNaN(d)){
-                dl.add(d);
+    public static double[] calculateSummaryStatistics(long[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" long values);");
+        
+        int invalid = missing == null ? 0 : missing.cardinality();
+        double[] validValues = new double[x.length - invalid];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (missing == null || !missing.get(i)) {
+                validValues[c++] = x[i];
             }
         }
-        return ArrayUtils.toPrimitive(
-            dl.toArray(new Double[dl.size()]));
+        return calculateSummaryStatisticsOfValidValues(validValues, invalid);
     }
-    
-    /**
-     * Returns the number of Double.NaNs (or nulls) in a double-type array
-     *
+
+    /*
+     * The values are produced in a few passes over the primitive vector of 
+     * the valid values; the algorithms (corrected two-pass mean, and 
+     * bias-corrected variance) are the same ones used by the commons-math 
+     * StatUtils that were used here before, so the results are the same. 
+     * The median is found by selection rather than by sorting a copy of
+     * the vector. The vector is reordered in the process. 
      */
-    private static int countInvalidValues(Number[] x){
-        int counter=0;
-        for (int i=0; i<x.length;i++){
-            ////if ( x[i] == null || x[i].equals(Double.NaN) ) {
-            if ( x[i] == null || (Double.isNaN(x[i].doubleValue())) ) {
-                counter++;
+    private static double[] calculateSummaryStatisticsOfValidValues(double[] newx, int invalid) {
+        double[] nx = new double[8];
+        //("mean", "medn", "mode", "vald", "invd", "min", "max", "stdev");
+        
+        nx[4] = invalid;
+        logger.fine("counted invalid values: "+nx[4]);
+        nx[3] = newx.length;
+        logger.fine("counted valid values: "+nx[3]);
+        
+        int n = newx.length;
+        if (n == 0) {
+            nx[0] = Double.NaN;
+            nx[1] = Double.NaN;
+            nx[5] = Double.NaN;
+            nx[6] = Double.NaN;
+            nx[7] = Double.NaN;
+            return nx;
+        }
+        
+        // first pass: sum, min, max
+        double sum = 0.0;
+        double min = newx[0];
+        double max = newx[0];
+        for (int i = 0; i < n; i++) {
+            double v = newx[i];
+            sum += v;
+            min = (min < v) ? min : v;
+            max = (max > v) ? max : v;
+        }
+        
+        // second pass: mean, with the correction factor
+        double xbar = sum / n;
+        double correction = 0;
+        for (int i = 0; i < n; i++) {
+            correction += newx[i] - xbar;
+        }
+        double mean = xbar + (correction / n);
+        nx[0] = mean;
+        logger.fine("calculated mean: "+nx[0]);
+        
+        // third pass: variance
+        double variance = 0.0;
+        if (n > 1) {
+            double accum = 0.0;
+            double accum2 = 0.0;
+            for (int i = 0; i < n; i++) {
+                double dev = newx[i] - mean;
+                accum += dev * dev;
+                accum2 += dev;
             }
+            variance = (accum - (accum2 * accum2 / n)) / (n - 1.0);
         }
-        return counter;
+        
+        nx[2] = 0.0; //getMode(newx); 
+        nx[5] = min;
+        logger.fine("calculated min: "+nx[5]);
+        nx[6] = max;
+        logger.fine("calculated max: "+nx[6]);
+        nx[7] = Math.sqrt(variance);
+        logger.fine("calculated stdev: "+nx[7]);
+        
+        // (selection reorders the vector, so this goes last)
+        nx[1] = calculateMedianBySelection(newx);
+        logger.fine("calculated medn: "+nx[1]);
+        return nx;
     }
-    
+
     /**
      * Returns the number of Double.NaNs in a double-type array
      *
@@ -161,7 +182,7 @@ public class SumStatCalculator {
         return NaNcounter;
     }
     
-    private static double calculateMedian(double[] values) {
+    static double calculateMedian(double[] values) {
         double[] sorted = new double[values.length];
         System.arraycopy(values, 0, sorted, 0, values.length);
         logger.fine("made an extra copy of the vector;");
@@ -186,6 +207,91 @@ public class SumStatCalculator {
         return lower + dif * (upper - lower);
     }
     
+    /**
+     * Same result as calculateMedian(), but the two order statistics needed
+     * are found with quickselect in place, instead of sorting a copy of the
+     * whole vector. The elements of the vector are reordered. 
+     */
+    static double calculateMedianBySelection(double[] values) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        if (values.length == 1) {
+            return values[0]; // always return single value for n = 1
+        }
+        double n = values.length;
+        double pos = (n + 1) / 2;
+        double fpos = Math.floor(pos);
+        int intPos = (int) fpos;
+        double dif = pos - fpos;
+        
+        double lower = select(values, intPos - 1);
+        // after the selection above, everything to the right of intPos - 1 
+        // is greater than or equal to it; the next order statistic is the 
+        // smallest of these:
+        double upper = values[intPos];
+        for (int i = intPos + 1; i < values.length; i++) {
+            if (Double.compare(values[i], upper) < 0) {
+                upper = values[i];
+            }
+        }
+        
+        return lower + dif * (upper - lower);
+    }
+    
+    /*
+     * Hoare's selection; uses the same total order as Arrays.sort(double[])
+     * (so that, for example, -0.0 is ordered before 0.0). 
+     */
+    private static double select(double[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            // median of three pivot:
+            int mid = (left + right) >>> 1;
+            if (Double.compare(values[mid], values[left]) < 0) {
+                swap(values, left, mid);
+            }
+            if (Double.compare(values[right], values[left]) < 0) {
+                swap(values, left, right);
+            }
+            if (Double.compare(values[right], values[mid]) < 0) {
+                swap(values, mid, right);
+            }
+            double pivot = values[mid];
+            
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (Double.compare(values[i], pivot) < 0) {
+                    i++;
+                }
+                while (Double.compare(values[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+    
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+    
     private static double calculateMean(double[] values) {
         return calculateMean(values, 0 , values.length);
     }
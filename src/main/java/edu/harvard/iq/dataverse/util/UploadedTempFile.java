@@ -0,0 +1,87 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An uploaded file saved in a temp file, with what was worked out while it
+ * was being written: its size, its checksum and its first bytes. The upload
+ * is read once; the checksum doesn't have to be calculated by reading the temp
+ * file again, and the first bytes are enough for some of the type checks in
+ * {@link FileUtil#determineFileType(java.io.File, String, byte[])}.
+ */
+public class UploadedTempFile {
+
+    /**
+     * The number of bytes kept from the start of the file.
+     */
+    public static final int HEAD_SIZE = 8192;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final long size;
+    private final ChecksumType checksumType;
+    private final String checksum;
+    private final byte[] head;
+
+    private UploadedTempFile(Path path, long size, ChecksumType checksumType, String checksum, byte[] head) {
+        this.path = path;
+        this.size = size;
+        this.checksumType = checksumType;
+        this.checksum = checksum;
+        this.head = head;
+    }
+
+    /**
+     * Writes the stream to the file, replacing it if it exists. The stream is
+     * read to the end, but not closed.
+     */
+    public static UploadedTempFile save(InputStream in, Path path, ChecksumType checksumType) throws IOException {
+        ChecksumCalculator checksum = new ChecksumCalculator(checksumType);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] head = new byte[HEAD_SIZE];
+        int headLength = 0;
+        try (OutputStream out = Files.newOutputStream(path)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                checksum.update(buffer, 0, n);
+                if (headLength < HEAD_SIZE) {
+                    int count = Math.min(n, HEAD_SIZE - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, count);
+                    headLength += count;
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        return new UploadedTempFile(path, checksum.getSize(), checksumType, checksum.getChecksum(checksumType), Arrays.copyOf(head, headLength));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public ChecksumType getChecksumType() {
+        return checksumType;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the first {@link #HEAD_SIZE} bytes of the file, or all of it if
+     * it is smaller.
+     */
+    public byte[] getHead() {
+        return head;
+    }
+}
@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.util.bagit;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.util.ChecksumCalculator;
 
 import java.io.InputStream;
 import java.util.Arrays;
@@ -11,10 +12,10 @@ import java.util.List;
  * @author adaybujeda
  */
 public enum BagChecksumType {
-    MD5("manifest-md5.txt", inputStream -> DigestUtils.md5Hex(inputStream)),
-    SHA1("manifest-sha1.txt", inputStream -> DigestUtils.sha1Hex(inputStream)),
-    SHA256("manifest-sha256.txt", inputStream -> DigestUtils.sha256Hex(inputStream)),
-    SHA512("manifest-sha512.txt", inputStream -> DigestUtils.sha512Hex(inputStream));
+    MD5("manifest-md5.txt", inputStream -> ChecksumCalculator.calculate(inputStream, ChecksumType.MD5)),
+    SHA1("manifest-sha1.txt", inputStream -> ChecksumCalculator.calculate(inputStream, ChecksumType.SHA1)),
+    SHA256("manifest-sha256.txt", inputStream -> ChecksumCalculator.calculate(inputStream, ChecksumType.SHA256)),
+    SHA512("manifest-sha512.txt", inputStream -> ChecksumCalculator.calculate(inputStream, ChecksumType.SHA512));
 
     private final String fileName;
     private final InputStreamDigester inputStreamDigester;
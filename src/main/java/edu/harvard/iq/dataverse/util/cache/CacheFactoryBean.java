@@ -1,43 +1,111 @@
 package edu.harvard.iq.dataverse.util.cache;
 
+import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
 import javax.cache.spi.CachingProvider;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
+import static jakarta.ejb.LockType.READ;
+
 @Singleton
 @Startup
 public class CacheFactoryBean implements java.io.Serializable {
     private static final Logger logger = Logger.getLogger(CacheFactoryBean.class.getCanonicalName());
-    // Retrieved from Hazelcast, implements ConcurrentMap and is threadsafe
-    Cache<String, String> rateLimitCache;
+    // Retrieved from Hazelcast, implements ConcurrentMap and is threadsafe;
+    // holds a token bucket per user and action (see TokenBucketProcessor)
+    Cache<String, long[]> rateLimitCache;
     @EJB
     SystemConfig systemConfig;
     @Inject
     CacheManager manager;
     @Inject
     CachingProvider provider;
-    public final static String RATE_LIMIT_CACHE = "rateLimitCache";
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    public final static String RATE_LIMIT_CACHE = "rateLimitBuckets";
+    // Permission decisions shared by all the nodes; only created when
+    // dataverse.permissions.cache-ttl is set
+    Cache<String, String> permissionCache;
+    public final static String PERMISSION_CACHE = "permissionCache";
+    // Number of permission invalidations on this node, used to discard the
+    // decisions memoized by the requests in progress
+    private final AtomicLong permissionInvalidations = new AtomicLong();
+    // Version of the settings, changed whenever a setting is changed on any
+    // node, so that the other nodes reload theirs; and likewise the version
+    // of the IP groups, for the IP group index of each node
+    Cache<String, String> settingsCache;
+    public final static String SETTINGS_CACHE = "settingsCache";
+    static final String SETTINGS_VERSION_KEY = "version";
+    static final String IP_GROUPS_VERSION_KEY = "ipGroupsVersion";
+    // The partitions of a partitioned reindex that are being worked on, with
+    // the node working on each; a lease expires unless it is renewed, so that
+    // the partitions of a node that went away are picked up by another
+    Cache<String, String> reindexLeaseCache;
+    public final static String REINDEX_LEASE_CACHE = "reindexLeaseCache";
+    private final String nodeId = UUID.randomUUID().toString();
 
     @PostConstruct
     public void init() {
         rateLimitCache = manager.getCache(RATE_LIMIT_CACHE);
         if (rateLimitCache == null) {
+            // a bucket left alone for an hour is full again, same as no bucket
+            CompleteConfiguration<String, long[]> config =
+                    new MutableConfiguration<String, long[]>()
+                            .setTypes( String.class, long[].class )
+                            .setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(Duration.ONE_HOUR));
+            rateLimitCache = manager.createCache(RATE_LIMIT_CACHE, config);
+        }
+        settingsCache = manager.getCache(SETTINGS_CACHE);
+        if (settingsCache == null) {
             CompleteConfiguration<String, String> config =
                     new MutableConfiguration<String, String>()
                             .setTypes( String.class, String.class );
-            rateLimitCache = manager.createCache(RATE_LIMIT_CACHE, config);
+            settingsCache = manager.createCache(SETTINGS_CACHE, config);
+        }
+        reindexLeaseCache = manager.getCache(REINDEX_LEASE_CACHE);
+        if (reindexLeaseCache == null) {
+            int leaseTtl = JvmSettings.REINDEX_LEASE_TTL.lookupOptional(Integer.class).orElse(600);
+            CompleteConfiguration<String, String> config =
+                    new MutableConfiguration<String, String>()
+                            .setTypes( String.class, String.class )
+                            .setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, leaseTtl)));
+            reindexLeaseCache = manager.createCache(REINDEX_LEASE_CACHE, config);
+        }
+        int permissionCacheTtl = JvmSettings.PERMISSIONS_CACHE_TTL.lookupOptional(Integer.class).orElse(0);
+        if (permissionCacheTtl > 0) {
+            permissionCache = manager.getCache(PERMISSION_CACHE);
+            if (permissionCache == null) {
+                CompleteConfiguration<String, String> config =
+                        new MutableConfiguration<String, String>()
+                                .setTypes( String.class, String.class )
+                                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, permissionCacheTtl)));
+                permissionCache = manager.createCache(PERMISSION_CACHE, config);
+            }
         }
     }
 
@@ -57,4 +125,131 @@ public class CacheFactoryBean implements java.io.Serializable {
             return (!RateLimitUtil.rateLimited(rateLimitCache, cacheKey, capacity));
         }
     }
+
+    /**
+     * @return the current permission epoch, to be included in the keys of
+     * the cached permissions (see {@link PermissionCacheUtil})
+     */
+    @Lock(READ)
+    public long getPermissionEpoch() {
+        return permissionCache != null ? PermissionCacheUtil.getEpoch(permissionCache) : 0L;
+    }
+
+    @Lock(READ)
+    public long getPermissionInvalidations() {
+        return permissionInvalidations.get();
+    }
+
+    /**
+     * @return the cached permissions, or null if they are not cached (or
+     * the cluster-wide permission cache is not enabled)
+     */
+    @Lock(READ)
+    public Set<Permission> getCachedPermissions(long epoch, String key) {
+        if (permissionCache == null) {
+            return null;
+        }
+        String value = permissionCache.get(epoch + ":" + key);
+        return value != null ? PermissionCacheUtil.decode(value) : null;
+    }
+
+    @Lock(READ)
+    public void cachePermissions(long epoch, String key, Set<Permission> permissions) {
+        if (permissionCache != null) {
+            permissionCache.put(epoch + ":" + key, PermissionCacheUtil.encode(permissions));
+        }
+    }
+
+    /**
+     * Discards all the cached permission decisions, on all the nodes: right
+     * away, so that the current transaction doesn't use the ones from before
+     * its changes, and again once it is completed. Until then, any node may
+     * cache decisions made from the state before the changes (or the current
+     * transaction, from its uncommitted state; which must also go if it is
+     * rolled back).
+     */
+    @Lock(READ)
+    public void invalidatePermissions() {
+        incrementPermissionEpoch();
+        if (transactionRegistry != null && transactionRegistry.getTransactionKey() != null) {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != Status.STATUS_COMMITTED) {
+                        logger.fine("Discarding the permissions cached by a transaction that was rolled back");
+                    }
+                    incrementPermissionEpoch();
+                }
+            });
+        }
+    }
+
+    private void incrementPermissionEpoch() {
+        permissionInvalidations.incrementAndGet();
+        if (permissionCache != null) {
+            PermissionCacheUtil.incrementEpoch(permissionCache);
+        }
+    }
+
+    /**
+     * @return the current version of the settings, or null if they have not
+     * been changed since the cluster was started
+     */
+    @Lock(READ)
+    public String getSettingsVersion() {
+        return settingsCache.get(SETTINGS_VERSION_KEY);
+    }
+
+    /**
+     * Makes all the nodes reload their settings.
+     */
+    @Lock(READ)
+    public void invalidateSettings() {
+        settingsCache.put(SETTINGS_VERSION_KEY, UUID.randomUUID().toString());
+    }
+
+    /**
+     * @return the current version of the IP groups, or null if they have not
+     * been changed since the cluster was started
+     */
+    @Lock(READ)
+    public String getIpGroupsVersion() {
+        return settingsCache.get(IP_GROUPS_VERSION_KEY);
+    }
+
+    /**
+     * Makes all the nodes rebuild their IP group index.
+     */
+    @Lock(READ)
+    public void invalidateIpGroups() {
+        settingsCache.put(IP_GROUPS_VERSION_KEY, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Claims a partition of a partitioned reindex for this node.
+     * @return true if no node (including this one) is working on it already
+     */
+    @Lock(READ)
+    public boolean claimReindexLease(String key) {
+        return reindexLeaseCache.putIfAbsent(key, nodeId);
+    }
+
+    /**
+     * Extends the lease on a partition claimed by this node.
+     * @return false if the lease expired, and the partition may have been
+     * claimed by another node
+     */
+    @Lock(READ)
+    public boolean renewReindexLease(String key) {
+        return reindexLeaseCache.replace(key, nodeId, nodeId);
+    }
+
+    @Lock(READ)
+    public void releaseReindexLease(String key) {
+        reindexLeaseCache.remove(key, nodeId);
+    }
 }
@@ -0,0 +1,84 @@
+package edu.harvard.iq.dataverse.util.cache;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+
+import javax.cache.Cache;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.lang.Math.max;
+
+/**
+ * Helpers for the cluster-wide cache of permission decisions. The entries are
+ * keyed by the permission epoch, which is changed whenever role assignments,
+ * group memberships or the published state of the objects change, so that
+ * the entries cached before the change are never read again (and are left
+ * to expire).
+ */
+public class PermissionCacheUtil {
+    static final String EPOCH_KEY = "epoch";
+
+    /**
+     * The epoch is a timestamp rather than a counter, so that a value is
+     * never reused, even if the epoch entry itself expires.
+     */
+    static long getEpoch(final Cache<String, String> permissionCache) {
+        String epoch = permissionCache.get(EPOCH_KEY);
+        return epoch != null ? Long.parseLong(epoch) : 0L;
+    }
+
+    static void incrementEpoch(final Cache<String, String> permissionCache) {
+        while (true) {
+            String current = permissionCache.get(EPOCH_KEY);
+            if (current == null) {
+                if (permissionCache.putIfAbsent(EPOCH_KEY, String.valueOf(System.currentTimeMillis()))) {
+                    return;
+                }
+            } else {
+                String next = String.valueOf(max(System.currentTimeMillis(), Long.parseLong(current) + 1));
+                if (permissionCache.replace(EPOCH_KEY, current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param type what is being cached, e.g. the permissions granted by roles
+     * @param dvObjectId the object the permissions are on
+     * @param roleAssignees the user and the groups they are in, or null for
+     * permissions that do not depend on them
+     */
+    public static String generateCacheKey(String type, Long dvObjectId, Collection<? extends RoleAssignee> roleAssignees) {
+        StringBuilder key = new StringBuilder(type).append(':').append(dvObjectId);
+        if (roleAssignees != null) {
+            key.append(':').append(roleAssignees.stream()
+                    .map(RoleAssignee::getIdentifier)
+                    .sorted()
+                    .collect(Collectors.joining(",")));
+        }
+        return key.toString();
+    }
+
+    static String encode(Set<Permission> permissions) {
+        long bits = 0L;
+        for (Permission permission : permissions) {
+            bits |= 1L << permission.ordinal();
+        }
+        return String.valueOf(bits);
+    }
+
+    static Set<Permission> decode(String value) {
+        long bits = Long.parseLong(value);
+        Set<Permission> permissions = EnumSet.noneOf(Permission.class);
+        for (Permission permission : Permission.values()) {
+            if ((bits & (1L << permission.ordinal())) != 0) {
+                permissions.add(permission);
+            }
+        }
+        return permissions;
+    }
+}
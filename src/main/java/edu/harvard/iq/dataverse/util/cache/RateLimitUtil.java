@@ -15,16 +15,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
-
 public class RateLimitUtil {
     private static final Logger logger = Logger.getLogger(RateLimitUtil.class.getCanonicalName());
     static final List<RateLimitSetting> rateLimits = new CopyOnWriteArrayList<>();
     static final Map<String, Integer> rateLimitMap = new ConcurrentHashMap<>();
     public static final int NO_LIMIT = -1;
+    // the tokens kept on this node: a hundredth of the hourly capacity, for 10 seconds
+    static final Map<String, LocalTokens> localTokens = new ConcurrentHashMap<>();
+    static final int LOCAL_TOKENS_DIVISOR = 100;
+    static final long LOCAL_TOKENS_TTL = 10000L;
+    static final int MAX_LOCAL_BUCKETS = 10000;
 
     static String generateCacheKey(final User user, final String action) {
         return (user != null ? user.getIdentifier() : GuestUser.get().getIdentifier()) +
@@ -39,26 +42,83 @@ public class RateLimitUtil {
                 getCapacityByTierAndAction(systemConfig, authUser.getRateLimitTier(), action) :
                 getCapacityByTierAndAction(systemConfig, 0, action);
     }
-    static boolean rateLimited(final Cache<String, String> rateLimitCache, final String key, int capacityPerHour) {
+    /**
+     * Takes a token from the bucket of this user and action (see
+     * {@link TokenBucketProcessor}). While the bucket is more than half full,
+     * a few tokens are taken at once and kept on this node for a short while,
+     * so that the calls of users that are far below their limit mostly don't
+     * need a round trip to the cache. The tokens kept are already taken from
+     * the bucket, so the limit still holds across the cluster; those not used
+     * in time are lost. Tokens are kept for no more than
+     * {@link #MAX_LOCAL_BUCKETS} users and actions at a time; beyond that,
+     * only one token is taken per call.
+     */
+    static boolean rateLimited(final Cache<String, long[]> rateLimitCache, final String key, int capacityPerHour) {
         if (capacityPerHour == NO_LIMIT) {
             return false;
         }
-        long currentTime = System.currentTimeMillis() / 60000L; // convert to minutes
-        double tokensPerMinute = (capacityPerHour / 60.0);
-        // Get the last time this bucket was added to
-        final String keyLastUpdate = String.format("%s:last_update",key);
-        long lastUpdate = longFromKey(rateLimitCache, keyLastUpdate);
-        long deltaTime = currentTime - lastUpdate;
-        // Get the current number of tokens in the bucket
-        long tokens = longFromKey(rateLimitCache, key);
-        long tokensToAdd = (long) (deltaTime * tokensPerMinute);
-        if (tokensToAdd > 0) { // Don't update timestamp if we aren't adding any tokens to the bucket
-            tokens = min(capacityPerHour, tokens + tokensToAdd);
-            rateLimitCache.put(keyLastUpdate, String.valueOf(currentTime));
+        long now = System.currentTimeMillis();
+        LocalTokens local = localTokens.get(key);
+        if (local != null && local.take(now)) {
+            return false;
+        }
+        int prefetch = local != null || hasRoomForLocalTokens(now) ? capacityPerHour / LOCAL_TOKENS_DIVISOR : 0;
+        Integer taken = rateLimitCache.invoke(key, new TokenBucketProcessor(capacityPerHour, prefetch));
+        if (taken == null || taken < 1) {
+            return true;
+        }
+        if (taken > 1) {
+            // another thread may have taken tokens for the same key in the meantime
+            final int extra = taken - 1;
+            localTokens.merge(key, new LocalTokens(extra, now + LOCAL_TOKENS_TTL),
+                    (existing, fresh) -> existing.isExpired(now) ? fresh : existing.add(extra));
+        }
+        return false;
+    }
+
+    private static boolean hasRoomForLocalTokens(long now) {
+        if (localTokens.size() < MAX_LOCAL_BUCKETS) {
+            return true;
+        }
+        localTokens.values().removeIf(t -> t.isExpired(now));
+        return localTokens.size() < MAX_LOCAL_BUCKETS;
+    }
+
+    /**
+     * Tokens taken from a bucket of the rate limit cache ahead of the calls
+     * that will use them.
+     */
+    static final class LocalTokens {
+        private final AtomicInteger left;
+        private final long expires;
+
+        LocalTokens(int tokens, long expires) {
+            this.left = new AtomicInteger(tokens);
+            this.expires = expires;
+        }
+
+        boolean take(long now) {
+            if (now >= expires) {
+                return false;
+            }
+            int tokens;
+            do {
+                tokens = left.get();
+                if (tokens <= 0) {
+                    return false;
+                }
+            } while (!left.compareAndSet(tokens, tokens - 1));
+            return true;
+        }
+
+        LocalTokens add(int tokens) {
+            left.addAndGet(tokens);
+            return this;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expires;
         }
-        // Update with any added tokens and decrement 1 token for this call if not rate limited (0 tokens)
-        rateLimitCache.put(key, String.valueOf(max(0, tokens-1)));
-        return tokens < 1;
     }
 
     static int getCapacityByTierAndAction(SystemConfig systemConfig, Integer tier, String action) {
@@ -127,8 +187,4 @@ public class RateLimitUtil {
     static String getMapKey(int tier, String action) {
         return tier + ":" + (action != null ? action : "");
     }
-    static long longFromKey(Cache<String, String> cache, String key) {
-        Object l = cache.get(key);
-        return l != null ? Long.parseLong(String.valueOf(l)) : 0L;
-    }
 }
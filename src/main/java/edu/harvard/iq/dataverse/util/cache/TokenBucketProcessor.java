@@ -0,0 +1,77 @@
+package edu.harvard.iq.dataverse.util.cache;
+
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+import java.io.Serializable;
+
+/**
+ * Takes tokens from the token bucket of a user and action in the rate limit
+ * cache. The processor runs on the cluster member that owns the entry, so the
+ * bucket is refilled, checked and written back atomically, in a single round
+ * trip, however many requests of the same user are being checked at the same
+ * time on the other nodes.
+ *
+ * The bucket is a {@code long[]} holding the number of tokens left and the
+ * time (in milliseconds) they were last refilled. A new bucket is full; a
+ * token is added every {@code 3600000 / capacityPerHour} milliseconds, up to
+ * the capacity.
+ */
+public class TokenBucketProcessor implements EntryProcessor<String, long[], Integer>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+    static final int TOKENS = 0;
+    static final int LAST_REFILL = 1;
+
+    private final int capacityPerHour;
+    private final int prefetch;
+
+    /**
+     * @param capacityPerHour the number of calls allowed per hour
+     * @param prefetch the number of tokens to take at once while more than
+     * half of the bucket is left, so that they can be used on this node
+     * without going to the cache again (see {@link RateLimitUtil}); 0 or 1 to
+     * only ever take one.
+     */
+    public TokenBucketProcessor(int capacityPerHour, int prefetch) {
+        this.capacityPerHour = capacityPerHour;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return the number of tokens taken; 0 if the bucket is empty, i.e. the
+     * call is rate limited.
+     */
+    @Override
+    public Integer process(MutableEntry<String, long[]> entry, Object... arguments) {
+        long now = System.currentTimeMillis();
+        long[] bucket = entry.getValue();
+        long tokens;
+        long lastRefill;
+        if (bucket == null) {
+            tokens = capacityPerHour;
+            lastRefill = now;
+        } else {
+            tokens = Math.min(bucket[TOKENS], capacityPerHour);
+            lastRefill = bucket[LAST_REFILL];
+            double millisPerToken = 3600000.0 / capacityPerHour;
+            long tokensToAdd = (long) ((now - lastRefill) / millisPerToken);
+            if (tokensToAdd > 0) {
+                if (tokens + tokensToAdd >= capacityPerHour) {
+                    tokens = capacityPerHour;
+                    lastRefill = now;
+                } else {
+                    // keep the part of a token that has already accrued
+                    tokens += tokensToAdd;
+                    lastRefill += (long) (tokensToAdd * millisPerToken);
+                }
+            }
+        }
+        int taken = 0;
+        if (tokens > 0) {
+            taken = prefetch > 1 && tokens - prefetch >= capacityPerHour / 2 ? prefetch : 1;
+            tokens -= taken;
+        }
+        entry.setValue(new long[] {tokens, lastRefill});
+        return taken;
+    }
+}
@@ -999,6 +999,13 @@ public class JsonParser {
         harvestingClient.setHarvestingSet(obj.getString("set",null));
         harvestingClient.setCustomHttpHeaders(obj.getString("customHeaders", null));
         harvestingClient.setAllowHarvestingMissingCVV(obj.getBoolean("allowHarvestingMissingCVV", false));
+        harvestingClient.setUseListRecords(obj.getBoolean("useListRecords", false));
+        
+        int harvestingConcurrency = obj.getInt("harvestingConcurrency", 1);
+        if (harvestingConcurrency < 1 || harvestingConcurrency > HarvestingClient.MAX_HARVESTING_CONCURRENCY) {
+            throw new JsonParseException("harvestingConcurrency must be between 1 and " + HarvestingClient.MAX_HARVESTING_CONCURRENCY);
+        }
+        harvestingClient.setHarvestingConcurrency(harvestingConcurrency);
 
         return dataverseAlias;
     }
@@ -0,0 +1,2 @@
+-- Supports the paging of OAI-PMH ListRecords and ListIdentifiers by global id
+CREATE INDEX IF NOT EXISTS index_oairecord_setname_globalid ON oairecord (setname, globalid);
@@ -0,0 +1,5 @@
+-- Harvesting clients: the number of records retrieved in parallel, and the optional ListRecords mode
+ALTER TABLE harvestingclient ADD COLUMN IF NOT EXISTS harvestingconcurrency INTEGER;
+ALTER TABLE harvestingclient ADD COLUMN IF NOT EXISTS uselistrecords BOOLEAN DEFAULT FALSE;
+-- Progress of a harvest run: the number of records retrieved so far
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS fetchedrecordcount BIGINT;
@@ -0,0 +1,13 @@
+-- Download counts are now kept per file, per dataset and in total (dvobjectid 0),
+-- per day, in the DownloadCount table, rather than counted in GuestbookResponse
+-- each time they are displayed. Fill them in from the existing responses, with a
+-- single scan (the same query as DownloadCountServiceBean.rebuild()):
+DELETE FROM downloadcount;
+INSERT INTO downloadcount (dvobjectid, countdate, downloadcount)
+SELECT COALESCE(datafile_id, dataset_id, 0), countdate, COUNT(*)
+FROM (SELECT datafile_id, dataset_id, CAST(responsetime AS DATE) AS countdate
+FROM guestbookresponse WHERE eventtype != 'AccessRequest' AND responsetime IS NOT NULL) r
+GROUP BY GROUPING SETS ((datafile_id, countdate), (dataset_id, countdate), (countdate));
+-- The counts of a range of days are rebuilt by the response time (e.g. every night,
+-- for the day before):
+CREATE INDEX IF NOT EXISTS index_guestbookresponse_responsetime ON guestbookresponse (responsetime);
@@ -0,0 +1,105 @@
+package edu.harvard.iq.dataverse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+
+public class DownloadCountBufferTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private DownloadCountBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        buffer = new DownloadCountBuffer();
+        buffer.downloadCountService = Mockito.mock(DownloadCountServiceBean.class);
+    }
+
+    @Test
+    public void testPendingCounts() {
+        buffer.add(download(1L, 10L, DAY));
+        buffer.add(download(1L, 10L, DAY.plusDays(1)));
+        buffer.add(download(2L, 10L, DAY.plusDays(1)));
+
+        assertEquals(2, buffer.getPending(1L, null));
+        assertEquals(1, buffer.getPending(1L, DAY.plusDays(1)));
+        assertEquals(3, buffer.getPending(10L, null));
+        assertEquals(3, buffer.getPending(DownloadCount.TOTAL, null));
+        assertEquals(0, buffer.getPending(3L, null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlush() {
+        buffer.add(download(1L, 10L, DAY));
+        buffer.add(download(1L, 10L, DAY));
+        buffer.add(download(2L, 10L, DAY));
+
+        assertEquals(4, buffer.flush());
+
+        ArgumentCaptor<List<Map.Entry<DownloadCountBuffer.Key, Long>>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(buffer.downloadCountService).addDownloadCounts(captor.capture());
+        Map<DownloadCountBuffer.Key, Long> saved = new HashMap<>();
+        captor.getValue().forEach(entry -> saved.put(entry.getKey(), entry.getValue()));
+        assertEquals(Map.of(
+                new DownloadCountBuffer.Key(1L, DAY), 2L,
+                new DownloadCountBuffer.Key(2L, DAY), 1L,
+                new DownloadCountBuffer.Key(10L, DAY), 3L,
+                new DownloadCountBuffer.Key(DownloadCount.TOTAL, DAY), 3L), saved);
+        assertEquals(0, buffer.getPending(DownloadCount.TOTAL, null));
+        assertEquals(0, buffer.flush());
+    }
+
+    @Test
+    public void testCountsReadableUntilSaved() {
+        buffer.add(download(1L, 10L, DAY));
+        Mockito.doAnswer(invocation -> {
+            // a download counted while the batch is being saved:
+            buffer.add(download(1L, 10L, DAY));
+            assertEquals(2, buffer.getPending(1L, null));
+            return null;
+        }).when(buffer.downloadCountService).addDownloadCounts(any());
+
+        assertEquals(3, buffer.flush());
+
+        assertEquals(1, buffer.getPending(1L, null));
+        assertEquals(1, buffer.getPending(DownloadCount.TOTAL, null));
+    }
+
+    @Test
+    public void testFailedFlushKeepsCounts() {
+        Mockito.doThrow(new IllegalStateException("database unavailable"))
+                .when(buffer.downloadCountService).addDownloadCounts(any());
+        buffer.add(download(1L, 10L, DAY));
+
+        assertEquals(0, buffer.flush());
+        buffer.add(download(1L, 10L, DAY));
+
+        assertEquals(2, buffer.getPending(1L, null));
+        assertEquals(2, buffer.getPending(DownloadCount.TOTAL, null));
+    }
+
+    private static GuestbookResponse download(Long fileId, Long datasetId, LocalDate day) {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(fileId);
+        Dataset dataset = new Dataset();
+        dataset.setId(datasetId);
+        GuestbookResponse response = new GuestbookResponse();
+        response.setDataFile(dataFile);
+        response.setDataset(dataset);
+        response.setEventType(GuestbookResponse.DOWNLOAD);
+        response.setResponseTime(Timestamp.valueOf(day.atTime(12, 0)));
+        return response;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.harvard.iq.dataverse;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+
+public class GuestbookResponseCsvWriterTest {
+
+    @Test
+    public void testWriteJoinsAnswersInOrder() throws SQLException, IOException {
+        Timestamp responseTime = Timestamp.valueOf(LocalDateTime.of(2024, 3, 7, 10, 30));
+        ResultSet responses = resultSet(
+                response(30L, "Guestbook", responseTime, null, "Jane, Doe", "Birds, Finches"),
+                response(10L, "Guestbook", null, 42L, null, null));
+        ResultSet answers = resultSet(
+                // 20 wasn't selected, e.g. because its file is gone
+                new Object[]{30L, "Why?", "Research"},
+                new Object[]{30L, "Where?", null},
+                new Object[]{20L, "Why?", "Skipped"},
+                new Object[]{10L, "Why?", "Teaching, mostly"});
+
+        StringWriter out = new StringWriter();
+        long count = new GuestbookResponseCsvWriter(out).write(responses, answers);
+
+        assertEquals(2, count);
+        assertEquals(GuestbookResponseCsvWriter.HEADER
+                + "Guestbook,\"Birds, Finches\",doi:10.5072/FK2/ABC,03/7/2024,Download,data.csv,,N/A,\"Jane, Doe\",jane@example.com,,,Why?,Research,Where?,\n"
+                + "Guestbook,,doi:10.5072/FK2/ABC,N/A,Download,data.csv,42,N/A,,jane@example.com,,,Why?,\"Teaching, mostly\"\n",
+                out.toString());
+    }
+
+    @Test
+    public void testWriteWithoutResponses() throws SQLException, IOException {
+        StringWriter out = new StringWriter();
+        long count = new GuestbookResponseCsvWriter(out).write(resultSet(), resultSet(new Object[]{1L, "Why?", "Because"}));
+
+        assertEquals(0, count);
+        assertEquals(GuestbookResponseCsvWriter.HEADER, out.toString());
+    }
+
+    @Test
+    public void testFormatPersistentIdentifier() {
+        assertEquals("doi:10.5072/FK2/ABC", GuestbookResponseCsvWriter.formatPersistentIdentifier("doi", "10.5072", "FK2/ABC"));
+        assertEquals("N/A", GuestbookResponseCsvWriter.formatPersistentIdentifier("doi", "10.5072", null));
+    }
+
+    private static Object[] response(Long id, String guestbook, Timestamp responseTime, Long fileId, String name, String datasetTitle) {
+        return new Object[]{id, guestbook, 1L, responseTime, "Download", "data.csv", fileId, name, "jane@example.com", null, null,
+            "doi", "10.5072", "FK2/ABC", null, null, null, datasetTitle};
+    }
+
+    /**
+     * A forward only result set over the rows; the columns are numbered from 1,
+     * as in JDBC.
+     */
+    private static ResultSet resultSet(Object[]... rows) throws SQLException {
+        ResultSet resultSet = Mockito.mock(ResultSet.class);
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        Mockito.when(resultSet.next()).thenAnswer(invocation -> ++row[0] < rows.length);
+        Mockito.when(resultSet.getString(anyInt())).thenAnswer(invocation -> (String) rows[row[0]][(int) invocation.getArgument(0) - 1]);
+        Mockito.when(resultSet.getTimestamp(anyInt())).thenAnswer(invocation -> (Timestamp) rows[row[0]][(int) invocation.getArgument(0) - 1]);
+        Mockito.when(resultSet.getLong(anyInt())).thenAnswer(invocation -> {
+            Long value = (Long) rows[row[0]][(int) invocation.getArgument(0) - 1];
+            wasNull[0] = value == null;
+            return value == null ? 0L : value;
+        });
+        Mockito.when(resultSet.wasNull()).thenAnswer(invocation -> wasNull[0]);
+        return resultSet;
+    }
+}
@@ -76,18 +76,40 @@ public class DownloadInstanceWriterTest {
         assertNotNull(expectedException);
     }
 
-    // Attempt to get invalid range (multiple ranges).
+    // Get multiple ranges.
     @Test
-    public void testGetRangeInvalidMultipleRanges() {
-        Exception expectedException = null;
-        try {
-            List<Range> ranges = diw.getRanges("bytes=0-9,90-99", 100);
-        } catch (Exception ex) {
-            // "Only one range is allowed."
-            System.out.println("exception: " + ex);
-            expectedException = ex;
+    public void testGetMultipleRanges() {
+        List<Range> ranges = diw.getRanges("bytes=0-9,90-99", 100);
+        assertEquals(2, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(9, ranges.get(0).getEnd());
+        assertEquals(90, ranges.get(1).getStart());
+        assertEquals(99, ranges.get(1).getEnd());
+    }
+
+    // Attempt to get too many ranges.
+    @Test
+    public void testGetRangeInvalidTooManyRanges() {
+        StringBuilder range = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < DownloadInstanceWriter.MAX_RANGES; i++) {
+            range.append(",").append(i).append("-").append(i);
         }
-        assertNotNull(expectedException);
+        assertEquals(DownloadInstanceWriter.MAX_RANGES, diw.getRanges(range.toString(), 1000).size());
+        range.append(",999-999");
+        assertThrows(RuntimeException.class, () -> diw.getRanges(range.toString(), 1000));
+    }
+
+    // Overlapping and adjacent ranges are merged, and sorted.
+    @Test
+    public void testCoalesceRanges() {
+        List<Range> ranges = DownloadInstanceWriter.coalesceRanges(diw.getRanges("bytes=50-59,0-9,5-19,20-29,90-", 100));
+        assertEquals(3, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(29, ranges.get(0).getEnd());
+        assertEquals(50, ranges.get(1).getStart());
+        assertEquals(59, ranges.get(1).getEnd());
+        assertEquals(90, ranges.get(2).getStart());
+        assertEquals(99, ranges.get(2).getEnd());
     }
 
     // Attempt to get invalid range (multiple ranges, beyond file size).
@@ -97,8 +119,7 @@ public class DownloadInstanceWriterTest {
         try {
             List<Range> ranges = diw.getRanges("bytes=0-9,90-99", 40);
         } catch (Exception ex) {
-            // "Only one range is allowed."
-            // We report the multiple ranges error before reporting the "beyond filesize" error.
+            // "Start is larger than end or size of file."
             System.out.println("exception: " + ex);
             expectedException = ex;
         }
@@ -119,30 +140,18 @@ public class DownloadInstanceWriterTest {
         assertNotNull(expectedException);
     }
 
-    // Get first 10 bytes and last 10 bytes. Not currently supported.
+    // Get first 10 bytes and last 10 bytes.
     @Test
     public void testGetRanges0to0and90toNull() {
-        Exception expectedException = null;
-        try {
-            List<Range> ranges = diw.getRanges("bytes=0-9,-10", 100);
-            // These asserts on start, end, etc. don't actually
-            // run because we throw an expection that multiple
-            // ranges are not supported.
-            //
-            // first range
-            assertEquals(0, ranges.get(0).getStart());
-            assertEquals(9, ranges.get(0).getEnd());
-            assertEquals(10, ranges.get(0).getLength());
-            // second range
-            assertEquals(90, ranges.get(1).getStart());
-            assertEquals(99, ranges.get(1).getEnd());
-            assertEquals(10, ranges.get(1).getLength());
-        } catch (Exception ex) {
-            // Only one range is allowed.
-            System.out.println("exception: " + ex);
-            expectedException = ex;
-        }
-        assertNotNull(expectedException);
+        List<Range> ranges = diw.getRanges("bytes=0-9,-10", 100);
+        // first range
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(9, ranges.get(0).getEnd());
+        assertEquals(10, ranges.get(0).getLength());
+        // second range
+        assertEquals(90, ranges.get(1).getStart());
+        assertEquals(99, ranges.get(1).getEnd());
+        assertEquals(10, ranges.get(1).getLength());
     }
 
 }
@@ -0,0 +1,72 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IpGroupIndexTest {
+
+    private final List<IpAddressRange> ranges = new ArrayList<>();
+
+    @Test
+    public void testFindGroupIdsContainingIPv4() {
+        IpGroup wide = addGroup("10.0.0.0", "10.255.255.255");
+        IpGroup narrow = addGroup("10.1.0.0", "10.1.0.255");
+        IpGroup other = addGroup("192.168.0.1", "192.168.0.1");
+        IpGroupIndex index = IpGroupIndex.build(ranges);
+
+        assertEquals(3, index.size());
+        assertEquals(Set.of(wide.getId(), narrow.getId()), index.findGroupIdsContaining(IpAddress.valueOf("10.1.0.17")));
+        assertEquals(Set.of(wide.getId()), index.findGroupIdsContaining(IpAddress.valueOf("10.2.0.1")));
+        assertEquals(Set.of(wide.getId()), index.findGroupIdsContaining(IpAddress.valueOf("10.0.0.0")));
+        assertEquals(Set.of(wide.getId()), index.findGroupIdsContaining(IpAddress.valueOf("10.255.255.255")));
+        assertEquals(Set.of(other.getId()), index.findGroupIdsContaining(IpAddress.valueOf("192.168.0.1")));
+        assertTrue(index.findGroupIdsContaining(IpAddress.valueOf("192.168.0.2")).isEmpty());
+        assertTrue(index.findGroupIdsContaining(IpAddress.valueOf("9.255.255.255")).isEmpty());
+        assertTrue(index.findGroupIdsContaining(IpAddress.valueOf("11.0.0.0")).isEmpty());
+    }
+
+    @Test
+    public void testFindGroupIdsContainingAfterLaterRanges() {
+        // a long range starting first must still be found past shorter ranges starting after it
+        IpGroup wide = addGroup("1.0.0.0", "200.0.0.0");
+        addGroup("2.0.0.0", "2.0.0.10");
+        addGroup("3.0.0.0", "3.0.0.10");
+        IpGroupIndex index = IpGroupIndex.build(ranges);
+
+        assertEquals(Set.of(wide.getId()), index.findGroupIdsContaining(IpAddress.valueOf("100.0.0.1")));
+    }
+
+    @Test
+    public void testFindGroupIdsContainingIPv6() {
+        IpGroup ipv4 = addGroup("0.0.0.0", "255.255.255.255");
+        IpGroup ipv6 = addGroup("fe80::", "fe80::ffff");
+        IpGroupIndex index = IpGroupIndex.build(ranges);
+
+        assertEquals(Set.of(ipv6.getId()), index.findGroupIdsContaining(IpAddress.valueOf("fe80::1")));
+        assertTrue(index.findGroupIdsContaining(IpAddress.valueOf("fe81::1")).isEmpty());
+        assertEquals(Set.of(ipv4.getId()), index.findGroupIdsContaining(IpAddress.valueOf("127.0.0.1")));
+    }
+
+    @Test
+    public void testRangesWithoutOwnerAreIgnored() {
+        ranges.add(IpAddressRange.make(IpAddress.valueOf("10.0.0.0"), IpAddress.valueOf("10.0.0.255")));
+        IpGroupIndex index = IpGroupIndex.build(ranges);
+
+        assertEquals(0, index.size());
+        assertTrue(index.findGroupIdsContaining(IpAddress.valueOf("10.0.0.1")).isEmpty());
+    }
+
+    private IpGroup addGroup(String bottom, String top) {
+        IpGroup group = new IpGroup();
+        group.setId(MocksFactory.nextId());
+        ranges.add(group.add(IpAddressRange.make(IpAddress.valueOf(bottom), IpAddress.valueOf(top))));
+        return group;
+    }
+}
@@ -14,6 +14,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -111,6 +112,80 @@ class MailDomainGroupServiceBeanTest {
         }
     }
     
+    @Test
+    void testFindWithOverlappingGroups() {
+        // given
+        MailDomainGroup simple = MailDomainGroupTest.genGroup();
+        simple.setEmailDomains(Arrays.asList("example.org", "example.com"));
+        MailDomainGroup regex = MailDomainGroupTest.genRegexGroup();
+        regex.setEmailDomains(Arrays.asList("example\\.(org|net)"));
+        MailDomainGroup subdomains = MailDomainGroupTest.genRegexGroup();
+        subdomains.setEmailDomains(Arrays.asList("(?i).+\\.example\\.org"));
+        mockQuery("MailDomainGroup.findAll", new ArrayList<>(Arrays.asList(simple, regex, subdomains)));
+        svc.updateGroups();
+        
+        AuthenticatedUser u = new AuthenticatedUser();
+        when(confirmEmailSvc.hasVerifiedEmail(u)).thenReturn(true);
+        
+        // when & then
+        u.setEmail("test@example.org");
+        assertEquals(new HashSet<>(Arrays.asList(simple, regex)), svc.findAllWithDomain(u));
+        u.setEmail("test@Sub.Example.org");
+        assertEquals(new HashSet<>(Arrays.asList(subdomains)), svc.findAllWithDomain(u));
+        u.setEmail("test@example.net");
+        assertEquals(new HashSet<>(Arrays.asList(regex)), svc.findAllWithDomain(u));
+        u.setEmail("test@example.com");
+        assertEquals(new HashSet<>(Arrays.asList(simple)), svc.findAllWithDomain(u));
+        u.setEmail("test@example.edu");
+        assertEquals(Collections.emptySet(), svc.findAllWithDomain(u));
+    }
+    
+    @Test
+    void testCombine() {
+        assertNull(MailDomainGroupServiceBean.combine(Collections.emptyList()));
+        assertEquals("(?:a|b)|(?:c)",
+            MailDomainGroupServiceBean.combine(Arrays.asList(Pattern.compile("a|b"), Pattern.compile("c"))).pattern());
+        // back-references would point to the wrong group once combined
+        assertNull(MailDomainGroupServiceBean.combine(Arrays.asList(Pattern.compile("a"), Pattern.compile("(b)\\1"))));
+    }
+    
+    @Test
+    void testVerifiedEmailIsCached() {
+        // given
+        mockQuery("MailDomainGroup.findAll", new ArrayList<>(Arrays.asList(MailDomainGroupTest.genGroup())));
+        svc.updateGroups();
+        AuthenticatedUser u = new AuthenticatedUser();
+        u.setId(42L);
+        u.setEmail("test@foobar.com");
+        when(confirmEmailSvc.hasVerifiedEmail(u)).thenReturn(true);
+        
+        // when
+        svc.findAllWithDomain(u);
+        svc.findAllWithDomain(u);
+        // a changed address has to be verified again
+        u.setEmail("test@example.org");
+        svc.findAllWithDomain(u);
+        
+        // then
+        verify(confirmEmailSvc, times(2)).hasVerifiedEmail(u);
+    }
+    
+    @Test
+    void testUnverifiedEmailIsNotCached() {
+        // given
+        AuthenticatedUser u = new AuthenticatedUser();
+        u.setId(42L);
+        u.setEmail("test@foobar.com");
+        when(confirmEmailSvc.hasVerifiedEmail(u)).thenReturn(false);
+        
+        // when
+        svc.findAllWithDomain(u);
+        svc.findAllWithDomain(u);
+        
+        // then
+        verify(confirmEmailSvc, times(2)).hasVerifiedEmail(u);
+    }
+    
     @Test
     void testFindWithUnverifiedEmail() {
         // given
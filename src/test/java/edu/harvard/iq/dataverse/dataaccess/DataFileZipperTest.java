@@ -0,0 +1,28 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataFileZipperTest {
+
+    @Test
+    public void testIsCompressedContentType() {
+        assertTrue(DataFileZipper.isCompressedContentType("application/zip"));
+        assertTrue(DataFileZipper.isCompressedContentType("application/gzip"));
+        assertTrue(DataFileZipper.isCompressedContentType("image/JPEG"));
+        assertTrue(DataFileZipper.isCompressedContentType("video/mp4"));
+        assertTrue(DataFileZipper.isCompressedContentType("audio/mpeg"));
+        assertTrue(DataFileZipper.isCompressedContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        assertTrue(DataFileZipper.isCompressedContentType("application/zip; charset=binary"));
+
+        assertFalse(DataFileZipper.isCompressedContentType(null));
+        assertFalse(DataFileZipper.isCompressedContentType(""));
+        assertFalse(DataFileZipper.isCompressedContentType("text/plain"));
+        assertFalse(DataFileZipper.isCompressedContentType("text/tab-separated-values"));
+        assertFalse(DataFileZipper.isCompressedContentType("image/tiff"));
+        assertFalse(DataFileZipper.isCompressedContentType("audio/x-wav"));
+        assertFalse(DataFileZipper.isCompressedContentType("application/octet-stream"));
+    }
+}
@@ -105,6 +105,25 @@ public class FileAccessIOTest {
         assertEquals(false, dataFileAccess.canWrite());
     }
 
+    @Test
+    public void testGetRangeInputStream() throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("/tmp/files/tmp/dataset/DataFile"))) {
+            bw.write("This is a test string");
+        }
+        dataFileAccess.open(DataAccessOption.READ_ACCESS);
+        assertTrue(dataFileAccess.isRangeReadSupported());
+        // ranges can be read in any order:
+        try (InputStream in = dataFileAccess.getRangeInputStream(10, 4)) {
+            assertEquals("test", new String(in.readAllBytes()));
+        }
+        try (InputStream in = dataFileAccess.getRangeInputStream(0, 4)) {
+            assertEquals("This", new String(in.readAllBytes()));
+        }
+        // ... and do not affect the main input stream:
+        assertEquals("This is a test string", new String(dataFileAccess.getInputStream().readAllBytes()));
+        dataFileAccess.closeInputStream();
+    }
+
     /**
      * Test of savePath method, of class FileAccessIO.
      *
@@ -255,4 +255,18 @@ public class StorageIOTest {
     public void testGetConfigParamWithDefault() {
     assertEquals(DataAccess.DEFAULT_STORAGE_DRIVER_IDENTIFIER, StorageIO.getConfigParamForDriver("globus", AbstractRemoteOverlayAccessIO.BASE_STORE, DataAccess.DEFAULT_STORAGE_DRIVER_IDENTIFIER));
     }
+
+    @Test
+    public void testGetRangeInputStream() throws IOException {
+        // the default implementation can only read forward:
+        StorageIO<DataFile> sequential = new InputStreamIO(new ByteArrayInputStream("0123456789".getBytes()), 10);
+        assertFalse(sequential.isRangeReadSupported());
+        try (InputStream in = sequential.getRangeInputStream(2, 3)) {
+            assertEquals("234", new String(in.readAllBytes()));
+        }
+        try (InputStream in = sequential.getRangeInputStream(7, 2)) {
+            assertEquals("78", new String(in.readAllBytes()));
+        }
+        assertThrows(UnsupportedDataAccessOperationException.class, () -> sequential.getRangeInputStream(0, 1));
+    }
 }
@@ -0,0 +1,148 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnStore.ColumnType;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TabularColumnStoreTest {
+
+    private static final ColumnType[] TYPES = {ColumnType.LONG, ColumnType.DOUBLE, ColumnType.FLOAT, ColumnType.STRING, ColumnType.NONE};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testVectorsMatchTabFileSubsets() throws IOException {
+        String tabFile = "id\tvalue\tweight\tname\tdate\n"
+                + "1\t3.14\t0.1\t\"foo\"\t2024-01-01\n"
+                + "\t\t\t\t\n"
+                + "3\tinf\t-inf\t\"a\\tb\"\t2024-01-03\n"
+                + "x\tfoo\t1e40\t\"foo\"\t2024-01-04\n"
+                + "-5\t-inf\t2.5\t\"\"\t2024-01-05\n";
+        int numCases = 5;
+
+        TabularColumnStore store = generate(tabFile, TYPES, numCases, true);
+        assertEquals(numCases, store.getNumCases());
+        assertEquals(5, store.getNumColumns());
+
+        assertArrayEquals(TabularSubsetGenerator.subsetLongVector(stream(tabFile), 0, numCases, true), store.getLongVector(0));
+        assertArrayEquals(TabularSubsetGenerator.subsetDoubleVector(stream(tabFile), 1, numCases, true), store.getDoubleVector(1));
+        assertArrayEquals(TabularSubsetGenerator.subsetFloatVector(stream(tabFile), 2, numCases, true), store.getFloatVector(2));
+        assertArrayEquals(TabularSubsetGenerator.subsetStringVector(stream(tabFile), 3, numCases, true), store.getStringVector(3));
+
+        // vectors are only returned for the matching column types:
+        assertNull(store.getDoubleVector(0));
+        assertNull(store.getStringVector(1));
+        assertNull(store.getLongVector(4));
+        assertEquals(ColumnType.NONE, store.getColumnType(4));
+
+        // ... except for the float vectors used for frequencies:
+        assertArrayEquals(new Float[]{1f, null, 3f, null, -5f}, store.getFloatVector(0));
+        assertTrue(store.hasFrequencyVector(0, true));
+        assertTrue(store.hasFrequencyVector(3, false));
+        assertFalse(store.hasFrequencyVector(4, false));
+
+        // primitive vectors, with the missing values flagged separately:
+        BitSet missing = new BitSet();
+        long[] longs = store.getLongValues(0, missing);
+        assertEquals(1L, longs[0]);
+        assertEquals(-5L, longs[4]);
+        assertEquals(BitSet.valueOf(new long[]{0b01010}), missing);
+        missing = new BitSet();
+        double[] floats = store.getDoubleValues(2, missing);
+        assertEquals((double) 0.1f, floats[0]);
+        assertEquals(Double.NEGATIVE_INFINITY, floats[2]);
+        assertTrue(missing.get(1));
+        assertNull(store.getDoubleValues(0, missing));
+    }
+
+    @Test
+    public void testMultipleBlocks() throws IOException {
+        // enough rows to be written out in several blocks:
+        int numCases = 300000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numCases; i++) {
+            sb.append(i % 7 == 0 ? "" : String.valueOf(i)).append('\t').append(i * 0.5).append('\n');
+        }
+        TabularColumnStore store = generate(sb.toString(), new ColumnType[]{ColumnType.LONG, ColumnType.DOUBLE}, numCases, false);
+
+        Long[] longs = store.getLongVector(0);
+        Double[] doubles = store.getDoubleVector(1);
+        for (int i = 0; i < numCases; i++) {
+            assertEquals(i % 7 == 0 ? null : Long.valueOf(i), longs[i]);
+            assertEquals(i * 0.5, doubles[i]);
+        }
+    }
+
+    @Test
+    public void testRangedReads() throws IOException {
+        String tabFile = "1\t\"a\"\t0.5\t\"x\"\n"
+                + "2\t\"b\"\t\t\"y\"\n"
+                + "\t\"a\"\t1.5\t\n";
+        ColumnType[] types = {ColumnType.LONG, ColumnType.STRING, ColumnType.DOUBLE, ColumnType.STRING};
+        File storeFile = Files.createTempFile(tempDir, "store", ".cols").toFile();
+        TabularColumnStore.generate(stream(tabFile), types, 3, false, storeFile);
+        byte[] bytes = Files.readAllBytes(storeFile.toPath());
+
+        // A source that only returns the bytes requested, as a ranged read of
+        // a remote store does:
+        List<long[]> ranges = new ArrayList<>();
+        TabularColumnStore store = TabularColumnStore.open((offset, length) -> {
+            assertTrue(length < 0 || offset + length <= bytes.length);
+            ranges.add(new long[]{offset, length});
+            ByteArrayInputStream in = stream(bytes);
+            in.skipNBytes(offset);
+            return length < 0 ? in : RangeInputStream.of(in, length, true);
+        });
+
+        ranges.clear();
+        assertArrayEquals(new Long[]{1L, 2L, null}, store.getLongVector(0));
+        // the bitmap of missing values and 3 longs:
+        assertEquals(1, ranges.size());
+        assertEquals(1 + 3 * 8, ranges.get(0)[1]);
+
+        assertArrayEquals(new String[]{"a", "b", "a"}, store.getStringVector(1));
+        assertArrayEquals(new Double[]{0.5, null, 1.5}, store.getDoubleVector(2));
+        assertArrayEquals(new String[]{"x", "y", null}, store.getStringVector(3));
+    }
+
+    @Test
+    public void testRowCountChecks() {
+        String tabFile = "1\ta\n2\tb\n";
+        ColumnType[] types = {ColumnType.LONG, ColumnType.STRING};
+        assertThrows(IOException.class, () -> generate(tabFile, types, 3, false));
+        assertThrows(IOException.class, () -> generate(tabFile, types, 1, false));
+    }
+
+    private TabularColumnStore generate(String tabFile, ColumnType[] types, int numCases, boolean skipHeader) throws IOException {
+        File storeFile = Files.createTempFile(tempDir, "store", ".cols").toFile();
+        TabularColumnStore.generate(stream(tabFile), types, numCases, skipHeader, storeFile);
+        return TabularColumnStore.open(storeFile.toPath());
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return stream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteArrayInputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+}
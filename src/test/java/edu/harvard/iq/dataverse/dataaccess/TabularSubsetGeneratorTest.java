@@ -0,0 +1,137 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TabularSubsetGeneratorTest {
+
+    private static final String TAB_FILE = "id\tname\tvalue\tweight\n"
+            + "1\t\"foo\"\t3.14\t0.5\n"
+            + "2\t\"bar\"\t\t1.5\n"
+            + "3\t\"baz\"\t-inf\t2.5\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testStreamingSubset() throws IOException {
+        String subset = subset(TAB_FILE, Arrays.asList(3, 1), 4);
+        assertEquals("weight\tname\n0.5\t\"foo\"\n1.5\t\"bar\"\n2.5\t\"baz\"\n", subset);
+    }
+
+    @Test
+    public void testStreamingSubsetSpanningBuffers() throws IOException {
+        // lines much longer than the read buffer:
+        StringBuilder sb = new StringBuilder();
+        String longValue = "x".repeat(100000);
+        for (int i = 0; i < 3; i++) {
+            sb.append(i).append('\t').append(longValue).append('\t').append("last" + i).append('\n');
+        }
+        assertEquals("last0\t0\nlast1\t1\nlast2\t2\n", subset(sb.toString(), Arrays.asList(2, 0), 3));
+    }
+
+    @Test
+    public void testStreamingSubsetWithoutFinalNewLine() throws IOException {
+        assertEquals("a\nc\n", subset("a\tb\nc\td", Arrays.asList(0), 2));
+    }
+
+    @Test
+    public void testStreamingSubsetLineCountChecks() throws IOException {
+        assertThrows(RuntimeException.class, () -> subset(TAB_FILE, Arrays.asList(0), 5));
+        assertThrows(RuntimeException.class, () -> subset(TAB_FILE, Arrays.asList(0), 3));
+        // trailing empty lines are ok:
+        assertEquals("id\n1\n2\n3\n", subset(TAB_FILE + "\n\n", Arrays.asList(0), 4));
+    }
+
+    @Test
+    public void testIndexedSubset() throws IOException {
+        // a wide file, with a small stride, so that the index has several
+        // checkpoints per line:
+        int numColumns = 23;
+        int numLines = 50;
+        StringBuilder sb = new StringBuilder();
+        for (int line = 0; line < numLines; line++) {
+            for (int column = 0; column < numColumns; column++) {
+                if (column > 0) {
+                    sb.append('\t');
+                }
+                sb.append("r").append(line).append("c").append(column);
+            }
+            sb.append('\n');
+        }
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Path dataFile = tempDir.resolve("data.tab");
+        Files.write(dataFile, data);
+
+        Path indexFile = tempDir.resolve("data.tab.colidx");
+        List<Integer> columns = Arrays.asList(17, 4, 22, 5);
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (TabularColumnIndex.Builder builder = new TabularColumnIndex.Builder(
+                Files.newOutputStream(indexFile), numColumns, numLines, data.length, 5)) {
+            new TabularSubsetGenerator().subsetFile(new ByteArrayInputStream(data), streamed, columns, numLines, (byte) '\t', builder);
+        }
+
+        ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+        assertTrue(TabularColumnIndex.subsetFile(dataFile, indexFile, indexed, columns));
+        assertEquals(streamed.toString(StandardCharsets.UTF_8), indexed.toString(StandardCharsets.UTF_8));
+        assertTrue(indexed.toString(StandardCharsets.UTF_8).startsWith("r0c17\tr0c4\tr0c22\tr0c5\n"));
+    }
+
+    @Test
+    public void testIndexedSubsetWithTrailingEmptyLines() throws IOException {
+        // the index must end with the last line, not with the empty lines
+        // after it:
+        byte[] data = (TAB_FILE + "\n\n").getBytes(StandardCharsets.UTF_8);
+        Path dataFile = tempDir.resolve("data.tab");
+        Files.write(dataFile, data);
+        Path indexFile = tempDir.resolve("data.tab.colidx");
+        List<Integer> columns = Arrays.asList(3, 0);
+
+        try (TabularColumnIndex.Builder builder = new TabularColumnIndex.Builder(
+                Files.newOutputStream(indexFile), 4, 4, data.length, 1)) {
+            new TabularSubsetGenerator().subsetFile(new ByteArrayInputStream(data), new ByteArrayOutputStream(), columns, 4, (byte) '\t', builder);
+        }
+
+        ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+        assertTrue(TabularColumnIndex.subsetFile(dataFile, indexFile, indexed, columns));
+        assertEquals("weight\tid\n0.5\t1\n1.5\t2\n2.5\t3\n", indexed.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStaleIndexIsRejected() throws IOException {
+        byte[] data = TAB_FILE.getBytes(StandardCharsets.UTF_8);
+        Path dataFile = tempDir.resolve("data.tab");
+        Files.write(dataFile, data);
+        Path indexFile = tempDir.resolve("data.tab.colidx");
+
+        try (TabularColumnIndex.Builder builder = new TabularColumnIndex.Builder(
+                Files.newOutputStream(indexFile), 4, 4, data.length)) {
+            new TabularSubsetGenerator().subsetFile(new ByteArrayInputStream(data), new ByteArrayOutputStream(), Arrays.asList(0), 4, (byte) '\t', builder);
+        }
+
+        Files.write(dataFile, (TAB_FILE + "4\t\"qux\"\t1\t1\n").getBytes(StandardCharsets.UTF_8));
+        assertFalse(TabularColumnIndex.subsetFile(dataFile, indexFile, new ByteArrayOutputStream(), Arrays.asList(0)));
+    }
+
+    private static String subset(String tabFile, List<Integer> columns, long numLines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TabularSubsetGenerator().subsetFile(new ByteArrayInputStream(tabFile.getBytes(StandardCharsets.UTF_8)),
+                out, columns, numLines, (byte) '\t', null);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -82,7 +83,7 @@ public class DDIExporterTest {
         JsonObject datasetDtoJson = Json.createReader(new StringReader(datasetDtoJsonString)).readObject();
         
         ExportDataProvider exportDataProviderStub = Mockito.mock(ExportDataProvider.class);
-        Mockito.when(exportDataProviderStub.getDatasetJson()).thenReturn(datasetDtoJson);
+        Mockito.when(exportDataProviderStub.getDatasetJsonWithoutFiles()).thenReturn(datasetDtoJson);
         Mockito.when(exportDataProviderStub.getDatasetFileDetails()).thenReturn(Json.createArrayBuilder().build());
         
         
@@ -97,6 +98,35 @@ public class DDIExporterTest {
         logger.severe("DDIExporterTest.testExportDataset() creates XML that should now be valid, since DDIExportUtil has been fixed.");
     }
 
+    @Test
+    public void testExportDatasetWithFileDetailsStream() throws IOException, ExportException {
+        //given
+        String datasetDtoJsonString = Files.readString(Path.of("src/test/java/edu/harvard/iq/dataverse/export/ddi/dataset-finch1.json"), StandardCharsets.UTF_8);
+        JsonObject datasetDtoJson = Json.createReader(new StringReader(datasetDtoJsonString)).readObject();
+        JsonObject fileDetails = Json.createObjectBuilder()
+                .add("id", 42)
+                .add("filename", "birds.txt")
+                .add("contentType", "text/plain")
+                .add("pidUrl", "https://doi.org/10.5072/FK2/BIRDS")
+                .build();
+
+        ExportDataProvider exportDataProviderStub = Mockito.mock(ExportDataProvider.class);
+        Mockito.when(exportDataProviderStub.getDatasetJsonWithoutFiles()).thenReturn(datasetDtoJson);
+        // a new stream on each call, as the exporter goes through the files more than once:
+        Mockito.when(exportDataProviderStub.getDatasetFileDetailsStream()).thenAnswer(invocation -> Stream.of(fileDetails));
+
+        //when
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        new DDIExporter().exportDataset(exportDataProviderStub, byteArrayOutputStream);
+
+        // then
+        String xml = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+        assertTrue(xml.contains("<otherMat ID=\"f42\" URI=\"https://doi.org/10.5072/FK2/BIRDS\" level=\"datafile\">"));
+        assertTrue(xml.contains("<labl>birds.txt</labl>"));
+        Mockito.verify(exportDataProviderStub, Mockito.never()).getDatasetFileDetails();
+        Mockito.verify(exportDataProviderStub, Mockito.never()).getDatasetJson();
+    }
+
     @Test
     public void testExportDatasetContactEmailPresent() throws Exception {
         File datasetVersionJson = new File("src/test/java/edu/harvard/iq/dataverse/export/ddi/datasetContactEmailPresent.json");
@@ -105,7 +135,7 @@ public class DDIExporterTest {
         JsonObject json = JsonUtil.getJsonObject(datasetVersionAsJson);
         
         ExportDataProvider exportDataProviderStub = Mockito.mock(ExportDataProvider.class);
-        Mockito.when(exportDataProviderStub.getDatasetJson()).thenReturn(json);
+        Mockito.when(exportDataProviderStub.getDatasetJsonWithoutFiles()).thenReturn(json);
         Mockito.when(exportDataProviderStub.getDatasetFileDetails()).thenReturn(Json.createArrayBuilder().build());
         
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
@@ -125,7 +155,7 @@ public class DDIExporterTest {
         JsonObject json = JsonUtil.getJsonObject(datasetVersionAsJson);
         
         ExportDataProvider exportDataProviderStub = Mockito.mock(ExportDataProvider.class);
-        Mockito.when(exportDataProviderStub.getDatasetJson()).thenReturn(json);
+        Mockito.when(exportDataProviderStub.getDatasetJsonWithoutFiles()).thenReturn(json);
         Mockito.when(exportDataProviderStub.getDatasetFileDetails()).thenReturn(Json.createArrayBuilder().build());
         
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
@@ -0,0 +1,172 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastListRecordsTest {
+
+    private static final String PAGE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <OAI-PMH xmlns="http://www.openarchives.org/OAI/2.0/" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+              <responseDate>2024-05-01T12:00:00Z</responseDate>
+              <request verb="ListRecords" metadataPrefix="oai_dc">https://demo.example.org/oai</request>
+              <ListRecords>
+                <record>
+                  <header>
+                    <identifier>doi:10.5072/FK2/AAAAAA</identifier>
+                    <datestamp>2024-04-30T08:15:00Z</datestamp>
+                    <setSpec>test</setSpec>
+                  </header>
+                  <metadata>
+                    <oai_dc:dc xmlns:oai_dc="http://www.openarchives.org/OAI/2.0/oai_dc/" xmlns:dc="http://purl.org/dc/elements/1.1/"
+                               xsi:schemaLocation="http://www.openarchives.org/OAI/2.0/oai_dc/ http://www.openarchives.org/OAI/2.0/oai_dc.xsd">
+                      <dc:title>Darwin's Finches</dc:title>
+                      <dc:identifier>https://doi.org/10.5072/FK2/AAAAAA</dc:identifier>
+                    </oai_dc:dc>
+                  </metadata>
+                </record>
+                <record>
+                  <header status="deleted">
+                    <identifier>doi:10.5072/FK2/BBBBBB</identifier>
+                    <datestamp>2024-04-29</datestamp>
+                  </header>
+                </record>
+                <resumptionToken completeListSize="3" cursor="0">MToxMDA6Ojp0ZXN0Om9haV9kYw==</resumptionToken>
+              </ListRecords>
+            </OAI-PMH>
+            """;
+
+    private static final String LAST_PAGE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <OAI-PMH xmlns="http://www.openarchives.org/OAI/2.0/">
+              <ListRecords>
+                <record>
+                  <header>
+                    <identifier>doi:10.5072/FK2/CCCCCC</identifier>
+                    <datestamp>2024-04-28T00:00:00Z</datestamp>
+                  </header>
+                  <metadata><dc><title>Untitled</title></dc></metadata>
+                </record>
+                <resumptionToken completeListSize="3" cursor="2"/>
+              </ListRecords>
+            </OAI-PMH>
+            """;
+
+    private final FastListRecords listRecords = new FastListRecords("https://demo.example.org/oai", "oai_dc", "test set", Date.from(Instant.parse("2024-01-01T10:20:30.456Z")), null, null);
+
+    @Test
+    public void testParsePages() throws Exception {
+        assertTrue(listRecords.hasMorePages());
+        assertEquals("https://demo.example.org/oai?verb=ListRecords&metadataPrefix=oai_dc&from=2024-01-01T10:20:30Z&set=test+set", listRecords.getRequestURL());
+
+        List<FetchedRecord> records = listRecords.parse(stream(PAGE));
+
+        assertEquals(2, records.size());
+        FetchedRecord record = records.get(0);
+        assertEquals("doi:10.5072/FK2/AAAAAA", record.getIdentifier());
+        assertEquals(Date.from(Instant.parse("2024-04-30T08:15:00Z")), record.getDateStamp());
+        assertFalse(record.isDeleted());
+        assertNull(record.getErrorMessage());
+
+        // the metadata is saved as a standalone document, with all the namespaces it uses
+        Document metadata = parseXml(record);
+        assertEquals("dc", metadata.getDocumentElement().getLocalName());
+        assertEquals("http://www.openarchives.org/OAI/2.0/oai_dc/", metadata.getDocumentElement().getNamespaceURI());
+        assertEquals("Darwin's Finches", metadata.getElementsByTagNameNS("http://purl.org/dc/elements/1.1/", "title").item(0).getTextContent());
+        assertFalse(metadata.getDocumentElement().getAttributeNS("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation").isEmpty());
+        record.discard();
+        assertNull(record.getMetadataFile());
+
+        FetchedRecord deleted = records.get(1);
+        assertEquals("doi:10.5072/FK2/BBBBBB", deleted.getIdentifier());
+        assertEquals(Date.from(Instant.parse("2024-04-29T00:00:00Z")), deleted.getDateStamp());
+        assertTrue(deleted.isDeleted());
+        assertNull(deleted.getMetadataFile());
+        assertNull(deleted.getErrorMessage());
+
+        assertTrue(listRecords.hasMorePages());
+        assertEquals("https://demo.example.org/oai?verb=ListRecords&resumptionToken=MToxMDA6Ojp0ZXN0Om9haV9kYw%3D%3D", listRecords.getRequestURL());
+
+        records = listRecords.parse(stream(LAST_PAGE));
+
+        assertEquals(1, records.size());
+        assertEquals("Untitled", parseXml(records.get(0)).getDocumentElement().getTextContent());
+        records.get(0).discard();
+        assertFalse(listRecords.hasMorePages());
+    }
+
+    @Test
+    public void testNoRecordsMatch() throws Exception {
+        String response = """
+                <OAI-PMH xmlns="http://www.openarchives.org/OAI/2.0/">
+                  <error code="noRecordsMatch">No records match</error>
+                </OAI-PMH>
+                """;
+
+        assertTrue(listRecords.parse(stream(response)).isEmpty());
+        assertFalse(listRecords.hasMorePages());
+    }
+
+    @Test
+    public void testError() {
+        String response = """
+                <OAI-PMH xmlns="http://www.openarchives.org/OAI/2.0/">
+                  <error code="badResumptionToken">The token has expired</error>
+                </OAI-PMH>
+                """;
+
+        IOException ioe = assertThrows(IOException.class, () -> listRecords.parse(stream(response)));
+        assertTrue(ioe.getMessage().contains("badResumptionToken"));
+    }
+
+    @Test
+    public void testRecordWithoutMetadataFails() throws Exception {
+        String response = """
+                <OAI-PMH xmlns="http://www.openarchives.org/OAI/2.0/">
+                  <ListRecords>
+                    <record>
+                      <header><identifier>doi:10.5072/FK2/DDDDDD</identifier></header>
+                      <metadata/>
+                    </record>
+                  </ListRecords>
+                </OAI-PMH>
+                """;
+
+        List<FetchedRecord> records = listRecords.parse(stream(response));
+
+        assertEquals(1, records.size());
+        assertNull(records.get(0).getMetadataFile());
+        assertNotNull(records.get(0).getErrorMessage());
+    }
+
+    @Test
+    public void testParseDatestamp() {
+        assertEquals(Date.from(Instant.parse("2024-04-30T08:15:00Z")), FastListRecords.parseDatestamp("2024-04-30T08:15:00Z"));
+        assertEquals(Date.from(Instant.parse("2024-04-30T00:00:00Z")), FastListRecords.parseDatestamp("2024-04-30"));
+        assertNull(FastListRecords.parseDatestamp("yesterday"));
+        assertNull(FastListRecords.parseDatestamp(""));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.strip().getBytes(UTF_8));
+    }
+
+    private static Document parseXml(FetchedRecord record) throws Exception {
+        assertNotNull(record.getMetadataFile());
+        assertTrue(Files.size(record.getMetadataFile().toPath()) > 0);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(record.getMetadataFile());
+    }
+}
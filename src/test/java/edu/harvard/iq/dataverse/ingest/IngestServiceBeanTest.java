@@ -0,0 +1,121 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class IngestServiceBeanTest {
+
+    private static final int NUM_VARIABLES = 48;
+    private static final int NUM_CASES = 2000;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The UNF library keeps the state of a calculation in static fields; the
+     * UNFs calculated by the statistics threads must be the same as the ones
+     * calculated one variable after the other.
+     */
+    @Test
+    public void testParallelStatisticsProduceTheSameUnfs() throws IOException {
+        File tabFile = writeTabFile();
+        IngestServiceBean ingestService = new IngestServiceBean();
+
+        DataFile sequential = createDataFile();
+        ingestService.produceSummaryAndFrequencyStatistics(sequential, tabFile, null, 1);
+
+        for (int run = 0; run < 3; run++) {
+            DataFile parallel = createDataFile();
+            ingestService.produceSummaryAndFrequencyStatistics(parallel, tabFile, null, 8);
+
+            for (int i = 0; i < NUM_VARIABLES; i++) {
+                String expected = sequential.getDataTable().getDataVariables().get(i).getUnf();
+                assertNotNull(expected);
+                assertEquals(expected, parallel.getDataTable().getDataVariables().get(i).getUnf(), "UNF of variable " + i);
+            }
+            assertEquals(sequential.getDataTable().getUnf(), parallel.getDataTable().getUnf());
+        }
+    }
+
+    // Continuous, discrete and character variables, in turn, with some
+    // missing values:
+    private File writeTabFile() throws IOException {
+        Random random = new Random(6);
+        File tabFile = tempDir.resolve("stats.tab").toFile();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tabFile.toPath(), StandardCharsets.UTF_8))) {
+            for (int c = 0; c < NUM_CASES; c++) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < NUM_VARIABLES; i++) {
+                    if (i > 0) {
+                        line.append('\t');
+                    }
+                    if (random.nextInt(50) == 0) {
+                        continue;
+                    }
+                    switch (i % 3) {
+                        case 0 -> line.append(random.nextGaussian() * 1000);
+                        case 1 -> line.append(random.nextInt(100));
+                        default -> line.append('"').append("value ").append(random.nextInt(20)).append('"');
+                    }
+                }
+                out.print(line);
+                out.print('\n');
+            }
+        }
+        return tabFile;
+    }
+
+    private static DataFile createDataFile() {
+        DataFile dataFile = new DataFile();
+        DataTable dataTable = new DataTable();
+        dataTable.setCaseQuantity((long) NUM_CASES);
+        dataTable.setVarQuantity((long) NUM_VARIABLES);
+        List<DataVariable> variables = new ArrayList<>();
+        for (int i = 0; i < NUM_VARIABLES; i++) {
+            DataVariable variable = new DataVariable(i, dataTable);
+            variable.setName("var" + i);
+            switch (i % 3) {
+                case 0 -> {
+                    variable.setTypeNumeric();
+                    variable.setIntervalContinuous();
+                }
+                case 1 -> {
+                    variable.setTypeNumeric();
+                    variable.setIntervalDiscrete();
+                }
+                default -> {
+                    variable.setTypeCharacter();
+                    variable.setIntervalDiscrete();
+                }
+            }
+            variables.add(variable);
+        }
+        dataTable.setDataVariables(variables);
+        dataTable.setDataFile(dataFile);
+        dataFile.setDataTable(dataTable);
+
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setDataFile(dataFile);
+        fileMetadata.setDatasetVersion(new DatasetVersion());
+        dataFile.getFileMetadatas().add(fileMetadata);
+        return dataFile;
+    }
+}
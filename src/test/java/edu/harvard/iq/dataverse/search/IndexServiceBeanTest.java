@@ -99,6 +99,32 @@ public class IndexServiceBeanTest {
         assertTrue(indexedFields.contains("language"));
     }
 
+    @Test
+    public void testIndexingSomeFiles() throws SolrServerException, IOException {
+        final IndexableDataset indexableDataset = createIndexableDataset();
+        final DatasetVersion datasetVersion = indexableDataset.getDatasetVersion();
+        final List<DataFile> files = MocksFactory.makeFiles(3);
+        for (DataFile file : files) {
+            file.setOwner(datasetVersion.getDataset());
+            file.setChecksumType(DataFile.ChecksumType.MD5);
+            file.setChecksumValue("d41d8cd98f00b204e9800998ecf8427e");
+            file.getFileMetadata().setDatasetVersion(datasetVersion);
+            datasetVersion.getFileMetadatas().add(file.getFileMetadata());
+        }
+
+        final SolrInputDocuments allDocs = indexService.toSolrDocs(indexableDataset, null);
+        final SolrInputDocuments someDocs = indexService.toSolrDocs(indexableDataset, null, Set.of(files.get(1).getId()));
+
+        assertEquals(4, allDocs.getDocuments().size());
+        assertEquals(2, someDocs.getDocuments().size());
+        List<SolrInputDocument> docs = new ArrayList<>(someDocs.getDocuments());
+        assertEquals(indexableDataset.getSolrDocId(), docs.get(0).getFieldValue(SearchFields.ID));
+        assertEquals(IndexServiceBean.solrDocIdentifierFile + files.get(1).getId() + IndexServiceBean.draftSuffix, docs.get(1).getFieldValue(SearchFields.ID));
+        // the values that are set on the file documents that are not rebuilt
+        assertEquals(someDocs.getParentName(), docs.get(1).getFieldValue(SearchFields.PARENT_NAME));
+        assertEquals(someDocs.getParentCitation(), docs.get(1).getFieldValue(SearchFields.PARENT_CITATION));
+    }
+
     @Test
     public void testValidateBoundingBox() throws SolrServerException, IOException {
         final IndexableDataset indexableDataset = createIndexableDataset();
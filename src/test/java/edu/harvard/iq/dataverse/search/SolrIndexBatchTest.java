@@ -0,0 +1,90 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import jakarta.json.JsonObject;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SolrIndexBatchTest {
+
+    private final SolrClient solrClient = mock(SolrClient.class);
+    private final List<List<Long>> sent = new ArrayList<>();
+    private final List<List<Long>> failed = new ArrayList<>();
+
+    private SolrIndexBatch newBatch(int batchSize) {
+        return new SolrIndexBatch(solrClient, batchSize, 5000, 3, (ids, ok) -> (ok ? sent : failed).add(ids));
+    }
+
+    @Test
+    public void testSendsFullBatches() throws Exception {
+        SolrIndexBatch batch = newBatch(3);
+
+        batch.add(1L, docs(2));
+        verifyNoInteractions(solrClient);
+
+        // the documents of a dataset are not split between batches
+        batch.add(2L, docs(2));
+        verify(solrClient).add(argThat((Collection<SolrInputDocument> c) -> c.size() == 4), eq(5000));
+        assertEquals(List.of(List.of(1L, 2L)), sent);
+
+        batch.add(3L, docs(1));
+        batch.finish();
+        verify(solrClient).add(argThat((Collection<SolrInputDocument> c) -> c.size() == 1), eq(5000));
+        assertEquals(List.of(List.of(1L, 2L), List.of(3L)), sent);
+        assertTrue(failed.isEmpty());
+
+        JsonObject status = batch.getStatus().build();
+        assertTrue(status.getBoolean("finished"));
+        assertEquals(3, status.getInt("datasetsTotal"));
+        assertEquals(3, status.getInt("datasetsIndexed"));
+        assertEquals(5, status.getInt("documentsSent"));
+        assertEquals(2, status.getInt("batchesSent"));
+        verify(solrClient, never()).commit();
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        when(solrClient.add(anyCollection(), anyInt())).thenThrow(new IOException("Solr is down"));
+        SolrIndexBatch batch = newBatch(2);
+
+        batch.add(1L, docs(2));
+        batch.addFailure(2L);
+        batch.addDeferred(3L);
+        batch.finish();
+
+        assertTrue(sent.isEmpty());
+        assertEquals(List.of(List.of(1L), List.of(2L)), failed);
+        assertEquals(0, batch.getDatasetsIndexed());
+        assertEquals(2, batch.getDatasetsFailed());
+        assertEquals(1, batch.getStatus().build().getInt("datasetsDeferred"));
+    }
+
+    @Test
+    public void testAddAfterFinishIsSent() throws Exception {
+        SolrIndexBatch batch = newBatch(100);
+        batch.finish();
+
+        batch.add(1L, docs(1));
+
+        verify(solrClient).add(anyCollection(), eq(5000));
+        assertEquals(List.of(List.of(1L)), sent);
+    }
+
+    private static List<SolrInputDocument> docs(int count) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            docs.add(new SolrInputDocument());
+        }
+        return docs;
+    }
+}
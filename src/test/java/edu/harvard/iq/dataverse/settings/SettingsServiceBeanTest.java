@@ -0,0 +1,108 @@
+package edu.harvard.iq.dataverse.settings;
+
+import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
+import edu.harvard.iq.dataverse.util.cache.CacheFactoryBean;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SettingsServiceBeanTest {
+
+    @Mock
+    EntityManager em;
+    @Mock
+    CacheFactoryBean cacheFactory;
+    @Mock
+    ActionLogServiceBean actionLogSvc;
+    @Mock
+    TypedQuery<Setting> findAll;
+
+    SettingsServiceBean svc;
+    List<Setting> db;
+
+    @BeforeEach
+    void setup() {
+        SettingsServiceBean.snapshot = null;
+        svc = new SettingsServiceBean();
+        svc.em = em;
+        svc.cacheFactory = cacheFactory;
+        svc.actionLogSvc = actionLogSvc;
+        db = new ArrayList<>(Arrays.asList(
+            new Setting(":SiteUrl", "https://demo.example.org"),
+            new Setting(":ApplicationTermsOfUse", "Be nice"),
+            new Setting(":ApplicationTermsOfUse", "fr", "Soyez gentils")));
+        when(em.createNamedQuery("Setting.findAll", Setting.class)).thenReturn(findAll);
+        when(findAll.getResultList()).thenAnswer(invocation -> new ArrayList<>(db));
+    }
+
+    @Test
+    void testGetLoadsSettingsOnce() {
+        // given
+        long hits = SettingsServiceBean.getHits();
+        long misses = SettingsServiceBean.getMisses();
+
+        // when & then
+        assertEquals("https://demo.example.org", svc.get(":SiteUrl"));
+        assertEquals("Be nice", svc.getValueForKey(SettingsServiceBean.Key.ApplicationTermsOfUse));
+        assertEquals("Soyez gentils", svc.getValueForKey(SettingsServiceBean.Key.ApplicationTermsOfUse, "fr", null));
+        assertEquals("default", svc.getValueForKey(SettingsServiceBean.Key.ApplicationTermsOfUse, "de", "default"));
+        assertNull(svc.get(":NotSet"));
+
+        verify(findAll, times(1)).getResultList();
+        assertEquals(misses + 1, SettingsServiceBean.getMisses());
+        assertEquals(hits + 4, SettingsServiceBean.getHits());
+    }
+
+    @Test
+    void testChangeOnAnotherNodeIsReloaded() {
+        // given
+        when(cacheFactory.getSettingsVersion()).thenReturn("1");
+        assertEquals("https://demo.example.org", svc.get(":SiteUrl"));
+        db.set(0, new Setting(":SiteUrl", "https://dataverse.example.org"));
+
+        // when the version is unchanged, the loaded settings are still used
+        SettingsServiceBean.snapshot.checkedAt = 0;
+        assertEquals("https://demo.example.org", svc.get(":SiteUrl"));
+
+        // when the version is changed, but not checked yet
+        when(cacheFactory.getSettingsVersion()).thenReturn("2");
+        assertEquals("https://demo.example.org", svc.get(":SiteUrl"));
+
+        // when the version is checked again
+        SettingsServiceBean.snapshot.checkedAt = 0;
+        assertEquals("https://dataverse.example.org", svc.get(":SiteUrl"));
+        verify(findAll, times(2)).getResultList();
+    }
+
+    @Test
+    void testDeleteInvalidatesSettings() {
+        // given
+        Query delete = mock(Query.class);
+        when(em.createNamedQuery("Setting.deleteByName")).thenReturn(delete);
+        when(delete.setParameter(anyString(), any())).thenReturn(delete);
+        assertEquals("https://demo.example.org", svc.get(":SiteUrl"));
+
+        // when
+        db.remove(0);
+        svc.delete(":SiteUrl");
+
+        // then
+        verify(cacheFactory).invalidateSettings();
+        assertNull(svc.get(":SiteUrl"));
+        verify(findAll, times(2)).getResultList();
+    }
+}
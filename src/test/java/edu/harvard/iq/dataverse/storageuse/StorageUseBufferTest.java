@@ -0,0 +1,78 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+
+public class StorageUseBufferTest {
+
+    private StorageUseBuffer buffer;
+
+    @BeforeEach
+    public void setUp() {
+        buffer = new StorageUseBuffer();
+        buffer.storageUseService = Mockito.mock(StorageUseServiceBean.class);
+    }
+
+    @Test
+    public void testIncrementsAreCoalesced() {
+        // two datasets in collection 2, in the root collection 1:
+        buffer.add(List.of(10L, 2L, 1L), 100L);
+        buffer.add(List.of(11L, 2L, 1L), 50L);
+        buffer.add(List.of(10L, 2L, 1L), -30L);
+
+        assertEquals(70L, buffer.getPending(10L));
+        assertEquals(50L, buffer.getPending(11L));
+        assertEquals(120L, buffer.getPending(1L));
+        assertEquals(0L, buffer.getPending(3L));
+
+        Mockito.when(buffer.storageUseService.applyStorageSizeIncrements(any())).thenReturn(4);
+        assertEquals(4, buffer.flush());
+        Mockito.verify(buffer.storageUseService).applyStorageSizeIncrements(Map.of(10L, 70L, 11L, 50L, 2L, 120L, 1L, 120L));
+        assertEquals(0L, buffer.getPending(1L));
+        assertEquals(0, buffer.flush());
+    }
+
+    @Test
+    public void testIncrementsThatCancelOutAreNotSaved() {
+        buffer.add(List.of(10L, 1L), 100L);
+        buffer.add(List.of(10L, 1L), -100L);
+
+        assertEquals(0, buffer.flush());
+        Mockito.verifyNoInteractions(buffer.storageUseService);
+    }
+
+    @Test
+    public void testIncrementsReadableUntilSaved() {
+        buffer.add(List.of(10L, 1L), 100L);
+        Mockito.when(buffer.storageUseService.applyStorageSizeIncrements(any())).thenAnswer(invocation -> {
+            // a file added while the increments are being saved:
+            buffer.add(List.of(10L, 1L), 20L);
+            assertEquals(120L, buffer.getPending(1L));
+            return 2;
+        });
+
+        assertEquals(2, buffer.flush());
+
+        assertEquals(20L, buffer.getPending(10L));
+        assertEquals(20L, buffer.getPending(1L));
+    }
+
+    @Test
+    public void testFailedFlushKeepsIncrements() {
+        Mockito.when(buffer.storageUseService.applyStorageSizeIncrements(any())).thenThrow(new IllegalStateException("deadlock detected"));
+        buffer.add(List.of(10L, 1L), 100L);
+
+        assertEquals(0, buffer.flush());
+        buffer.add(List.of(10L, 1L), 20L);
+
+        assertEquals(120L, buffer.getPending(10L));
+        assertEquals(120L, buffer.getPending(1L));
+    }
+}
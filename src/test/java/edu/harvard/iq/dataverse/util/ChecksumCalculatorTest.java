@@ -0,0 +1,47 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksumCalculatorTest {
+
+    @Test
+    public void testAllTypesInOnePass() throws IOException {
+        byte[] data = "test".getBytes(StandardCharsets.UTF_8);
+
+        ChecksumCalculator calculator = new ChecksumCalculator(ChecksumType.values()).update(new ByteArrayInputStream(data));
+        Map<ChecksumType, String> checksums = calculator.getChecksums();
+
+        assertEquals(4, calculator.getSize());
+        assertEquals("098f6bcd4621d373cade4e832627b4f6", checksums.get(ChecksumType.MD5));
+        assertEquals("a94a8fe5ccb19ba61c4c0873d391e987982fbbd3", checksums.get(ChecksumType.SHA1));
+        assertEquals("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08", checksums.get(ChecksumType.SHA256));
+        assertEquals("ee26b0dd4af7e749aa1a8ee3c10ae9923f618980772e473f8819a5d4940e0db27ac185f8a0e1d5f84f88bc887fd67b143732c304cc5fa9ad8e6f57f50028a8ff", checksums.get(ChecksumType.SHA512));
+    }
+
+    @Test
+    public void testLargerThanBuffer() throws IOException {
+        byte[] data = new byte[ChecksumCalculator.BUFFER_SIZE * 2 + 12345];
+        new Random(42).nextBytes(data);
+
+        ChecksumCalculator calculator = new ChecksumCalculator(ChecksumType.MD5, ChecksumType.SHA256).update(new ByteArrayInputStream(data));
+
+        assertEquals(data.length, calculator.getSize());
+        assertEquals(FileUtil.calculateChecksum(data, ChecksumType.MD5), calculator.getChecksum(ChecksumType.MD5));
+        assertEquals(FileUtil.calculateChecksum(data, ChecksumType.SHA256), calculator.getChecksum(ChecksumType.SHA256));
+        assertThrows(IllegalArgumentException.class, () -> calculator.getChecksum(ChecksumType.SHA1));
+    }
+
+    @Test
+    public void testNoChecksumType() {
+        assertThrows(IllegalArgumentException.class, () -> new ChecksumCalculator());
+    }
+}
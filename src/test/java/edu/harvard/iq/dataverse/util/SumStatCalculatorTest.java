@@ -0,0 +1,103 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.commons.math.stat.StatUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SumStatCalculatorTest {
+
+    // ("mean", "medn", "mode", "vald", "invd", "min", "max", "stdev")
+
+    @Test
+    public void testMatchesStatUtils() {
+        Random random = new Random(42);
+        for (int size : new int[]{1, 2, 3, 10, 101, 1000}) {
+            double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                // lots of ties, to exercise the selection:
+                values[i] = random.nextInt(20) * 1.5 - 10;
+            }
+            double[] stats = SumStatCalculator.calculateSummaryStatistics(values, null);
+
+            assertEquals(StatUtils.mean(values), stats[0]);
+            assertEquals(SumStatCalculator.calculateMedian(values), stats[1]);
+            assertEquals(size, stats[3]);
+            assertEquals(0, stats[4]);
+            assertEquals(StatUtils.min(values), stats[5]);
+            assertEquals(StatUtils.max(values), stats[6]);
+            assertEquals(Math.sqrt(StatUtils.variance(values)), stats[7]);
+        }
+    }
+
+    @Test
+    public void testInputIsNotModified() {
+        double[] values = {5, 3, 1, 4, 2};
+        SumStatCalculator.calculateSummaryStatistics(values, null);
+        assertArrayEquals(new double[]{5, 3, 1, 4, 2}, values);
+    }
+
+    @Test
+    public void testInvalidValues() {
+        Double[] boxed = {1.0, null, Double.NaN, 3.0, 2.0};
+        double[] stats = SumStatCalculator.calculateSummaryStatistics(boxed);
+        assertEquals(2.0, stats[0]);
+        assertEquals(2.0, stats[1]);
+        assertEquals(3, stats[3]);
+        assertEquals(2, stats[4]);
+
+        BitSet missing = new BitSet();
+        missing.set(1);
+        missing.set(2);
+        assertArrayEquals(stats, SumStatCalculator.calculateSummaryStatistics(new double[]{1, 0, Double.NaN, 3, 2}, missing));
+        missing.clear(2);
+        missing.set(4);
+        assertArrayEquals(new double[]{4.0, 4.0, 0.0, 3, 2, 1, 7, 3.0}, SumStatCalculator.calculateSummaryStatistics(new long[]{1, 0, 4, 7, 0}, missing));
+    }
+
+    @Test
+    public void testNoValidValues() {
+        double[] stats = SumStatCalculator.calculateSummaryStatistics(new Long[]{null, null});
+        assertTrue(Double.isNaN(stats[0]));
+        assertTrue(Double.isNaN(stats[1]));
+        assertEquals(0, stats[3]);
+        assertEquals(2, stats[4]);
+        assertTrue(Double.isNaN(stats[7]));
+    }
+
+    @Test
+    public void testLongAndBoxedPathsAgree() {
+        Random random = new Random(7);
+        long[] values = new long[500];
+        Long[] boxed = new Long[values.length];
+        BitSet missing = new BitSet();
+        for (int i = 0; i < values.length; i++) {
+            if (random.nextInt(10) == 0) {
+                missing.set(i);
+            } else {
+                values[i] = random.nextLong() % 1000;
+                boxed[i] = values[i];
+            }
+        }
+        assertArrayEquals(SumStatCalculator.calculateSummaryStatistics(boxed), SumStatCalculator.calculateSummaryStatistics(values, missing));
+    }
+
+    @Test
+    public void testMedianBySelection() {
+        Random random = new Random(1);
+        for (int size = 1; size < 60; size++) {
+            double[] values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(5) == 0 ? (random.nextBoolean() ? 0.0 : -0.0) : random.nextGaussian();
+            }
+            double expected = SumStatCalculator.calculateMedian(values);
+            assertEquals(expected, SumStatCalculator.calculateMedianBySelection(Arrays.copyOf(values, size)));
+        }
+    }
+}
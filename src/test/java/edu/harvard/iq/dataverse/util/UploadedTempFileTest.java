@@ -0,0 +1,49 @@
+package edu.harvard.iq.dataverse.util;
+
+import edu.harvard.iq.dataverse.DataFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadedTempFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSave() throws IOException {
+        byte[] data = new byte[200000];
+        new Random(42).nextBytes(data);
+        Path path = tempDir.resolve("upload");
+
+        UploadedTempFile upload = UploadedTempFile.save(new ByteArrayInputStream(data), path, DataFile.ChecksumType.SHA256);
+
+        assertArrayEquals(data, Files.readAllBytes(path));
+        assertEquals(data.length, upload.getSize());
+        assertEquals(FileUtil.calculateChecksum(data, DataFile.ChecksumType.SHA256), upload.getChecksum());
+        assertArrayEquals(Arrays.copyOf(data, UploadedTempFile.HEAD_SIZE), upload.getHead());
+    }
+
+    @Test
+    public void testSaveSmallFile() throws IOException {
+        byte[] data = "SIMPLE  =                    T".getBytes();
+        Path path = tempDir.resolve("small.fits");
+        // an existing file is replaced
+        Files.write(path, new byte[100000]);
+
+        UploadedTempFile upload = UploadedTempFile.save(new ByteArrayInputStream(data), path, DataFile.ChecksumType.MD5);
+
+        assertArrayEquals(data, Files.readAllBytes(path));
+        assertArrayEquals(data, upload.getHead());
+        assertEquals(FileUtil.calculateChecksum(data, DataFile.ChecksumType.MD5), upload.getChecksum());
+        assertEquals("application/fits", FileUtil.determineFileType(path.toFile(), "small.dat", upload.getHead()));
+    }
+}
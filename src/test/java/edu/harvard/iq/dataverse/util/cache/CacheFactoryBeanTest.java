@@ -1,10 +1,10 @@
 package edu.harvard.iq.dataverse.util.cache;
 
-import com.hazelcast.cluster.Address;
 import com.hazelcast.config.Config;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
+import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.engine.command.Command;
@@ -19,10 +19,15 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.parallel.ResourceLock;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
 import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.configuration.CacheEntryListenerConfiguration;
@@ -31,20 +36,33 @@ import javax.cache.integration.CompletionListener;
 import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
 public class CacheFactoryBeanTest {
+    private static final Logger logger = Logger.getLogger(CacheFactoryBeanTest.class.getCanonicalName());
     private SystemConfig mockedSystemConfig;
     static CacheFactoryBean cache = null;
+    // for the caches of strings (permissions, settings and leases)
+    static TestCache<String> stringCache = null;
 
     AuthenticatedUser authUser = new AuthenticatedUser();
     GuestUser guestUser = GuestUser.get();
@@ -102,7 +120,8 @@ public class CacheFactoryBeanTest {
             cache = new CacheFactoryBean();
             cache.systemConfig = mockedSystemConfig;
             if (cache.rateLimitCache == null) {
-                cache.rateLimitCache = new TestCache(getConfig());
+                cache.rateLimitCache = new TestCache<>(getConfig(), "rateLimit");
+                stringCache = new TestCache<>(getConfig(), "strings");
             }
 
             // Clear the static data, so it can be reloaded with the new mocked data
@@ -191,6 +210,153 @@ public class CacheFactoryBeanTest {
         assertEquals(200, cnt);
     }
 
+    /**
+     * Stands in for a benchmark of checkRate() under contention: many threads
+     * check the same bucket at the same time, and exactly its capacity (plus
+     * what is refilled meanwhile) is allowed. The throughput is logged.
+     */
+    @Test
+    public void testRateLimitUnderContention() throws Exception {
+        // with one token taken at a time, and with tokens kept on the node
+        assertAllowedUnderContention("contention:small", 120);
+        assertAllowedUnderContention("contention:large", 5000);
+    }
+
+    private void assertAllowedUnderContention(String key, int capacity) throws Exception {
+        int threads = 8;
+        int callsPerThread = capacity / threads + 50;
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < callsPerThread; i++) {
+                        if (!RateLimitUtil.rateLimited(cache.rateLimitCache, key, capacity)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsedMillis = Math.max((System.nanoTime() - start) / 1000000, 1);
+        long refilled = elapsedMillis * capacity / 3600000;
+        assertTrue(allowed.get() >= capacity && allowed.get() <= capacity + refilled + 1,
+                "capacity:" + capacity + " allowed:" + allowed.get() + " refilled:" + refilled);
+        logger.info(threads * callsPerThread + " rate limit checks of capacity " + capacity + " in " + elapsedMillis + " ms ("
+                + (threads * callsPerThread * 1000L / elapsedMillis) + " per second)");
+    }
+
+    @Test
+    public void testPermissionCacheInvalidation() {
+        cache.permissionCache = stringCache;
+        try {
+            String key = "roles:1:@authUser";
+            long epoch = cache.getPermissionEpoch();
+            cache.cachePermissions(epoch, key, EnumSet.of(Permission.ViewUnpublishedDataset, Permission.DownloadFile));
+            assertEquals(EnumSet.of(Permission.ViewUnpublishedDataset, Permission.DownloadFile), cache.getCachedPermissions(epoch, key));
+
+            long invalidations = cache.getPermissionInvalidations();
+            cache.invalidatePermissions();
+            assertEquals(invalidations + 1, cache.getPermissionInvalidations());
+            long newEpoch = cache.getPermissionEpoch();
+            assertTrue(newEpoch > epoch);
+            assertNull(cache.getCachedPermissions(newEpoch, key));
+        } finally {
+            cache.permissionCache = null;
+        }
+    }
+
+    @Test
+    public void testPermissionCacheInvalidationAfterCommit() {
+        cache.permissionCache = stringCache;
+        cache.transactionRegistry = mock(TransactionSynchronizationRegistry.class);
+        doReturn("tx").when(cache.transactionRegistry).getTransactionKey();
+        try {
+            String key = "roles:2:@authUser";
+            cache.invalidatePermissions();
+            ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+            verify(cache.transactionRegistry).registerInterposedSynchronization(synchronization.capture());
+
+            // cached by another node from the state before the commit:
+            long epoch = cache.getPermissionEpoch();
+            cache.cachePermissions(epoch, key, EnumSet.of(Permission.ViewUnpublishedDataset));
+
+            synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+            long newEpoch = cache.getPermissionEpoch();
+            assertTrue(newEpoch > epoch);
+            assertNull(cache.getCachedPermissions(newEpoch, key));
+        } finally {
+            cache.permissionCache = null;
+            cache.transactionRegistry = null;
+        }
+    }
+
+    @Test
+    public void testSettingsInvalidation() {
+        // the version key does not overlap with the permission ones
+        cache.settingsCache = stringCache;
+        try {
+            String version = cache.getSettingsVersion();
+            cache.invalidateSettings();
+            String newVersion = cache.getSettingsVersion();
+            assertNotNull(newVersion);
+            assertNotEquals(version, newVersion);
+        } finally {
+            cache.settingsCache = null;
+        }
+    }
+
+    @Test
+    public void testIpGroupsInvalidation() {
+        cache.settingsCache = stringCache;
+        try {
+            cache.invalidateSettings();
+            String settingsVersion = cache.getSettingsVersion();
+            String version = cache.getIpGroupsVersion();
+            cache.invalidateIpGroups();
+            String newVersion = cache.getIpGroupsVersion();
+            assertNotNull(newVersion);
+            assertNotEquals(version, newVersion);
+            // the settings are not reloaded for a change of the IP groups:
+            assertEquals(settingsVersion, cache.getSettingsVersion());
+        } finally {
+            cache.settingsCache = null;
+        }
+    }
+
+    @Test
+    public void testReindexLeases() {
+        // two nodes sharing the cache; the keys do not overlap with the other ones
+        CacheFactoryBean otherNode = new CacheFactoryBean();
+        cache.reindexLeaseCache = stringCache;
+        otherNode.reindexLeaseCache = stringCache;
+        try {
+            String key = "reindex:42";
+            assertTrue(cache.claimReindexLease(key));
+            assertFalse(cache.claimReindexLease(key));
+            assertFalse(otherNode.claimReindexLease(key));
+            assertFalse(otherNode.renewReindexLease(key));
+            assertTrue(cache.renewReindexLease(key));
+
+            // only the owner can release it
+            otherNode.releaseReindexLease(key);
+            assertFalse(otherNode.claimReindexLease(key));
+            cache.releaseReindexLease(key);
+            assertTrue(otherNode.claimReindexLease(key));
+            assertFalse(cache.renewReindexLease(key));
+            otherNode.releaseReindexLease(key);
+        } finally {
+            cache.reindexLeaseCache = null;
+        }
+    }
+
     private Config getConfig() {
         return getConfig(null);
     }
@@ -208,22 +374,20 @@ public class CacheFactoryBeanTest {
         return config;
     }
 
-    // convert Hazelcast IMap<String,String> to JCache Cache<Object, Object>
-    private class TestCache implements Cache<String, String>{
+    // convert Hazelcast IMap<String,V> to JCache Cache<String, V>
+    private static class TestCache<V> implements Cache<String, V>{
         HazelcastInstance hzInstance;
-        IMap<String, String> cache;
-        TestCache(Config config) {
+        IMap<String, V> cache;
+        TestCache(Config config, String name) {
             hzInstance = Hazelcast.newHazelcastInstance(config);
-            cache = hzInstance.getMap("test");
-            Address address = hzInstance.getCluster().getLocalMember().getAddress();
-            cache.put("memberAddress", String.format("%s:%d", address.getHost(), address.getPort()));
+            cache = hzInstance.getMap(name);
         }
         @Override
-        public String get(String s) {
+        public V get(String s) {
             return cache.get(s);
         }
         @Override
-        public Map<String, String> getAll(Set<? extends String> set) {
+        public Map<String, V> getAll(Set<? extends String> set) {
             return null;
         }
         @Override
@@ -235,43 +399,43 @@ public class CacheFactoryBeanTest {
 
         }
         @Override
-        public void put(String s, String s2) {
-            cache.put(s,s2);
+        public void put(String s, V v) {
+            cache.put(s, v);
         }
         @Override
-        public String getAndPut(String s, String s2) {
+        public V getAndPut(String s, V v) {
             return null;
         }
         @Override
-        public void putAll(Map<? extends String, ? extends String> map) {
+        public void putAll(Map<? extends String, ? extends V> map) {
 
         }
         @Override
-        public boolean putIfAbsent(String s, String s2) {
-            return false;
+        public boolean putIfAbsent(String s, V v) {
+            return cache.putIfAbsent(s, v) == null;
         }
         @Override
         public boolean remove(String s) {
             return false;
         }
         @Override
-        public boolean remove(String s, String s2) {
-            return false;
+        public boolean remove(String s, V v) {
+            return cache.remove(s, v);
         }
         @Override
-        public String getAndRemove(String s) {
+        public V getAndRemove(String s) {
             return null;
         }
         @Override
-        public boolean replace(String s, String s2, String v1) {
-            return false;
+        public boolean replace(String s, V v, V v1) {
+            return cache.replace(s, v, v1);
         }
         @Override
-        public boolean replace(String s, String s2) {
+        public boolean replace(String s, V v) {
             return false;
         }
         @Override
-        public String getAndReplace(String s, String s2) {
+        public V getAndReplace(String s, V v) {
             return null;
         }
         @Override
@@ -287,15 +451,46 @@ public class CacheFactoryBeanTest {
             cache.clear();
         }
         @Override
-        public <C extends Configuration<String, String>> C getConfiguration(Class<C> aClass) {
+        public <C extends Configuration<String, V>> C getConfiguration(Class<C> aClass) {
             return null;
         }
         @Override
-        public <T> T invoke(String s, EntryProcessor<String, String, T> entryProcessor, Object... objects) throws EntryProcessorException {
-            return null;
+        public <T> T invoke(String s, EntryProcessor<String, V, T> entryProcessor, Object... objects) throws EntryProcessorException {
+            // as in the Hazelcast JCache, the entry is locked while it is processed
+            cache.lock(s);
+            try {
+                return entryProcessor.process(new MutableEntry<>() {
+                    @Override
+                    public boolean exists() {
+                        return cache.containsKey(s);
+                    }
+                    @Override
+                    public void remove() {
+                        cache.delete(s);
+                    }
+                    @Override
+                    public void setValue(V v) {
+                        cache.set(s, v);
+                    }
+                    @Override
+                    public String getKey() {
+                        return s;
+                    }
+                    @Override
+                    public V getValue() {
+                        return cache.get(s);
+                    }
+                    @Override
+                    public <U> U unwrap(Class<U> aClass) {
+                        return null;
+                    }
+                }, objects);
+            } finally {
+                cache.unlock(s);
+            }
         }
         @Override
-        public <T> Map<String, EntryProcessorResult<T>> invokeAll(Set<? extends String> set, EntryProcessor<String, String, T> entryProcessor, Object... objects) {
+        public <T> Map<String, EntryProcessorResult<T>> invokeAll(Set<? extends String> set, EntryProcessor<String, V, T> entryProcessor, Object... objects) {
             return null;
         }
         @Override
@@ -319,15 +514,15 @@ public class CacheFactoryBeanTest {
             return null;
         }
         @Override
-        public void registerCacheEntryListener(CacheEntryListenerConfiguration<String, String> cacheEntryListenerConfiguration) {
+        public void registerCacheEntryListener(CacheEntryListenerConfiguration<String, V> cacheEntryListenerConfiguration) {
 
         }
         @Override
-        public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<String, String> cacheEntryListenerConfiguration) {
+        public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<String, V> cacheEntryListenerConfiguration) {
 
         }
         @Override
-        public Iterator<Cache.Entry<String, String>> iterator() {
+        public Iterator<Cache.Entry<String, V>> iterator() {
             return null;
         }
     }
@@ -0,0 +1,39 @@
+package edu.harvard.iq.dataverse.util.cache;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class PermissionCacheUtilTest {
+
+    @Test
+    public void testGenerateCacheKey() {
+        AuthenticatedUser user = new AuthenticatedUser();
+        user.setUserIdentifier("jdoe");
+        RoleAssignee guest = GuestUser.get();
+
+        String key = PermissionCacheUtil.generateCacheKey("roles", 42L, List.of(user, guest));
+        // the order of the role assignees does not matter:
+        assertEquals(key, PermissionCacheUtil.generateCacheKey("roles", 42L, List.of(guest, user)));
+        assertEquals("roles:42:" + guest.getIdentifier() + "," + user.getIdentifier(), key);
+        assertNotEquals(key, PermissionCacheUtil.generateCacheKey("roles", 43L, List.of(user, guest)));
+        assertEquals("downloadable:7:42", PermissionCacheUtil.generateCacheKey("downloadable:7", 42L, null));
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        Set<Permission> permissions = EnumSet.of(Permission.DownloadFile, Permission.EditDataset, Permission.ManageDatasetPermissions);
+        assertEquals(permissions, PermissionCacheUtil.decode(PermissionCacheUtil.encode(permissions)));
+        assertEquals(EnumSet.noneOf(Permission.class), PermissionCacheUtil.decode(PermissionCacheUtil.encode(EnumSet.noneOf(Permission.class))));
+        assertEquals(EnumSet.allOf(Permission.class), PermissionCacheUtil.decode(PermissionCacheUtil.encode(EnumSet.allOf(Permission.class))));
+    }
+}
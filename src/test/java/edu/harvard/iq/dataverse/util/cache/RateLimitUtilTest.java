@@ -14,7 +14,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import javax.cache.Cache;
+import javax.cache.processor.MutableEntry;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -143,6 +147,39 @@ public class RateLimitUtilTest {
         authUser.setRateLimitTier(99);
         assertEquals(RateLimitUtil.NO_LIMIT, RateLimitUtil.getCapacity(config, authUser, "def"));
     }
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLocalTokensAreCapped() {
+        // the bucket is new, i.e. full, every time: tokens are kept locally if there is room
+        Cache<String, long[]> cache = mock(Cache.class);
+        when(cache.invoke(anyString(), any(TokenBucketProcessor.class))).thenAnswer(invocation -> {
+            TokenBucketProcessor processor = invocation.getArgument(1);
+            return processor.process(mock(MutableEntry.class));
+        });
+        RateLimitUtil.localTokens.clear();
+        try {
+            long expires = System.currentTimeMillis() + RateLimitUtil.LOCAL_TOKENS_TTL;
+            for (int i = 0; i < RateLimitUtil.MAX_LOCAL_BUCKETS - 1; i++) {
+                RateLimitUtil.localTokens.put("user" + i, new RateLimitUtil.LocalTokens(10, expires));
+            }
+            assertFalse(RateLimitUtil.rateLimited(cache, "last", 10000));
+            assertEquals(RateLimitUtil.MAX_LOCAL_BUCKETS, RateLimitUtil.localTokens.size());
+
+            // full, and none of the entries has expired: nothing more is kept
+            assertFalse(RateLimitUtil.rateLimited(cache, "overflow", 10000));
+            assertEquals(RateLimitUtil.MAX_LOCAL_BUCKETS, RateLimitUtil.localTokens.size());
+            assertFalse(RateLimitUtil.localTokens.containsKey("overflow"));
+
+            // once some of them have expired, they make room
+            RateLimitUtil.localTokens.put("user0", new RateLimitUtil.LocalTokens(10, 0L));
+            assertFalse(RateLimitUtil.rateLimited(cache, "overflow", 10000));
+            assertEquals(RateLimitUtil.MAX_LOCAL_BUCKETS, RateLimitUtil.localTokens.size());
+            assertFalse(RateLimitUtil.localTokens.containsKey("user0"));
+        } finally {
+            RateLimitUtil.localTokens.clear();
+        }
+    }
+
     private void resetRateLimitUtil(SystemConfig config, boolean enable) {
         doReturn(enable ? getJsonSetting() : "").when(config).getRateLimitsJson();
         doReturn(enable ? "100,200" : "").when(config).getRateLimitingDefaultCapacityTiers();
@@ -0,0 +1,83 @@
+package edu.harvard.iq.dataverse.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import javax.cache.processor.MutableEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketProcessorTest {
+
+    @Test
+    public void testNewBucketIsFull() {
+        TestEntry entry = new TestEntry(null);
+        TokenBucketProcessor processor = new TokenBucketProcessor(3, 0);
+
+        assertEquals(1, processor.process(entry));
+        assertEquals(1, processor.process(entry));
+        assertEquals(1, processor.process(entry));
+        assertEquals(0, processor.process(entry));
+        assertEquals(0, entry.value[TokenBucketProcessor.TOKENS]);
+    }
+
+    @Test
+    public void testRefill() {
+        long now = System.currentTimeMillis();
+        // 60 per hour: a token a minute; empty for 2.5 minutes
+        TestEntry entry = new TestEntry(new long[] {0, now - 150000});
+
+        assertEquals(1, new TokenBucketProcessor(60, 0).process(entry));
+        assertEquals(1, entry.value[TokenBucketProcessor.TOKENS]);
+        // the half minute already accrued towards the next token is kept
+        long lastRefill = entry.value[TokenBucketProcessor.LAST_REFILL];
+        assertTrue(now - lastRefill >= 30000 && now - lastRefill < 35000, "lastRefill:" + (now - lastRefill));
+
+        // never more than the capacity
+        entry = new TestEntry(new long[] {5, now - 3600000});
+        assertEquals(1, new TokenBucketProcessor(10, 0).process(entry));
+        assertEquals(9, entry.value[TokenBucketProcessor.TOKENS]);
+    }
+
+    @Test
+    public void testPrefetchOnlyWhileMoreThanHalfFull() {
+        TestEntry entry = new TestEntry(null);
+        TokenBucketProcessor processor = new TokenBucketProcessor(100, 20);
+
+        assertEquals(20, processor.process(entry));
+        assertEquals(20, processor.process(entry));
+        assertEquals(1, processor.process(entry));
+        assertEquals(59, entry.value[TokenBucketProcessor.TOKENS]);
+    }
+
+    private static class TestEntry implements MutableEntry<String, long[]> {
+        long[] value;
+
+        TestEntry(long[] value) {
+            this.value = value;
+        }
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+        @Override
+        public void remove() {
+            value = null;
+        }
+        @Override
+        public void setValue(long[] value) {
+            this.value = value;
+        }
+        @Override
+        public String getKey() {
+            return "key";
+        }
+        @Override
+        public long[] getValue() {
+            return value;
+        }
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            return null;
+        }
+    }
+}